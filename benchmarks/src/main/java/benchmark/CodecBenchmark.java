@@ -0,0 +1,145 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SÉRIALISATION DES MESSAGES
+ *
+ * Compare la sérialisation Java (un ObjectOutputStream par message, dans un
+ * tableau neuf ou dans le tampon réutilisé datagram.EncodeBuffer des envois) à un
+ * codec binaire de référence
+ * (DataOutputStream, champs écrits à la main). Tout nouveau codec doit
+ * faire au moins aussi bien que "data*" pour être retenu.
+ *
+ * Paramètre "payload": taille du texte (TEXTE) ou du fichier (FICHIER).
+ * Lancer avec -prof gc pour comparer les allocations par envoi.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+    @Param({ "32", "1024", "65000" })
+    public int payload;
+
+    private udp.Message text;
+    private udp.Message file;
+    private byte[] textJava;
+    private byte[] textData;
+    private final datagram.EncodeBuffer reused = new datagram.EncodeBuffer();
+
+    @Setup
+    public void setup() throws IOException {
+        text = new udp.Message(udp.Message.Type.TEXTE, "alice", "Tous", "x".repeat(payload));
+        file = new udp.Message(udp.Message.Type.FICHIER, "alice", "Tous", "logo.png", new byte[payload]);
+        textJava = javaEncode(text);
+        textData = dataEncode(text);
+    }
+
+    @Benchmark
+    public byte[] javaEncodeText() throws IOException {
+        return javaEncode(text);
+    }
+
+    @Benchmark
+    public byte[] javaEncodeFile() throws IOException {
+        return javaEncode(file);
+    }
+
+    @Benchmark
+    public int reusedEncodeText() throws IOException {
+        return reused.encode(text);
+    }
+
+    @Benchmark
+    public int reusedEncodeFile() throws IOException {
+        return reused.encode(file);
+    }
+
+    @Benchmark
+    public Object javaDecodeText() throws IOException, ClassNotFoundException {
+        return new ObjectInputStream(new ByteArrayInputStream(textJava)).readObject();
+    }
+
+    @Benchmark
+    public byte[] dataEncodeText() throws IOException {
+        return dataEncode(text);
+    }
+
+    @Benchmark
+    public byte[] dataEncodeFile() throws IOException {
+        return dataEncode(file);
+    }
+
+    @Benchmark
+    public udp.Message dataDecodeText() throws IOException {
+        return dataDecode(textData);
+    }
+
+    // ========== CODECS ==========
+
+    static byte[] javaEncode(Object msg) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(bos);
+        oos.writeObject(msg);
+        oos.flush();
+        return bos.toByteArray();
+    }
+
+    static byte[] dataEncode(udp.Message msg) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bos);
+        out.writeByte(msg.type.ordinal());
+        out.writeLong(msg.seq);
+        writeString(out, msg.sender);
+        writeString(out, msg.target);
+        writeString(out, msg.text);
+        writeString(out, msg.filename);
+        out.writeInt(msg.fileBytes == null ? -1 : msg.fileBytes.length);
+        if (msg.fileBytes != null) out.write(msg.fileBytes);
+        out.flush();
+        return bos.toByteArray();
+    }
+
+    static udp.Message dataDecode(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        udp.Message msg = new udp.Message();
+        msg.type = udp.Message.Type.values()[in.readByte()];
+        msg.seq = in.readLong();
+        msg.sender = readString(in);
+        msg.target = readString(in);
+        msg.text = readString(in);
+        msg.filename = readString(in);
+        int len = in.readInt();
+        if (len >= 0) {
+            msg.fileBytes = new byte[len];
+            in.readFully(msg.fileBytes);
+        }
+        return msg;
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int len = in.readInt();
+        if (len < 0) return null;
+        byte[] b = new byte[len];
+        in.readFully(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+}
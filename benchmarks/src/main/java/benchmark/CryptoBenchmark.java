@@ -0,0 +1,70 @@
+package benchmark;
+
+import crypto.Aead;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * COÛT DU CHIFFREMENT DES ENVOIS
+ *
+ * Compare l'envoi en clair (sérialisation dans le tampon réutilisé
+ * datagram.EncodeBuffer) au même envoi suivi du chiffrement authentifié des octets
+ * sérialisés, avec chacune des suites de -Dcrypto. "seal" isole le
+ * chiffrement seul, en place comme dans FrameWriter.
+ *
+ * Paramètre "suite": NONE (clair), AES_GCM ou CHACHA20_POLY1305.
+ * Paramètre "payload": taille du fichier (1024: texte long; 16384: morceau
+ * TCP; 65000: datagramme UDP presque plein).
+ * Débit en octets/s = payload / temps moyen; le surcoût du chiffrement se lit
+ * en comparant chaque suite à NONE.
+ *
+ * Coût sur un vrai envoi (socket, déchiffrement à la réception compris): voir
+ * les variantes "Sealed" de LoopbackBenchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CryptoBenchmark {
+
+    @Param({ "NONE", "AES_GCM", "CHACHA20_POLY1305" })
+    public String suite;
+
+    @Param({ "1024", "16384", "65000" })
+    public int payload;
+
+    private udp.Message file;
+    private final datagram.EncodeBuffer reused = new datagram.EncodeBuffer();
+    private Aead aead;
+    private byte[] sealed;
+    private byte[] inPlace;
+    private long counter;
+
+    @Setup
+    public void setup() throws GeneralSecurityException {
+        file = new udp.Message(udp.Message.Type.FICHIER, "alice", "Tous", "logo.png", new byte[payload]);
+        byte[] key = new byte[Aead.KEY_BYTES];
+        for (int i = 0; i < key.length; i++) key[i] = (byte) i;
+        aead = suite.equals("NONE") ? null : new Aead(Aead.Suite.valueOf(suite), key, 0);
+        sealed = new byte[payload + 1024 + Aead.TAG_BYTES];
+        inPlace = new byte[payload + Aead.TAG_BYTES];
+    }
+
+    @Benchmark
+    public int encodeSeal() throws IOException, GeneralSecurityException {
+        int length = reused.encode(file);
+        if (aead == null) return length;
+        return aead.seal(++counter, reused.array(), 0, length, sealed, 0);
+    }
+
+    @Benchmark
+    public int seal() throws GeneralSecurityException {
+        if (aead == null) return payload;
+        return aead.seal(++counter, inPlace, 0, payload, inPlace, 0);
+    }
+}
@@ -0,0 +1,228 @@
+package benchmark;
+
+import crypto.GroupKeys;
+import crypto.Handshake;
+import crypto.Session;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.net.*;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ENVOI/RÉCEPTION SUR LA BOUCLE LOCALE
+ *
+ * Un message texte sérialisé et transmis par un vrai socket 127.0.0.1,
+ * comme le font les Client et ServeurGUI:
+ * - udp:  un ObjectOutputStream par datagramme, DatagramSocket → DatagramSocket
+ * - tcp:  un ObjectOutputStream pour toute la connexion (writeObject + flush),
+ *         avec et sans reset() après chaque message (ancien protocole)
+ * - tcp:  trames longueur + message (tcp.FrameWriter / tcp.FrameReader)
+ * - multicast: datagramme du tampon réutilisé (datagram.EncodeBuffer),
+ *         envoyé en unicast sur la boucle locale (même format que vers le
+ *         groupe; la boucle locale n'a pas toujours de route multicast)
+ *
+ * CHIFFREMENT: chaque transport a sa variante "Sealed", chiffrée comme par
+ * les clients avec -Dcrypto (crypto.Session pour tcp et udp, clés de groupe
+ * crypto.GroupKeys pour le multicast, déchiffrement compris). Le surcoût se
+ * lit en comparant chaque variante à son envoi en clair. La suite est celle
+ * de -Dcrypto (aes-gcm par défaut, -jvmArgsAppend -Dcrypto=chacha20 pour
+ * l'autre).
+ *
+ * Paramètre "fileBytes": 0 = message texte, sinon fichier de cette taille
+ * (16384: morceau TCP; moins de 65000 pour tenir dans un datagramme).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Dcrypto=aes-gcm", "-Dcrypto.psk=benchmark" })
+public class LoopbackBenchmark {
+
+    @Param({ "0" })
+    public int fileBytes;
+
+    private DatagramSocket udpSender;
+    private DatagramSocket udpReceiver;
+    private InetSocketAddress udpTarget;
+    private byte[] udpBuffer;
+    private udp.Message udpMessage;
+
+    private ServerSocket tcpServer;
+    private Socket tcpClient;
+    private Socket tcpPeer;
+    private ObjectOutputStream tcpOut;
+    private ObjectInputStream tcpIn;
+    private tcp.Message tcpMessage;
+
+    private Socket framedClient;
+    private Socket framedPeer;
+    private tcp.FrameWriter framedOut;
+    private tcp.FrameReader framedIn;
+
+    private byte[] udpSealed;
+
+    private Socket sealedClient;
+    private Socket sealedPeer;
+    private tcp.FrameWriter sealedOut;
+    private tcp.FrameReader sealedIn;
+    private Session clientSession;
+    private Session serverSession;
+
+    private multicast.Message multicastMessage;
+    private final datagram.EncodeBuffer multicastBuffer = new datagram.EncodeBuffer();
+    private GroupKeys groupSender;
+    private GroupKeys groupReceiver;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, GeneralSecurityException {
+        InetAddress lo = InetAddress.getLoopbackAddress();
+        udpReceiver = new DatagramSocket(new InetSocketAddress(lo, 0));
+        udpSender = new DatagramSocket(new InetSocketAddress(lo, 0));
+        udpTarget = new InetSocketAddress(lo, udpReceiver.getLocalPort());
+        udpBuffer = new byte[65535];
+        udpMessage = fileBytes > 0
+                ? new udp.Message(udp.Message.Type.FICHIER, "alice", "Tous", "logo.png", new byte[fileBytes])
+                : new udp.Message(udp.Message.Type.TEXTE, "alice", "Tous", "bonjour à tous");
+        udpSealed = new byte[65535];
+
+        tcpServer = new ServerSocket(0, 50, lo);
+        tcpClient = new Socket(lo, tcpServer.getLocalPort());
+        tcpPeer = tcpServer.accept();
+        tcpOut = new ObjectOutputStream(tcpClient.getOutputStream());
+        tcpOut.flush();
+        tcpIn = new ObjectInputStream(tcpPeer.getInputStream());
+        tcpMessage = fileBytes > 0
+                ? new tcp.Message(tcp.Message.Type.FICHIER, "alice", "Tous", "logo.png", new byte[fileBytes])
+                : new tcp.Message(tcp.Message.Type.TEXTE, "alice", "Tous", "bonjour à tous");
+
+        framedClient = new Socket(lo, tcpServer.getLocalPort());
+        framedPeer = tcpServer.accept();
+        framedOut = new tcp.FrameWriter(framedClient.getOutputStream());
+        framedIn = new tcp.FrameReader(framedPeer.getInputStream());
+
+        // Poignée de main faite en mémoire: mêmes clés que Handshake.exchange
+        Handshake client = new Handshake(), server = new Handshake();
+        clientSession = client.complete(Handshake.peerKey(server.datagram(), server.datagram().length), true);
+        serverSession = server.complete(Handshake.peerKey(client.datagram(), client.datagram().length), false);
+        sealedClient = new Socket(lo, tcpServer.getLocalPort());
+        sealedPeer = tcpServer.accept();
+        sealedOut = new tcp.FrameWriter(sealedClient.getOutputStream(), clientSession);
+        sealedIn = new tcp.FrameReader(sealedPeer.getInputStream(), serverSession);
+
+        multicastMessage = fileBytes > 0
+                ? new multicast.Message(multicast.Message.Type.FICHIER, "alice", "Tous", "logo.png", new byte[fileBytes])
+                : new multicast.Message(multicast.Message.Type.TEXTE, "alice", "Tous", "bonjour à tous");
+        groupSender = GroupKeys.create();
+        groupReceiver = GroupKeys.create();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        udpSender.close();
+        udpReceiver.close();
+        tcpClient.close();
+        tcpPeer.close();
+        framedClient.close();
+        framedPeer.close();
+        sealedClient.close();
+        sealedPeer.close();
+        tcpServer.close();
+    }
+
+    @Benchmark
+    public Object udpRoundTrip() throws IOException, ClassNotFoundException {
+        byte[] data = CodecBenchmark.javaEncode(udpMessage);
+        udpSender.send(new DatagramPacket(data, data.length, udpTarget));
+        DatagramPacket packet = new DatagramPacket(udpBuffer, udpBuffer.length);
+        udpReceiver.receive(packet);
+        return new ObjectInputStream(new ByteArrayInputStream(packet.getData(), 0, packet.getLength())).readObject();
+    }
+
+    /**
+     * Comme udpRoundTrip, datagramme chiffré (Session.sealDatagram / openDatagram)
+     */
+    @Benchmark
+    public Object udpSealedRoundTrip() throws IOException, ClassNotFoundException {
+        byte[] data = CodecBenchmark.javaEncode(udpMessage);
+        int length = clientSession.sealDatagram(data, 0, data.length, udpSealed);
+        udpSender.send(new DatagramPacket(udpSealed, length, udpTarget));
+        DatagramPacket packet = new DatagramPacket(udpBuffer, udpBuffer.length);
+        udpReceiver.receive(packet);
+        int plain = serverSession.openDatagram(udpBuffer, packet.getLength());
+        if (plain < 0) throw new IOException("Datagramme rejeté");
+        return new ObjectInputStream(new ByteArrayInputStream(udpBuffer, Session.DATAGRAM_HEADER, plain)).readObject();
+    }
+
+    /**
+     * Comme tcp.Client/ServeurGUI: le flux garde une référence à chaque objet écrit
+     */
+    @Benchmark
+    public Object tcpRoundTrip() throws IOException, ClassNotFoundException {
+        tcpOut.writeObject(tcpCopy());
+        tcpOut.flush();
+        return tcpIn.readObject();
+    }
+
+    @Benchmark
+    public Object tcpRoundTripReset() throws IOException, ClassNotFoundException {
+        tcpOut.writeObject(tcpCopy());
+        tcpOut.reset();
+        tcpOut.flush();
+        return tcpIn.readObject();
+    }
+
+    /**
+     * Protocole actuel: une trame autonome par message, mémoire bornée par connexion
+     */
+    @Benchmark
+    public Object tcpFramedRoundTrip() throws IOException {
+        framedOut.write(tcpCopy());
+        return framedIn.read();
+    }
+
+    /**
+     * Comme tcpFramedRoundTrip, trame chiffrée en place (FrameWriter / FrameReader avec Session)
+     */
+    @Benchmark
+    public Object tcpFramedSealedRoundTrip() throws IOException {
+        sealedOut.write(tcpCopy());
+        return sealedIn.read();
+    }
+
+    /**
+     * Comme multicast.Client: tampon réutilisé, un datagramme par message
+     */
+    @Benchmark
+    public Object multicastRoundTrip() throws IOException, ClassNotFoundException {
+        int length = multicastBuffer.encode(multicastMessage);
+        udpSender.send(new DatagramPacket(multicastBuffer.array(), length, udpTarget));
+        DatagramPacket packet = new DatagramPacket(udpBuffer, udpBuffer.length);
+        udpReceiver.receive(packet);
+        return new ObjectInputStream(new ByteArrayInputStream(udpBuffer, 0, packet.getLength())).readObject();
+    }
+
+    /**
+     * Comme multicastRoundTrip, chiffré avec les clés du groupe (GroupKeys.seal / open)
+     */
+    @Benchmark
+    public Object multicastSealedRoundTrip() throws IOException, ClassNotFoundException {
+        int length = multicastBuffer.encode(multicastMessage);
+        length = groupSender.seal(multicastBuffer.array(), 0, length, udpSealed);
+        udpSender.send(new DatagramPacket(udpSealed, length, udpTarget));
+        DatagramPacket packet = new DatagramPacket(udpBuffer, udpBuffer.length);
+        udpReceiver.receive(packet);
+        int plain = groupReceiver.open(udpBuffer, packet.getLength());
+        if (plain < 0) throw new IOException("Datagramme rejeté");
+        return new ObjectInputStream(new ByteArrayInputStream(udpBuffer, GroupKeys.HEADER, plain)).readObject();
+    }
+
+    // Nouvel objet à chaque envoi, comme les clients (le flux Java garde sinon une référence)
+    private tcp.Message tcpCopy() {
+        return tcpMessage.type == tcp.Message.Type.FICHIER
+                ? new tcp.Message(tcpMessage.type, tcpMessage.sender, tcpMessage.target, tcpMessage.filename, tcpMessage.fileBytes)
+                : new tcp.Message(tcpMessage.type, tcpMessage.sender, tcpMessage.target, tcpMessage.text);
+    }
+}
@@ -0,0 +1,66 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import javax.swing.DefaultComboBoxModel;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MISE À JOUR DE LA LISTE DES DESTINATAIRES (CLIENT)
+ *
+ * Reproduit le traitement d'un message LISTE dans les Client: on vide
+ * le DefaultComboBoxModel puis on le remplit pseudo par pseudo après un
+ * split(","). Les modèles Swing fonctionnent sans affichage (headless).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class RosterBenchmark {
+
+    @Param({ "10", "1000", "10000" })
+    public int users;
+
+    private String list;
+    private DefaultComboBoxModel<String> targetModel;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        StringJoiner j = new StringJoiner(",");
+        for (int i = 0; i < users; i++) j.add("user-" + i);
+        list = j.toString();
+        targetModel = new DefaultComboBoxModel<>();
+    }
+
+    /**
+     * Traitement LISTE tel qu'écrit dans les Client
+     */
+    @Benchmark
+    public DefaultComboBoxModel<String> rebuildModel() {
+        targetModel.removeAllElements();
+        targetModel.addElement("Tous");
+        String[] names = list.split(",");
+        for (String u : names) {
+            if (u != null && !u.isBlank()) targetModel.addElement(u.trim());
+        }
+        return targetModel;
+    }
+
+    /**
+     * Même résultat en un seul remplacement du modèle (une seule notification)
+     */
+    @Benchmark
+    public DefaultComboBoxModel<String> replaceModel() {
+        String[] names = list.split(",");
+        String[] items = new String[names.length + 1];
+        items[0] = "Tous";
+        int n = 1;
+        for (String u : names) {
+            if (u != null && !u.isBlank()) items[n++] = u.trim();
+        }
+        return new DefaultComboBoxModel<>(java.util.Arrays.copyOf(items, n));
+    }
+}
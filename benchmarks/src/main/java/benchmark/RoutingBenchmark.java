@@ -0,0 +1,144 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * RECHERCHE DES SESSIONS ET DIFFUSION
+ *
+ * Les ClientHandler des serveurs sont des classes internes privées: ce
+ * benchmark reproduit à l'identique les structures et les boucles des
+ * serveurs (Set<ClientHandler> en CopyOnWriteArraySet, parcours linéaire
+ * par pseudo) et les compare à un index par pseudo.
+ *
+ * Chemins mesurés:
+ * - udp.ServeurGUI.findOrCreateClient  (client existant)
+ * - sendToTarget unicast               (parcours jusqu'au destinataire)
+ * - sendToTarget "Tous"                (fan-out vers toutes les sessions)
+ * - broadcastList                      (construction de la chaîne LISTE)
+ *
+ * Si le code des serveurs change de structure, ce fichier doit suivre.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoutingBenchmark {
+
+    @Param({ "10", "1000", "10000", "100000" })
+    public int sessions;
+
+    /**
+     * Équivalent du ClientHandler UDP (pseudo + adresse)
+     */
+    static final class Session {
+        final String nickname;
+        volatile int port;
+
+        Session(String nickname, int port) {
+            this.nickname = nickname;
+            this.port = port;
+        }
+    }
+
+    private Set<Session> clients;
+    private Map<String, Session> index;
+    private String[] nicknames;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        List<Session> all = new ArrayList<>(sessions);
+        nicknames = new String[sessions];
+        for (int i = 0; i < sessions; i++) {
+            nicknames[i] = "user-" + i;
+            all.add(new Session(nicknames[i], 40000 + i % 20000));
+        }
+        clients = new CopyOnWriteArraySet<>(all);
+        index = new ConcurrentHashMap<>();
+        for (Session s : all) index.put(s.nickname, s);
+    }
+
+    private String randomNickname() {
+        return nicknames[ThreadLocalRandom.current().nextInt(sessions)];
+    }
+
+    /**
+     * findOrCreateClient tel qu'écrit dans udp.ServeurGUI (parcours linéaire)
+     */
+    @Benchmark
+    public Session findOrCreateScan() {
+        String nick = randomNickname();
+        for (Session h : clients) {
+            if (h.nickname.equals(nick)) {
+                h.port = 40001;
+                return h;
+            }
+        }
+        return null;
+    }
+
+    @Benchmark
+    public Session findOrCreateIndexed() {
+        Session h = index.get(randomNickname());
+        if (h != null) h.port = 40001;
+        return h;
+    }
+
+    /**
+     * sendToTarget unicast: parcours jusqu'au destinataire puis "send"
+     */
+    @Benchmark
+    public void sendToTargetScan(Blackhole bh) {
+        String target = randomNickname();
+        for (Session c : clients) {
+            if (c.nickname.equals(target)) {
+                bh.consume(c);
+                break;
+            }
+        }
+    }
+
+    @Benchmark
+    public void sendToTargetIndexed(Blackhole bh) {
+        bh.consume(index.get(randomNickname()));
+    }
+
+    /**
+     * sendToTarget "Tous": fan-out sur toutes les sessions sauf l'émetteur
+     */
+    @Benchmark
+    public void sendToAll(Blackhole bh) {
+        Session from = index.get(randomNickname());
+        for (Session c : clients) if (c != from) bh.consume(c);
+    }
+
+    /**
+     * broadcastList: chaîne des pseudos séparés par des virgules
+     */
+    @Benchmark
+    public String broadcastListStream() {
+        return clients.stream().map(c -> c.nickname).collect(Collectors.joining(","));
+    }
+
+    @Benchmark
+    public String broadcastListBuilder() {
+        StringBuilder sb = new StringBuilder(sessions * 10);
+        for (Session c : clients) {
+            if (sb.length() > 0) sb.append(',');
+            sb.append(c.nickname);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,45 @@
+@echo off
+REM ================================================================
+REM SCRIPT DE LANCEMENT DU GENERATEUR DE CHARGE
+REM ================================================================
+REM
+REM Ce script lance le generateur de charge en ligne de commande
+REM (clients TCP, UDP ou multicast simules, sans interface).
+REM
+REM PREREQUIS:
+REM - Java JDK 21 ou superieur installe (threads virtuels)
+REM - Projet compile (mvn compile)
+REM - Serveur TCP ou UDP demarre (inutile en multicast)
+REM
+REM UTILISATION:
+REM - run-loadgen.bat --transport=udp --clients=2000 --duration=60
+REM - run-loadgen.bat --help  (liste des options)
+REM
+REM ================================================================
+
+echo.
+echo ========================================
+echo    DEMARRAGE DU GENERATEUR DE CHARGE
+echo ========================================
+echo.
+
+REM Verification que le dossier target existe
+if not exist "target\classes" (
+    echo ERREUR: Le projet n'est pas compile.
+    echo Veuillez executer: mvn compile
+    echo.
+    pause
+    exit /b 1
+)
+
+REM Lancement du generateur avec les options passees au script
+java -cp "target\classes" loadgen.LoadGenerator %*
+
+REM En cas d'erreur
+if errorlevel 1 (
+    echo.
+    echo ERREUR: Le generateur de charge n'a pas pu demarrer.
+    echo Verifiez que Java est installe et que le projet est compile.
+    echo.
+    pause
+)
@@ -13,6 +13,13 @@ REM UTILISATION:
 REM - Double-cliquer sur ce fichier
 REM - Ou executer depuis CMD: run-multicast-client.bat
 REM - Vous pouvez lancer plusieurs instances pour simuler plusieurs clients
+REM - Les options Java passees au script sont transmises au client
+REM
+REM PLUSIEURS INSTANCES SUR UNE MEME MACHINE:
+REM La boucle locale multicast est desactivee par defaut: les instances
+REM d'une meme machine ne recoivent pas les messages des autres. Lancez
+REM chacune (et le serveur relai, s'il tourne sur cette machine) avec:
+REM     run-multicast-client.bat -Dmulticast.loopback=true
 REM
 REM ================================================================
 
@@ -34,7 +41,7 @@ if not exist "target\classes" (
 REM Lancement du client multicast
 echo Lancement du client multicast...
 echo.
-java -cp "target\classes" multicast.Client
+java -cp "target\classes" %* multicast.Client
 
 REM En cas d'erreur
 if errorlevel 1 (
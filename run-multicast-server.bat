@@ -12,6 +12,13 @@ REM
 REM UTILISATION:
 REM - Double-cliquer sur ce fichier
 REM - Ou executer depuis CMD: run-multicast-server.bat
+REM - Les options Java passees au script sont transmises au serveur
+REM
+REM MEME MACHINE QUE LES CLIENTS:
+REM La boucle locale multicast est desactivee par defaut: un serveur et des
+REM clients sur la meme machine ne s'entendent pas. Lancez-les tous avec:
+REM     run-multicast-server.bat -Dmulticast.loopback=true
+REM     run-multicast-client.bat -Dmulticast.loopback=true
 REM
 REM NOTE:
 REM Le serveur relai est optionnel en multicast.
@@ -38,7 +45,7 @@ if not exist "target\classes" (
 REM Lancement du serveur relai multicast
 echo Lancement du serveur relai multicast...
 echo.
-java -cp "target\classes" multicast.ServeurGUI
+java -cp "target\classes" %* multicast.ServeurGUI
 
 REM En cas d'erreur
 if errorlevel 1 (
@@ -0,0 +1,131 @@
+package crypto;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.spec.AlgorithmParameterSpec;
+
+/**
+ * CHIFFREMENT AUTHENTIFIÉ (AEAD) D'UNE DIRECTION DE TRAFIC
+ *
+ * Toutes les trames et tous les datagrammes circulaient en clair (octets
+ * ObjectOutputStream): n'importe quelle machine du réseau local pouvait les
+ * lire, et injecter des messages dans un groupe. Avec -Dcrypto=aes-gcm ou
+ * -Dcrypto=chacha20, chaque message est chiffré et authentifié: un octet
+ * modifié ou un message forgé sans la clé est rejeté au déchiffrement.
+ *
+ * Un Aead = une clé, un Cipher réutilisé (aucun getInstance par message) et
+ * un nonce de 12 octets: préfixe de 4 octets (fixé à la création) puis
+ * compteur de 8 octets fourni par l'appelant, qui ne doit jamais le réutiliser
+ * avec la même clé. Chiffrement et déchiffrement acceptent la même zone en
+ * entrée et en sortie (chiffrement en place dans les tampons des envois).
+ *
+ * Non thread-safe: un Aead par direction et par thread (voir Session).
+ *
+ * Propriété système:
+ *   -Dcrypto=off|aes-gcm|chacha20   chiffrement des trois transports (off)
+ */
+public final class Aead {
+
+    public enum Suite {
+        AES_GCM("aes-gcm", "AES/GCM/NoPadding", "AES", 1),
+        CHACHA20_POLY1305("chacha20", "ChaCha20-Poly1305", "ChaCha20", 2);
+
+        public final String label;
+        final String transformation;
+        final String keyAlgorithm;
+        public final byte id;
+
+        Suite(String label, String transformation, String keyAlgorithm, int id) {
+            this.label = label;
+            this.transformation = transformation;
+            this.keyAlgorithm = keyAlgorithm;
+            this.id = (byte) id;
+        }
+
+        static Suite parse(String s) {
+            if (s == null || s.isBlank() || s.equalsIgnoreCase("off")) return null;
+            for (Suite suite : values()) if (suite.label.equalsIgnoreCase(s.trim())) return suite;
+            throw new IllegalArgumentException("-Dcrypto=" + s + " : attendu off, aes-gcm ou chacha20");
+        }
+
+        static Suite byId(int id) {
+            for (Suite suite : values()) if (suite.id == id) return suite;
+            return null;
+        }
+    }
+
+    /**
+     * Suite choisie (null = chiffrement désactivé)
+     */
+    public static final Suite SUITE = Suite.parse(System.getProperty("crypto"));
+
+    public static final int KEY_BYTES = 32;
+    public static final int NONCE_BYTES = 12;
+    public static final int TAG_BYTES = 16;
+
+    private final Suite suite;
+    private final Cipher cipher;
+    private final SecretKeySpec key;
+    private final byte[] nonce = new byte[NONCE_BYTES];
+
+    /**
+     * @param key    Clé de 32 octets (AES-256 ou ChaCha20)
+     * @param prefix Quatre premiers octets du nonce
+     */
+    public Aead(Suite suite, byte[] key, int prefix) throws GeneralSecurityException {
+        this.suite = suite;
+        this.cipher = Cipher.getInstance(suite.transformation);
+        this.key = new SecretKeySpec(key, 0, KEY_BYTES, suite.keyAlgorithm);
+        nonce[0] = (byte) (prefix >>> 24);
+        nonce[1] = (byte) (prefix >>> 16);
+        nonce[2] = (byte) (prefix >>> 8);
+        nonce[3] = (byte) prefix;
+    }
+
+    public static boolean enabled() {
+        return SUITE != null;
+    }
+
+    /**
+     * Chiffre len octets (sortie: len + TAG_BYTES octets, éventuellement à la même place)
+     *
+     * @return Taille chiffrée
+     */
+    public int seal(long counter, byte[] in, int off, int len, byte[] out, int outOff) throws GeneralSecurityException {
+        init(Cipher.ENCRYPT_MODE, counter);
+        return cipher.doFinal(in, off, len, out, outOff);
+    }
+
+    /**
+     * Déchiffre et vérifie len octets (étiquette comprise)
+     *
+     * @return Taille en clair
+     * @throws GeneralSecurityException Message modifié, forgé ou chiffré avec une autre clé
+     */
+    public int open(long counter, byte[] in, int off, int len, byte[] out, int outOff) throws GeneralSecurityException {
+        init(Cipher.DECRYPT_MODE, counter);
+        return cipher.doFinal(in, off, len, out, outOff);
+    }
+
+    /**
+     * Chiffre les octets restants de in vers out (les deux peuvent couvrir la même mémoire)
+     *
+     * @return Taille chiffrée
+     */
+    public int seal(long counter, ByteBuffer in, ByteBuffer out) throws GeneralSecurityException {
+        init(Cipher.ENCRYPT_MODE, counter);
+        return cipher.doFinal(in, out);
+    }
+
+    private void init(int mode, long counter) throws GeneralSecurityException {
+        for (int i = 0; i < 8; i++) nonce[4 + i] = (byte) (counter >>> (56 - 8 * i));
+        AlgorithmParameterSpec spec = suite == Suite.AES_GCM
+                ? new GCMParameterSpec(TAG_BYTES * 8, nonce)
+                : new IvParameterSpec(nonce);
+        cipher.init(mode, key, spec);
+    }
+}
@@ -0,0 +1,159 @@
+package crypto;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * CLÉS DE GROUPE DU MULTICAST, AVEC ROTATION
+ *
+ * Un groupe multicast n'a pas de poignée de main: tous ses membres partagent
+ * la phrase -Dcrypto.psk, d'où est dérivée une clé par période de
+ * ROTATE_SECONDS (HKDF, numéro de période en info). La clé change donc
+ * toutes les périodes sans coordination, et un membre accepte la période
+ * courante et ses deux voisines (horloges légèrement décalées).
+ *
+ * DATAGRAMME: [SEALED][période 4][émetteur 4][compteur 8][corps chiffré + étiquette]
+ * L'émetteur est un identifiant tiré au hasard à chaque démarrage: avec le
+ * compteur, il forme le nonce, unique même si plusieurs membres chiffrent avec
+ * la même clé. Une fenêtre anti-rejeu par émetteur écarte les datagrammes
+ * rejoués.
+ *
+ * La rotation borne le volume chiffré sous une même clé; elle ne protège pas
+ * le passé si la phrase est compromise (les clés en dérivent toutes).
+ *
+ * Émission: appelant synchronisé (verrou d'envoi du socket); réception:
+ * synchronisée (un client écoute le groupe et son socket unicast).
+ *
+ * Propriété système:
+ *   -Dcrypto.rotateSeconds=<s>   durée d'une période de clé (600)
+ */
+public final class GroupKeys {
+
+    public static final long ROTATE_SECONDS = Math.max(10, Long.getLong("crypto.rotateSeconds", 600));
+
+    public static final byte SEALED = 'G';
+    public static final int HEADER = 1 + 4 + 4 + 8;
+    public static final int OVERHEAD = HEADER + Aead.TAG_BYTES;
+
+    private static final int MAX_SENDERS = 1024;
+
+    private final byte[] master;
+    private final int senderId;
+    private long counter;
+
+    // Clés par période, séparées pour l'émission et la réception (threads différents)
+    private final Map<Long, Aead> sealing = cache();
+    private final Map<Long, Aead> opening = cache();
+    private final Map<Integer, ReplayWindow> windows = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override protected boolean removeEldestEntry(Map.Entry<Integer, ReplayWindow> eldest) {
+            return size() > MAX_SENDERS;
+        }
+    };
+
+    private GroupKeys() throws GeneralSecurityException {
+        master = Handshake.hmac(MessageDigest.getInstance("SHA-256").digest("groupe multicast".getBytes(StandardCharsets.UTF_8)),
+                Handshake.PSK.getBytes(StandardCharsets.UTF_8));
+        int id;
+        do { id = ThreadLocalRandom.current().nextInt(); } while (id == 0);
+        senderId = id;
+    }
+
+    /**
+     * Clés du groupe (null si le chiffrement est désactivé)
+     *
+     * @throws IllegalStateException Chiffrement demandé sans -Dcrypto.psk
+     */
+    public static GroupKeys create() throws GeneralSecurityException {
+        if (!Aead.enabled()) return null;
+        if (Handshake.PSK.isEmpty()) throw new IllegalStateException("-Dcrypto.psk requis pour chiffrer le multicast");
+        return new GroupKeys();
+    }
+
+    /**
+     * Chiffre un datagramme vers dst (au moins len + OVERHEAD octets)
+     *
+     * @return Taille du datagramme chiffré
+     */
+    public int seal(byte[] src, int off, int len, byte[] dst) throws IOException {
+        long epoch = currentEpoch();
+        long n = ++counter;
+        dst[0] = SEALED;
+        putInt(dst, 1, (int) epoch);
+        putInt(dst, 5, senderId);
+        for (int i = 0; i < 8; i++) dst[9 + i] = (byte) (n >>> (56 - 8 * i));
+        try {
+            return HEADER + key(sealing, epoch, senderId).seal(n, src, off, len, dst, HEADER);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Chiffrement impossible : " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Déchiffre en place un datagramme du groupe; le clair commence à HEADER
+     *
+     * @return Taille en clair, -1 si forgé, modifié, rejoué ou d'une période expirée
+     */
+    public synchronized int open(byte[] b, int len) {
+        if (len < OVERHEAD || b[0] != SEALED) return -1;
+        long epoch = getInt(b, 1) & 0xFFFFFFFFL;
+        if (Math.abs(epoch - currentEpoch()) > 1) return -1;
+        int sender = getInt(b, 5);
+        long n = Session.readLong(b, 9);
+        try {
+            int plain = key(opening, epoch, sender).open(n, b, HEADER, len - HEADER, b, HEADER);
+            ReplayWindow w = windows.computeIfAbsent(sender, s -> new ReplayWindow());
+            return w.accept(n) ? plain : -1;
+        } catch (GeneralSecurityException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Notre identifiant d'émetteur: nos propres datagrammes, renvoyés par le groupe, sont reconnus
+     */
+    public boolean isOwn(byte[] b, int len) {
+        return len >= HEADER && b[0] == SEALED && getInt(b, 5) == senderId;
+    }
+
+    private static long currentEpoch() {
+        return System.currentTimeMillis() / 1000 / ROTATE_SECONDS;
+    }
+
+    // Le préfixe du nonce est l'émetteur: un Aead par (période, émetteur) côté réception
+    private Aead key(Map<Long, Aead> cache, long epoch, int sender) throws GeneralSecurityException {
+        long k = (epoch << 32) | (sender & 0xFFFFFFFFL);
+        Aead a = cache.get(k);
+        if (a == null) {
+            byte[] info = new byte[5];
+            info[0] = 'e';
+            putInt(info, 1, (int) epoch);
+            a = new Aead(Aead.SUITE, Handshake.hmac(master, info), sender);
+            cache.put(k, a);
+        }
+        return a;
+    }
+
+    private static Map<Long, Aead> cache() {
+        return new LinkedHashMap<>(16, 0.75f, true) {
+            @Override protected boolean removeEldestEntry(Map.Entry<Long, Aead> eldest) {
+                return size() > MAX_SENDERS;
+            }
+        };
+    }
+
+    private static void putInt(byte[] b, int off, int v) {
+        b[off] = (byte) (v >>> 24);
+        b[off + 1] = (byte) (v >>> 16);
+        b[off + 2] = (byte) (v >>> 8);
+        b[off + 3] = (byte) v;
+    }
+
+    private static int getInt(byte[] b, int off) {
+        return ((b[off] & 0xFF) << 24) | ((b[off + 1] & 0xFF) << 16) | ((b[off + 2] & 0xFF) << 8) | (b[off + 3] & 0xFF);
+    }
+}
@@ -0,0 +1,201 @@
+package crypto;
+
+import javax.crypto.KeyAgreement;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+
+/**
+ * POIGNÉE DE MAIN: CLÉS DE SESSION PAR ÉCHANGE X25519
+ *
+ * Chaque côté tire une paire de clés éphémère et envoie sa clé publique:
+ * [suite][longueur][clé publique X.509] (précédé de MAGIC sur un flux TCP,
+ * de HELLO dans un datagramme UDP). Le secret partagé X25519 passe par
+ * HKDF-SHA256 (RFC 5869) pour donner une clé par direction; les deux clés
+ * publiques entrent dans la dérivation.
+ *
+ * AUTHENTIFICATION:
+ * Sans secret commun, l'échange protège des écoutes passives mais pas d'un
+ * intermédiaire actif. Avec -Dcrypto.psk=<phrase>, la phrase est mêlée à la
+ * dérivation: un intermédiaire qui ne la connaît pas obtient d'autres clés et
+ * chacun de ses messages est rejeté. Le multicast, sans poignée de main,
+ * exige cette phrase (voir GroupKeys).
+ *
+ * Propriété système:
+ *   -Dcrypto.psk=<phrase>   secret partagé par les clients et serveurs
+ */
+public final class Handshake {
+
+    public static final String PSK = System.getProperty("crypto.psk", "");
+
+    /**
+     * Premier octet d'un datagramme de poignée de main
+     */
+    public static final byte HELLO = 'H';
+
+    private static final byte[] MAGIC = { 'C', 'H', 'A', 'T' };
+
+    // Poignée de main UDP: attente de la réponse du serveur, et nombre d'envois
+    private static final int DATAGRAM_TIMEOUT_MS = 500;
+    private static final int DATAGRAM_ATTEMPTS = 6;
+
+    private final KeyPair keys;
+    private final byte[] publicKey;
+
+    public Handshake() throws GeneralSecurityException {
+        keys = KeyPairGenerator.getInstance("X25519").generateKeyPair();
+        publicKey = keys.getPublic().getEncoded();
+    }
+
+    /**
+     * Datagramme de poignée de main: [HELLO][suite][longueur][clé publique]
+     */
+    public byte[] datagram() {
+        byte[] b = new byte[3 + publicKey.length];
+        b[0] = HELLO;
+        b[1] = Aead.SUITE.id;
+        b[2] = (byte) publicKey.length;
+        System.arraycopy(publicKey, 0, b, 3, publicKey.length);
+        return b;
+    }
+
+    /**
+     * Clé publique portée par un datagramme de poignée de main (null s'il est mal formé
+     * ou annonce une autre suite)
+     */
+    public static byte[] peerKey(byte[] b, int len) {
+        if (len < 3 || b[0] != HELLO || b[1] != Aead.SUITE.id) return null;
+        int n = b[2] & 0xFF;
+        if (n == 0 || 3 + n > len) return null;
+        return Arrays.copyOfRange(b, 3, 3 + n);
+    }
+
+    /**
+     * Clés de session à partir de la clé publique de l'autre côté
+     *
+     * @param initiator true côté client (celui qui ouvre la connexion)
+     */
+    public Session complete(byte[] peerKey, boolean initiator) throws GeneralSecurityException {
+        KeyAgreement ka = KeyAgreement.getInstance("X25519");
+        ka.init(keys.getPrivate());
+        ka.doPhase(KeyFactory.getInstance("X25519").generatePublic(new X509EncodedKeySpec(peerKey)), true);
+        byte[] shared = ka.generateSecret();
+
+        byte[] prk = hmac(MessageDigest.getInstance("SHA-256").digest(PSK.getBytes(StandardCharsets.UTF_8)), shared);
+        byte[] clientKey = initiator ? publicKey : peerKey;
+        byte[] serverKey = initiator ? peerKey : publicKey;
+        byte[] up = expand(prk, "client>serveur", clientKey, serverKey);
+        byte[] down = expand(prk, "serveur>client", clientKey, serverKey);
+        Arrays.fill(shared, (byte) 0);
+        Arrays.fill(prk, (byte) 0);
+        return initiator
+                ? new Session(new Aead(Aead.SUITE, up, 0), new Aead(Aead.SUITE, down, 0))
+                : new Session(new Aead(Aead.SUITE, down, 0), new Aead(Aead.SUITE, up, 0));
+    }
+
+    /**
+     * Poignée de main sur un flux TCP, avant la première trame
+     * (chaque côté écrit sa clé puis lit celle de l'autre: pas d'attente croisée)
+     *
+     * @throws IOException Flux coupé, ou l'autre côté ne chiffre pas (ou pas avec la même suite)
+     */
+    public static Session exchange(InputStream in, OutputStream out, boolean initiator) throws IOException {
+        try {
+            Handshake mine = new Handshake();
+            byte[] hello = new byte[MAGIC.length + 2 + mine.publicKey.length];
+            System.arraycopy(MAGIC, 0, hello, 0, MAGIC.length);
+            hello[4] = Aead.SUITE.id;
+            hello[5] = (byte) mine.publicKey.length;
+            System.arraycopy(mine.publicKey, 0, hello, 6, mine.publicKey.length);
+            out.write(hello);
+            out.flush();
+
+            // Lecture sans tampon: les octets suivants appartiennent déjà aux trames
+            DataInputStream d = new DataInputStream(in);
+            byte[] head = new byte[6];
+            d.readFully(head);
+            if (!Arrays.equals(head, 0, 4, MAGIC, 0, 4)) {
+                throw new IOException("Poignée de main absente : l'autre côté ne chiffre pas (-Dcrypto)");
+            }
+            if (head[4] != Aead.SUITE.id) {
+                Aead.Suite other = Aead.Suite.byId(head[4]);
+                throw new IOException("Suite de chiffrement différente : " + (other != null ? other.label : "inconnue")
+                        + " contre " + Aead.SUITE.label);
+            }
+            byte[] peer = new byte[head[5] & 0xFF];
+            d.readFully(peer);
+            return mine.complete(peer, initiator);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Poignée de main impossible : " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Poignée de main UDP côté client, avant le premier message: notre clé est
+     * renvoyée jusqu'à la réponse du serveur (un datagramme perdu ne bloque pas
+     * la connexion). Le délai de réception du socket est remis à 0 au retour.
+     *
+     * @throws IOException Pas de réponse: serveur absent ou en clair
+     */
+    public static Session exchange(DatagramSocket socket, InetAddress server, int port) throws IOException {
+        try {
+            Handshake mine = new Handshake();
+            byte[] hello = mine.datagram();
+            byte[] reply = new byte[512];
+            DatagramPacket in = new DatagramPacket(reply, reply.length);
+            socket.setSoTimeout(DATAGRAM_TIMEOUT_MS);
+            try {
+                for (int attempt = 0; attempt < DATAGRAM_ATTEMPTS; attempt++) {
+                    socket.send(new DatagramPacket(hello, hello.length, server, port));
+                    try {
+                        while (true) {
+                            in.setLength(reply.length);
+                            socket.receive(in);
+                            byte[] key = peerKey(reply, in.getLength());
+                            if (key != null) return mine.complete(key, true);
+                        }
+                    } catch (SocketTimeoutException retry) {
+                        // datagramme perdu (ou serveur en clair): nouvel essai
+                    }
+                }
+            } finally {
+                socket.setSoTimeout(0);
+            }
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Poignée de main impossible : " + e.getMessage(), e);
+        }
+        throw new IOException("Pas de réponse chiffrée du serveur (-Dcrypto=" + Aead.SUITE.label + ")");
+    }
+
+    // HKDF-Expand réduit à un bloc (32 octets): info = étiquette || clé client || clé serveur
+    private static byte[] expand(byte[] prk, String label, byte[] clientKey, byte[] serverKey) throws GeneralSecurityException {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(prk, "HmacSHA256"));
+        mac.update(label.getBytes(StandardCharsets.UTF_8));
+        mac.update(clientKey);
+        mac.update(serverKey);
+        mac.update((byte) 1);
+        return mac.doFinal();
+    }
+
+    static byte[] hmac(byte[] key, byte[] data) throws GeneralSecurityException {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(key, "HmacSHA256"));
+        return mac.doFinal(data);
+    }
+}
@@ -0,0 +1,40 @@
+package crypto;
+
+/**
+ * FENÊTRE ANTI-REJEU DES DATAGRAMMES CHIFFRÉS
+ *
+ * Un datagramme capturé puis renvoyé tel quel passerait le déchiffrement:
+ * son compteur (partie du nonce) le distingue. Le plus grand compteur reçu et
+ * les 64 précédents sont retenus; un compteur déjà vu ou plus ancien que la
+ * fenêtre est rejeté, ce qui laisse passer les datagrammes arrivés dans le
+ * désordre.
+ *
+ * À n'appeler qu'après un déchiffrement réussi (un faux compteur ne doit pas
+ * pouvoir faire avancer la fenêtre). Non synchronisé: un thread de réception.
+ */
+public final class ReplayWindow {
+
+    private static final int SIZE = 64;
+
+    private long highest;
+    private long seen; // bit i = compteur (highest - i) reçu
+
+    /**
+     * @return true si le compteur est nouveau (et l'enregistre)
+     */
+    public boolean accept(long counter) {
+        if (counter <= 0) return false;
+        if (counter > highest) {
+            long shift = counter - highest;
+            seen = shift >= SIZE ? 1 : (seen << shift) | 1;
+            highest = counter;
+            return true;
+        }
+        long age = highest - counter;
+        if (age >= SIZE) return false;
+        long bit = 1L << age;
+        if ((seen & bit) != 0) return false;
+        seen |= bit;
+        return true;
+    }
+}
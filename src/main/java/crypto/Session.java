@@ -0,0 +1,139 @@
+package crypto;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+
+/**
+ * CLÉS D'UNE SESSION POINT À POINT (TCP, UDP)
+ *
+ * Deux clés issues de la poignée de main (voir Handshake), une par direction:
+ * les deux côtés ne chiffrent jamais avec la même clé, et chacun numérote ses
+ * envois depuis 1 (compteur du nonce).
+ *
+ * FLUX (TCP): le compteur est implicite, chaque côté compte les trames dans
+ * l'ordre du flux; une trame [longueur][corps chiffré + étiquette] est
+ * chiffrée en place dans le tampon de FrameWriter.
+ *
+ * DATAGRAMMES (UDP): [SEALED][compteur sur 8 octets][corps chiffré + étiquette].
+ * Le compteur voyage en clair (pertes et désordre) et une fenêtre anti-rejeu
+ * écarte les doublons.
+ *
+ * Émission et réception peuvent venir de deux threads. Le chiffrement est
+ * synchronisé: plusieurs pseudos UDP derrière une même adresse partagent sa
+ * session depuis des shards différents, et un compteur pris deux fois
+ * réutiliserait un nonce. La réception n'est utilisée que par un thread à la
+ * fois (appelant synchronisé, ou shard d'entrée de l'adresse).
+ */
+public final class Session {
+
+    /**
+     * Premier octet d'un datagramme chiffré (un datagramme en clair commence par 0xAC, en-tête Java)
+     */
+    public static final byte SEALED = 'S';
+    public static final int DATAGRAM_HEADER = 1 + 8;
+    public static final int DATAGRAM_OVERHEAD = DATAGRAM_HEADER + Aead.TAG_BYTES;
+
+    private final Aead send;
+    private final Aead receive;
+    private long sent;
+    private long received;
+    private final ReplayWindow window = new ReplayWindow();
+
+    Session(Aead send, Aead receive) {
+        this.send = send;
+        this.receive = receive;
+    }
+
+    // ───────────── Flux ─────────────
+
+    /**
+     * Chiffre en place len octets à off; TAG_BYTES octets libres doivent suivre
+     *
+     * @return Taille chiffrée (len + TAG_BYTES)
+     */
+    public synchronized int sealFrame(byte[] b, int off, int len) throws IOException {
+        try {
+            return send.seal(++sent, b, off, len, b, off);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Chiffrement impossible : " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Déchiffre en place une trame reçue (étiquette comprise)
+     *
+     * @return Taille en clair
+     */
+    public int openFrame(byte[] b, int off, int len) throws IOException {
+        try {
+            return receive.open(++received, b, off, len, b, off);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Trame rejetée : authentification échouée", e);
+        }
+    }
+
+    // ───────────── Datagrammes ─────────────
+
+    /**
+     * Chiffre un datagramme vers dst (au moins len + DATAGRAM_OVERHEAD octets)
+     *
+     * @return Taille du datagramme chiffré
+     */
+    public synchronized int sealDatagram(byte[] src, int off, int len, byte[] dst) throws IOException {
+        long counter = ++sent;
+        writeHeader(dst, counter);
+        try {
+            return DATAGRAM_HEADER + send.seal(counter, src, off, len, dst, DATAGRAM_HEADER);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Chiffrement impossible : " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Chiffre en place un datagramme préparé dans buf: en clair entre
+     * DATAGRAM_HEADER et limit, TAG_BYTES octets de marge au-delà. Au retour,
+     * buf est prêt à l'envoi (position 0, limite = fin de l'étiquette).
+     */
+    public synchronized void sealDatagram(ByteBuffer buf) throws IOException {
+        long counter = ++sent;
+        int end = buf.limit();
+        buf.put(0, SEALED);
+        buf.putLong(1, counter);
+        ByteBuffer in = buf.duplicate().position(DATAGRAM_HEADER).limit(end);
+        ByteBuffer out = buf.duplicate().limit(end + Aead.TAG_BYTES).position(DATAGRAM_HEADER);
+        try {
+            send.seal(counter, in, out);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Chiffrement impossible : " + e.getMessage(), e);
+        }
+        buf.position(0).limit(end + Aead.TAG_BYTES);
+    }
+
+    /**
+     * Déchiffre en place un datagramme reçu; le clair commence à DATAGRAM_HEADER
+     *
+     * @return Taille en clair, -1 si le datagramme est forgé, modifié ou rejoué
+     */
+    public int openDatagram(byte[] b, int len) {
+        if (len < DATAGRAM_OVERHEAD || b[0] != SEALED) return -1;
+        long counter = readLong(b, 1);
+        try {
+            int plain = receive.open(counter, b, DATAGRAM_HEADER, len - DATAGRAM_HEADER, b, DATAGRAM_HEADER);
+            return window.accept(counter) ? plain : -1;
+        } catch (GeneralSecurityException e) {
+            return -1;
+        }
+    }
+
+    private static void writeHeader(byte[] b, long counter) {
+        b[0] = SEALED;
+        for (int i = 0; i < 8; i++) b[1 + i] = (byte) (counter >>> (56 - 8 * i));
+    }
+
+    static long readLong(byte[] b, int off) {
+        long v = 0;
+        for (int i = 0; i < 8; i++) v = (v << 8) | (b[off + i] & 0xFF);
+        return v;
+    }
+}
@@ -0,0 +1,217 @@
+package datagram;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * COMPRESSION ADAPTATIVE DES CHARGES UTILES (COMMUNE À UDP ET MULTICAST)
+ *
+ * Les fichiers et les textes longs sont compressés (Deflate) par l'émetteur
+ * juste avant l'envoi. Le drapeau Message.compressed indique au récepteur
+ * qu'il doit décompresser.
+ *
+ * NÉGOCIATION:
+ * Un pair annonce qu'il sait décompresser (UDP: CAPABILITY dans son HELLO;
+ * multicast: Message.inflates dans chacun de ses messages), et l'on ne
+ * compresse que vers les pairs qui l'ont annoncé. Un pair lancé avec
+ * -D<transport>.compress=false ne compresse pas et ne l'annonce pas.
+ *
+ * PAS DE COMPRESSION:
+ * - charge utile sous le seuil (l'en-tête Deflate n'est pas rentabilisé)
+ * - format déjà compressé (.png, .jpg, .gif, .zip...)
+ * - gain inférieur à 10 % (le message part alors en clair)
+ *
+ * Propriétés système, préfixées par le transport ("udp" ou "multicast"):
+ *   -D<transport>.compress=false          désactive la compression (envoi et annonce)
+ *   -D<transport>.compress.minBytes=512   seuil minimal (octets)
+ *   -D<transport>.compress.level=1        niveau Deflater (1 = rapide ... 9 = maximal)
+ */
+public final class Compression {
+
+    /**
+     * Mot annoncé dans le HELLO d'un client qui sait décompresser
+     */
+    public static final String CAPABILITY = "deflate";
+
+    /**
+     * Taille décompressée maximale acceptée (protection contre les bombes de décompression)
+     */
+    private static final int MAX_RAW_BYTES = 64 * 1024 * 1024;
+
+    private static final Set<String> COMPRESSED_TYPES = Set.of(
+            "png", "jpg", "jpeg", "gif", "webp",
+            "zip", "gz", "bz2", "xz", "7z", "rar", "jar",
+            "docx", "xlsx", "pptx", "mp3", "mp4", "mkv");
+
+    /**
+     * Charge utile d'un message du transport (udp.Message, multicast.Message)
+     */
+    public interface Payload {
+        /** TEXTE (charge utile dans text); sinon FICHIER ou message jamais compressé */
+        boolean isText();
+
+        /** Charge utile en clair à compresser: texte, contenu du fichier, null s'il n'y en a pas */
+        byte[] plainBytes();
+
+        /** Nom du fichier (null hors FICHIER) */
+        String filename();
+
+        String text();
+
+        /** Octets transmis: charge utile compressée, ou contenu du fichier */
+        byte[] fileBytes();
+
+        boolean compressed();
+
+        int rawLength();
+
+        /** Remplace la charge utile par sa version compressée */
+        void packed(byte[] wire, int rawLength);
+
+        /** Restaure la charge utile en clair */
+        void unpacked(byte[] raw);
+    }
+
+    private final boolean enabled;
+    private final int minBytes;
+    private final int level;
+
+    /**
+     * @param prefix Préfixe des propriétés système ("udp", "multicast")
+     */
+    public Compression(String prefix) {
+        enabled = !"false".equals(System.getProperty(prefix + ".compress"));
+        minBytes = Integer.getInteger(prefix + ".compress.minBytes", 512);
+        level = Integer.getInteger(prefix + ".compress.level", Deflater.BEST_SPEED);
+    }
+
+    /**
+     * Vrai si ce pair compresse et annonce qu'il sait décompresser
+     */
+    public boolean enabled() {
+        return enabled;
+    }
+
+    /**
+     * Vrai si le texte d'un HELLO annonce la capacité
+     */
+    public static boolean advertised(String hello) {
+        return hello != null && hello.contains(CAPABILITY);
+    }
+
+    /**
+     * Bilan d'une compression: tailles avant/après et temps CPU
+     */
+    public record Result(int rawBytes, int wireBytes, long nanos) {
+        public double ratio() {
+            return (double) rawBytes / wireBytes;
+        }
+
+        @Override public String toString() {
+            return String.format("%d → %d octets (×%.1f, %.2f ms)", rawBytes, wireBytes, ratio(), nanos / 1e6);
+        }
+    }
+
+    /**
+     * Compresse la charge utile du message s'il y a lieu
+     *
+     * @return Bilan de la compression, ou null si le message part en clair
+     */
+    public Result compress(Payload msg) {
+        if (!enabled || msg.compressed()) return null;
+        if (!msg.isText() && isCompressedType(msg.filename())) return null;
+        byte[] raw = msg.plainBytes();
+        if (raw == null || raw.length < minBytes) return null;
+
+        long start = System.nanoTime();
+        byte[] packed = deflate(raw);
+        long nanos = System.nanoTime() - start;
+        if (packed.length > raw.length * 0.9) return null;
+
+        msg.packed(packed, raw.length);
+        return new Result(raw.length, packed.length, nanos);
+    }
+
+    /**
+     * Restaure la charge utile d'un message reçu compressé (sans effet sinon)
+     *
+     * @throws IOException Si les données sont corrompues ou trop grandes
+     */
+    public static void decompress(Payload msg) throws IOException {
+        if (!msg.compressed()) return;
+        if (msg.fileBytes() == null || msg.rawLength() < 0 || msg.rawLength() > MAX_RAW_BYTES) {
+            throw new IOException("Message compressé invalide (" + msg.rawLength() + " octets annoncés)");
+        }
+        msg.unpacked(inflate(msg.fileBytes(), msg.rawLength()));
+    }
+
+    /**
+     * Texte à journaliser côté serveur (qui ne décompresse pas)
+     */
+    public static String preview(Payload msg) {
+        if (msg.compressed() && msg.isText()) {
+            return "[texte compressé, " + msg.rawLength() + " octets]";
+        }
+        return msg.text();
+    }
+
+    /**
+     * Taille de la charge utile à journaliser: "N octets" ou "N octets, M transmis"
+     */
+    public static String size(Payload msg) {
+        int wire = msg.fileBytes() == null ? 0 : msg.fileBytes().length;
+        return msg.compressed() ? msg.rawLength() + " octets, " + wire + " transmis" : wire + " octets";
+    }
+
+    private static boolean isCompressedType(String filename) {
+        if (filename == null) return false;
+        int dot = filename.lastIndexOf('.');
+        return dot >= 0 && COMPRESSED_TYPES.contains(filename.substring(dot + 1).toLowerCase());
+    }
+
+    private byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(level);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2 + 64);
+            byte[] buf = new byte[8192];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buf);
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] packed, int rawLength) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(packed);
+            byte[] raw = new byte[rawLength];
+            int off = 0;
+            while (off < rawLength) {
+                int n = inflater.inflate(raw, off, rawLength - off);
+                if (n == 0 && (inflater.needsInput() || inflater.finished() || inflater.needsDictionary())) {
+                    throw new IOException("Données compressées tronquées");
+                }
+                off += n;
+            }
+            // Le marqueur de fin du flux peut rester à lire une fois le tableau rempli
+            if (!inflater.finished() && (inflater.inflate(new byte[1]) != 0 || !inflater.finished())) {
+                throw new IOException("Taille décompressée incohérente");
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IOException("Données compressées corrompues : " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package datagram;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+
+/**
+ * TAMPON D'ENCODAGE RÉUTILISABLE (COMMUN À UDP ET MULTICAST)
+ *
+ * Remplace le couple "new ByteArrayOutputStream() + toByteArray()" des envois:
+ * le message est sérialisé dans un tableau conservé d'un envoi à l'autre, puis
+ * envoyé directement depuis ce tableau (array(), size()), sans copie.
+ *
+ * TAILLES:
+ * Le tableau part de INITIAL_SIZE et double au besoin (2 Ko, 4 Ko... 128 Ko).
+ * Au-delà (fichier trop gros pour un datagramme, dont l'envoi échouera de
+ * toute façon), il est ramené à INITIAL_SIZE à l'encodage suivant.
+ *
+ * UTILISATION:
+ * - forThread(): un tampon par thread, pour les envois ponctuels
+ * - new EncodeBuffer(): tampon propre à un objet (ex. MessageBatcher)
+ * Un tampon n'est pas thread-safe: son contenu n'est valide que jusqu'au
+ * prochain encode().
+ */
+public final class EncodeBuffer extends ByteArrayOutputStream {
+
+    public static final int INITIAL_SIZE = 2048;
+    /** Le tableau double: il atteint 128 Ko pour un datagramme plein */
+    private static final int MAX_RETAINED = 128 * 1024;
+
+    private static final ThreadLocal<EncodeBuffer> LOCAL = ThreadLocal.withInitial(EncodeBuffer::new);
+
+    public EncodeBuffer() {
+        super(INITIAL_SIZE);
+    }
+
+    /**
+     * Tampon réservé au thread courant
+     */
+    public static EncodeBuffer forThread() {
+        return LOCAL.get();
+    }
+
+    /**
+     * Sérialise l'objet à la place du contenu précédent
+     *
+     * @return Taille encodée (octets)
+     */
+    public int encode(Object o) throws IOException {
+        if (buf.length > MAX_RETAINED) buf = new byte[INITIAL_SIZE];
+        reset();
+        ObjectOutputStream oos = new ObjectOutputStream(this);
+        oos.writeObject(o);
+        oos.flush();
+        return count;
+    }
+
+    /**
+     * Tableau interne (les size() premiers octets sont le message encodé)
+     */
+    public byte[] array() {
+        return buf;
+    }
+}
@@ -0,0 +1,156 @@
+package datagram;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ESTIMATION DES PERTES PAR ÉMETTEUR (COMMUNE À UDP ET MULTICAST)
+ *
+ * Chaque émetteur numérote ses messages (Message.seq). Un trou dans la
+ * séquence reçue est compté comme une perte; un message arrivé en retard
+ * annule la perte correspondante.
+ *
+ * Les WINDOW derniers numéros sont marqués à réception: un doublon (ou un
+ * retard déjà compté) n'annule pas une seconde fois une perte, et n'est pas
+ * compté comme reçu.
+ *
+ * Deux vues sont maintenues:
+ * - cumulée depuis le début (compteurs "received" / "lost")
+ * - par intervalle, remise à zéro à chaque drainIntervalLoss()
+ */
+public class LossStats {
+
+    /**
+     * Au-delà de ce recul, on considère que l'émetteur a redémarré
+     */
+    private static final long RESTART_THRESHOLD = 1000;
+
+    /**
+     * Numéros marqués par émetteur (plus que RESTART_THRESHOLD: un retard est toujours dans la fenêtre)
+     */
+    private static final int WINDOW = 1024;
+
+    private static final class Peer {
+        final long[] seen = new long[WINDOW / 64];
+        long expected;
+        long received;
+        long lost;
+        long intervalReceived;
+        long intervalLost;
+    }
+
+    private final Map<String, Peer> peers = new ConcurrentHashMap<>();
+
+    /**
+     * Enregistre la réception du message numéro "seq" de "sender"
+     */
+    public void record(String sender, long seq) {
+        if (sender == null || seq <= 0) return;
+        Peer p = peers.computeIfAbsent(sender, k -> new Peer());
+        synchronized (p) {
+            if (p.expected == 0 || seq < p.expected - RESTART_THRESHOLD) {
+                // Premier message vu (ou émetteur redémarré): pas de perte imputable
+                Arrays.fill(p.seen, 0);
+                p.expected = seq + 1;
+            } else if (seq >= p.expected) {
+                long gap = seq - p.expected;
+                p.lost += gap;
+                p.intervalLost += gap;
+                // Numéros sautés: non reçus (leurs cases servaient à des numéros plus anciens)
+                if (gap >= WINDOW) {
+                    Arrays.fill(p.seen, 0);
+                } else {
+                    for (long s = p.expected; s < seq; s++) p.seen[slot(s)] &= ~bit(s);
+                }
+                p.expected = seq + 1;
+            } else if ((p.seen[slot(seq)] & bit(seq)) != 0) {
+                return; // doublon: déjà compté
+            } else if (p.lost > 0) {
+                // Arrivée tardive: ce n'était pas une perte
+                p.lost--;
+                if (p.intervalLost > 0) p.intervalLost--;
+            }
+            p.seen[slot(seq)] |= bit(seq);
+            p.received++;
+            p.intervalReceived++;
+        }
+    }
+
+    public long received(String sender) {
+        Peer p = peers.get(sender);
+        if (p == null) return 0;
+        synchronized (p) { return p.received; }
+    }
+
+    public long lost(String sender) {
+        Peer p = peers.get(sender);
+        if (p == null) return 0;
+        synchronized (p) { return p.lost; }
+    }
+
+    /**
+     * Taux de perte cumulé (0.0 à 1.0)
+     */
+    public double lossRate(String sender) {
+        Peer p = peers.get(sender);
+        if (p == null) return 0.0;
+        synchronized (p) { return rate(p.received, p.lost); }
+    }
+
+    /**
+     * Émetteurs suivis
+     */
+    public Set<String> senders() {
+        return peers.keySet();
+    }
+
+    public long totalReceived() {
+        long sum = 0;
+        for (String s : peers.keySet()) sum += received(s);
+        return sum;
+    }
+
+    public long totalLost() {
+        long sum = 0;
+        for (String s : peers.keySet()) sum += lost(s);
+        return sum;
+    }
+
+    /**
+     * Retourne le taux de perte de chaque émetteur actif sur l'intervalle
+     * écoulé, puis remet les compteurs d'intervalle à zéro.
+     */
+    public Map<String, Double> drainIntervalLoss() {
+        Map<String, Double> result = new HashMap<>();
+        for (Map.Entry<String, Peer> e : peers.entrySet()) {
+            Peer p = e.getValue();
+            synchronized (p) {
+                if (p.intervalReceived == 0 && p.intervalLost == 0) continue;
+                result.put(e.getKey(), rate(p.intervalReceived, p.intervalLost));
+                p.intervalReceived = 0;
+                p.intervalLost = 0;
+            }
+        }
+        return result;
+    }
+
+    public void clear() {
+        peers.clear();
+    }
+
+    private static int slot(long seq) {
+        return (int) (seq & (WINDOW - 1)) >>> 6;
+    }
+
+    private static long bit(long seq) {
+        return 1L << (seq & 63);
+    }
+
+    private static double rate(long received, long lost) {
+        long total = received + lost;
+        return total == 0 ? 0.0 : (double) lost / total;
+    }
+}
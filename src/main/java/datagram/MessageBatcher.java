@@ -0,0 +1,158 @@
+package datagram;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * REGROUPEMENT DE MESSAGES (BATCHING, COMMUN À UDP ET MULTICAST)
+ *
+ * Accumule plusieurs petits messages et les envoie dans un seul datagramme.
+ * Le lot est sérialisé comme un tableau Message[] : le descripteur de classe
+ * n'est écrit qu'une fois et on économise un appel système + un en-tête IP/UDP
+ * par message.
+ *
+ * RÈGLES D'ENVOI:
+ * - Le lot part dès que le message suivant le ferait dépasser maxBytes (taille MTU)
+ * - Sinon, il part au plus tard maxDelayMs après le premier message en attente
+ * - Un message trop gros pour un lot (fichier) vide le lot puis part seul,
+ *   ce qui préserve l'ordre d'envoi
+ *
+ * Les lots sont encodés dans deux tampons réutilisés (lot courant et
+ * candidat), échangés quand le candidat est retenu: aucune copie par ajout.
+ *
+ * RÉCEPTION:
+ * Le récepteur reconnaît un lot avec "o instanceof Message[]" et traite
+ * chaque message comme s'il était arrivé seul: le lot est donc un tableau du
+ * type de message du transport (udp.Message[], multicast.Message[]), créé par
+ * la fabrique passée au constructeur.
+ */
+public class MessageBatcher<M> {
+
+    /**
+     * Taille par défaut d'un lot: MTU Ethernet (1500) moins les en-têtes IP/UDP
+     */
+    public static final int DEFAULT_MAX_BYTES = 1400;
+
+    /**
+     * Destination des datagrammes produits
+     * (data n'est valide que pendant l'appel: tampon réutilisé)
+     */
+    public interface Sink {
+        void send(byte[] data, int length) throws IOException;
+    }
+
+    private final int maxBytes;
+    private final long maxDelayMs;
+    private final Sink sink;
+    private final Consumer<IOException> onError;
+    private final IntFunction<M[]> newLot;
+    private final ScheduledExecutorService timer;
+
+    private final List<M> pending = new ArrayList<>();
+    private EncodeBuffer encodedLot = new EncodeBuffer();
+    private EncodeBuffer candidate = new EncodeBuffer();
+    private ScheduledFuture<?> flushTask;
+
+    /**
+     * @param threadName Nom du thread du minuteur
+     * @param newLot     Création du tableau d'un lot (ex. Message[]::new)
+     * @param maxBytes   Taille maximale d'un datagramme groupé
+     * @param maxDelayMs Délai maximal d'attente d'un message dans le lot
+     * @param sink       Envoi effectif des octets
+     * @param onError    Appelé si un envoi déclenché par le minuteur échoue
+     */
+    public MessageBatcher(String threadName, IntFunction<M[]> newLot, int maxBytes, long maxDelayMs,
+                          Sink sink, Consumer<IOException> onError) {
+        this.newLot = newLot;
+        this.maxBytes = maxBytes;
+        this.maxDelayMs = maxDelayMs;
+        this.sink = sink;
+        this.onError = onError;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, threadName);
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Ajoute un message au lot courant (ou l'envoie directement s'il est trop gros)
+     */
+    public synchronized void add(M msg) throws IOException {
+        int single = candidate.encode(msg);
+
+        // Trop gros pour être groupé: on vide le lot puis on l'envoie seul
+        if (single > maxBytes) {
+            flush();
+            sink.send(candidate.array(), single);
+            return;
+        }
+
+        if (pending.isEmpty()) {
+            pending.add(msg);
+            swap();
+        } else {
+            pending.add(msg);
+            int lot = candidate.encode(pending.toArray(newLot.apply(0)));
+            if (lot <= maxBytes) {
+                swap();
+            } else {
+                // Le lot déborderait: on envoie l'ancien et on repart de ce message
+                pending.remove(pending.size() - 1);
+                flush();
+                pending.add(msg);
+                encodedLot.encode(msg);
+            }
+        }
+
+        if (flushTask == null) {
+            flushTask = timer.schedule(this::timedFlush, maxDelayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Envoie immédiatement le lot en attente
+     */
+    public synchronized void flush() throws IOException {
+        if (flushTask != null) {
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+        if (pending.isEmpty()) return;
+
+        pending.clear();
+        sink.send(encodedLot.array(), encodedLot.size());
+    }
+
+    /**
+     * Vide le lot et arrête le minuteur
+     */
+    public synchronized void close() {
+        try {
+            flush();
+        } catch (IOException ignore) {}
+        timer.shutdownNow();
+    }
+
+    private synchronized void timedFlush() {
+        flushTask = null;
+        try {
+            flush();
+        } catch (IOException e) {
+            onError.accept(e);
+        }
+    }
+
+    private void swap() {
+        EncodeBuffer t = encodedLot;
+        encodedLot = candidate;
+        candidate = t;
+    }
+}
@@ -0,0 +1,64 @@
+package datagram;
+
+import java.net.DatagramSocket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * RÉGLAGE DES TAMPONS DE SOCKET (SO_RCVBUF / SO_SNDBUF)
+ *
+ * Sous charge, un tampon de réception trop petit fait perdre des datagrammes
+ * sans aucune erreur côté Java. Les tailles se règlent par propriétés système,
+ * préfixées par le transport ("udp" ou "multicast"):
+ *
+ *   -D<transport>.socket.rcvbuf=<octets>   (0 = valeur par défaut de l'OS)
+ *   -D<transport>.socket.sndbuf=<octets>
+ *
+ * Le noyau peut plafonner la valeur demandée (net.core.rmem_max sous Linux):
+ * on relit donc la taille effective et on signale l'écart. Linux relit le
+ * double de la taille accordée (place de ses propres structures): la demande
+ * n'est satisfaite que si la relecture vaut la demande ou son double.
+ */
+public final class SocketTuning {
+
+    private final int rcvbuf;
+    private final int sndbuf;
+
+    /**
+     * @param prefix Préfixe des propriétés système ("udp", "multicast")
+     */
+    public SocketTuning(String prefix) {
+        rcvbuf = Integer.getInteger(prefix + ".socket.rcvbuf", 0);
+        sndbuf = Integer.getInteger(prefix + ".socket.sndbuf", 0);
+    }
+
+    /**
+     * Applique les tailles configurées au socket
+     *
+     * @return Avertissements à afficher (vide si tout est appliqué)
+     */
+    public List<String> apply(DatagramSocket socket) throws SocketException {
+        List<String> warnings = new ArrayList<>();
+        if (rcvbuf > 0) {
+            socket.setReceiveBufferSize(rcvbuf);
+            int actual = socket.getReceiveBufferSize();
+            if (capped(rcvbuf, actual)) {
+                warnings.add("SO_RCVBUF plafonné par le noyau : " + actual + " octets relus pour " + rcvbuf + " demandés");
+            }
+        }
+        if (sndbuf > 0) {
+            socket.setSendBufferSize(sndbuf);
+            int actual = socket.getSendBufferSize();
+            if (capped(sndbuf, actual)) {
+                warnings.add("SO_SNDBUF plafonné par le noyau : " + actual + " octets relus pour " + sndbuf + " demandés");
+            }
+        }
+        return warnings;
+    }
+
+    // Sous la demande, ou entre la demande et son double (Linux: plafond doublé à la relecture)
+    private static boolean capped(int requested, int actual) {
+        return actual < requested || (actual > requested && actual < 2L * requested);
+    }
+}
@@ -0,0 +1,239 @@
+package download;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.zip.CRC32C;
+
+/**
+ * FICHIERS REÇUS, ÉCRITS SUR DISQUE AU FIL DE LA RÉCEPTION
+ *
+ * Un fichier reçu n'existait qu'en mémoire (Message.fileBytes): affiché ou
+ * annoncé, il ne pouvait pas être enregistré, et un gros fichier occupait le
+ * tas en entier avant que le premier octet soit visible.
+ *
+ * Le fichier est créé à sa taille définitive dès l'annonce ("nom.part"), puis
+ * rempli dans l'ordre d'arrivée à travers une fenêtre projetée en mémoire de
+ * WINDOW_BYTES, déplacée quand elle est pleine: la mémoire utilisée pendant un
+ * téléchargement ne dépend pas de la taille du fichier. Le CRC32C du contenu
+ * (et, sur demande, son SHA-256) est calculé au passage.
+ *
+ * VÉRIFICATION:
+ * À la fin, la taille et les empreintes annoncées par l'émetteur sont
+ * comparées à celles du contenu écrit; le fichier prend alors son nom
+ * définitif (suffixe " (2)", " (3)"... si le nom est pris). Un fichier
+ * incomplet ou corrompu est supprimé.
+ *
+ * TAILLE ANNONCÉE:
+ * La taille vient de l'émetteur: au-delà de MAX_BYTES, ou plus grande que
+ * l'espace libre du dossier, le téléchargement est refusé à l'annonce. Le
+ * fichier créé est creux (rien n'est réservé sur le disque): si l'espace
+ * libre disparaît malgré tout pendant la réception, l'écriture échoue avec
+ * une IOException et le fichier est supprimé.
+ *
+ * Non synchronisé: un téléchargement est écrit par un seul thread de réception.
+ *
+ * Propriétés système:
+ *   -Ddownloads.dir=<dossier>         (~/chat-downloads)
+ *   -Ddownloads.windowBytes=<octets>  fenêtre projetée en mémoire (8 Mo)
+ *   -Ddownloads.maxBytes=<octets>     taille maximale d'un fichier reçu (1 Go)
+ */
+public final class Download extends OutputStream {
+
+    public static final Path DIR = Path.of(System.getProperty("downloads.dir",
+            Path.of(System.getProperty("user.home"), "chat-downloads").toString()));
+    static final int WINDOW_BYTES = Math.max(64 * 1024, Integer.getInteger("downloads.windowBytes", 8 * 1024 * 1024));
+    public static final long MAX_BYTES = Long.getLong("downloads.maxBytes", 1024L * 1024 * 1024);
+
+    private static final String PART = ".part";
+
+    private final String filename;
+    private final Path part;
+    private final FileChannel channel;
+    private final long size;
+    private final CRC32C crc = new CRC32C();
+    private final MessageDigest sha256;
+
+    // Fenêtre projetée courante et position de son début dans le fichier
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long written;
+    private boolean done;
+
+    private Download(String filename, long size, boolean sha256) throws IOException {
+        this.filename = filename;
+        this.size = size;
+        this.sha256 = sha256 ? digest() : null;
+        Files.createDirectories(DIR);
+        long free = Files.getFileStore(DIR).getUsableSpace();
+        if (size > free) {
+            throw new IOException("Espace disque insuffisant : " + size + " octets annoncés, " + free + " libres");
+        }
+        part = Files.createTempFile(DIR, filename + "-", PART);
+        channel = FileChannel.open(part, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            // Taille définitive fixée tout de suite (fichier creux), pour projeter les fenêtres
+            if (size > 0) channel.write(ByteBuffer.wrap(new byte[1]), size - 1);
+        } catch (IOException e) {
+            abort();
+            throw e;
+        }
+    }
+
+    /**
+     * Nouveau téléchargement de size octets
+     *
+     * @param filename Nom proposé par l'émetteur (réduit à son dernier élément)
+     * @param sha256   Calculer aussi le SHA-256 du contenu (vérifié par finish)
+     */
+    public static Download create(String filename, long size, boolean sha256) throws IOException {
+        if (size < 0) throw new IOException("Taille annoncée invalide : " + size);
+        if (size > MAX_BYTES) throw new IOException("Fichier trop grand : " + size + " octets (max " + MAX_BYTES + ")");
+        return new Download(safeName(filename), size, sha256);
+    }
+
+    /**
+     * Enregistre un fichier reçu d'un bloc
+     *
+     * @return Emplacement du fichier enregistré
+     */
+    public static Path save(String filename, byte[] content) throws IOException {
+        try (Download d = create(filename, content.length, false)) {
+            d.write(content, 0, content.length);
+            return d.finish(0, null);
+        }
+    }
+
+    /**
+     * CRC32C d'un contenu (Message.checksum)
+     */
+    public static long checksum(byte[] content) {
+        CRC32C c = new CRC32C();
+        c.update(content, 0, content.length);
+        return c.getValue();
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public long written() {
+        return written;
+    }
+
+    @Override public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override public void write(byte[] b, int off, int len) throws IOException {
+        if (done) throw new IOException("Téléchargement terminé");
+        if (len > size - written) {
+            throw new IOException("Plus de " + size + " octets reçus pour " + filename);
+        }
+        crc.update(b, off, len);
+        if (sha256 != null) sha256.update(b, off, len);
+        while (len > 0) {
+            if (window == null || !window.hasRemaining()) {
+                windowStart = written;
+                window = channel.map(FileChannel.MapMode.READ_WRITE, windowStart, Math.min(WINDOW_BYTES, size - windowStart));
+            }
+            int n = Math.min(len, window.remaining());
+            try {
+                window.put(b, off, n);
+            } catch (InternalError e) {
+                // Page du fichier creux impossible à allouer (SIGBUS): disque plein
+                throw new IOException("Écriture impossible (disque plein ?) : " + filename, e);
+            }
+            off += n;
+            len -= n;
+            written += n;
+        }
+    }
+
+    /**
+     * Vérifie le contenu écrit, puis donne au fichier son nom définitif
+     *
+     * @param checksum CRC32C annoncé (0 = non fourni)
+     * @param sha256   SHA-256 annoncé en hexadécimal (null = non fourni)
+     * @return Emplacement du fichier enregistré
+     * @throws IOException Fichier incomplet ou corrompu (il est supprimé)
+     */
+    public Path finish(long checksum, String sha256) throws IOException {
+        try {
+            if (written != size) throw new IOException("Fichier incomplet : " + written + " octets sur " + size);
+            if (checksum != 0 && crc.getValue() != checksum) throw new IOException("Fichier corrompu (CRC32C)");
+            if (sha256 != null && (this.sha256 == null
+                    || !sha256.equals(HexFormat.of().formatHex(this.sha256.digest())))) {
+                throw new IOException("Fichier corrompu (empreinte SHA-256)");
+            }
+            if (window != null) window.force();
+            window = null;
+            channel.close();
+            done = true;
+            return publish();
+        } catch (IOException e) {
+            abort();
+            throw e;
+        }
+    }
+
+    /**
+     * Abandonne un téléchargement inachevé (sans effet après finish)
+     */
+    @Override public void close() {
+        if (!done) abort();
+    }
+
+    private void abort() {
+        done = true;
+        window = null;
+        try { channel.close(); } catch (IOException ignore) {}
+        try { Files.deleteIfExists(part); } catch (IOException ignore) {
+            // fenêtre encore projetée (Windows): supprimé à l'arrêt
+            part.toFile().deleteOnExit();
+        }
+    }
+
+    // Nom libre le plus proche de celui de l'émetteur; copie si le fichier projeté ne peut être renommé (Windows)
+    private Path publish() throws IOException {
+        int dot = filename.lastIndexOf('.');
+        String base = dot > 0 ? filename.substring(0, dot) : filename;
+        String ext = dot > 0 ? filename.substring(dot) : "";
+        for (int i = 1; ; i++) {
+            Path target = DIR.resolve(i == 1 ? filename : base + " (" + i + ")" + ext);
+            if (Files.exists(target)) continue;
+            try {
+                return Files.move(part, target);
+            } catch (FileAlreadyExistsException taken) {
+                // pris entre-temps: nom suivant
+            } catch (IOException locked) {
+                Files.copy(part, target);
+                try { Files.deleteIfExists(part); } catch (IOException ignore) { part.toFile().deleteOnExit(); }
+                return target;
+            }
+        }
+    }
+
+    // Dernier élément du nom, sans séparateurs ni caractères refusés par les systèmes de fichiers
+    private static String safeName(String filename) {
+        String name = filename == null ? "" : filename;
+        name = name.substring(Math.max(name.lastIndexOf('/'), name.lastIndexOf('\\')) + 1);
+        name = name.replaceAll("[\\x00-\\x1f<>:\"|?*]", "_").strip();
+        if (name.isEmpty() || name.equals(".") || name.equals("..")) name = "fichier";
+        return name;
+    }
+
+    private static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
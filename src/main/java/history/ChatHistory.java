@@ -0,0 +1,505 @@
+package history;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * HISTORIQUE LOCAL DES CONVERSATIONS, AVEC RECHERCHE
+ *
+ * Chaque client garde ses messages (envoyés et reçus) dans un dossier à lui:
+ *
+ *   messages.log     journal en ajout seul: [int n][message][int n] par message.
+ *                    La position d'un message dans le journal lui sert d'identifiant.
+ *   seg-N.idx        segments d'index inversé immuables (voir IndexSegment)
+ *   index.manifest   segments en service et fin du journal qu'ils couvrent
+ *
+ * INDEX INCRÉMENTAL:
+ * Les termes des nouveaux messages (mots du texte et du nom de fichier, "@pseudo"
+ * de l'émetteur) vont d'abord dans un index en mémoire, borné à FLUSH_POSTINGS
+ * entrées. Plein, il est écrit en un nouveau segment. Au-delà de MERGE_SEGMENTS
+ * segments, un thread de fond les fusionne en un seul. À l'ouverture, seule la
+ * fin du journal non couverte par les segments est réindexée (et une fin
+ * tronquée par un arrêt brutal est coupée).
+ *
+ * RECHERCHE:
+ * "mot1 mot2 @alice" = messages de alice contenant mot1 ET mot2 (sans tenir
+ * compte de la casse ni des accents). Les listes de chaque terme sont lues dans
+ * les segments projetés en mémoire puis intersectées; seuls les messages
+ * retenus sont relus dans le journal. Rien de l'historique n'est chargé dans
+ * le tas à l'ouverture.
+ *
+ * Propriétés système:
+ *   -Dhistory=false                    désactive l'historique
+ *   -Dhistory.dir=<dossier>            (~/.chat-history)
+ *   -Dhistory.flushPostings=<entrées>  taille de l'index en mémoire (200000)
+ */
+public final class ChatHistory implements Closeable {
+
+    public static final boolean ENABLED = !"false".equals(System.getProperty("history"));
+
+    static final int FLUSH_POSTINGS = Integer.getInteger("history.flushPostings", 200_000);
+    static final int MERGE_SEGMENTS = 8;
+
+    private static final String LOG = "messages.log";
+    private static final String MANIFEST = "index.manifest";
+    private static final Pattern SPLIT = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final int MIN_TERM = 2;
+    private static final int MAX_TERM = 64;
+    private static final int MAX_RECORD = 64 * 1024 * 1024;
+
+    private final Path dir;
+    private final FileChannel log;
+    private long logSize;
+
+    /** Index des messages pas encore écrits en segment: terme → positions croissantes */
+    private final Map<String, LongList> memtable = new HashMap<>();
+    private int memPostings;
+
+    /** Segments en service, dans l'ordre du journal (liste remplacée, jamais modifiée) */
+    private volatile List<IndexSegment> segments = List.of();
+    private long indexedUpTo;
+    private int nextSegment;
+
+    private final ExecutorService merger = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "History-Merge");
+        t.setDaemon(true);
+        return t;
+    });
+    private boolean merging;
+
+    public ChatHistory(Path dir) throws IOException {
+        this.dir = dir;
+        Files.createDirectories(dir);
+        log = FileChannel.open(dir.resolve(LOG), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            loadManifest();
+            recover();
+        } catch (IOException | RuntimeException e) {
+            log.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Historique par défaut d'un client: un dossier par transport et par pseudo
+     */
+    public static ChatHistory open(String transport, String pseudo) throws IOException {
+        String configured = System.getProperty("history.dir");
+        Path root = configured != null ? Path.of(configured)
+                : Path.of(System.getProperty("user.home"), ".chat-history");
+        String safe = pseudo.replaceAll("[^\\p{L}\\p{N}._-]", "_");
+        return new ChatHistory(root.resolve(transport).resolve(safe));
+    }
+
+    /**
+     * Ajoute un message au journal et à l'index
+     *
+     * @return Identifiant du message (sa position dans le journal)
+     */
+    public synchronized long append(String sender, String target, String text, String filename) throws IOException {
+        long time = System.currentTimeMillis();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + (text == null ? 0 : text.length() * 2));
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0);
+        out.writeLong(time);
+        writeString(out, sender);
+        writeString(out, target);
+        writeString(out, text);
+        writeString(out, filename);
+        out.writeInt(0);
+        byte[] record = bytes.toByteArray();
+        int n = record.length - 8;
+        ByteBuffer.wrap(record).putInt(0, n).putInt(record.length - 4, n);
+
+        long id = logSize;
+        ByteBuffer buf = ByteBuffer.wrap(record);
+        while (buf.hasRemaining()) log.write(buf, logSize + buf.position());
+        logSize += record.length;
+
+        index(id, sender, text, filename);
+        if (memPostings >= FLUSH_POSTINGS) flush();
+        return id;
+    }
+
+    /**
+     * Recherche: mots (ET logique) et "@pseudo" pour l'émetteur
+     *
+     * @return Messages trouvés, du plus récent au plus ancien (au plus limit)
+     */
+    public List<HistoryRecord> search(String query, int limit) throws IOException {
+        if (query.isBlank()) return recent(limit);
+        List<String> terms = new ArrayList<>();
+        for (String word : query.trim().split("\\s+")) {
+            if (word.startsWith("@") && word.length() > 1) {
+                terms.add(senderTerm(word.substring(1)));
+            } else {
+                terms.addAll(terms(word));
+            }
+        }
+        if (terms.isEmpty()) return List.of();
+
+        List<long[]> lists = new ArrayList<>();
+        for (String term : new LinkedHashSet<>(terms)) {
+            long[] ids = postings(term);
+            if (ids.length == 0) return List.of();
+            lists.add(ids);
+        }
+        lists.sort(Comparator.comparingInt(a -> a.length));
+        long[] hits = lists.get(0);
+        for (int i = 1; i < lists.size() && hits.length > 0; i++) hits = intersect(hits, lists.get(i));
+
+        List<HistoryRecord> result = new ArrayList<>(Math.min(limit, hits.length));
+        for (int i = hits.length - 1; i >= 0 && result.size() < limit; i--) result.add(read(hits[i]));
+        return result;
+    }
+
+    /**
+     * Derniers messages du journal, du plus récent au plus ancien
+     */
+    public List<HistoryRecord> recent(int limit) throws IOException {
+        return before(logBytes(), limit);
+    }
+
+    /**
+     * Messages enregistrés avant une position du journal, du plus récent au plus ancien
+     * (pagination vers le passé: passer l'identifiant du plus ancien message déjà affiché)
+     */
+    public List<HistoryRecord> before(long position, int limit) throws IOException {
+        List<HistoryRecord> result = new ArrayList<>();
+        long end = Math.min(position, logBytes());
+        ByteBuffer len = ByteBuffer.allocate(4);
+        while (end > 0 && result.size() < limit) {
+            len.clear();
+            readFully(len, end - 4);
+            long start = end - 8 - len.getInt(0);
+            result.add(read(start));
+            end = start;
+        }
+        return result;
+    }
+
+    /**
+     * Taille du journal (octets)
+     */
+    public synchronized long logBytes() {
+        return logSize;
+    }
+
+    /**
+     * Écrit l'index en mémoire dans un segment, attend la fusion en cours et ferme
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (memPostings > 0) flush();
+        }
+        merger.shutdown();
+        try {
+            merger.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.close();
+    }
+
+    // ─────────── Indexation ───────────
+
+    /**
+     * Termes indexés d'un texte: mots en minuscules, sans accents, de MIN_TERM à MAX_TERM caractères
+     */
+    static List<String> terms(String text) {
+        if (text == null || text.isEmpty()) return List.of();
+        String folded = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("")
+                .toLowerCase(Locale.ROOT);
+        List<String> out = new ArrayList<>();
+        for (String w : SPLIT.split(folded)) {
+            if (w.length() >= MIN_TERM && w.length() <= MAX_TERM) out.add(w);
+        }
+        return out;
+    }
+
+    static String senderTerm(String sender) {
+        return "@" + sender.toLowerCase(Locale.ROOT);
+    }
+
+    private void index(long id, String sender, String text, String filename) {
+        Set<String> terms = new HashSet<>(terms(text));
+        terms.addAll(terms(filename));
+        if (sender != null) terms.add(senderTerm(sender));
+        for (String t : terms) {
+            memtable.computeIfAbsent(t, k -> new LongList()).add(id);
+            memPostings++;
+        }
+    }
+
+    private long[] postings(String term) {
+        byte[] key = term.getBytes(StandardCharsets.UTF_8);
+        List<IndexSegment> segs;
+        long[] mem;
+        synchronized (this) {
+            segs = segments;
+            LongList l = memtable.get(term);
+            mem = l == null ? new long[0] : l.toArray();
+        }
+        // Segments puis index en mémoire: positions déjà dans l'ordre croissant
+        List<long[]> parts = new ArrayList<>(segs.size() + 1);
+        int total = mem.length;
+        for (IndexSegment s : segs) {
+            long[] p = s.postings(key);
+            if (p.length > 0) {
+                parts.add(p);
+                total += p.length;
+            }
+        }
+        if (parts.isEmpty()) return mem;
+        parts.add(mem);
+        long[] all = new long[total];
+        int off = 0;
+        for (long[] p : parts) {
+            System.arraycopy(p, 0, all, off, p.length);
+            off += p.length;
+        }
+        return all;
+    }
+
+    private static long[] intersect(long[] a, long[] b) {
+        long[] out = new long[Math.min(a.length, b.length)];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                // Saut par dichotomie dans la liste la plus longue
+                j = Arrays.binarySearch(b, j, b.length, a[i]);
+                if (j < 0) j = -j - 1;
+            } else {
+                out[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    /**
+     * Index en mémoire → nouveau segment (appelé sous verrou)
+     */
+    private void flush() throws IOException {
+        if (memtable.isEmpty()) {
+            indexedUpTo = logSize;
+            writeManifest();
+            return;
+        }
+        List<byte[]> keys = new ArrayList<>(memtable.size());
+        Map<byte[], LongList> byKey = new IdentityHashMap<>();
+        for (Map.Entry<String, LongList> e : memtable.entrySet()) {
+            byte[] k = e.getKey().getBytes(StandardCharsets.UTF_8);
+            keys.add(k);
+            byKey.put(k, e.getValue());
+        }
+        keys.sort(Arrays::compareUnsigned);
+
+        Path path = dir.resolve(segmentName(nextSegment++));
+        Path tmp = dir.resolve(path.getFileName() + ".tmp");
+        try (IndexSegment.Writer w = new IndexSegment.Writer(tmp)) {
+            for (byte[] k : keys) {
+                LongList l = byKey.get(k);
+                w.add(k, l.values, l.size);
+            }
+        }
+        Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        List<IndexSegment> next = new ArrayList<>(segments);
+        next.add(IndexSegment.open(path));
+        segments = List.copyOf(next);
+        memtable.clear();
+        memPostings = 0;
+        indexedUpTo = logSize;
+        writeManifest();
+
+        if (segments.size() >= MERGE_SEGMENTS && !merging) {
+            merging = true;
+            List<IndexSegment> toMerge = segments;
+            merger.execute(() -> merge(toMerge));
+        }
+    }
+
+    /**
+     * Fusion en arrière-plan: les segments fusionnés sont remplacés par un seul
+     */
+    private void merge(List<IndexSegment> toMerge) {
+        Path path;
+        synchronized (this) {
+            path = dir.resolve(segmentName(nextSegment++));
+        }
+        Path tmp = dir.resolve(path.getFileName() + ".tmp");
+        try {
+            IndexSegment.merge(toMerge, tmp);
+            Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            IndexSegment merged = IndexSegment.open(path);
+            synchronized (this) {
+                // Segments ajoutés pendant la fusion: conservés après le segment fusionné
+                List<IndexSegment> next = new ArrayList<>();
+                next.add(merged);
+                next.addAll(segments.subList(toMerge.size(), segments.size()));
+                segments = List.copyOf(next);
+                writeManifest();
+            }
+            // Les lectures en cours gardent leur projection mémoire, le fichier peut disparaître
+            for (IndexSegment s : toMerge) Files.deleteIfExists(s.path);
+        } catch (IOException e) {
+            try { Files.deleteIfExists(tmp); } catch (IOException ignore) {}
+        } finally {
+            synchronized (this) {
+                merging = false;
+            }
+        }
+    }
+
+    private static String segmentName(int n) {
+        return String.format("seg-%06d.idx", n);
+    }
+
+    // ─────────── Manifeste et reprise ───────────
+
+    private void writeManifest() throws IOException {
+        StringBuilder sb = new StringBuilder().append(indexedUpTo).append('\n');
+        for (IndexSegment s : segments) sb.append(s.path.getFileName()).append('\n');
+        Path tmp = dir.resolve(MANIFEST + ".tmp");
+        Files.writeString(tmp, sb);
+        Files.move(tmp, dir.resolve(MANIFEST), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void loadManifest() throws IOException {
+        Path manifest = dir.resolve(MANIFEST);
+        List<IndexSegment> loaded = new ArrayList<>();
+        Set<String> live = new HashSet<>();
+        if (Files.exists(manifest)) {
+            List<String> lines = Files.readAllLines(manifest);
+            try {
+                indexedUpTo = lines.isEmpty() ? 0 : Long.parseLong(lines.get(0).trim());
+                for (String name : lines.subList(Math.min(1, lines.size()), lines.size())) {
+                    if (name.isBlank()) continue;
+                    loaded.add(IndexSegment.open(dir.resolve(name.trim())));
+                    live.add(name.trim());
+                }
+            } catch (IOException | NumberFormatException e) {
+                // Index illisible: tout le journal sera réindexé
+                loaded.clear();
+                live.clear();
+                indexedUpTo = 0;
+            }
+        }
+        // Segments orphelins (fusion ou écriture interrompue) et fichiers temporaires
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "seg-*")) {
+            for (Path p : files) {
+                String name = p.getFileName().toString();
+                if (!live.contains(name)) {
+                    Files.deleteIfExists(p);
+                } else {
+                    nextSegment = Math.max(nextSegment, Integer.parseInt(name.substring(4, 10)) + 1);
+                }
+            }
+        }
+        segments = List.copyOf(loaded);
+    }
+
+    /**
+     * Réindexe la fin du journal non couverte par les segments et coupe une fin tronquée
+     */
+    private synchronized void recover() throws IOException {
+        long size = log.size();
+        if (indexedUpTo > size) {
+            // Journal plus court que l'index (supprimé ou remplacé): on repart de zéro
+            segments = List.of();
+            indexedUpTo = 0;
+        }
+        long pos = indexedUpTo;
+        ByteBuffer len = ByteBuffer.allocate(4);
+        while (pos + 8 <= size) {
+            len.clear();
+            readFully(len, pos);
+            int n = len.getInt(0);
+            if (n < 0 || n > MAX_RECORD || pos + 8 + n > size) break;
+            len.clear();
+            readFully(len, pos + 4 + n);
+            if (len.getInt(0) != n) break;
+            HistoryRecord r = read(pos);
+            index(pos, r.sender(), r.text(), r.filename());
+            pos += 8 + n;
+        }
+        if (pos < size) log.truncate(pos);
+        logSize = pos;
+        if (memPostings >= FLUSH_POSTINGS) flush();
+    }
+
+    // ─────────── Lecture du journal ───────────
+
+    private HistoryRecord read(long id) throws IOException {
+        ByteBuffer len = ByteBuffer.allocate(4);
+        readFully(len, id);
+        int n = len.getInt(0);
+        if (n < 0 || n > MAX_RECORD) throw new IOException("Historique corrompu à la position " + id);
+        ByteBuffer body = ByteBuffer.allocate(n);
+        readFully(body, id + 4);
+        body.flip();
+        long time = body.getLong();
+        return new HistoryRecord(id, time, readString(body), readString(body), readString(body), readString(body));
+    }
+
+    private void readFully(ByteBuffer buf, long pos) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = log.read(buf, pos + buf.position());
+            if (n < 0) throw new IOException("Fin inattendue de l'historique");
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int n = in.getInt();
+        if (n < 0) return null;
+        String s = new String(in.array(), in.arrayOffset() + in.position(), n, StandardCharsets.UTF_8);
+        in.position(in.position() + n);
+        return s;
+    }
+
+    /**
+     * Liste de positions sans boxing
+     */
+    private static final class LongList {
+        long[] values = new long[4];
+        int size;
+
+        void add(long v) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = v;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
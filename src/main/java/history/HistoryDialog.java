@@ -0,0 +1,47 @@
+package history;
+
+import javax.swing.*;
+import java.awt.*;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Fenêtre de résultats d'une recherche dans l'historique (commune aux trois clients)
+ */
+public final class HistoryDialog {
+
+    private static final int LIMIT = 200;
+
+    private HistoryDialog() {}
+
+    /**
+     * Recherche et affiche les résultats (les plus récents d'abord)
+     *
+     * @param query Mots recherchés et "@pseudo" pour filtrer par émetteur
+     */
+    public static void show(Component parent, ChatHistory history, String query) {
+        if (history == null) {
+            JOptionPane.showMessageDialog(parent, "Historique indisponible.", "Historique", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        long start = System.nanoTime();
+        List<HistoryRecord> found;
+        try {
+            found = history.search(query, LIMIT);
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(parent, "Erreur de lecture : " + e.getMessage(), "Historique",
+                    JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        double ms = (System.nanoTime() - start) / 1e6;
+
+        StringBuilder sb = new StringBuilder();
+        for (HistoryRecord r : found) sb.append(r.format()).append('\n');
+        JTextArea area = new JTextArea(sb.length() == 0 ? "Aucun message trouvé." : sb.toString(), 20, 70);
+        area.setEditable(false);
+        area.setCaretPosition(0);
+        String title = String.format("Historique — « %s » : %d résultat(s)%s en %.1f ms", query, found.size(),
+                found.size() == LIMIT ? " (les plus récents)" : "", ms);
+        JOptionPane.showMessageDialog(parent, new JScrollPane(area), title, JOptionPane.PLAIN_MESSAGE);
+    }
+}
@@ -0,0 +1,34 @@
+package history;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Message relu depuis l'historique
+ *
+ * @param id       Position de l'enregistrement dans le journal (croissante avec le temps)
+ * @param time     Instant d'enregistrement (millisecondes epoch)
+ * @param sender   Pseudo de l'émetteur
+ * @param target   Destinataire ("Tous" ou un pseudo, null si inconnu)
+ * @param text     Texte du message (null pour un fichier)
+ * @param filename Nom du fichier (null pour un texte)
+ */
+public record HistoryRecord(long id, long time, String sender, String target, String text, String filename) {
+
+    private static final DateTimeFormatter DATE = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm")
+            .withZone(ZoneId.systemDefault());
+
+    /**
+     * Ligne affichable: "[19/10/2026 14:03] alice → Tous : texte"
+     */
+    public String format() {
+        StringBuilder sb = new StringBuilder("[").append(DATE.format(Instant.ofEpochMilli(time))).append("] ")
+                .append(sender);
+        if (target != null) sb.append(" → ").append(target);
+        sb.append(" : ");
+        if (text != null) sb.append(text);
+        if (filename != null) sb.append(text != null ? " " : "").append("🗂️ ").append(filename);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,244 @@
+package history;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * SEGMENT D'INDEX INVERSÉ SUR DISQUE (IMMUABLE)
+ *
+ * Terme → liste triée des positions des messages qui le contiennent.
+ * Le fichier est projeté en mémoire (mmap): ni les termes ni les listes ne
+ * sont chargés dans le tas, seule la liste d'un terme recherché est décodée.
+ *
+ * FORMAT:
+ *   [listes]    pour chaque terme: positions croissantes, en écarts varint
+ *   [table]     int par terme: décalage de son entrée dans le dictionnaire
+ *   [dict]      par terme, dans l'ordre des octets UTF-8:
+ *               [short longueur][octets][int début de la liste][int nombre de positions]
+ *   [fin]       [int nombre de termes][int début de la table][int MAGIC]
+ *
+ * La recherche d'un terme est une dichotomie sur la table.
+ */
+final class IndexSegment {
+
+    private static final int MAGIC = 0x43485831; // "CHX1"
+    private static final int TRAILER = 12;
+
+    final Path path;
+    private final MappedByteBuffer map;
+    private final int termCount;
+    private final int tableStart;
+    private final int dictStart;
+
+    private IndexSegment(Path path) throws IOException {
+        this.path = path;
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = ch.size();
+            if (size < TRAILER || size > Integer.MAX_VALUE) throw new IOException("Segment d'index invalide : " + path);
+            map = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        map.order(ByteOrder.BIG_ENDIAN);
+        int end = map.capacity();
+        if (map.getInt(end - 4) != MAGIC) throw new IOException("Segment d'index corrompu : " + path);
+        termCount = map.getInt(end - TRAILER);
+        tableStart = map.getInt(end - 8);
+        dictStart = tableStart + 4 * termCount;
+    }
+
+    static IndexSegment open(Path path) throws IOException {
+        return new IndexSegment(path);
+    }
+
+    /**
+     * Positions des messages contenant le terme (croissantes), tableau vide si absent
+     */
+    long[] postings(byte[] term) {
+        int lo = 0, hi = termCount - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int entry = entry(mid);
+            int c = compare(entry, term);
+            if (c < 0) lo = mid + 1;
+            else if (c > 0) hi = mid - 1;
+            else return decode(entry);
+        }
+        return new long[0];
+    }
+
+    int termCount() {
+        return termCount;
+    }
+
+    private int entry(int i) {
+        return dictStart + map.getInt(tableStart + 4 * i);
+    }
+
+    private byte[] term(int entry) {
+        byte[] b = new byte[map.getShort(entry) & 0xFFFF];
+        map.get(entry + 2, b);
+        return b;
+    }
+
+    private int compare(int entry, byte[] term) {
+        int len = map.getShort(entry) & 0xFFFF;
+        int n = Math.min(len, term.length);
+        for (int i = 0; i < n; i++) {
+            int c = (map.get(entry + 2 + i) & 0xFF) - (term[i] & 0xFF);
+            if (c != 0) return c;
+        }
+        return len - term.length;
+    }
+
+    private long[] decode(int entry) {
+        int len = map.getShort(entry) & 0xFFFF;
+        int pos = map.getInt(entry + 2 + len);
+        int count = map.getInt(entry + 6 + len);
+        long[] ids = new long[count];
+        long prev = 0;
+        for (int i = 0; i < count; i++) {
+            long delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = map.get(pos++);
+                delta |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            prev += delta;
+            ids[i] = prev;
+        }
+        return ids;
+    }
+
+    // ─────────── Écriture ───────────
+
+    /**
+     * Écriture d'un segment: termes ajoutés dans l'ordre croissant de leurs octets UTF-8
+     */
+    static final class Writer implements AutoCloseable {
+        private final DataOutputStream out;
+        private byte[][] terms = new byte[1024][];
+        private int[] starts = new int[1024];
+        private int[] counts = new int[1024];
+        private int n;
+
+        Writer(Path path) throws IOException {
+            out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 64 * 1024));
+        }
+
+        void add(byte[] term, long[] ids, int count) throws IOException {
+            if (n == terms.length) {
+                terms = Arrays.copyOf(terms, n * 2);
+                starts = Arrays.copyOf(starts, n * 2);
+                counts = Arrays.copyOf(counts, n * 2);
+            }
+            terms[n] = term;
+            starts[n] = out.size();
+            counts[n] = count;
+            n++;
+            long prev = 0;
+            for (int i = 0; i < count; i++) {
+                long delta = ids[i] - prev;
+                prev = ids[i];
+                while ((delta & ~0x7FL) != 0) {
+                    out.writeByte((int) (delta & 0x7F) | 0x80);
+                    delta >>>= 7;
+                }
+                out.writeByte((int) delta);
+            }
+            if (out.size() < 0) throw new IOException("Segment d'index trop grand");
+        }
+
+        /**
+         * Écrit la table, le dictionnaire et la fin de fichier
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                int tableStart = out.size();
+                int off = 0;
+                for (int i = 0; i < n; i++) {
+                    out.writeInt(off);
+                    off += 10 + terms[i].length;
+                }
+                for (int i = 0; i < n; i++) {
+                    out.writeShort(terms[i].length);
+                    out.write(terms[i]);
+                    out.writeInt(starts[i]);
+                    out.writeInt(counts[i]);
+                }
+                out.writeInt(n);
+                out.writeInt(tableStart);
+                out.writeInt(MAGIC);
+                if (out.size() < 0) throw new IOException("Segment d'index trop grand");
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Fusionne des segments couvrant des portions successives du journal
+     * (les listes d'un même terme sont simplement mises bout à bout)
+     */
+    static void merge(List<IndexSegment> segments, Path target) throws IOException {
+        PriorityQueue<Cursor> queue = new PriorityQueue<>();
+        for (int i = 0; i < segments.size(); i++) {
+            Cursor c = new Cursor(segments.get(i), i);
+            if (c.advance()) queue.add(c);
+        }
+        long[] buf = new long[1024];
+        try (Writer w = new Writer(target)) {
+            while (!queue.isEmpty()) {
+                byte[] term = queue.peek().term;
+                int count = 0;
+                // Les curseurs d'un même terme sortent dans l'ordre des segments (départage par rang)
+                while (!queue.isEmpty() && Arrays.equals(queue.peek().term, term)) {
+                    Cursor c = queue.poll();
+                    long[] ids = c.segment.decode(c.entry);
+                    if (count + ids.length > buf.length) buf = Arrays.copyOf(buf, Math.max(buf.length * 2, count + ids.length));
+                    System.arraycopy(ids, 0, buf, count, ids.length);
+                    count += ids.length;
+                    if (c.advance()) queue.add(c);
+                }
+                w.add(term, buf, count);
+            }
+        }
+    }
+
+    private static final class Cursor implements Comparable<Cursor> {
+        final IndexSegment segment;
+        final int rank;
+        int index = -1;
+        int entry;
+        byte[] term;
+
+        Cursor(IndexSegment segment, int rank) {
+            this.segment = segment;
+            this.rank = rank;
+        }
+
+        boolean advance() {
+            if (++index >= segment.termCount) return false;
+            entry = segment.entry(index);
+            term = segment.term(entry);
+            return true;
+        }
+
+        @Override
+        public int compareTo(Cursor o) {
+            int c = Arrays.compareUnsigned(term, o.term);
+            return c != 0 ? c : Integer.compare(rank, o.rank);
+        }
+    }
+}
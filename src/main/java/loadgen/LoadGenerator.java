@@ -0,0 +1,236 @@
+package loadgen;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * GÉNÉRATEUR DE CHARGE SYNTHÉTIQUE (EN LIGNE DE COMMANDE)
+ *
+ * Simule des milliers de clients TCP, UDP ou multicast sans interface dans
+ * une seule JVM (un thread virtuel par client) pour mesurer la capacité
+ * d'un serveur sur un trafic réel en boucle locale.
+ *
+ * UTILISATION:
+ *   java -cp target/classes loadgen.LoadGenerator --transport=udp --clients=2000 --duration=60
+ *
+ * OPTIONS (--nom=valeur):
+ *   transport     tcp | udp | multicast                    (tcp)
+ *   host, port    serveur TCP/UDP                          (127.0.0.1, 9999)
+ *   group, port   groupe multicast                         (230.0.0.0, 4446)
+ *   clients       nombre de clients simulés                (100)
+ *   duration      durée de la mesure en secondes           (30)
+ *   rate          messages par seconde et par client       (1.0)
+ *   size          taille moyenne d'un texte (octets)       (64)
+ *   size-dist     fixed | uniform | exp                    (exp)
+ *   private-ratio part des messages adressés à un seul pseudo (0.2)
+ *   file-ratio    part des envois qui sont des fichiers    (0.0)
+ *   file-size     taille des fichiers envoyés (octets)     (16384)
+ *   churn         départs/retours de clients par seconde   (0)
+ *   ramp          connexions par seconde au démarrage      (500)
+ *
+ * RÉSULTATS:
+ * Débit envoyé/reçu chaque seconde, puis latence de livraison
+ * p50/p99/p999 (de l'appel d'envoi à la réception par chaque destinataire).
+ */
+public class LoadGenerator {
+
+    private final Map<String, String> opts;
+    private final LoadStats stats = new LoadStats();
+    private volatile boolean running = true;
+
+    private final String transport;
+    private final int clientCount;
+    private final double rate;
+    private final int size;
+    private final String sizeDist;
+    private final double privateRatio;
+    private final double fileRatio;
+    private final int fileSize;
+    private final double churn;
+    private final AtomicReferenceArray<SimClient> clients;
+
+    LoadGenerator(Map<String, String> opts) {
+        this.opts = opts;
+        this.transport = opt("transport", "tcp");
+        this.clientCount = Integer.parseInt(opt("clients", "100"));
+        this.rate = Double.parseDouble(opt("rate", "1.0"));
+        this.size = Integer.parseInt(opt("size", "64"));
+        this.sizeDist = opt("size-dist", "exp");
+        this.privateRatio = Double.parseDouble(opt("private-ratio", "0.2"));
+        this.fileRatio = Double.parseDouble(opt("file-ratio", "0.0"));
+        this.fileSize = Integer.parseInt(opt("file-size", "16384"));
+        this.churn = Double.parseDouble(opt("churn", "0"));
+        this.clients = new AtomicReferenceArray<>(clientCount);
+    }
+
+    private String opt(String name, String def) {
+        return opts.getOrDefault(name, def);
+    }
+
+    // ========== CRÉATION DES CLIENTS ==========
+
+    private SimClient newClient(int i) throws IOException {
+        String pseudo = "lg-" + i;
+        return switch (transport) {
+            case "tcp" -> new TcpSimClient(pseudo, stats, opt("host", "127.0.0.1"),
+                    Integer.parseInt(opt("port", "9999")));
+            case "udp" -> new UdpSimClient(pseudo, stats, InetAddress.getByName(opt("host", "127.0.0.1")),
+                    Integer.parseInt(opt("port", "9999")));
+            case "multicast" -> new MulticastSimClient(pseudo, stats, InetAddress.getByName(opt("group", "230.0.0.0")),
+                    Integer.parseInt(opt("port", "4446")));
+            default -> throw new IllegalArgumentException("Transport inconnu : " + transport);
+        };
+    }
+
+    /**
+     * Connecte le client i et démarre sa boucle d'envoi
+     */
+    private void start(int i) {
+        try {
+            SimClient c = newClient(i);
+            c.connect();
+            clients.set(i, c);
+            stats.joins.increment();
+            Thread.ofVirtual().name("Sender-" + i).start(() -> sendLoop(c));
+        } catch (IOException e) {
+            stats.errors.increment();
+        }
+    }
+
+    // ========== ENVOI ==========
+
+    /**
+     * Envois à intervalles exponentiels (processus de Poisson) de moyenne 1/rate
+     */
+    private void sendLoop(SimClient c) {
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        while (running && c.open) {
+            try {
+                long pauseNanos = (long) (-Math.log(1 - rnd.nextDouble()) / rate * 1e9);
+                TimeUnit.NANOSECONDS.sleep(pauseNanos);
+                if (!running || !c.open) break;
+
+                String target = rnd.nextDouble() < privateRatio
+                        ? "lg-" + rnd.nextInt(clientCount) : "Tous";
+                if (rnd.nextDouble() < fileRatio) {
+                    c.sendFile(target, SimClient.stamp("fichier.bin"), new byte[fileSize]);
+                    stats.sentBytes.add(fileSize);
+                } else {
+                    int n = nextSize(rnd);
+                    c.sendText(target, SimClient.stamp("x".repeat(n)));
+                    stats.sentBytes.add(n);
+                }
+                stats.sent.increment();
+            } catch (InterruptedException e) {
+                break;
+            } catch (IOException e) {
+                if (c.open) stats.errors.increment();
+            }
+        }
+    }
+
+    private int nextSize(ThreadLocalRandom rnd) {
+        return switch (sizeDist) {
+            case "fixed" -> size;
+            case "uniform" -> rnd.nextInt(2 * size + 1);
+            default -> (int) (-Math.log(1 - rnd.nextDouble()) * size);
+        };
+    }
+
+    // ========== DÉPARTS / RETOURS ==========
+
+    private void churnLoop() {
+        if (churn <= 0) return;
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        while (running) {
+            try {
+                TimeUnit.NANOSECONDS.sleep((long) (1e9 / churn));
+            } catch (InterruptedException e) {
+                return;
+            }
+            int i = rnd.nextInt(clientCount);
+            SimClient c = clients.getAndSet(i, null);
+            if (c == null) continue;
+            c.close();
+            stats.leaves.increment();
+            start(i);
+        }
+    }
+
+    // ========== EXÉCUTION ==========
+
+    void run() throws InterruptedException {
+        int duration = Integer.parseInt(opt("duration", "30"));
+        int ramp = Integer.parseInt(opt("ramp", "500"));
+
+        System.out.printf("Démarrage de %d clients %s (%d/s)...%n", clientCount, transport, ramp);
+        for (int i = 0; i < clientCount; i++) {
+            start(i);
+            if (ramp > 0 && (i + 1) % ramp == 0) Thread.sleep(1000);
+        }
+        System.out.printf("%d clients connectés, %d erreurs%n", stats.joins.sum(), stats.errors.sum());
+
+        Thread churner = Thread.ofVirtual().name("Churn").start(this::churnLoop);
+
+        long lastSent = 0, lastReceived = 0;
+        for (int t = 1; t <= duration; t++) {
+            Thread.sleep(1000);
+            long sent = stats.sent.sum(), received = stats.received.sum();
+            System.out.printf("t=%3ds  envoyés %7d/s  reçus %8d/s  p99 %8.2f ms  erreurs %d%n",
+                    t, sent - lastSent, received - lastReceived,
+                    stats.latency.quantile(0.99) / 1e6, stats.errors.sum());
+            lastSent = sent;
+            lastReceived = received;
+        }
+
+        running = false;
+        churner.interrupt();
+        for (int i = 0; i < clientCount; i++) {
+            SimClient c = clients.getAndSet(i, null);
+            if (c != null) c.close();
+        }
+        report(duration);
+    }
+
+    private void report(int duration) {
+        System.out.println();
+        System.out.println("===== RÉSULTATS (" + transport + ", " + clientCount + " clients, " + duration + " s) =====");
+        System.out.printf("Envoyés      : %d messages (%.0f msg/s, %.1f Ko/s de charge utile)%n",
+                stats.sent.sum(), (double) stats.sent.sum() / duration, stats.sentBytes.sum() / 1024.0 / duration);
+        System.out.printf("Reçus        : %d livraisons (%.0f msg/s)%n",
+                stats.received.sum(), (double) stats.received.sum() / duration);
+        System.out.printf("Latence      : p50 %.2f ms  p99 %.2f ms  p999 %.2f ms  max %.2f ms%n",
+                stats.latency.quantile(0.5) / 1e6, stats.latency.quantile(0.99) / 1e6,
+                stats.latency.quantile(0.999) / 1e6, stats.latency.maxNanos() / 1e6);
+        System.out.printf("Churn        : %d arrivées, %d départs%n", stats.joins.sum(), stats.leaves.sum());
+        System.out.printf("Erreurs      : %d%n", stats.errors.sum());
+    }
+
+    /**
+     * POINT D'ENTRÉE
+     */
+    public static void main(String[] args) throws InterruptedException {
+        Map<String, String> opts = new HashMap<>();
+        for (String a : args) {
+            if (a.equals("--help") || a.equals("-h")) {
+                System.out.println("Options: --transport=tcp|udp|multicast --host= --port= --group= --clients= "
+                        + "--duration= --rate= --size= --size-dist=fixed|uniform|exp --private-ratio= "
+                        + "--file-ratio= --file-size= --churn= --ramp=");
+                return;
+            }
+            if (!a.startsWith("--") || !a.contains("=")) {
+                System.err.println("Option invalide : " + a + " (attendu --nom=valeur)");
+                System.exit(1);
+            }
+            int eq = a.indexOf('=');
+            opts.put(a.substring(2, eq), a.substring(eq + 1));
+        }
+        new LoadGenerator(opts).run();
+        System.exit(0);
+    }
+}
@@ -0,0 +1,20 @@
+package loadgen;
+
+import metrics.LatencyHistogram;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * STATISTIQUES DU GÉNÉRATEUR DE CHARGE
+ *
+ * Partagées par tous les clients simulés d'une même exécution.
+ */
+final class LoadStats {
+    final LongAdder sent = new LongAdder();
+    final LongAdder sentBytes = new LongAdder();
+    final LongAdder received = new LongAdder();
+    final LongAdder errors = new LongAdder();
+    final LongAdder joins = new LongAdder();
+    final LongAdder leaves = new LongAdder();
+    final LatencyHistogram latency = new LatencyHistogram();
+}
@@ -0,0 +1,153 @@
+package loadgen;
+
+import crypto.GroupKeys;
+import datagram.Compression;
+import datagram.EncodeBuffer;
+import multicast.Message;
+import multicast.PeerDirectory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Client multicast simulé: même séquence que multicast.Client.joinGroup()
+ * (MulticastSocket, joinGroup, annonce "a rejoint", au revoir au départ),
+ * avec l'envoi direct des messages privés aux membres dont l'adresse est connue
+ */
+final class MulticastSimClient extends SimClient {
+
+    private static final int BUFFER_SIZE = 65535;
+
+    private final InetAddress group;
+    private final int port;
+    private final AtomicLong nextSeq = new AtomicLong();
+    private MulticastSocket socket;
+    private DatagramSocket directSocket;
+    private final PeerDirectory peers = new PeerDirectory();
+    private final Compression compression = new Compression("multicast");
+    private final DatagramPacket sendPacket = new DatagramPacket(new byte[0], 0);
+    private GroupKeys keys;
+    private byte[] sealed;
+
+    MulticastSimClient(String pseudo, LoadStats stats, InetAddress group, int port) {
+        super(pseudo, stats);
+        this.group = group;
+        this.port = port;
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    void connect() throws IOException {
+        try {
+            keys = GroupKeys.create();
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Chiffrement impossible : " + e.getMessage(), e);
+        }
+        socket = new MulticastSocket(port);
+        socket.joinGroup(group);
+        if (PeerDirectory.ENABLED) directSocket = new DatagramSocket(0);
+        open = true;
+        startReader("Multicast-Sim-" + pseudo, () -> readLoop(socket));
+        if (directSocket != null) startReader("Multicast-Sim-Direct-" + pseudo, () -> readLoop(directSocket));
+        send(new Message(Message.Type.TEXTE, pseudo, "Tous", "*** a rejoint le groupe ***"));
+    }
+
+    private void readLoop(DatagramSocket from) {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        while (open) {
+            try {
+                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                from.receive(packet);
+                int offset = 0, length = packet.getLength();
+                if (keys != null) {
+                    if (keys.isOwn(buffer, length)) continue;
+                    length = keys.open(buffer, length);
+                    if (length < 0) continue;
+                    offset = GroupKeys.HEADER;
+                }
+                Object o = new ObjectInputStream(new ByteArrayInputStream(buffer, offset, length)).readObject();
+                if (o instanceof Message[] lot) {
+                    for (Message m : lot) handle(m, packet.getAddress());
+                } else if (o instanceof Message msg) {
+                    handle(msg, packet.getAddress());
+                }
+            } catch (Exception e) {
+                if (open) stats.errors.increment();
+                if (from.isClosed()) break;
+            }
+        }
+    }
+
+    private void handle(Message msg, InetAddress from) {
+        if (pseudo.equals(msg.sender)) return;
+        peers.learn(msg, from);
+        if (PeerDirectory.isForOthers(msg, pseudo)) return;
+        try {
+            Compression.decompress(msg);
+        } catch (IOException e) {
+            stats.errors.increment();
+            return;
+        }
+        switch (msg.type) {
+            case TEXTE -> onReceive(msg.sender, msg.text);
+            case FICHIER -> onReceive(msg.sender, msg.filename);
+            default -> { /* LISTE, RAPPORT: ignorés */ }
+        }
+    }
+
+    @Override void sendText(String target, String text) throws IOException {
+        Message msg = new Message(Message.Type.TEXTE, pseudo, target, text);
+        if (peers.inflates(target)) compression.compress(msg);
+        send(msg);
+    }
+
+    @Override void sendFile(String target, String filename, byte[] bytes) throws IOException {
+        Message msg = new Message(Message.Type.FICHIER, pseudo, target, filename, bytes);
+        if (peers.inflates(target)) compression.compress(msg);
+        send(msg);
+    }
+
+    private void send(Message msg) throws IOException {
+        msg.unicastPort = directSocket != null ? directSocket.getLocalPort() : 0;
+        msg.inflates = compression.enabled();
+        InetSocketAddress peer = directSocket != null ? peers.lookup(msg.target) : null;
+        msg.seq = peer != null ? 0 : nextSeq.incrementAndGet();
+        EncodeBuffer buf = EncodeBuffer.forThread();
+        int length = buf.encode(msg);
+        synchronized (sendPacket) {
+            byte[] data = buf.array();
+            if (keys != null) {
+                if (sealed == null || sealed.length < length + GroupKeys.OVERHEAD) {
+                    sealed = new byte[length + GroupKeys.OVERHEAD];
+                }
+                length = keys.seal(data, 0, length, sealed);
+                data = sealed;
+            }
+            sendPacket.setData(data, 0, length);
+            sendPacket.setAddress(peer != null ? peer.getAddress() : group);
+            sendPacket.setPort(peer != null ? peer.getPort() : port);
+            socket.send(sendPacket);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    void close() {
+        if (!open) return;
+        try {
+            send(new Message(Message.Type.TEXTE, pseudo, "Tous", "*** a quitté le groupe ***"));
+        } catch (IOException ignore) {}
+        open = false;
+        try { socket.leaveGroup(group); } catch (IOException ignore) {}
+        socket.close();
+        if (directSocket != null) directSocket.close();
+    }
+}
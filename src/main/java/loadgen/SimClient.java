@@ -0,0 +1,70 @@
+package loadgen;
+
+import java.io.IOException;
+
+/**
+ * CLIENT SIMULÉ (SANS INTERFACE)
+ *
+ * Base commune des clients du générateur de charge. Chaque sous-classe
+ * parle exactement le protocole du Client Swing de son package
+ * (tcp, udp ou multicast): mêmes messages HELLO, mêmes types, même
+ * sérialisation.
+ *
+ * MESURE DE LATENCE:
+ * Le texte (ou le nom de fichier) commence par "lg:<System.nanoTime>:".
+ * Tous les clients vivant dans la même JVM, le récepteur calcule la
+ * latence de bout en bout par simple différence.
+ */
+abstract class SimClient {
+
+    static final String STAMP = "lg:";
+
+    final String pseudo;
+    final LoadStats stats;
+    volatile boolean open;
+
+    SimClient(String pseudo, LoadStats stats) {
+        this.pseudo = pseudo;
+        this.stats = stats;
+    }
+
+    /**
+     * Connexion / adhésion au groupe, annonce, démarrage de la réception
+     */
+    abstract void connect() throws IOException;
+
+    abstract void sendText(String target, String text) throws IOException;
+
+    abstract void sendFile(String target, String filename, byte[] bytes) throws IOException;
+
+    /**
+     * Déconnexion / départ du groupe
+     */
+    abstract void close();
+
+    /**
+     * Démarre la boucle de réception sur un thread virtuel
+     */
+    void startReader(String name, Runnable loop) {
+        Thread.ofVirtual().name(name).start(loop);
+    }
+
+    /**
+     * Message reçu: extraction de l'horodatage et mesure de latence
+     */
+    void onReceive(String sender, String stamped) {
+        if (pseudo.equals(sender)) return;
+        stats.received.increment();
+        if (stamped == null || !stamped.startsWith(STAMP)) return;
+        int end = stamped.indexOf(':', STAMP.length());
+        if (end < 0) return;
+        try {
+            long sentAt = Long.parseLong(stamped.substring(STAMP.length(), end));
+            stats.latency.recordSince(sentAt);
+        } catch (NumberFormatException ignore) {}
+    }
+
+    static String stamp(String body) {
+        return STAMP + System.nanoTime() + ":" + body;
+    }
+}
@@ -0,0 +1,90 @@
+package loadgen;
+
+import crypto.Aead;
+import crypto.Handshake;
+import crypto.Session;
+import tcp.Compression;
+import tcp.FrameReader;
+import tcp.FrameWriter;
+import tcp.Message;
+
+import java.io.IOException;
+import java.net.Socket;
+
+/**
+ * Client TCP simulé: même séquence que tcp.Client.connect()
+ * (trames FrameWriter / FrameReader, HELLO, lecture en boucle)
+ */
+final class TcpSimClient extends SimClient {
+
+    private final String host;
+    private final int port;
+    private Socket socket;
+    private FrameWriter out;
+    private FrameReader in;
+
+    TcpSimClient(String pseudo, LoadStats stats, String host, int port) {
+        super(pseudo, stats);
+        this.host = host;
+        this.port = port;
+    }
+
+    @Override void connect() throws IOException {
+        socket = new Socket(host, port);
+        Session session = Aead.enabled() ? Handshake.exchange(socket.getInputStream(), socket.getOutputStream(), true) : null;
+        out = new FrameWriter(socket.getOutputStream(), session);
+        in  = new FrameReader(socket.getInputStream(), session);
+        write(new Message(Message.Type.TEXTE, pseudo, "HELLO", "hello"));
+        open = true;
+        startReader("TCP-Sim-" + pseudo, this::readLoop);
+    }
+
+    private void readLoop() {
+        while (open) {
+            try {
+                Message msg = in.read();
+                try { Compression.decompress(msg); }
+                catch (IOException e) { stats.errors.increment(); continue; }
+                switch (msg.type) {
+                    case TEXTE -> onReceive(msg.sender, msg.text);
+                    case FICHIER -> {
+                        if (msg.streamLength > 0 && msg.fileBytes == null) {
+                            // Contenu en morceaux: lu sans être gardé, réception comptée au dernier morceau
+                            in.streamTo(new FrameReader.Sink() {
+                                @Override public void write(byte[] b, int off, int len) {}
+                                @Override public void end() { onReceive(msg.sender, msg.filename); }
+                            });
+                        } else {
+                            onReceive(msg.sender, msg.filename);
+                        }
+                    }
+                    case LISTE -> { /* liste des destinataires: ignorée */ }
+                }
+            } catch (Exception e) {
+                if (open) stats.errors.increment();
+                break;
+            }
+        }
+    }
+
+    @Override void sendText(String target, String text) throws IOException {
+        Message msg = new Message(Message.Type.TEXTE, pseudo, target, text);
+        Compression.compress(msg);
+        write(msg);
+    }
+
+    @Override void sendFile(String target, String filename, byte[] bytes) throws IOException {
+        Message msg = new Message(Message.Type.FICHIER, pseudo, target, filename, bytes);
+        Compression.compress(msg);
+        write(msg);
+    }
+
+    private void write(Message msg) throws IOException {
+        out.write(msg);
+    }
+
+    @Override void close() {
+        open = false;
+        try { if (socket != null) socket.close(); } catch (IOException ignore) {}
+    }
+}
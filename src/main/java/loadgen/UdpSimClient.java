@@ -0,0 +1,143 @@
+package loadgen;
+
+import crypto.Aead;
+import crypto.Handshake;
+import crypto.Session;
+import datagram.Compression;
+import datagram.EncodeBuffer;
+import udp.CreditWindow;
+import udp.Message;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Client UDP simulé: même séquence que udp.Client.connect()
+ * (DatagramSocket, HELLO, crédits, un Message sérialisé par datagramme)
+ */
+final class UdpSimClient extends SimClient {
+
+    private static final int BUFFER_SIZE = 65535;
+
+    private final InetAddress serverAddress;
+    private final int serverPort;
+    private final AtomicLong nextSeq = new AtomicLong();
+    private final CreditWindow credits = new CreditWindow();
+    private final Compression compression = new Compression("udp");
+    private DatagramSocket socket;
+    private final DatagramPacket sendPacket = new DatagramPacket(new byte[0], 0);
+    private Session session;
+    private byte[] sealed;
+
+    UdpSimClient(String pseudo, LoadStats stats, InetAddress serverAddress, int serverPort) {
+        super(pseudo, stats);
+        this.serverAddress = serverAddress;
+        this.serverPort = serverPort;
+    }
+
+    @Override void connect() throws IOException {
+        socket = new DatagramSocket();
+        if (Aead.enabled()) session = Handshake.exchange(socket, serverAddress, serverPort);
+        send(new Message(Message.Type.TEXTE, pseudo, "HELLO",
+                compression.enabled() ? "hello " + Compression.CAPABILITY : "hello"));
+        if (CreditWindow.ENABLED) {
+            send(credits.grant(pseudo));
+            socket.setSoTimeout(CreditWindow.REGRANT_MS);
+        }
+        open = true;
+        startReader("UDP-Sim-" + pseudo, this::readLoop);
+    }
+
+    private void readLoop() {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        while (open) {
+            try {
+                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                socket.receive(packet);
+                int offset = 0, length = packet.getLength();
+                if (session != null) {
+                    length = session.openDatagram(buffer, length);
+                    if (length < 0) continue;
+                    offset = Session.DATAGRAM_HEADER;
+                }
+                Object o = new ObjectInputStream(new ByteArrayInputStream(buffer, offset, length)).readObject();
+                if (o instanceof Message[] lot) {
+                    for (Message m : lot) handle(m);
+                } else if (o instanceof Message msg) {
+                    handle(msg);
+                }
+            } catch (SocketTimeoutException idle) {
+                grant();
+            } catch (Exception e) {
+                if (open) stats.errors.increment();
+                if (socket.isClosed()) break;
+            }
+        }
+    }
+
+    private void handle(Message msg) {
+        try {
+            Compression.decompress(msg);
+        } catch (IOException e) {
+            stats.errors.increment();
+            return;
+        }
+        if (CreditWindow.ENABLED && credits.processed(msg.seq)) grant();
+        switch (msg.type) {
+            case TEXTE -> onReceive(msg.sender, msg.text);
+            case FICHIER -> onReceive(msg.sender, msg.filename);
+            case LISTE -> { /* liste des destinataires: ignorée */ }
+        }
+    }
+
+    @Override void sendText(String target, String text) throws IOException {
+        Message msg = new Message(Message.Type.TEXTE, pseudo, target, text);
+        compression.compress(msg);
+        send(msg);
+    }
+
+    @Override void sendFile(String target, String filename, byte[] bytes) throws IOException {
+        Message msg = new Message(Message.Type.FICHIER, pseudo, target, filename, bytes);
+        compression.compress(msg);
+        send(msg);
+    }
+
+    private void grant() {
+        try {
+            send(credits.grant(pseudo));
+        } catch (IOException e) {
+            stats.errors.increment();
+        }
+    }
+
+    private void send(Message msg) throws IOException {
+        msg.seq = nextSeq.incrementAndGet();
+        EncodeBuffer buf = EncodeBuffer.forThread();
+        int length = buf.encode(msg);
+        synchronized (sendPacket) {
+            byte[] data = buf.array();
+            if (session != null) {
+                if (sealed == null || sealed.length < length + Session.DATAGRAM_OVERHEAD) {
+                    sealed = new byte[length + Session.DATAGRAM_OVERHEAD];
+                }
+                length = session.sealDatagram(data, 0, length, sealed);
+                data = sealed;
+            }
+            sendPacket.setData(data, 0, length);
+            sendPacket.setAddress(serverAddress);
+            sendPacket.setPort(serverPort);
+            socket.send(sendPacket);
+        }
+    }
+
+    @Override void close() {
+        open = false;
+        if (socket != null) socket.close();
+    }
+}
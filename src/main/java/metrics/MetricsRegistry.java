@@ -0,0 +1,245 @@
+package metrics;
+
+import com.sun.net.httpserver.HttpServer;
+
+import javax.management.*;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * REGISTRE DE MÉTRIQUES D'UN SERVEUR
+ *
+ * Compteurs, jauges et histogrammes de latence à faible coût pour les
+ * chemins critiques des serveurs TCP, UDP et multicast.
+ *
+ * - Compteurs: LongAdder (striped, pas de contention entre threads)
+ * - Histogrammes: LatencyHistogram (cases log-linéaires, sans verrou)
+ * - Jauges: lues à la demande (taille d'une file, nombre de sessions...)
+ *
+ * PUBLICATION:
+ * - JMX: MBean "chat:type=Metrics,transport=<tcp|udp|multicast>"
+ * - HTTP: format texte Prometheus sur http://127.0.0.1:<port>/metrics,
+ *   activé par -Dmetrics.port=<port> (boucle locale uniquement)
+ *
+ * Les compteurs se résolvent une fois (à la construction du serveur) puis
+ * s'incrémentent directement: aucune recherche dans une table sur le
+ * chemin critique.
+ */
+public class MetricsRegistry {
+
+    private static final String PREFIX = "chat_";
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+    /**
+     * Port HTTP local de publication (0 = désactivé)
+     */
+    public static final int HTTP_PORT = Integer.getInteger("metrics.port", 0);
+
+    private record Entry(String family, String labels, Object metric) {}
+
+    private final String transport;
+    private final Map<String, Entry> entries = new ConcurrentSkipListMap<>();
+
+    private HttpServer http;
+    private ObjectName objectName;
+
+    /**
+     * @param transport "tcp", "udp" ou "multicast" (étiquette commune à toutes les séries)
+     */
+    public MetricsRegistry(String transport) {
+        this.transport = transport;
+    }
+
+    // ========== DÉCLARATION DES MÉTRIQUES ==========
+
+    public LongAdder counter(String name) {
+        return counter(name, null, null);
+    }
+
+    public LongAdder counter(String name, String labelName, String labelValue) {
+        return (LongAdder) register(name, labelName, labelValue, new LongAdder());
+    }
+
+    /**
+     * Un compteur par valeur d'une énumération (étiquette "type"),
+     * indexé par ordinal()
+     */
+    public LongAdder[] countersByType(String name, Enum<?>[] types) {
+        LongAdder[] result = new LongAdder[types.length];
+        for (Enum<?> t : types) result[t.ordinal()] = counter(name, "type", t.name());
+        return result;
+    }
+
+    public LatencyHistogram histogram(String name) {
+        return (LatencyHistogram) register(name, null, null, new LatencyHistogram());
+    }
+
+    public void gauge(String name, LongSupplier supplier) {
+        register(name, null, null, supplier);
+    }
+
+    private Object register(String name, String labelName, String labelValue, Object metric) {
+        String family = PREFIX + name;
+        String labels = "transport=\"" + transport + "\""
+                + (labelName == null ? "" : "," + labelName + "=\"" + labelValue + "\"");
+        Entry e = entries.computeIfAbsent(family + "{" + labels + "}", k -> new Entry(family, labels, metric));
+        return e.metric();
+    }
+
+    // ========== PUBLICATION ==========
+
+    /**
+     * Enregistre le MBean et démarre l'export HTTP si configuré
+     *
+     * @return Messages à journaliser (adresse d'export, erreurs)
+     */
+    public synchronized List<String> start() {
+        List<String> log = new ArrayList<>();
+        try {
+            MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+            objectName = new ObjectName("chat:type=Metrics,transport=" + transport);
+            if (!mbs.isRegistered(objectName)) mbs.registerMBean(new Bean(), objectName);
+        } catch (JMException e) {
+            log.add("⚠️ Métriques JMX indisponibles : " + e.getMessage());
+        }
+
+        if (HTTP_PORT > 0 && http == null) {
+            try {
+                http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), HTTP_PORT), 0);
+                http.createContext("/metrics", ex -> {
+                    byte[] body = toPrometheus().getBytes(StandardCharsets.UTF_8);
+                    ex.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                    ex.sendResponseHeaders(200, body.length);
+                    try (OutputStream os = ex.getResponseBody()) { os.write(body); }
+                });
+                http.start();
+                log.add("📊 Métriques : http://127.0.0.1:" + HTTP_PORT + "/metrics");
+            } catch (IOException e) {
+                http = null;
+                log.add("⚠️ Export HTTP des métriques impossible : " + e.getMessage());
+            }
+        }
+        return log;
+    }
+
+    /**
+     * Arrête l'export HTTP et retire le MBean
+     */
+    public synchronized void stop() {
+        if (http != null) {
+            http.stop(0);
+            http = null;
+        }
+        try {
+            if (objectName != null) ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException ignore) {}
+        objectName = null;
+    }
+
+    /**
+     * Rendu au format texte Prometheus (version 0.0.4)
+     */
+    public String toPrometheus() {
+        StringBuilder sb = new StringBuilder(4096);
+        String lastFamily = null;
+        for (Entry e : entries.values()) {
+            Object m = e.metric();
+            if (!e.family().equals(lastFamily)) {
+                String type = m instanceof LatencyHistogram ? "summary"
+                        : m instanceof LongAdder ? "counter" : "gauge";
+                sb.append("# TYPE ").append(e.family()).append(' ').append(type).append('\n');
+                lastFamily = e.family();
+            }
+            if (m instanceof LongAdder c) {
+                sb.append(e.family()).append('{').append(e.labels()).append("} ").append(c.sum()).append('\n');
+            } else if (m instanceof LongSupplier g) {
+                sb.append(e.family()).append('{').append(e.labels()).append("} ").append(g.getAsLong()).append('\n');
+            } else if (m instanceof LatencyHistogram h) {
+                for (double q : QUANTILES) {
+                    sb.append(e.family()).append('{').append(e.labels()).append(",quantile=\"").append(q)
+                      .append("\"} ").append(h.quantile(q) / 1e9).append('\n');
+                }
+                sb.append(e.family()).append("_sum{").append(e.labels()).append("} ")
+                  .append(h.sumNanos() / 1e9).append('\n');
+                sb.append(e.family()).append("_count{").append(e.labels()).append("} ")
+                  .append(h.count()).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Vue à plat pour JMX: une valeur Long par attribut
+     * (histogrammes: count, p50, p99, p999 et max en nanosecondes)
+     */
+    public Map<String, Long> snapshot() {
+        Map<String, Long> snap = new LinkedHashMap<>();
+        for (Entry e : entries.values()) {
+            String base = e.family().substring(PREFIX.length());
+            String label = e.labels().contains(",") ? "." + e.labels().replaceAll(".*=\"(.*)\"$", "$1") : "";
+            Object m = e.metric();
+            if (m instanceof LongAdder c) {
+                snap.put(base + label, c.sum());
+            } else if (m instanceof LongSupplier g) {
+                snap.put(base + label, g.getAsLong());
+            } else if (m instanceof LatencyHistogram h) {
+                snap.put(base + label + ".count", h.count());
+                snap.put(base + label + ".p50_ns", h.quantile(0.5));
+                snap.put(base + label + ".p99_ns", h.quantile(0.99));
+                snap.put(base + label + ".p999_ns", h.quantile(0.999));
+                snap.put(base + label + ".max_ns", h.maxNanos());
+            }
+        }
+        return snap;
+    }
+
+    /**
+     * MBean dynamique: les attributs suivent les métriques déclarées
+     */
+    private class Bean implements DynamicMBean {
+        @Override public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Long v = snapshot().get(attribute);
+            if (v == null) throw new AttributeNotFoundException(attribute);
+            return v;
+        }
+
+        @Override public AttributeList getAttributes(String[] attributes) {
+            Map<String, Long> snap = snapshot();
+            AttributeList list = new AttributeList();
+            for (String a : attributes) if (snap.containsKey(a)) list.add(new Attribute(a, snap.get(a)));
+            return list;
+        }
+
+        @Override public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Métriques en lecture seule");
+        }
+
+        @Override public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override public Object invoke(String actionName, Object[] params, String[] signature) throws MBeanException {
+            throw new MBeanException(new UnsupportedOperationException(actionName));
+        }
+
+        @Override public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attrs = new ArrayList<>();
+            for (String name : snapshot().keySet()) {
+                attrs.add(new MBeanAttributeInfo(name, Long.class.getName(), name, true, false, false));
+            }
+            return new MBeanInfo(MetricsRegistry.class.getName(), "Métriques du serveur " + transport,
+                    attrs.toArray(new MBeanAttributeInfo[0]), null, null, null);
+        }
+    }
+}
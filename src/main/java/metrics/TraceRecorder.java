@@ -0,0 +1,71 @@
+package metrics;
+
+/**
+ * LATENCES MESURÉES PAR UN RÉCEPTEUR
+ *
+ * À partir des champs de trace d'un message reçu:
+ * - endToEnd   : sentAt → réception
+ * - upstream   : sentAt → serverRecvAt       (client émetteur → serveur)
+ * - server     : serverRecvAt → serverSentAt (temps passé dans le serveur)
+ * - downstream : serverSentAt → réception    (serveur → client récepteur)
+ *
+ * En multicast (pas de serveur sur le chemin), seul endToEnd est renseigné.
+ *
+ * Le p99 "en direct" porte sur une fenêtre glissante de WINDOW_NANOS.
+ */
+public class TraceRecorder {
+
+    private static final long WINDOW_NANOS = 10_000_000_000L;
+
+    public final LatencyHistogram endToEnd = new LatencyHistogram();
+    public final LatencyHistogram upstream = new LatencyHistogram();
+    public final LatencyHistogram server = new LatencyHistogram();
+    public final LatencyHistogram downstream = new LatencyHistogram();
+
+    private volatile LatencyHistogram window = new LatencyHistogram();
+    private volatile LatencyHistogram previousWindow;
+    private volatile long windowStart = System.nanoTime();
+
+    /**
+     * Enregistre un message reçu maintenant (champs à 0 = absents)
+     */
+    public void record(long sentAt, long serverRecvAt, long serverSentAt) {
+        if (sentAt == 0) return;
+        long now = Tracing.nowMicros();
+        long e2e = (now - sentAt) * 1000;
+        endToEnd.record(e2e);
+        currentWindow().record(e2e);
+        if (serverRecvAt != 0) upstream.record((serverRecvAt - sentAt) * 1000);
+        if (serverRecvAt != 0 && serverSentAt != 0) server.record((serverSentAt - serverRecvAt) * 1000);
+        if (serverSentAt != 0) downstream.record((now - serverSentAt) * 1000);
+    }
+
+    /**
+     * p99 de bout en bout sur la fenêtre récente (nanosecondes)
+     */
+    public long liveP99Nanos() {
+        LatencyHistogram current = currentWindow();
+        LatencyHistogram prev = previousWindow;
+        // Fenêtre courante trop jeune: on garde la précédente
+        if (current.count() < 20 && prev != null) return prev.quantile(0.99);
+        return current.quantile(0.99);
+    }
+
+    public long liveCount() {
+        return currentWindow().count();
+    }
+
+    private LatencyHistogram currentWindow() {
+        long now = System.nanoTime();
+        if (now - windowStart >= WINDOW_NANOS) {
+            synchronized (this) {
+                if (now - windowStart >= WINDOW_NANOS) {
+                    previousWindow = window;
+                    window = new LatencyHistogram();
+                    windowStart = now;
+                }
+            }
+        }
+        return window;
+    }
+}
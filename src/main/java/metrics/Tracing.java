@@ -0,0 +1,63 @@
+package metrics;
+
+import java.time.Instant;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TRAÇAGE DE BOUT EN BOUT DES MESSAGES
+ *
+ * Les Message portent quatre champs facultatifs (0 = absent):
+ * - traceId      : identifiant aléatoire attribué par l'émetteur
+ * - sentAt       : envoi par le client (sendText / sendFile)
+ * - serverRecvAt : réception par le serveur
+ * - serverSentAt : réémission par le serveur vers ce destinataire
+ *
+ * Les horodatages sont en microsecondes depuis l'époque Unix (horloge
+ * murale): entre machines distinctes, la précision dépend de la
+ * synchronisation NTP des horloges.
+ *
+ * Propriétés système:
+ *   -Dtrace.enabled=false   désactive l'horodatage côté client
+ *   -Dtrace.slowMs=200      seuil de journalisation des traces lentes
+ */
+public final class Tracing {
+
+    public static final boolean ENABLED = !"false".equals(System.getProperty("trace.enabled"));
+    public static final long SLOW_MICROS = Long.getLong("trace.slowMs", 200) * 1000;
+
+    /**
+     * Au plus une trace lente journalisée par seconde (échantillonnage)
+     */
+    private static final long SLOW_LOG_INTERVAL_NANOS = 1_000_000_000L;
+    private static final AtomicLong lastSlowLog = new AtomicLong();
+
+    private Tracing() {}
+
+    public static long nowMicros() {
+        Instant now = Instant.now();
+        return now.getEpochSecond() * 1_000_000L + now.getNano() / 1000;
+    }
+
+    /**
+     * Nouvel identifiant de trace (jamais 0)
+     */
+    public static long newTraceId() {
+        return (ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE) | 1;
+    }
+
+    public static String id(long traceId) {
+        return Long.toHexString(traceId);
+    }
+
+    /**
+     * Vrai si la durée dépasse le seuil ET qu'aucune trace lente n'a été
+     * journalisée depuis une seconde
+     */
+    public static boolean shouldLogSlow(long micros) {
+        if (micros < SLOW_MICROS) return false;
+        long now = System.nanoTime();
+        long last = lastSlowLog.get();
+        return now - last >= SLOW_LOG_INTERVAL_NANOS && lastSlowLog.compareAndSet(last, now);
+    }
+}
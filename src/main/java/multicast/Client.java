@@ -1,21 +1,43 @@
 package multicast;
 
+import crypto.GroupKeys;
+import datagram.Compression;
+import datagram.EncodeBuffer;
+import datagram.LossStats;
+import datagram.MessageBatcher;
+import datagram.SocketTuning;
+import download.Download;
+import history.ChatHistory;
+import history.HistoryDialog;
+import metrics.TraceRecorder;
+import metrics.Tracing;
+import ui.ChatView;
+import ui.SendQueue;
+
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
-import javax.swing.text.BadLocationException;
-import javax.swing.text.Document;
 import java.awt.*;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.io.*;
 import java.net.*;
-import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * CLIENT MULTICAST
  *
  * Application client de chat utilisant le protocole multicast IP.
- * Structure identique aux clients TCP/UDP mais utilise MulticastSocket.
+ * Structure identique aux clients TCP/UDP mais s'abonne à un groupe multicast.
  *
  * FONCTIONNALITÉS:
  * - Rejoindre un groupe multicast
@@ -25,7 +47,7 @@ import java.nio.file.Files;
  * - Liste des destinataires disponibles
  *
  * DIFFÉRENCE AVEC UDP/TCP:
- * - MULTICAST: MulticastSocket qui rejoint un groupe (joinGroup)
+ * - MULTICAST: Socket qui rejoint un groupe sur une ou plusieurs interfaces (GroupMembership)
  * - UDP: DatagramSocket point à point avec un serveur
  * - TCP: Socket avec connexion établie
  * - MULTICAST: Tous les membres du groupe reçoivent tous les messages (broadcast naturel)
@@ -43,12 +65,40 @@ public class Client extends JFrame {
     private static final int DEFAULT_PORT = 4446;
     private static final int BUFFER_SIZE = 65535;
 
+    // Nombre de messages de l'historique réaffichés à la connexion
+    private static final int HISTORY_REPLAY = 20;
+
+    // Annonces d'arrivée et de départ (le départ retire le membre de l'annuaire unicast)
+    private static final String HELLO_TEXT = "*** a rejoint le groupe ***";
+    private static final String BYE_TEXT = "*** a quitté le groupe ***";
+
+    // Regroupement des petits messages (opt-in): -Dmulticast.batch=true
+    private static final boolean BATCH_ENABLED = Boolean.getBoolean("multicast.batch");
+    private static final long BATCH_DELAY_MS = Long.getLong("multicast.batch.delayMs", 5);
+    private static final int BATCH_MAX_BYTES = Integer.getInteger("multicast.batch.maxBytes", MessageBatcher.DEFAULT_MAX_BYTES);
+
+    // Régulation du débit d'envoi: -Dmulticast.pacing.rate=<octets/s> (0 = désactivée)
+    private static final long PACING_RATE = Long.getLong("multicast.pacing.rate", 0);
+    private static final long PACING_BURST = Long.getLong("multicast.pacing.burst", 64 * 1024);
+
+    // Débit adaptatif selon les pertes rapportées (TFRC): -Dmulticast.pacing.adaptive=true
+    private static final boolean PACING_ADAPTIVE = Boolean.getBoolean("multicast.pacing.adaptive");
+    private static final long PACING_MIN_RATE = Long.getLong("multicast.pacing.minRate", 16 * 1024);
+    private static final long PACING_MAX_RATE = Long.getLong("multicast.pacing.maxRate", 12_500_000); // ~100 Mbit/s
+    private static final long PACING_RTT_MS = Long.getLong("multicast.pacing.rttMs", 50);
+
+    // Rapports de perte envoyés aux émetteurs régulés (fraction des récepteurs tirée au sort)
+    private static final long FEEDBACK_INTERVAL_MS = Long.getLong("multicast.feedback.intervalMs", 1000);
+    private static final double FEEDBACK_RATIO = Double.parseDouble(System.getProperty("multicast.feedback.ratio", "0.25"));
+
     // ========== RÉSEAU ==========
 
     /**
-     * Socket multicast pour rejoindre le groupe et communiquer
+     * Abonnement au groupe sur les interfaces choisies (voir GroupMembership)
+     * et socket correspondant pour communiquer
      */
-    private MulticastSocket socket;
+    private GroupMembership membership;
+    private DatagramSocket socket;
 
     /**
      * Adresse du groupe multicast (classe D: 224.0.0.0 à 239.255.255.255)
@@ -61,21 +111,109 @@ public class Client extends JFrame {
     private int port;
 
     /**
-     * Thread de réception des messages du groupe
+     * Socket unicast de réception des messages privés (port annoncé dans chaque message)
+     */
+    private DatagramSocket directSocket;
+
+    /**
+     * Adresses unicast des autres membres, apprises en écoutant le groupe
+     */
+    private final PeerDirectory peers = new PeerDirectory();
+
+    /**
+     * Messages privés envoyés directement (hors groupe) et octets correspondants
+     */
+    private final AtomicLong directSent = new AtomicLong();
+    private final AtomicLong directBytes = new AtomicLong();
+
+    /**
+     * Regroupement des messages sortants (null si désactivé)
+     */
+    private MessageBatcher<Message> batcher;
+
+    /**
+     * Paquet d'envoi réutilisé (pointé sur le tampon d'encodage à chaque envoi)
+     */
+    private final DatagramPacket sendPacket = new DatagramPacket(new byte[0], 0);
+
+    /**
+     * Clés du groupe (null en clair, voir crypto.GroupKeys), et tampon des
+     * datagrammes chiffrés réutilisé sous le verrou de sendPacket
+     */
+    private volatile GroupKeys keys;
+    private byte[] sealed;
+
+    /**
+     * Régulateur de débit (null si désactivé) et contrôle adaptatif associé
+     */
+    private TokenBucket pacer;
+    private RateController rateController;
+
+    /**
+     * Numéro de séquence du dernier message envoyé
+     */
+    private final AtomicLong nextSeq = new AtomicLong();
+
+    /**
+     * Pertes observées par émetteur, et émetteurs qui attendent nos rapports
+     */
+    private final LossStats lossStats = new LossStats();
+    private final Set<String> pacedSenders = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Compression des envois, vers les membres qui l'annoncent (voir PeerDirectory)
+     */
+    private final Compression compression = new Compression("multicast");
+
+    /**
+     * Minuteur des rapports de perte et du recalcul de débit
+     */
+    private ScheduledExecutorService feedbackTimer;
+
+    /**
+     * Latences de bout en bout mesurées sur les messages du groupe
+     */
+    private final TraceRecorder traces = new TraceRecorder();
+
+    /**
+     * Rafraîchissement périodique des pertes et de la latence dans la barre d'état
+     */
+    private final Timer statusTimer = new Timer(2000, e -> refreshNetworkStatus());
+
+    /**
+     * Threads de réception des messages du groupe et des messages privés
      */
     private Thread readerThread;
+    private Thread directReaderThread;
 
     /**
      * Indicateur de connexion au groupe
      */
     private volatile boolean connected = false;
 
+    /**
+     * File d'envoi: lecture, compression et envoi hors de l'EDT (voir SendQueue)
+     */
+    private final SendQueue sendQueue = new SendQueue("Multicast-Send", new SendQueue.Listener() {
+        @Override public void progress(SendQueue.Job job, String phase, long done, long total) {
+            onSendProgress(job, phase, done, total);
+        }
+        @Override public void done(SendQueue.Job job, Exception error) {
+            onSendDone(job, error);
+        }
+    });
+
+    /**
+     * Historique local des messages envoyés et reçus (null si désactivé ou hors ligne)
+     */
+    private volatile ChatHistory history;
+
     // ========== INTERFACE GRAPHIQUE ==========
 
     /**
-     * Zone d'affichage des messages (avec support des images)
+     * Zone d'affichage des messages, virtualisée (voir ui.ChatView)
      */
-    private JTextPane chatPane;
+    private ChatView chatView;
 
     /**
      * Champ de saisie des messages
@@ -87,11 +225,28 @@ public class Client extends JFrame {
      */
     private JButton btnSend, btnFile, btnJoin, btnLeave;
 
+    /**
+     * Progression de l'envoi en cours et bouton d'annulation
+     */
+    private JProgressBar sendProgress;
+    private JButton btnCancel;
+    private JPanel progressRow;
+
     /**
      * Champs de configuration
      */
     private JTextField txtGroup, txtPort, txtPseudo;
 
+    /**
+     * Recherche dans l'historique
+     */
+    private JTextField searchField;
+
+    /**
+     * Interface(s) réseau sur lesquelles rejoindre le groupe
+     */
+    private JComboBox<String> ifaceCombo;
+
     /**
      * Liste déroulante des destinataires
      */
@@ -102,6 +257,7 @@ public class Client extends JFrame {
      * Label d'état de la connexion
      */
     private JLabel statusLabel;
+    private String statusText = "Hors ligne";
 
     /**
      * CONSTRUCTEUR
@@ -143,6 +299,14 @@ public class Client extends JFrame {
         txtPort = new JTextField(String.valueOf(DEFAULT_PORT), 6);
         c.gridx = 5; top.add(txtPort, c);
 
+        // Interface réseau (Auto, Toutes, ou une interface précise)
+        JLabel li = new JLabel("Interface:"); li.setForeground(Color.WHITE);
+        c.gridx = 6; top.add(li, c);
+        ifaceCombo = new JComboBox<>(GroupMembership.choices().toArray(new String[0]));
+        ifaceCombo.setEditable(true);
+        ifaceCombo.setSelectedItem(GroupMembership.DEFAULT_INTERFACES);
+        c.gridx = 7; top.add(ifaceCombo, c);
+
         // Boutons de connexion
         btnJoin = new JButton("Rejoindre");
         btnJoin.setBackground(new Color(0, 150, 110));
@@ -150,8 +314,8 @@ public class Client extends JFrame {
         btnLeave = new JButton("Quitter");
         btnLeave.setBackground(new Color(220, 20, 60));
         btnLeave.setForeground(Color.WHITE);
-        c.gridx = 6; top.add(btnJoin, c);
-        c.gridx = 7; top.add(btnLeave, c);
+        c.gridx = 8; top.add(btnJoin, c);
+        c.gridx = 9; top.add(btnLeave, c);
 
         root.add(top, BorderLayout.NORTH);
 
@@ -170,13 +334,22 @@ public class Client extends JFrame {
         targetCombo = new JComboBox<>(targetModel);
         left.add(targetCombo, lc);
 
+        // Recherche dans l'historique local ("mots @pseudo")
+        lc.gridy = 1;
+        searchField = new JTextField();
+        searchField.setToolTipText("Mots recherchés, @pseudo pour un émetteur");
+        left.add(searchField, lc);
+        lc.gridy = 2;
+        JButton btnSearch = new JButton("🔎 Historique");
+        left.add(btnSearch, lc);
+        btnSearch.addActionListener(e -> HistoryDialog.show(this, history, searchField.getText()));
+        searchField.addActionListener(e -> HistoryDialog.show(this, history, searchField.getText()));
+
         // Panel droit: Discussion
         JPanel right = new JPanel(new BorderLayout());
         right.setBorder(BorderFactory.createTitledBorder("Discussion"));
-        chatPane = new JTextPane();
-        chatPane.setEditable(false);
-        chatPane.setContentType("text/plain");
-        right.add(new JScrollPane(chatPane), BorderLayout.CENTER);
+        chatView = new ChatView();
+        right.add(chatView, BorderLayout.CENTER);
 
         split.setLeftComponent(left);
         split.setRightComponent(right);
@@ -202,6 +375,16 @@ public class Client extends JFrame {
         statusLabel = new JLabel("Hors ligne");
         statusLabel.setForeground(new Color(160,0,0));
 
+        // Progression de l'envoi en cours (visible seulement pendant un gros envoi)
+        progressRow = new JPanel(new BorderLayout(8,8));
+        sendProgress = new JProgressBar(0, 100);
+        sendProgress.setStringPainted(true);
+        btnCancel = new JButton("Annuler");
+        progressRow.add(sendProgress, BorderLayout.CENTER);
+        progressRow.add(btnCancel, BorderLayout.EAST);
+        progressRow.setVisible(false);
+
+        south.add(progressRow, BorderLayout.NORTH);
         south.add(bottom, BorderLayout.CENTER);
         south.add(statusLabel, BorderLayout.SOUTH);
         root.add(south, BorderLayout.SOUTH);
@@ -212,6 +395,7 @@ public class Client extends JFrame {
         btnSend.addActionListener(e -> sendText());
         btnFile.addActionListener(e -> sendFile());
         inputField.addActionListener(e -> sendText());
+        btnCancel.addActionListener(e -> cancelSend());
 
         updateButtons();
 
@@ -231,12 +415,12 @@ public class Client extends JFrame {
      *
      * PROCESSUS:
      * 1. Validation des paramètres (groupe, port)
-     * 2. Création du MulticastSocket
-     * 3. Appel de joinGroup() pour rejoindre le groupe multicast
+     * 2. Création du socket et abonnement au groupe sur les interfaces choisies
+     * 3. Socket unicast pour les messages privés
      * 4. Démarrage du thread de réception
      *
      * DIFFÉRENCE AVEC UDP/TCP:
-     * - MULTICAST: socket.joinGroup(group) - abonnement au groupe
+     * - MULTICAST: channel.join(group, interface) - abonnement au groupe
      * - UDP: Pas d'abonnement, juste création du socket
      * - TCP: Socket.connect() - connexion point à point
      *
@@ -269,38 +453,86 @@ public class Client extends JFrame {
             group = InetAddress.getByName(groupAddr);
             port = p;
 
+            // Clés du groupe (-Dcrypto, phrase -Dcrypto.psk commune aux membres)
+            keys = GroupKeys.create();
+
             // Vérification que c'est bien une adresse multicast (classe D)
             if (!group.isMulticastAddress()) {
                 warn("L'adresse doit être multicast (224.0.0.0 à 239.255.255.255).");
                 return;
             }
 
-            // Création du socket multicast
-            socket = new MulticastSocket(port);
-
-            // Rejoindre le groupe multicast (abonnement)
+            // Rejoindre le groupe multicast (abonnement) sur les interfaces choisies
             // À partir de ce moment, le socket reçoit tous les messages envoyés au groupe
-            socket.joinGroup(group);
+            membership = new GroupMembership(group, port, (String) ifaceCombo.getSelectedItem());
+            socket = membership.socket();
+            for (String w : new SocketTuning("multicast").apply(socket)) appendText("⚠️ " + w + "\n");
+            for (String w : membership.warnings()) appendText("⚠️ " + w + "\n");
+            if (!GroupMembership.LOOPBACK) {
+                appendText("ℹ️ Boucle locale désactivée : les membres sur cette machine ne reçoivent pas " +
+                           "vos messages (-Dmulticast.loopback=true pour la rétablir)\n");
+            }
+
+            // Socket unicast (port éphémère) pour les messages privés
+            if (PeerDirectory.ENABLED) {
+                directSocket = new DatagramSocket(0);
+            }
+
+            if (BATCH_ENABLED) {
+                batcher = new MessageBatcher<>("Multicast-Batcher", Message[]::new, BATCH_MAX_BYTES, BATCH_DELAY_MS,
+                        this::sendBytes, e -> warn("Erreur envoi : " + e.getMessage()));
+            }
+
+            if (PACING_RATE > 0 || PACING_ADAPTIVE) {
+                double initialRate = PACING_RATE > 0 ? PACING_RATE : 1_000_000;
+                pacer = new TokenBucket(initialRate, PACING_BURST);
+                if (PACING_ADAPTIVE) {
+                    rateController = new RateController(pacer, PACING_MIN_RATE, PACING_MAX_RATE,
+                            PACING_RTT_MS, MessageBatcher.DEFAULT_MAX_BYTES);
+                }
+            }
+
+            lossStats.clear();
+            pacedSenders.clear();
+            peers.clear();
+            feedbackTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "Multicast-Feedback");
+                t.setDaemon(true);
+                return t;
+            });
+            feedbackTimer.scheduleAtFixedRate(this::feedbackTick,
+                    FEEDBACK_INTERVAL_MS, FEEDBACK_INTERVAL_MS, TimeUnit.MILLISECONDS);
 
             // Activation de la connexion
             connected = true;
+            statusTimer.start();
 
             // Démarrage du thread de réception
-            readerThread = new Thread(this::readLoop, "Multicast-Reader");
+            DatagramSocket groupSocket = socket;
+            readerThread = new Thread(() -> readLoop(groupSocket), "Multicast-Reader");
             readerThread.start();
+            if (directSocket != null) {
+                DatagramSocket direct = directSocket;
+                directReaderThread = new Thread(() -> readLoop(direct), "Multicast-Direct-Reader");
+                directReaderThread.start();
+            }
 
             // Mise à jour de l'interface
-            setStatus(true, "Membre du groupe " + groupAddr + ":" + port);
+            openHistory();
+            setStatus(true, "Membre du groupe " + groupAddr + ":" + port + " via " + membership.describe());
             info("Vous avez rejoint le groupe.");
             updateButtons();
 
             // Envoi d'un message d'annonce au groupe
-            Message hello = new Message(Message.Type.TEXTE, safePseudo(), "Tous", "*** a rejoint le groupe ***");
+            Message hello = new Message(Message.Type.TEXTE, safePseudo(), "Tous", HELLO_TEXT);
             sendMessage(hello);
 
         } catch (IOException ex) {
             warn("Erreur de connexion : " + ex.getMessage());
             leaveGroup();
+        } catch (GeneralSecurityException | IllegalStateException ex) {
+            warn("Chiffrement impossible : " + ex.getMessage());
+            leaveGroup();
         }
     }
 
@@ -309,12 +541,12 @@ public class Client extends JFrame {
      *
      * PROCESSUS:
      * 1. Envoi d'un message d'au revoir
-     * 2. Appel de leaveGroup() pour quitter le groupe
+     * 2. Désabonnement du groupe sur chaque interface
      * 3. Fermeture du socket
      * 4. Arrêt du thread de réception
      *
      * DIFFÉRENCE AVEC UDP/TCP:
-     * - MULTICAST: socket.leaveGroup(group) - désabonnement du groupe
+     * - MULTICAST: MembershipKey.drop() - désabonnement du groupe
      * - UDP: Juste fermeture du socket
      * - TCP: socket.close() - fermeture de la connexion
      */
@@ -323,34 +555,50 @@ public class Client extends JFrame {
 
         // Envoi d'un message d'au revoir au groupe
         try {
-            Message bye = new Message(Message.Type.TEXTE, safePseudo(), "Tous", "*** a quitté le groupe ***");
+            Message bye = new Message(Message.Type.TEXTE, safePseudo(), "Tous", BYE_TEXT);
             sendMessage(bye);
         } catch (Exception ignore) {}
 
         connected = false;
+        statusTimer.stop();
+        sendQueue.cancelAll();
 
-        // Quitter le groupe multicast (désabonnement)
-        try {
-            if (socket != null && group != null) {
-                socket.leaveGroup(group);
-            }
-        } catch (IOException ignore) {}
+        if (feedbackTimer != null) {
+            feedbackTimer.shutdownNow();
+            feedbackTimer = null;
+        }
+
+        // Envoi des messages encore en attente dans le lot (dont l'au revoir)
+        if (batcher != null) {
+            batcher.close();
+            batcher = null;
+        }
 
-        // Fermeture du socket
-        if (socket != null && !socket.isClosed()) {
-            socket.close();
+        // Quitter le groupe multicast sur chaque interface, puis fermeture du socket
+        if (membership != null) {
+            membership.close();
+            membership = null;
         }
         socket = null;
+        if (directSocket != null) {
+            directSocket.close();
+            directSocket = null;
+        }
+        pacer = null;
+        rateController = null;
 
-        // Attente de la fin du thread de réception
-        if (readerThread != null && readerThread.isAlive()) {
+        // Attente de la fin des threads de réception
+        for (Thread t : new Thread[] { readerThread, directReaderThread }) {
+            if (t == null || !t.isAlive() || t == Thread.currentThread()) continue;
             try {
-                readerThread.join(200);
+                t.join(200);
             } catch (InterruptedException ignore) {
                 Thread.currentThread().interrupt();
             }
         }
 
+        closeHistory();
+
         // Mise à jour de l'interface
         setStatus(false, "Hors ligne");
         updateButtons();
@@ -371,8 +619,12 @@ public class Client extends JFrame {
      * - UDP: Reçoit uniquement les messages envoyés directement au client
      *
      * NOTE: Il faut filtrer ses propres messages pour éviter de les afficher deux fois.
+     *
+     * La même boucle sert au socket unicast (messages privés reçus directement).
+     *
+     * @param from Socket à écouter (groupe ou unicast)
      */
-    private void readLoop() {
+    private void readLoop(DatagramSocket from) {
         // Buffer de réception
         byte[] buffer = new byte[BUFFER_SIZE];
 
@@ -383,53 +635,34 @@ public class Client extends JFrame {
 
                 // Réception d'un paquet multicast (bloquant)
                 // Tous les membres du groupe reçoivent ce paquet
-                socket.receive(packet);
+                from.receive(packet);
+
+                // Déchiffrement: nos propres datagrammes (renvoyés par le groupe) et
+                // les datagrammes forgés, rejoués ou en clair sont ignorés
+                int offset = 0, length = packet.getLength();
+                GroupKeys k = keys;
+                if (k != null) {
+                    if (k.isOwn(buffer, length)) continue;
+                    length = k.open(buffer, length);
+                    if (length < 0) continue;
+                    offset = GroupKeys.HEADER;
+                }
 
                 // Désérialisation du message
-                ByteArrayInputStream bis = new ByteArrayInputStream(
-                    packet.getData(), 0, packet.getLength()
-                );
+                ByteArrayInputStream bis = new ByteArrayInputStream(buffer, offset, length);
                 ObjectInputStream ois = new ObjectInputStream(bis);
                 Object o = ois.readObject();
 
-                // Vérification du type d'objet reçu
-                if (!(o instanceof Message msg)) continue;
-
-                // Filtrage: Ne pas afficher ses propres messages
-                // (car on les affiche déjà localement lors de l'envoi)
-                if (msg.sender != null && msg.sender.equals(safePseudo())) {
+                // Lot de messages regroupés par l'émetteur
+                if (o instanceof Message[] lot) {
+                    for (Message m : lot) handleMessage(m, packet.getAddress());
                     continue;
                 }
 
-                // Traitement selon le type de message
-                switch (msg.type) {
-                    case TEXTE -> appendText("💬 " + msg.sender + " : " + msg.text + "\n");
-
-                    case FICHIER -> {
-                        if (msg.fileBytes != null && msg.filename != null) {
-                            String lower = msg.filename.toLowerCase();
-                            // Affichage des images inline
-                            if (lower.endsWith(".png") || lower.endsWith(".jpg") ||
-                                lower.endsWith(".jpeg") || lower.endsWith(".gif")) {
-                                appendImage(new ImageIcon(msg.fileBytes));
-                            }
-                            appendText("🗂️ Fichier reçu de " + msg.sender + " : " + msg.filename +
-                                       " (" + msg.fileBytes.length + " octets)\n");
-                        }
-                    }
+                // Vérification du type d'objet reçu
+                if (!(o instanceof Message msg)) continue;
 
-                    case LISTE -> SwingUtilities.invokeLater(() -> {
-                        // Mise à jour de la liste des destinataires
-                        targetModel.removeAllElements();
-                        targetModel.addElement("Tous");
-                        String[] users = (msg.text == null ? "" : msg.text).split(",");
-                        for (String u : users) {
-                            if (u != null && !u.isBlank()) {
-                                targetModel.addElement(u.trim());
-                            }
-                        }
-                    });
-                }
+                handleMessage(msg, packet.getAddress());
 
             } catch (EOFException eof) {
                 break;
@@ -443,6 +676,130 @@ public class Client extends JFrame {
         leaveGroup();
     }
 
+    /**
+     * TRAITEMENT D'UN MESSAGE REÇU DU GROUPE
+     *
+     * Ignore ses propres messages et les messages privés destinés à d'autres,
+     * puis affiche le message selon son type.
+     *
+     * @param msg  Message reçu
+     * @param from Adresse IP de l'émetteur (pour l'envoi direct des messages privés)
+     */
+    private void handleMessage(Message msg, InetAddress from) {
+        // Filtrage: Ne pas afficher ses propres messages
+        // (car on les affiche déjà localement lors de l'envoi)
+        if (msg.sender != null && msg.sender.equals(safePseudo())) {
+            return;
+        }
+
+        // Annuaire unicast: adresse annoncée, oubliée au départ du membre
+        if (msg.type == Message.Type.TEXTE && BYE_TEXT.equals(msg.text)) {
+            peers.forget(msg.sender);
+        } else {
+            peers.learn(msg, from);
+        }
+
+        // Message privé passé par le groupe (adresse du destinataire inconnue):
+        // seul le destinataire le traite
+        if (msg.type != Message.Type.RAPPORT && PeerDirectory.isForOthers(msg, safePseudo())) {
+            return;
+        }
+
+        // Décompression éventuelle de la charge utile
+        try {
+            Compression.decompress(msg);
+        } catch (IOException e) {
+            appendText("⚠️ Message de " + msg.sender + " illisible : " + e.getMessage() + "\n");
+            return;
+        }
+
+        // Estimation des pertes à partir des numéros de séquence
+        lossStats.record(msg.sender, msg.seq);
+        traces.record(msg.sentAt, 0, 0);
+        if (msg.feedback) pacedSenders.add(msg.sender);
+
+        // Traitement selon le type de message
+        switch (msg.type) {
+            case TEXTE -> {
+                appendText("💬 " + msg.sender + (isPrivate(msg) ? " (privé)" : "") + " : " + msg.text + "\n");
+                remember(msg.sender, msg.target, msg.text, null);
+            }
+
+            case RAPPORT -> onLossReport(msg);
+
+            case FICHIER -> {
+                if (msg.fileBytes != null && msg.filename != null) {
+                    // Enregistrement dans le dossier des téléchargements (voir download.Download)
+                    Path saved = null;
+                    try {
+                        saved = Download.save(msg.filename, msg.fileBytes);
+                    } catch (IOException e) {
+                        appendText("⚠️ Fichier '" + msg.filename + "' non enregistré : " + e.getMessage() + "\n");
+                    }
+
+                    String lower = msg.filename.toLowerCase();
+                    // Affichage des images inline
+                    if (lower.endsWith(".png") || lower.endsWith(".jpg") ||
+                        lower.endsWith(".jpeg") || lower.endsWith(".gif")) {
+                        appendImage(new ImageIcon(msg.fileBytes));
+                    }
+                    appendText("🗂️ Fichier reçu de " + msg.sender + " : " + msg.filename +
+                               " (" + msg.fileBytes.length + " octets)" +
+                               (saved != null ? " — enregistré dans " + saved : "") + "\n");
+                    remember(msg.sender, msg.target, null, msg.filename);
+                }
+            }
+
+            case LISTE -> SwingUtilities.invokeLater(() -> {
+                // Mise à jour de la liste des destinataires
+                targetModel.removeAllElements();
+                targetModel.addElement("Tous");
+                String[] users = (msg.text == null ? "" : msg.text).split(",");
+                for (String u : users) {
+                    if (u != null && !u.isBlank()) {
+                        targetModel.addElement(u.trim());
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * RAPPORT DE PERTE REÇU
+     *
+     * Seul l'émetteur visé (en mode adaptatif) en tient compte.
+     */
+    private void onLossReport(Message msg) {
+        if (rateController == null || !safePseudo().equals(msg.target)) return;
+        double loss = RateController.parseLoss(msg.text);
+        if (!Double.isNaN(loss)) rateController.onFeedback(loss);
+    }
+
+    /**
+     * TÂCHE PÉRIODIQUE DE RÉGULATION
+     *
+     * 1. Tirage au sort: seule une fraction des récepteurs (FEEDBACK_RATIO)
+     *    envoie un RAPPORT à chaque émetteur régulé, pour éviter l'implosion
+     *    de rapports dans les grands groupes
+     * 2. En mode adaptatif, recalcul de notre propre débit d'envoi
+     */
+    private void feedbackTick() {
+        Map<String, Double> losses = lossStats.drainIntervalLoss();
+        if (ThreadLocalRandom.current().nextDouble() < FEEDBACK_RATIO) {
+            for (Map.Entry<String, Double> e : losses.entrySet()) {
+                if (!pacedSenders.contains(e.getKey())) continue;
+                Message report = new Message(Message.Type.RAPPORT, safePseudo(), e.getKey(),
+                        String.valueOf(e.getValue()));
+                try {
+                    sendMessage(report);
+                } catch (IOException ignore) {}
+            }
+        }
+        if (rateController != null) {
+            rateController.update();
+        }
+    }
+
     // ========== MÉTHODES D'ENVOI ==========
 
     /**
@@ -467,15 +824,18 @@ public class Client extends JFrame {
         String target = (String) targetCombo.getSelectedItem();
         if (target == null || target.isBlank()) target = "Tous";
 
+        String to = target;
         Message msg = new Message(Message.Type.TEXTE, safePseudo(), target, text);
+        inputField.setText("");
 
-        try {
+        // Compression et envoi sur le thread d'envoi
+        sendQueue.submit("message", job -> {
+            Compression.Result packed = peers.inflates(to) ? compression.compress(msg) : null;
+            job.checkCancelled();
             sendMessage(msg);
-            appendText("↗️ " + text + "\n");
-            inputField.setText("");
-        } catch (IOException e) {
-            warn("Erreur envoi : " + e.getMessage());
-        }
+            appendText("↗️ " + text + (packed != null ? "  [compressé " + packed + "]" : "") + "\n");
+            remember(msg.sender, to, text, null);
+        });
     }
 
     /**
@@ -494,20 +854,55 @@ public class Client extends JFrame {
         if (res != JFileChooser.APPROVE_OPTION) return;
 
         File f = chooser.getSelectedFile();
-        try {
-            // Lecture du fichier en bytes
-            byte[] bytes = Files.readAllBytes(f.toPath());
+        String selected = (String) targetCombo.getSelectedItem();
+        String target = selected == null || selected.isBlank() ? "Tous" : selected;
 
-            String target = (String) targetCombo.getSelectedItem();
-            if (target == null || target.isBlank()) target = "Tous";
+        // Lecture, compression et envoi sur le thread d'envoi (l'interface reste fluide)
+        sendQueue.submit(f.getName(), job -> {
+            byte[] bytes = SendQueue.readFile(f.toPath(), job);
 
             Message msg = new Message(Message.Type.FICHIER, safePseudo(), target, f.getName(), bytes);
+            // Compression si le format s'y prête (bilan affiché avec l'envoi)
+            Compression.Result packed = peers.inflates(target) ? compression.compress(msg) : null;
+            job.checkCancelled();
             sendMessage(msg);
 
-            appendText("↗️ Fichier envoyé : " + f.getName() + " (" + bytes.length + " octets)\n");
-        } catch (IOException e) {
-            warn("Erreur envoi fichier : " + e.getMessage());
+            appendText("↗️ Fichier envoyé : " + f.getName() + " (" + bytes.length + " octets)" +
+                       (packed != null ? " — compressé " + packed : "") + "\n");
+            remember(msg.sender, target, null, f.getName());
+        });
+    }
+
+    /**
+     * Avancement d'un gros envoi (appelé sur l'EDT)
+     */
+    private void onSendProgress(SendQueue.Job job, String phase, long done, long total) {
+        int pct = total == 0 ? 100 : (int) (done * 100 / total);
+        int waiting = sendQueue.depth() - 1;
+        sendProgress.setValue(pct);
+        sendProgress.setString(phase + " " + job.label + " — " + pct + " %" +
+                               (waiting > 0 ? " (+" + waiting + " en attente)" : ""));
+        progressRow.setVisible(true);
+    }
+
+    /**
+     * Fin d'un envoi (appelé sur l'EDT): erreur signalée, barre masquée quand la file est vide
+     */
+    private void onSendDone(SendQueue.Job job, Exception error) {
+        if (error instanceof CancellationException) {
+            appendText("✖️ Envoi annulé : " + job.label + "\n");
+        } else if (error != null && connected) {
+            warn("Erreur envoi " + job.label + " : " + error.getMessage());
         }
+        if (sendQueue.depth() == 0) progressRow.setVisible(false);
+    }
+
+    /**
+     * Annulation de l'envoi en cours (bouton "Annuler")
+     */
+    private void cancelSend() {
+        SendQueue.Job job = sendQueue.current();
+        if (job != null) job.cancel();
     }
 
     /**
@@ -526,17 +921,127 @@ public class Client extends JFrame {
      * Tous les membres du groupe (incluant l'émetteur) reçoivent le message.
      */
     private void sendMessage(Message msg) throws IOException {
-        // Sérialisation du message en bytes
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        ObjectOutputStream oos = new ObjectOutputStream(bos);
-        oos.writeObject(msg);
-        oos.flush();
-        byte[] data = bos.toByteArray();
-
-        // Création et envoi du paquet multicast
-        // Le paquet est envoyé à l'adresse du groupe, pas à un destinataire spécifique
-        DatagramPacket packet = new DatagramPacket(data, data.length, group, port);
-        socket.send(packet);
+        DatagramSocket direct = directSocket;
+        msg.unicastPort = direct != null ? direct.getLocalPort() : 0;
+        msg.inflates = compression.enabled();
+        if (Tracing.ENABLED && msg.sentAt == 0) {
+            msg.traceId = Tracing.newTraceId();
+            msg.sentAt = Tracing.nowMicros();
+        }
+
+        // Message privé dont le destinataire a annoncé son adresse: envoi direct,
+        // hors séquence du groupe (seq = 0, ignoré par l'estimation des pertes)
+        InetSocketAddress peer = direct != null ? peers.lookup(msg.target) : null;
+        if (peer != null) {
+            msg.seq = 0;
+            msg.feedback = false;
+            EncodeBuffer buf = EncodeBuffer.forThread();
+            int length = buf.encode(msg);
+            sendBytes(buf.array(), length, peer.getAddress(), peer.getPort());
+            directSent.incrementAndGet();
+            directBytes.addAndGet(length);
+            return;
+        }
+
+        msg.seq = nextSeq.incrementAndGet();
+        msg.feedback = rateController != null;
+
+        // Mode regroupé: le lot part quand il est plein ou après BATCH_DELAY_MS
+        if (batcher != null) {
+            batcher.add(msg);
+            return;
+        }
+
+        // Sérialisation dans le tampon réutilisé du thread, envoyé sans copie
+        EncodeBuffer buf = EncodeBuffer.forThread();
+        int length = buf.encode(msg);
+
+        sendBytes(buf.array(), length);
+    }
+
+    /**
+     * Envoi d'un datagramme déjà sérialisé au groupe
+     *
+     * Le paquet est envoyé à l'adresse du groupe, pas à un destinataire spécifique
+     */
+    private void sendBytes(byte[] data, int length) throws IOException {
+        sendBytes(data, length, group, port);
+    }
+
+    /**
+     * Envoi d'un datagramme déjà sérialisé au groupe ou à un membre (message privé)
+     *
+     * Seul le trafic du groupe est régulé: l'envoi direct ne charge que le destinataire
+     */
+    private void sendBytes(byte[] data, int length, InetAddress to, int toPort) throws IOException {
+        // Régulation: un datagramme qui tient dans la MTU (texte) part tout de suite,
+        // un gros datagramme (fichier) attend que le débit le permette
+        if (pacer != null && to.isMulticastAddress()) {
+            if (length > MessageBatcher.DEFAULT_MAX_BYTES) {
+                pacer.acquire(length);
+            } else {
+                pacer.consume(length);
+            }
+        }
+
+        synchronized (sendPacket) {
+            GroupKeys k = keys;
+            if (k != null) {
+                if (sealed == null || sealed.length < length + GroupKeys.OVERHEAD) {
+                    sealed = new byte[length + GroupKeys.OVERHEAD];
+                }
+                length = k.seal(data, 0, length, sealed);
+                data = sealed;
+            }
+            sendPacket.setData(data, 0, length);
+            sendPacket.setAddress(to);
+            sendPacket.setPort(toPort);
+            socket.send(sendPacket);
+        }
+    }
+
+    // ========== HISTORIQUE LOCAL ==========
+
+    /**
+     * Ouverture de l'historique du pseudo et réaffichage des derniers messages
+     */
+    private void openHistory() {
+        if (!ChatHistory.ENABLED || history != null) return;
+        try {
+            ChatHistory h = ChatHistory.open("multicast", safePseudo());
+            chatView.attachHistory(h, HISTORY_REPLAY);
+            history = h;
+        } catch (IOException e) {
+            appendText("⚠️ Historique indisponible : " + e.getMessage() + "\n");
+        }
+    }
+
+    /**
+     * Fermeture de l'historique (l'index en mémoire est écrit sur disque)
+     */
+    private void closeHistory() {
+        ChatHistory h = history;
+        history = null;
+        chatView.detachHistory();
+        if (h != null) {
+            try {
+                h.close();
+            } catch (IOException ignore) {}
+        }
+    }
+
+    /**
+     * Enregistrement d'un message envoyé ou reçu (historique coupé à la première erreur d'écriture)
+     */
+    private void remember(String sender, String target, String text, String filename) {
+        ChatHistory h = history;
+        if (h == null) return;
+        try {
+            h.append(sender, target, text, filename);
+        } catch (IOException e) {
+            history = null;
+            appendText("⚠️ Historique désactivé : " + e.getMessage() + "\n");
+        }
     }
 
     // ========== MÉTHODES D'AIDE À L'INTERFACE ==========
@@ -545,34 +1050,53 @@ public class Client extends JFrame {
      * Ajoute du texte à la zone de discussion
      */
     private void appendText(String text) {
-        SwingUtilities.invokeLater(() -> {
-            Document doc = chatPane.getDocument();
-            try {
-                doc.insertString(doc.getLength(), text, null);
-                chatPane.setCaretPosition(doc.getLength());
-            } catch (BadLocationException ignored) {}
-        });
+        chatView.append(text);
     }
 
     /**
      * Ajoute une image à la zone de discussion
      */
     private void appendImage(ImageIcon icon) {
-        SwingUtilities.invokeLater(() -> {
-            chatPane.setCaretPosition(chatPane.getDocument().getLength());
-            chatPane.insertIcon(icon);
-            appendText("\n");
-        });
+        chatView.appendImage(icon);
     }
 
     /**
      * Met à jour le label de statut
      */
     private void setStatus(boolean on, String text) {
+        statusText = text;
         statusLabel.setText(text);
         statusLabel.setForeground(on ? new Color(0,128,0) : new Color(160,0,0));
     }
 
+    /**
+     * Ajoute les compteurs de pertes et le p99 de latence au label de statut
+     * (détail des pertes par émetteur dans l'info-bulle)
+     */
+    private void refreshNetworkStatus() {
+        if (!connected) return;
+        long received = lossStats.totalReceived();
+        long lost = lossStats.totalLost();
+        double rate = received + lost == 0 ? 0 : (double) lost / (received + lost);
+        String text = statusText + String.format(" — reçus %d, perdus %d (%.1f %%)",
+                received, lost, rate * 100);
+        if (traces.endToEnd.count() > 0) {
+            text += String.format(" — latence p99 %.1f ms", traces.liveP99Nanos() / 1e6);
+        }
+        if (directSent.get() > 0) {
+            text += String.format(" — privés directs %d (%d Ko hors groupe)",
+                    directSent.get(), directBytes.get() / 1024);
+        }
+        statusLabel.setText(text);
+
+        StringBuilder tip = new StringBuilder("<html>");
+        for (String sender : lossStats.senders()) {
+            tip.append(String.format("%s : %d perdus / %d reçus (%.1f %%)<br>", sender,
+                    lossStats.lost(sender), lossStats.received(sender), lossStats.lossRate(sender) * 100));
+        }
+        statusLabel.setToolTipText(tip.append("</html>").toString());
+    }
+
     /**
      * Active/désactive les boutons selon l'état de connexion
      */
@@ -581,12 +1105,20 @@ public class Client extends JFrame {
         btnLeave.setEnabled(connected);
         txtGroup.setEnabled(!connected);
         txtPort.setEnabled(!connected);
+        ifaceCombo.setEnabled(!connected);
         txtPseudo.setEnabled(!connected);
         btnSend.setEnabled(connected);
         btnFile.setEnabled(connected);
         targetCombo.setEnabled(connected);
     }
 
+    /**
+     * Vrai si le message m'est adressé personnellement
+     */
+    private boolean isPrivate(Message msg) {
+        return msg.target != null && !"Tous".equals(msg.target);
+    }
+
     /**
      * Retourne le pseudo saisi (ou "User" par défaut)
      */
@@ -0,0 +1,209 @@
+package multicast;
+
+import java.io.IOException;
+import java.net.*;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.MembershipKey;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * ABONNEMENT AU GROUPE PAR INTERFACE RÉSEAU
+ *
+ * L'ancien MulticastSocket.joinGroup(InetAddress) laissait l'OS choisir une
+ * seule interface. Sur une machine à plusieurs cartes, le trafic pouvait
+ * arriver par la mauvaise (ou pas du tout), et la boucle locale renvoyait à
+ * l'émetteur chacun de ses propres datagrammes, décodés puis jetés en Java.
+ *
+ * Ici le socket est un DatagramChannel qui rejoint le groupe sur chaque
+ * interface choisie (une clé d'abonnement par interface):
+ * - "Auto"   : première interface active capable de multicast
+ * - "Toutes" : toutes les interfaces actives capables de multicast
+ * - un nom   : cette interface seulement (eth0, wlan0...)
+ * Les envois partent par la première interface choisie (IP_MULTICAST_IF).
+ *
+ * MULTICAST À SOURCE SPÉCIFIQUE (SSM):
+ * Avec -Dmulticast.sources=ip1,ip2, l'abonnement ne porte que sur ces
+ * émetteurs: le noyau (ou le routeur IGMPv3) filtre les autres sources.
+ * Si l'OS ne le permet pas, on se rabat sur un abonnement à toutes les sources.
+ *
+ * BOUCLE LOCALE:
+ * IP_MULTICAST_LOOP est désactivé: le noyau ne renvoie plus nos datagrammes
+ * aux sockets de la machine. Conséquence: deux membres (ou le serveur relai)
+ * sur la même machine ne s'entendent plus; -Dmulticast.loopback=true la rétablit.
+ *
+ * Propriétés système:
+ *   -Dmulticast.interfaces=eth0,eth1   interfaces par défaut     (Auto)
+ *   -Dmulticast.sources=10.0.0.5       sources autorisées (SSM)  (toutes)
+ *   -Dmulticast.loopback=true          boucle locale             (false)
+ */
+public final class GroupMembership implements AutoCloseable {
+
+    public static final String AUTO = "Auto";
+    public static final String ALL = "Toutes";
+
+    public static final String DEFAULT_INTERFACES = System.getProperty("multicast.interfaces", AUTO);
+    public static final String SOURCES = System.getProperty("multicast.sources", "");
+    public static final boolean LOOPBACK = Boolean.getBoolean("multicast.loopback");
+
+    private final DatagramChannel channel;
+    private final List<MembershipKey> keys = new ArrayList<>();
+    private final List<NetworkInterface> interfaces;
+    private final List<String> warnings = new ArrayList<>();
+
+    /**
+     * Ouvre le socket sur le port du groupe et rejoint le groupe
+     *
+     * @param group      Adresse du groupe (classe D ou ff00::/8)
+     * @param port       Port du groupe
+     * @param interfaces "Auto", "Toutes" ou liste de noms séparés par des virgules
+     */
+    public GroupMembership(InetAddress group, int port, String interfaces) throws IOException {
+        ProtocolFamily family = group instanceof Inet6Address ? StandardProtocolFamily.INET6 : StandardProtocolFamily.INET;
+        this.interfaces = resolve(interfaces, family);
+        List<InetAddress> sources = parseSources(SOURCES);
+
+        channel = DatagramChannel.open(family);
+        try {
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            channel.bind(new InetSocketAddress(port));
+            channel.setOption(StandardSocketOptions.IP_MULTICAST_IF, this.interfaces.get(0));
+            channel.setOption(StandardSocketOptions.IP_MULTICAST_LOOP, LOOPBACK);
+
+            for (NetworkInterface nif : this.interfaces) {
+                join(group, nif, sources);
+            }
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Socket à utiliser pour recevoir et envoyer (adaptateur du canal)
+     */
+    public DatagramSocket socket() {
+        return channel.socket();
+    }
+
+    /**
+     * Interfaces sur lesquelles le groupe a été rejoint
+     */
+    public List<NetworkInterface> interfaces() {
+        return Collections.unmodifiableList(interfaces);
+    }
+
+    /**
+     * Avertissements à afficher (repli SSM, boucle locale...)
+     */
+    public List<String> warnings() {
+        return warnings;
+    }
+
+    /**
+     * Résumé lisible: "eth0, eth1 — sources 10.0.0.5"
+     */
+    public String describe() {
+        StringBuilder sb = new StringBuilder();
+        for (NetworkInterface nif : interfaces) {
+            if (sb.length() > 0) sb.append(", ");
+            sb.append(nif.getName());
+        }
+        if (!SOURCES.isBlank()) sb.append(" — sources ").append(SOURCES);
+        return sb.toString();
+    }
+
+    /**
+     * Quitte le groupe sur toutes les interfaces et ferme le socket
+     */
+    @Override
+    public void close() {
+        for (MembershipKey k : keys) k.drop();
+        keys.clear();
+        try {
+            channel.close();
+        } catch (IOException ignore) {}
+    }
+
+    /**
+     * Choix proposés dans l'interface graphique: Auto, Toutes, puis chaque interface
+     */
+    public static List<String> choices() {
+        List<String> names = new ArrayList<>();
+        names.add(AUTO);
+        names.add(ALL);
+        try {
+            for (NetworkInterface nif : candidates(StandardProtocolFamily.INET)) names.add(nif.getName());
+        } catch (SocketException ignore) {}
+        return names;
+    }
+
+    private void join(InetAddress group, NetworkInterface nif, List<InetAddress> sources) throws IOException {
+        if (sources.isEmpty()) {
+            keys.add(channel.join(group, nif));
+            return;
+        }
+        try {
+            for (InetAddress source : sources) keys.add(channel.join(group, nif, source));
+        } catch (UnsupportedOperationException e) {
+            // Pas de SSM sur cet OS: abonnement à toutes les sources
+            for (MembershipKey k : keys) if (nif.equals(k.networkInterface())) k.drop();
+            keys.removeIf(k -> !k.isValid());
+            keys.add(channel.join(group, nif));
+            warnings.add("Filtrage par source indisponible sur " + nif.getName() + " : toutes les sources sont reçues");
+        }
+    }
+
+    private static List<NetworkInterface> resolve(String spec, ProtocolFamily family) throws IOException {
+        List<NetworkInterface> available = candidates(family);
+        String s = spec == null || spec.isBlank() ? AUTO : spec.trim();
+
+        if (AUTO.equalsIgnoreCase(s) || ALL.equalsIgnoreCase(s)) {
+            // Les interfaces physiques d'abord, la boucle locale en dernier recours
+            List<NetworkInterface> preferred = new ArrayList<>();
+            for (NetworkInterface nif : available) if (!nif.isLoopback()) preferred.add(nif);
+            if (preferred.isEmpty()) preferred = available;
+            if (preferred.isEmpty()) throw new SocketException("Aucune interface réseau capable de multicast");
+            return AUTO.equalsIgnoreCase(s) ? List.of(preferred.get(0)) : preferred;
+        }
+
+        List<NetworkInterface> chosen = new ArrayList<>();
+        for (String name : s.split(",")) {
+            if (name.isBlank()) continue;
+            NetworkInterface nif = NetworkInterface.getByName(name.trim());
+            if (nif == null || !available.contains(nif)) {
+                throw new SocketException("Interface inconnue ou sans multicast : " + name.trim());
+            }
+            if (!chosen.contains(nif)) chosen.add(nif);
+        }
+        if (chosen.isEmpty()) throw new SocketException("Aucune interface choisie");
+        return chosen;
+    }
+
+    /**
+     * Interfaces actives, capables de multicast et portant une adresse de la famille du groupe
+     */
+    private static List<NetworkInterface> candidates(ProtocolFamily family) throws SocketException {
+        List<NetworkInterface> list = new ArrayList<>();
+        for (NetworkInterface nif : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+            if (!nif.isUp() || !(nif.supportsMulticast() || nif.isLoopback())) continue;
+            for (InetAddress a : Collections.list(nif.getInetAddresses())) {
+                boolean v6 = a instanceof Inet6Address;
+                if (v6 == (family == StandardProtocolFamily.INET6)) {
+                    list.add(nif);
+                    break;
+                }
+            }
+        }
+        return list;
+    }
+
+    private static List<InetAddress> parseSources(String spec) throws UnknownHostException {
+        List<InetAddress> sources = new ArrayList<>();
+        for (String s : spec.split(",")) {
+            if (!s.isBlank()) sources.add(InetAddress.getByName(s.trim()));
+        }
+        return sources;
+    }
+}
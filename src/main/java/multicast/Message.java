@@ -1,6 +1,9 @@
 package multicast;
 
+import datagram.Compression;
+
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 
 /**
  * CLASSE MESSAGE MULTICAST
@@ -12,6 +15,7 @@ import java.io.Serializable;
  * - TEXTE   : Message textuel simple
  * - FICHIER : Transfert de fichier avec nom et contenu
  * - LISTE   : Liste des clients connectés (géré par le serveur relai)
+ * - RAPPORT : Taux de perte observé par un récepteur, adressé à un émetteur
  *
  * UTILISATION MULTICAST:
  * Cette classe est identique à TCP/UDP mais utilisée avec MulticastSocket.
@@ -22,17 +26,17 @@ import java.io.Serializable;
  * - UDP: Messages envoyés à une adresse IP spécifique (point à point)
  * - TCP: Connexion établie entre deux points précis
  */
-public class Message implements Serializable {
+public class Message implements Serializable, Compression.Payload {
 
     /**
      * Enumération des types de messages possibles
      */
-    public enum Type { TEXTE, FICHIER, LISTE }
+    public enum Type { TEXTE, FICHIER, LISTE, RAPPORT }
 
     // ========== ATTRIBUTS PUBLICS ==========
 
     /**
-     * Type du message (TEXTE, FICHIER ou LISTE)
+     * Type du message (TEXTE, FICHIER, LISTE ou RAPPORT)
      */
     public Type type;
 
@@ -43,7 +47,8 @@ public class Message implements Serializable {
 
     /**
      * Pseudo du destinataire ("Tous" pour broadcast)
-     * Note: En multicast pur, tous reçoivent, mais on garde cette info pour cohérence
+     * Un message privé part en unicast si l'adresse du destinataire est connue
+     * (voir PeerDirectory); sinon il passe par le groupe et les autres l'ignorent
      */
     public String target;
 
@@ -62,6 +67,56 @@ public class Message implements Serializable {
      */
     public byte[] fileBytes;
 
+    /**
+     * Numéro de séquence attribué par l'émetteur (1, 2, 3...)
+     * Permet aux récepteurs d'estimer les pertes
+     */
+    public long seq;
+
+    /**
+     * Vrai si l'émetteur régule son débit et attend des RAPPORT de perte
+     */
+    public boolean feedback;
+
+    // ========== COMPRESSION (voir datagram.Compression) ==========
+
+    /**
+     * Vrai si la charge utile est compressée (Deflate) dans fileBytes
+     * (pour un TEXTE compressé, text vaut null)
+     */
+    public boolean compressed;
+
+    /**
+     * Taille de la charge utile avant compression (octets)
+     */
+    public int rawLength;
+
+    /**
+     * Vrai si l'émetteur sait décompresser: on ne compresse que vers les
+     * membres qui l'annoncent (voir PeerDirectory)
+     */
+    public boolean inflates;
+
+    // ========== ENVOI DIRECT (voir PeerDirectory) ==========
+
+    /**
+     * Port unicast sur lequel l'émetteur reçoit ses messages privés (0 = aucun)
+     * L'adresse IP est celle d'où provient le datagramme
+     */
+    public int unicastPort;
+
+    // ========== TRAÇAGE DE BOUT EN BOUT (voir metrics.Tracing) ==========
+
+    /**
+     * Identifiant de trace attribué par l'émetteur (0 = message non tracé)
+     */
+    public long traceId;
+
+    /**
+     * Instant d'envoi par le client (microsecondes epoch)
+     */
+    public long sentAt;
+
     // ========== CONSTRUCTEURS ==========
 
     /**
@@ -100,5 +155,43 @@ public class Message implements Serializable {
      * Constructeur par défaut (requis pour la sérialisation)
      */
     public Message() {}
-}
 
+    // ========== CHARGE UTILE (voir datagram.Compression) ==========
+
+    @Override public boolean isText() { return type == Type.TEXTE; }
+
+    @Override public byte[] plainBytes() {
+        return switch (type) {
+            case TEXTE -> text == null ? null : text.getBytes(StandardCharsets.UTF_8);
+            case FICHIER -> fileBytes;
+            default -> null;
+        };
+    }
+
+    @Override public String filename() { return filename; }
+
+    @Override public String text() { return text; }
+
+    @Override public byte[] fileBytes() { return fileBytes; }
+
+    @Override public boolean compressed() { return compressed; }
+
+    @Override public int rawLength() { return rawLength; }
+
+    @Override public void packed(byte[] wire, int rawLength) {
+        this.compressed = true;
+        this.rawLength = rawLength;
+        this.fileBytes = wire;
+        if (type == Type.TEXTE) text = null;
+    }
+
+    @Override public void unpacked(byte[] raw) {
+        compressed = false;
+        if (type == Type.TEXTE) {
+            text = new String(raw, StandardCharsets.UTF_8);
+            fileBytes = null;
+        } else {
+            fileBytes = raw;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package multicast;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ANNUAIRE DES ADRESSES UNICAST DES MEMBRES
+ *
+ * En multicast pur, un message privé part au groupe: chaque membre le reçoit,
+ * le désérialise puis le jette. Pour un fichier, c'est la bande passante de
+ * tout le groupe consommée pour un seul destinataire.
+ *
+ * Chaque client ouvre donc aussi un socket unicast et annonce son port dans
+ * tous ses messages (Message.unicastPort). En écoutant le groupe, chacun apprend
+ * pseudo → adresse:port, et un message privé part directement au destinataire.
+ * Tant que l'adresse est inconnue (membre silencieux), le message passe encore
+ * par le groupe.
+ *
+ * L'annuaire retient aussi quels membres savent décompresser (Message.inflates,
+ * voir datagram.Compression): un message n'est compressé que si son
+ * destinataire l'a annoncé, ou, vers le groupe, si aucun membre entendu ne
+ * l'ignore.
+ *
+ * Propriété système:
+ *   -Dmulticast.direct=false   tous les messages privés passent par le groupe
+ */
+public final class PeerDirectory {
+
+    public static final boolean ENABLED = !"false".equals(System.getProperty("multicast.direct"));
+
+    private final Map<String, InetSocketAddress> peers = new ConcurrentHashMap<>();
+    private final Map<String, Boolean> inflates = new ConcurrentHashMap<>();
+
+    /**
+     * Note l'adresse unicast annoncée par l'émetteur d'un message reçu
+     *
+     * @param from Adresse IP source du datagramme
+     */
+    public void learn(Message msg, InetAddress from) {
+        if (msg.sender == null || from == null) return;
+        inflates.put(msg.sender, msg.inflates);
+        if (msg.unicastPort > 0) {
+            peers.put(msg.sender, new InetSocketAddress(from, msg.unicastPort));
+        }
+    }
+
+    /**
+     * Oublie un membre (départ du groupe)
+     */
+    public void forget(String pseudo) {
+        if (pseudo == null) return;
+        peers.remove(pseudo);
+        inflates.remove(pseudo);
+    }
+
+    /**
+     * Adresse unicast du destinataire, ou null si le message doit passer par le groupe
+     */
+    public InetSocketAddress lookup(String target) {
+        if (!ENABLED || target == null || "Tous".equals(target)) return null;
+        return peers.get(target);
+    }
+
+    /**
+     * Vrai si l'on peut compresser vers ce destinataire ("Tous": tous les membres entendus)
+     */
+    public boolean inflates(String target) {
+        if (target == null || "Tous".equals(target)) return !inflates.containsValue(false);
+        return inflates.getOrDefault(target, false);
+    }
+
+    public int size() {
+        return peers.size();
+    }
+
+    public void clear() {
+        peers.clear();
+        inflates.clear();
+    }
+
+    /**
+     * Vrai si le message est privé et adressé à un autre membre que moi
+     */
+    public static boolean isForOthers(Message msg, String me) {
+        return msg.target != null && !"Tous".equals(msg.target) && !msg.target.equals(me);
+    }
+}
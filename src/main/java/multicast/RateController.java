@@ -0,0 +1,102 @@
+package multicast;
+
+/**
+ * CONTRÔLE DE CONGESTION ADAPTATIF (INSPIRÉ DE TFRC)
+ *
+ * Ajuste le débit du TokenBucket à partir des taux de perte que renvoie un
+ * échantillon de récepteurs (messages RAPPORT).
+ *
+ * À chaque intervalle:
+ * - Aucun rapport reçu: le débit ne change pas
+ * - Rapports sans perte: le débit augmente de moitié (jusqu'à maxRate)
+ * - Perte p signalée: le débit suit l'équation de TFRC (RFC 5348) pour le
+ *   pire récepteur, sans jamais plus que doubler d'un intervalle à l'autre
+ *
+ *   X = s / (R * sqrt(2p/3) + t_RTO * 3 * sqrt(3p/8) * p * (1 + 32p²))
+ *
+ * En multicast, le RTT n'est pas mesurable simplement: on utilise un RTT
+ * configuré et t_RTO = 4R.
+ */
+public class RateController {
+
+    private final TokenBucket bucket;
+    private final double minRate;
+    private final double maxRate;
+    private final double rttSeconds;
+    private final int packetSize;
+
+    /**
+     * Pire taux de perte rapporté pendant l'intervalle courant (-1 = aucun rapport)
+     */
+    private double worstLoss = -1;
+
+    /**
+     * @param bucket     Régulateur dont on pilote le débit
+     * @param minRate    Débit plancher (octets/s)
+     * @param maxRate    Débit plafond (octets/s)
+     * @param rttMs      RTT supposé du groupe
+     * @param packetSize Taille de paquet de référence (octets)
+     */
+    public RateController(TokenBucket bucket, double minRate, double maxRate, long rttMs, int packetSize) {
+        this.bucket = bucket;
+        this.minRate = minRate;
+        this.maxRate = maxRate;
+        this.rttSeconds = rttMs / 1000.0;
+        this.packetSize = packetSize;
+    }
+
+    /**
+     * Taux de perte d'un RAPPORT reçu (texte envoyé par un autre membre, donc
+     * non fiable)
+     *
+     * @return Taux entre 0 et 1, ou NaN si le texte est illisible ou hors bornes
+     */
+    static double parseLoss(String text) {
+        if (text == null) return Double.NaN;
+        try {
+            double loss = Double.parseDouble(text);
+            return loss >= 0 && loss <= 1 ? loss : Double.NaN;
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * Prise en compte d'un rapport de perte d'un récepteur
+     */
+    public synchronized void onFeedback(double lossRate) {
+        worstLoss = Math.max(worstLoss, lossRate);
+    }
+
+    /**
+     * Fin d'intervalle: recalcul du débit
+     *
+     * @return Nouveau débit (octets/s)
+     */
+    public synchronized double update() {
+        double current = bucket.getRate();
+        if (worstLoss < 0) return current;
+
+        double next;
+        if (worstLoss == 0) {
+            next = current * 1.5;
+        } else {
+            next = Math.min(tfrcRate(worstLoss), current * 2);
+        }
+        next = Math.max(minRate, Math.min(maxRate, next));
+        bucket.setRate(next);
+        worstLoss = -1;
+        return next;
+    }
+
+    /**
+     * Débit "TCP-friendly" pour un taux de perte p (équation TFRC, b = 1)
+     */
+    private double tfrcRate(double p) {
+        double r = rttSeconds;
+        double tRto = 4 * r;
+        double denom = r * Math.sqrt(2 * p / 3)
+                + tRto * 3 * Math.sqrt(3 * p / 8) * p * (1 + 32 * p * p);
+        return packetSize / denom;
+    }
+}
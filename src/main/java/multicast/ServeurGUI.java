@@ -1,5 +1,15 @@
 package multicast;
 
+import crypto.Aead;
+import crypto.GroupKeys;
+import datagram.Compression;
+import datagram.EncodeBuffer;
+import datagram.LossStats;
+import datagram.SocketTuning;
+import metrics.LatencyHistogram;
+import metrics.MetricsRegistry;
+import metrics.Tracing;
+
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import java.awt.*;
@@ -7,12 +17,16 @@ import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.io.*;
 import java.net.*;
+import java.security.GeneralSecurityException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * SERVEUR RELAI MULTICAST
  *
  * Application serveur relai pour le chat multicast.
- * Structure identique aux serveurs TCP/UDP mais utilise MulticastSocket.
+ * Structure identique aux serveurs TCP/UDP mais s'abonne à un groupe multicast.
  *
  * FONCTIONNALITÉS:
  * - Écoute les messages du groupe multicast
@@ -51,7 +65,20 @@ public class ServeurGUI extends JFrame {
     /**
      * Socket multicast du serveur relai
      */
-    private MulticastSocket socket;
+    private GroupMembership membership;
+    private DatagramSocket socket;
+
+    /**
+     * Paquet de retransmission réutilisé (pointé sur le tampon d'encodage)
+     */
+    private final DatagramPacket relayPacket = new DatagramPacket(new byte[0], 0);
+
+    /**
+     * Clés du groupe (null en clair, voir crypto.GroupKeys), et tampon des
+     * retransmissions chiffrées réutilisé sous le verrou de relayPacket
+     */
+    private volatile GroupKeys keys;
+    private byte[] sealed;
 
     /**
      * Adresse du groupe multicast
@@ -73,6 +100,47 @@ public class ServeurGUI extends JFrame {
      */
     private Thread listenerThread;
 
+    /**
+     * Pertes estimées sur les messages de chaque émetteur du groupe
+     */
+    private final LossStats lossStats = new LossStats();
+
+    /**
+     * Nombre de pertes déjà signalées dans les logs, par émetteur
+     */
+    private final Map<String, Long> reportedLoss = new ConcurrentHashMap<>();
+
+    /**
+     * Journalisation périodique des nouvelles pertes
+     */
+    private final Timer lossTimer = new Timer(5000, e -> logLosses());
+
+    // ========== MÉTRIQUES ==========
+
+    /**
+     * Registre publié en JMX (et en HTTP avec -Dmetrics.port=<port>)
+     */
+    private final MetricsRegistry metrics = new MetricsRegistry("multicast");
+    private final LongAdder[] messagesIn = metrics.countersByType("messages_in_total", Message.Type.values());
+    private final LongAdder[] bytesIn = metrics.countersByType("bytes_in_total", Message.Type.values());
+    private final LongAdder[] messagesOut = metrics.countersByType("messages_out_total", Message.Type.values());
+    private final LongAdder[] bytesOut = metrics.countersByType("bytes_out_total", Message.Type.values());
+    private final LatencyHistogram decodeTime = metrics.histogram("decode_seconds");
+    private final LongAdder cryptoRejected = metrics.counter("crypto_rejected_total");
+    private final LatencyHistogram sendTime = metrics.histogram("send_seconds");
+
+    /**
+     * Charges utiles compressées relayées: taille d'origine et taille transmise
+     */
+    private final LongAdder compressedRawBytes = metrics.counter("compressed_raw_bytes_total");
+    private final LongAdder compressedWireBytes = metrics.counter("compressed_wire_bytes_total");
+
+    /**
+     * Traçage: émetteur → observation par le serveur (qui écoute le groupe
+     * comme n'importe quel membre)
+     */
+    private final LatencyHistogram traceEndToEnd = metrics.histogram("trace_end_to_end_seconds");
+
     // ========== INTERFACE GRAPHIQUE ==========
 
     /**
@@ -90,6 +158,11 @@ public class ServeurGUI extends JFrame {
      */
     private JTextField txtGroup, txtPort;
 
+    /**
+     * Interface(s) réseau à écouter
+     */
+    private JComboBox<String> ifaceCombo;
+
     /**
      * Label d'état du serveur
      */
@@ -129,6 +202,14 @@ public class ServeurGUI extends JFrame {
         txtPort = new JTextField(String.valueOf(DEFAULT_PORT), 6);
         c.gridx = 3; top.add(txtPort, c);
 
+        // Interface réseau (Auto, Toutes, ou une interface précise)
+        JLabel li = new JLabel("Interface:"); li.setForeground(Color.WHITE);
+        c.gridx = 4; top.add(li, c);
+        ifaceCombo = new JComboBox<>(GroupMembership.choices().toArray(new String[0]));
+        ifaceCombo.setEditable(true);
+        ifaceCombo.setSelectedItem(GroupMembership.DEFAULT_INTERFACES);
+        c.gridx = 5; top.add(ifaceCombo, c);
+
         // Boutons
         btnStart = new JButton("Démarrer");
         btnStart.setBackground(new Color(0,150,110));
@@ -136,8 +217,8 @@ public class ServeurGUI extends JFrame {
         btnStop = new JButton("Arrêter");
         btnStop.setBackground(new Color(220,20,60));
         btnStop.setForeground(Color.WHITE);
-        c.gridx = 4; top.add(btnStart, c);
-        c.gridx = 5; top.add(btnStop, c);
+        c.gridx = 6; top.add(btnStart, c);
+        c.gridx = 7; top.add(btnStop, c);
 
         root.add(top, BorderLayout.NORTH);
 
@@ -165,6 +246,9 @@ public class ServeurGUI extends JFrame {
             }
         });
 
+        // Membres actifs = émetteurs déjà entendus sur le groupe
+        metrics.gauge("sessions", () -> lossStats.senders().size());
+
         updateButtons();
     }
 
@@ -173,12 +257,12 @@ public class ServeurGUI extends JFrame {
      *
      * PROCESSUS:
      * 1. Validation des paramètres (groupe, port)
-     * 2. Création du MulticastSocket
-     * 3. Appel de joinGroup() pour rejoindre le groupe
+     * 2. Création du socket
+     * 3. Abonnement au groupe sur les interfaces choisies
      * 4. Démarrage du thread d'écoute
      *
      * DIFFÉRENCE AVEC UDP/TCP:
-     * - MULTICAST: socket.joinGroup(group) - rejoint le groupe comme un client
+     * - MULTICAST: channel.join(group, interface) - rejoint le groupe comme un client
      * - UDP: new DatagramSocket(port) - écoute sur un port spécifique
      * - TCP: new ServerSocket(port) - attend des connexions
      *
@@ -217,21 +301,34 @@ public class ServeurGUI extends JFrame {
                 return;
             }
 
-            // Création du socket multicast
-            socket = new MulticastSocket(port);
+            // Clés du groupe (-Dcrypto, phrase -Dcrypto.psk commune aux membres)
+            try {
+                keys = GroupKeys.create();
+            } catch (GeneralSecurityException | IllegalStateException e) {
+                alert("Chiffrement impossible : " + e.getMessage());
+                return;
+            }
 
-            // Rejoindre le groupe multicast
+            // Rejoindre le groupe multicast sur les interfaces choisies
             // Le serveur devient membre du groupe et reçoit tous les messages
-            socket.joinGroup(group);
+            membership = new GroupMembership(group, port, (String) ifaceCombo.getSelectedItem());
+            socket = membership.socket();
+            for (String w : new SocketTuning("multicast").apply(socket)) append("⚠️ " + w);
+            for (String w : membership.warnings()) append("⚠️ " + w);
 
             running = true;
+            lossStats.clear();
+            reportedLoss.clear();
+            lossTimer.start();
 
             // Démarrage du thread d'écoute
             listenerThread = new Thread(this::listenLoop, "Multicast-Listener");
             listenerThread.start();
 
-            append("✅ Serveur démarré - Groupe " + groupAddr + ":" + port);
+            append("✅ Serveur démarré - Groupe " + groupAddr + ":" + port + " via " + membership.describe()
+                    + (keys != null ? " (chiffrement " + Aead.SUITE.label + ")" : ""));
             append("📡 Écoute du trafic multicast...");
+            for (String m : metrics.start()) append(m);
             setStatus(true, "En ligne — " + groupAddr + ":" + port);
             updateButtons();
         } catch (IOException ex) {
@@ -243,24 +340,19 @@ public class ServeurGUI extends JFrame {
      * ARRÊT DU SERVEUR RELAI
      *
      * PROCESSUS:
-     * 1. Quitter le groupe multicast (leaveGroup)
+     * 1. Quitter le groupe multicast sur chaque interface
      * 2. Fermer le socket
      * 3. Arrêter le thread d'écoute
      */
     private void stopServer() {
         running = false;
+        lossTimer.stop();
 
-        // Quitter le groupe multicast
-        try {
-            if (socket != null && group != null) {
-                socket.leaveGroup(group);
-            }
-        } catch (IOException ignore) {}
-
-        // Fermeture du socket
-        try {
-            if (socket != null) socket.close();
-        } catch (Exception ignore) {}
+        // Quitter le groupe multicast et fermer le socket
+        if (membership != null) {
+            membership.close();
+            membership = null;
+        }
 
         // Attente de la fin du thread d'écoute
         if (listenerThread != null && listenerThread.isAlive()) {
@@ -271,6 +363,7 @@ public class ServeurGUI extends JFrame {
             }
         }
 
+        metrics.stop();
         append("⏹️ Serveur arrêté.");
         setStatus(false, "Hors ligne");
         updateButtons();
@@ -292,7 +385,7 @@ public class ServeurGUI extends JFrame {
      * - UDP: Reçoit uniquement les messages envoyés au serveur spécifiquement
      *
      * NOTE:
-     * Le serveur reçoit aussi ses propres messages s'il en envoie.
+     * Le serveur ne reçoit ses propres messages que si la boucle locale est activée.
      */
     private void listenLoop() {
         // Buffer de réception
@@ -310,34 +403,39 @@ public class ServeurGUI extends JFrame {
                 InetAddress senderAddr = packet.getAddress();
                 int senderPort = packet.getPort();
 
+                // Déchiffrement: datagramme forgé, rejoué ou en clair écarté et compté
+                int offset = 0, length = packet.getLength();
+                GroupKeys k = keys;
+                if (k != null) {
+                    length = k.open(buffer, length);
+                    if (length < 0) {
+                        cryptoRejected.increment();
+                        continue;
+                    }
+                    offset = GroupKeys.HEADER;
+                }
+
                 // Désérialisation du message
-                ByteArrayInputStream bis = new ByteArrayInputStream(
-                    packet.getData(), 0, packet.getLength()
-                );
+                long decodeStart = System.nanoTime();
+                ByteArrayInputStream bis = new ByteArrayInputStream(buffer, offset, length);
                 ObjectInputStream ois = new ObjectInputStream(bis);
                 Object o = ois.readObject();
+                decodeTime.recordSince(decodeStart);
 
-                // Vérification du type d'objet reçu
-                if (!(o instanceof Message msg)) continue;
-
-                // Logging selon le type de message
-                switch (msg.type) {
-                    case TEXTE -> {
-                        append("📩 [" + msg.sender + "] → [" + msg.target + "] : " + msg.text);
-                        append("   └─ Depuis " + senderAddr.getHostAddress() + ":" + senderPort);
+                // Lot de messages regroupés par l'émetteur
+                if (o instanceof Message[] lot) {
+                    for (Message m : lot) {
+                        countIn(m, packet.getLength() / lot.length);
+                        logMessage(m, senderAddr, senderPort);
                     }
+                    continue;
+                }
 
-                    case FICHIER -> {
-                        append("📎 [" + msg.sender + "] → [" + msg.target + "] : Fichier '" +
-                               msg.filename + "' (" + (msg.fileBytes == null ? 0 : msg.fileBytes.length) + " octets)");
-                        append("   └─ Depuis " + senderAddr.getHostAddress() + ":" + senderPort);
-                    }
+                // Vérification du type d'objet reçu
+                if (!(o instanceof Message msg)) continue;
 
-                    case LISTE -> {
-                        append("📋 [" + msg.sender + "] Demande/Réponse de liste");
-                        append("   └─ Depuis " + senderAddr.getHostAddress() + ":" + senderPort);
-                    }
-                }
+                countIn(msg, packet.getLength());
+                logMessage(msg, senderAddr, senderPort);
 
                 // OPTION: Retransmission du message (relay)
                 // Si on veut que le serveur retransmette les messages:
@@ -368,6 +466,69 @@ public class ServeurGUI extends JFrame {
         }
     }
 
+    /**
+     * Comptabilise un message reçu du groupe
+     */
+    private void countIn(Message msg, int bytes) {
+        messagesIn[msg.type.ordinal()].increment();
+        bytesIn[msg.type.ordinal()].add(bytes);
+        if (msg.compressed) {
+            compressedRawBytes.add(msg.rawLength);
+            compressedWireBytes.add(msg.fileBytes.length);
+        }
+    }
+
+    /**
+     * JOURNALISATION D'UN MESSAGE DU GROUPE
+     *
+     * @param msg        Message reçu
+     * @param senderAddr Adresse de l'émetteur
+     * @param senderPort Port de l'émetteur
+     */
+    private void logMessage(Message msg, InetAddress senderAddr, int senderPort) {
+        // Estimation des pertes à partir des numéros de séquence de l'émetteur
+        lossStats.record(msg.sender, msg.seq);
+
+        // Latence de bout en bout (traces lentes échantillonnées)
+        if (msg.sentAt != 0) {
+            long e2e = Tracing.nowMicros() - msg.sentAt;
+            traceEndToEnd.record(e2e * 1000);
+            if (Tracing.shouldLogSlow(e2e)) {
+                append(String.format("🐢 Trace %s de %s : %.1f ms sur le groupe",
+                        Tracing.id(msg.traceId), msg.sender, e2e / 1000.0));
+            }
+        }
+
+        // Logging selon le type de message
+        switch (msg.type) {
+            case TEXTE -> {
+                append("📩 [" + msg.sender + "] → [" + msg.target + "] : " + Compression.preview(msg));
+                append("   └─ Depuis " + senderAddr.getHostAddress() + ":" + senderPort);
+            }
+
+            case FICHIER -> {
+                append("📎 [" + msg.sender + "] → [" + msg.target + "] : Fichier '" +
+                       msg.filename + "' (" + Compression.size(msg) + ")");
+                append("   └─ Depuis " + senderAddr.getHostAddress() + ":" + senderPort);
+            }
+
+            case LISTE -> {
+                append("📋 [" + msg.sender + "] Demande/Réponse de liste");
+                append("   └─ Depuis " + senderAddr.getHostAddress() + ":" + senderPort);
+            }
+
+            case RAPPORT -> {
+                // Rapports fréquents: on ne journalise que les pertes réelles
+                // (rapport illisible ou hors bornes: ignoré)
+                double loss = RateController.parseLoss(msg.text);
+                if (loss > 0) {
+                    append("📉 [" + msg.sender + "] → [" + msg.target + "] : perte " +
+                           String.format("%.1f %%", loss * 100));
+                }
+            }
+        }
+    }
+
     /**
      * RETRANSMISSION D'UN MESSAGE (OPTIONNEL)
      *
@@ -384,16 +545,30 @@ public class ServeurGUI extends JFrame {
     @SuppressWarnings("unused")
     private void relayMessage(Message msg) {
         try {
-            // Sérialisation du message
-            ByteArrayOutputStream bos = new ByteArrayOutputStream();
-            ObjectOutputStream oos = new ObjectOutputStream(bos);
-            oos.writeObject(msg);
-            oos.flush();
-            byte[] data = bos.toByteArray();
-
-            // Retransmission au groupe
-            DatagramPacket packet = new DatagramPacket(data, data.length, group, port);
-            socket.send(packet);
+            // Sérialisation dans le tampon réutilisé du thread
+            EncodeBuffer buf = EncodeBuffer.forThread();
+            int length = buf.encode(msg);
+
+            // Retransmission au groupe, sans copie du tampon
+            long sendStart = System.nanoTime();
+            synchronized (relayPacket) {
+                byte[] data = buf.array();
+                GroupKeys k = keys;
+                if (k != null) {
+                    if (sealed == null || sealed.length < length + GroupKeys.OVERHEAD) {
+                        sealed = new byte[length + GroupKeys.OVERHEAD];
+                    }
+                    length = k.seal(data, 0, length, sealed);
+                    data = sealed;
+                }
+                relayPacket.setData(data, 0, length);
+                relayPacket.setAddress(group);
+                relayPacket.setPort(port);
+                socket.send(relayPacket);
+            }
+            sendTime.recordSince(sendStart);
+            messagesOut[msg.type.ordinal()].increment();
+            bytesOut[msg.type.ordinal()].add(length);
 
             append("🔄 Message retransmis");
 
@@ -402,6 +577,23 @@ public class ServeurGUI extends JFrame {
         }
     }
 
+    /**
+     * JOURNALISATION DES PERTES
+     *
+     * Signale les émetteurs dont le nombre de messages perdus a augmenté
+     * depuis le dernier passage.
+     */
+    private void logLosses() {
+        for (String sender : lossStats.senders()) {
+            long lost = lossStats.lost(sender);
+            Long previous = reportedLoss.put(sender, lost);
+            if (lost > (previous == null ? 0 : previous)) {
+                append(String.format("📉 Pertes depuis %s : %d perdus / %d reçus (%.1f %%)",
+                        sender, lost, lossStats.received(sender), lossStats.lossRate(sender) * 100));
+            }
+        }
+    }
+
     /**
      * Ajoute un message aux logs
      */
@@ -428,6 +620,7 @@ public class ServeurGUI extends JFrame {
         btnStop.setEnabled(running);
         txtGroup.setEnabled(!running);
         txtPort.setEnabled(!running);
+        ifaceCombo.setEnabled(!running);
     }
 
     /**
@@ -0,0 +1,97 @@
+package multicast;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RÉGULATEUR DE DÉBIT (TOKEN BUCKET)
+ *
+ * Limite le débit d'envoi d'un émetteur multicast pour ne pas saturer les
+ * tampons de réception de tout le groupe.
+ *
+ * PRINCIPE:
+ * - Le seau se remplit de "rate" octets par seconde, jusqu'à "burst" octets
+ * - Chaque datagramme consomme sa taille en jetons
+ * - S'il manque des jetons, l'envoi attend le temps nécessaire
+ *
+ * PRIORITÉ:
+ * - acquire(): envoi volumineux (fichier), attend si le seau est vide
+ * - consume(): envoi interactif (texte), part immédiatement et crée une
+ *   "dette" que les envois volumineux suivants rembourseront
+ */
+public class TokenBucket {
+
+    /**
+     * Débit autorisé (octets par seconde)
+     */
+    private double rate;
+
+    /**
+     * Capacité du seau (octets envoyables d'un coup)
+     */
+    private final double burst;
+
+    /**
+     * Jetons disponibles (négatif = dette)
+     */
+    private double tokens;
+
+    /**
+     * Dernier remplissage (System.nanoTime)
+     */
+    private long lastRefill;
+
+    /**
+     * @param rate  Débit en octets par seconde
+     * @param burst Rafale maximale en octets
+     */
+    public TokenBucket(double rate, double burst) {
+        this.rate = rate;
+        this.burst = burst;
+        this.tokens = burst;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Attend que "bytes" octets puissent être envoyés au débit courant
+     */
+    public void acquire(int bytes) throws IOException {
+        long waitNanos;
+        synchronized (this) {
+            refill();
+            tokens -= bytes;
+            if (tokens >= 0) return;
+            waitNanos = (long) (-tokens * 1e9 / rate);
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Envoi interrompu pendant la régulation");
+        }
+    }
+
+    /**
+     * Consomme des jetons sans attendre (trafic interactif prioritaire)
+     */
+    public synchronized void consume(int bytes) {
+        refill();
+        tokens -= bytes;
+    }
+
+    public synchronized double getRate() {
+        return rate;
+    }
+
+    public synchronized void setRate(double rate) {
+        refill();
+        this.rate = rate;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - lastRefill) * rate / 1e9);
+        lastRefill = now;
+    }
+}
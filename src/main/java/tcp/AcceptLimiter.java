@@ -0,0 +1,56 @@
+package tcp;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LIMITE DU RYTHME D'ADMISSION DES CONNEXIONS
+ *
+ * Seau à jetons: au plus RATE connexions acceptées par seconde en régime
+ * permanent, avec des rafales de BURST. Au-delà, les threads d'acceptation
+ * attendent leur tour avant d'appeler accept(): les connexions en trop restent
+ * dans la file d'attente du noyau (backlog) au lieu de créer d'un coup des
+ * milliers de threads et de poignées de main. Après une coupure réseau, la
+ * vague de reconnexions est ainsi absorbée à un rythme que le serveur tient.
+ *
+ * Propriétés système:
+ *   -Dtcp.accept.rate=<connexions/s>   rythme permanent (500, 0 = illimité)
+ *   -Dtcp.accept.burst=<connexions>    rafale autorisée (= rate)
+ */
+final class AcceptLimiter {
+
+    static final double RATE = Double.parseDouble(System.getProperty("tcp.accept.rate", "500"));
+    static final double BURST = Double.parseDouble(System.getProperty("tcp.accept.burst", String.valueOf(RATE)));
+
+    private final double rate;
+    private final double burst;
+    private double tokens;
+    private long last = System.nanoTime();
+
+    AcceptLimiter(double rate, double burst) {
+        this.rate = rate;
+        this.burst = Math.max(1, burst);
+        this.tokens = this.burst;
+    }
+
+    /**
+     * Attend qu'une connexion puisse être admise
+     *
+     * @return true si l'appelant a dû attendre
+     */
+    boolean acquire() throws InterruptedException {
+        if (rate <= 0) return false;
+        long wait = reserve();
+        if (wait <= 0) return false;
+        TimeUnit.NANOSECONDS.sleep(wait);
+        return true;
+    }
+
+    // Jeton pris tout de suite, quitte à passer en négatif: le délai rend l'avance prise
+    private synchronized long reserve() {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - last) * rate / 1e9);
+        last = now;
+        tokens -= 1;
+        return tokens >= 0 ? 0 : (long) (-tokens * 1e9 / rate);
+    }
+}
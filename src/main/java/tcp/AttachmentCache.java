@@ -0,0 +1,201 @@
+package tcp;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * CACHE DE PIÈCES JOINTES ADRESSÉ PAR CONTENU
+ *
+ * Chaque fichier est rangé sur disque sous son empreinte SHA-256 (en hexadécimal).
+ * Un fichier déjà reçu ou envoyé n'a donc plus à transiter: l'émetteur propose
+ * l'empreinte, et seul un destinataire qui ne l'a pas en cache demande les octets.
+ *
+ * Éviction du moins récemment utilisé dès que la taille totale dépasse le budget.
+ * La date de modification sert d'horodatage d'accès, l'ordre LRU survit donc au
+ * redémarrage du client.
+ *
+ * Propriétés système:
+ *   -Dtcp.cache.dir=<dossier>        (~/.chat-cache/tcp)
+ *   -Dtcp.cache.maxBytes=<octets>    (256 Mo)
+ */
+public final class AttachmentCache {
+
+    public static final long MAX_BYTES = Long.getLong("tcp.cache.maxBytes", 256L * 1024 * 1024);
+
+    private static final Pattern HASH = Pattern.compile("[0-9a-f]{64}");
+
+    private final Path dir;
+    private final long maxBytes;
+    /** Empreinte → taille, dans l'ordre d'accès (le plus ancien en tête) */
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    public AttachmentCache(Path dir, long maxBytes) throws IOException {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(dir);
+
+        // Reconstitution de l'ordre LRU à partir des dates d'accès
+        List<Path> files;
+        try (Stream<Path> s = Files.list(dir)) {
+            files = s.filter(p -> isValidHash(p.getFileName().toString())).toList();
+        }
+        Map<Path, FileTime> times = new HashMap<>();
+        for (Path p : files) times.put(p, Files.getLastModifiedTime(p));
+        files.stream().sorted(Comparator.comparing(times::get)).forEach(p -> {
+            try {
+                long size = Files.size(p);
+                entries.put(p.getFileName().toString(), size);
+                totalBytes += size;
+            } catch (IOException ignore) {}
+        });
+        evict();
+    }
+
+    /**
+     * Cache par défaut (dossier et budget des propriétés système)
+     */
+    public static AttachmentCache openDefault() throws IOException {
+        String configured = System.getProperty("tcp.cache.dir");
+        Path dir = configured != null ? Path.of(configured)
+                : Path.of(System.getProperty("user.home"), ".chat-cache", "tcp");
+        return new AttachmentCache(dir, MAX_BYTES);
+    }
+
+    /**
+     * Empreinte SHA-256 d'un contenu (64 caractères hexadécimaux)
+     */
+    public static String hash(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Empreinte SHA-256 du contenu d'origine d'un FICHIER reçu, décompressé à la
+     * volée s'il est compressé (sans modifier le message ni en garder de copie)
+     *
+     * @throws IOException Contenu compressé corrompu, ou plus long que rawLength
+     */
+    public static String hash(Message msg) throws IOException {
+        if (!msg.compressed) return hash(msg.fileBytes);
+        MessageDigest sha256;
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        long limit = msg.rawLength;
+        OutputStream digest = new OutputStream() {
+            private long total;
+
+            @Override public void write(int b) throws IOException {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override public void write(byte[] b, int off, int len) throws IOException {
+                total += len;
+                if (total > limit) throw new IOException("Contenu plus long que les " + limit + " octets annoncés");
+                sha256.update(b, off, len);
+            }
+        };
+        try (var inflater = Compression.inflating(digest)) {
+            inflater.write(msg.fileBytes);
+        }
+        return HexFormat.of().formatHex(sha256.digest());
+    }
+
+    /**
+     * Vrai si la chaîne est une empreinte bien formée (et donc un nom de fichier sûr)
+     */
+    public static boolean isValidHash(String hash) {
+        return hash != null && HASH.matcher(hash).matches();
+    }
+
+    /**
+     * Contenu en cache, ou null si absent
+     */
+    public synchronized byte[] get(String hash) {
+        if (!isValidHash(hash) || entries.get(hash) == null) return null;
+        Path p = dir.resolve(hash);
+        try {
+            byte[] data = Files.readAllBytes(p);
+            Files.setLastModifiedTime(p, FileTime.fromMillis(System.currentTimeMillis()));
+            return data;
+        } catch (IOException e) {
+            // Supprimé entre-temps (autre client sur la même machine, nettoyage manuel...)
+            Long size = entries.remove(hash);
+            if (size != null) totalBytes -= size;
+            return null;
+        }
+    }
+
+    /**
+     * Range un contenu sous son empreinte (écriture atomique) puis évince si besoin
+     */
+    public synchronized void put(String hash, byte[] data) throws IOException {
+        if (!isValidHash(hash) || data.length > maxBytes) return;
+        if (entries.get(hash) != null) {
+            Files.setLastModifiedTime(dir.resolve(hash), FileTime.fromMillis(System.currentTimeMillis()));
+            return;
+        }
+        Path tmp = Files.createTempFile(dir, "part-", ".tmp");
+        try {
+            Files.write(tmp, data);
+            install(tmp, hash, data.length);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Range une copie d'un fichier déjà sur disque (reçu en morceaux, voir download.Download),
+     * sans le charger en mémoire
+     */
+    public synchronized void putFile(String hash, Path file) throws IOException {
+        long size = Files.size(file);
+        if (!isValidHash(hash) || size > maxBytes) return;
+        if (entries.get(hash) != null) {
+            Files.setLastModifiedTime(dir.resolve(hash), FileTime.fromMillis(System.currentTimeMillis()));
+            return;
+        }
+        Path tmp = Files.createTempFile(dir, "part-", ".tmp");
+        try {
+            Files.copy(file, tmp, StandardCopyOption.REPLACE_EXISTING);
+            install(tmp, hash, size);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    // Fichier complet renommé sous son empreinte (atomique), puis éviction
+    private void install(Path tmp, String hash, long size) throws IOException {
+        Files.move(tmp, dir.resolve(hash), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        entries.put(hash, size);
+        totalBytes += size;
+        evict();
+    }
+
+    public synchronized long totalBytes() {
+        return totalBytes;
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            it.remove();
+            totalBytes -= eldest.getValue();
+            try { Files.deleteIfExists(dir.resolve(eldest.getKey())); } catch (IOException ignore) {}
+        }
+    }
+}
@@ -2,35 +2,78 @@ package tcp;
 
 
 
+import crypto.Aead;
+import crypto.Handshake;
+import crypto.Session;
+import download.Download;
+import history.ChatHistory;
+import history.HistoryDialog;
+import metrics.TraceRecorder;
+import metrics.Tracing;
+import ui.ChatView;
+import ui.SendQueue;
+
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
-import javax.swing.text.BadLocationException;
-import javax.swing.text.Document;
 import java.awt.*;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.io.*;
 import java.net.Socket;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.InflaterOutputStream;
 
 public class Client extends JFrame {
     private static final long serialVersionUID = 1L;
 
     // Réseau
     private Socket socket;
-    private ObjectOutputStream out;
-    private ObjectInputStream in;
+    private FrameWriter out;
+    private FrameReader in;
     private Thread readerThread;
     private volatile boolean connected = false;
 
+    // Pièces jointes adressées par contenu: cache disque (null si indisponible),
+    // propositions reçues dont le contenu a été réclamé au serveur, et fichier
+    // déjà enregistré pour chaque empreinte (une pièce reçue à nouveau n'est pas recopiée).
+    // Une demande restée sans réponse REQUEST_TIMEOUT_MS est renouvelée par la proposition
+    // suivante du même fichier, ou oubliée (-Dtcp.cache.requestTimeoutMs)
+    private static final long REQUEST_TIMEOUT_MS = Long.getLong("tcp.cache.requestTimeoutMs", 30_000);
+    private AttachmentCache fileCache;
+    private final Map<String, Requested> pendingOffers = new ConcurrentHashMap<>();
+    private final Map<String, Path> savedFiles = new ConcurrentHashMap<>();
+
+    // Historique local des messages envoyés et reçus (null si désactivé ou hors ligne)
+    private static final int HISTORY_REPLAY = 20;
+    private volatile ChatHistory history;
+
+    // Latences mesurées sur les messages reçus (p99 affiché dans la barre d'état)
+    private final TraceRecorder traces = new TraceRecorder();
+    private final Timer latencyTimer = new Timer(2000, e -> { refreshLatencyStatus(); expireRequests(); });
+
+    // Envois exécutés hors de l'EDT, un à la fois, dans l'ordre de dépôt
+    private final SendQueue sendQueue = new SendQueue("TCP-Send", new SendQueue.Listener() {
+        @Override public void progress(SendQueue.Job job, String phase, long done, long total) { onSendProgress(job, phase, done, total); }
+        @Override public void done(SendQueue.Job job, Exception error) { onSendDone(job, error); }
+    });
+
     // UI
-    private JTextPane chatPane;
+    private ChatView chatView;
     private JTextField inputField;
-    private JButton btnSend, btnFile, btnConnect, btnDisconnect;
-    private JTextField txtHost, txtPort, txtPseudo;
+    private JButton btnSend, btnFile, btnConnect, btnDisconnect, btnCancel;
+    private JProgressBar sendProgress;
+    private JPanel progressRow;
+    private JTextField txtHost, txtPort, txtPseudo, searchField;
     private DefaultComboBoxModel<String> targetModel;
     private JComboBox<String> targetCombo;
     private JLabel statusLabel;
+    private String statusText = "Hors ligne";
 
     public Client() {
         super("💬 Client TCP");
@@ -89,12 +132,21 @@ public class Client extends JFrame {
         targetCombo = new JComboBox<>(targetModel);
         left.add(targetCombo, lc);
 
+        // Recherche dans l'historique local ("mots @pseudo")
+        lc.gridy = 1;
+        searchField = new JTextField();
+        searchField.setToolTipText("Mots recherchés, @pseudo pour un émetteur");
+        left.add(searchField, lc);
+        lc.gridy = 2;
+        JButton btnSearch = new JButton("🔎 Historique");
+        left.add(btnSearch, lc);
+        btnSearch.addActionListener(e -> HistoryDialog.show(this, history, searchField.getText()));
+        searchField.addActionListener(e -> HistoryDialog.show(this, history, searchField.getText()));
+
         JPanel right = new JPanel(new BorderLayout());
         right.setBorder(BorderFactory.createTitledBorder("Discussion"));
-        chatPane = new JTextPane();
-        chatPane.setEditable(false);
-        chatPane.setContentType("text/plain");
-        right.add(new JScrollPane(chatPane), BorderLayout.CENTER);
+        chatView = new ChatView();
+        right.add(chatView, BorderLayout.CENTER);
 
         split.setLeftComponent(left);
         split.setRightComponent(right);
@@ -120,6 +172,16 @@ public class Client extends JFrame {
         statusLabel = new JLabel("Hors ligne");
         statusLabel.setForeground(new Color(160,0,0));
 
+        // Progression de l'envoi en cours (visible seulement pendant un gros envoi)
+        progressRow = new JPanel(new BorderLayout(8,8));
+        sendProgress = new JProgressBar(0, 100);
+        sendProgress.setStringPainted(true);
+        btnCancel = new JButton("Annuler");
+        progressRow.add(sendProgress, BorderLayout.CENTER);
+        progressRow.add(btnCancel, BorderLayout.EAST);
+        progressRow.setVisible(false);
+
+        south.add(progressRow, BorderLayout.NORTH);
         south.add(bottom, BorderLayout.CENTER);
         south.add(statusLabel, BorderLayout.SOUTH);
         root.add(south, BorderLayout.SOUTH);
@@ -130,6 +192,7 @@ public class Client extends JFrame {
         btnSend.addActionListener(e -> sendText());
         btnFile.addActionListener(e -> sendFile());
         inputField.addActionListener(e -> sendText());
+        btnCancel.addActionListener(e -> { SendQueue.Job job = sendQueue.current(); if (job != null) job.cancel(); });
 
         updateButtons();
 
@@ -148,18 +211,26 @@ public class Client extends JFrame {
         } catch (NumberFormatException ex) { warn("Port invalide."); return; }
 
         try {
+            if (fileCache == null) {
+                try { fileCache = AttachmentCache.openDefault(); }
+                catch (IOException e) { appendText("⚠️ Cache de fichiers indisponible : " + e.getMessage() + "\n"); }
+            }
             socket = new Socket(host, port);
-            out = new ObjectOutputStream(socket.getOutputStream()); out.flush();
-            in  = new ObjectInputStream(socket.getInputStream());
+            // Clés de session avant la première trame (-Dcrypto, voir crypto.Handshake)
+            Session session = Aead.enabled() ? Handshake.exchange(socket.getInputStream(), socket.getOutputStream(), true) : null;
+            out = new FrameWriter(socket.getOutputStream(), session);
+            in  = new FrameReader(socket.getInputStream(), session);
 
             // Présenter le pseudo au serveur
             Message hello = new Message(Message.Type.TEXTE, safePseudo(), "HELLO", "hello");
-            out.writeObject(hello); out.flush();
+            write(hello);
 
             connected = true;
+            latencyTimer.start();
             readerThread = new Thread(this::readLoop, "TCP-Reader");
             readerThread.start();
 
+            openHistory();
             setStatus(true, "Connecté — " + host + ":" + port);
             info("Connecté au serveur.");
             updateButtons();
@@ -171,10 +242,14 @@ public class Client extends JFrame {
 
     private void disconnect() {
         connected = false;
+        latencyTimer.stop();
+        sendQueue.cancelAll();
         try { if (in != null) in.close(); } catch (IOException ignore) {}
         try { if (out != null) out.close(); } catch (IOException ignore) {}
         try { if (socket != null) socket.close(); } catch (IOException ignore) {}
         socket = null; in = null; out = null;
+        pendingOffers.clear();
+        closeHistory();
         if (readerThread != null && readerThread.isAlive()) {
             try { readerThread.join(200); } catch (InterruptedException ignore) {}
         }
@@ -185,21 +260,23 @@ public class Client extends JFrame {
     private void readLoop() {
         while (connected) {
             try {
-                Object o = in.readObject();
-                if (!(o instanceof Message msg)) continue;
+                Message msg = in.read();
+                try { Compression.decompress(msg); }
+                catch (IOException e) { appendText("⚠️ Message de " + msg.sender + " illisible : " + e.getMessage() + "\n"); continue; }
+                traces.record(msg.sentAt, msg.serverRecvAt, msg.serverSentAt);
 
                 switch (msg.type) {
-                    case TEXTE -> appendText("💬 " + msg.sender + " → " + msg.target + " : " + msg.text + "\n");
+                    case TEXTE -> {
+                        appendText("💬 " + msg.sender + " → " + msg.target + " : " + msg.text + "\n");
+                        remember(msg.sender, msg.target, msg.text, null);
+                    }
                     case FICHIER -> {
-                        if (msg.fileBytes != null && msg.filename != null) {
-                            String lower = msg.filename.toLowerCase();
-                            if (lower.endsWith(".png") || lower.endsWith(".jpg") || lower.endsWith(".jpeg") || lower.endsWith(".gif")) {
-                                appendImage(new ImageIcon(msg.fileBytes));
-                            }
-                            appendText("🗂️ Fichier reçu de " + msg.sender + " : " + msg.filename +
-                                       " (" + msg.fileBytes.length + " octets)\n");
-                        }
+                        if (msg.streamLength > 0 && msg.fileBytes == null) receiveStream(msg);
+                        else if (msg.fileHash == null) showFile(msg.sender, msg.filename, msg.fileBytes, "");
+                        else if (msg.fileBytes == null) onFileOffer(msg);
+                        else onFileDelivery(msg);
                     }
+                    case DEMANDE -> onFileRequest(msg);
                     case LISTE -> SwingUtilities.invokeLater(() -> {
                         targetModel.removeAllElements();
                         targetModel.addElement("Tous");
@@ -227,12 +304,17 @@ public class Client extends JFrame {
 
         String target = (String) targetCombo.getSelectedItem();
         if (target == null || target.isBlank()) target = "Tous";
+        String to = target;
         Message msg = new Message(Message.Type.TEXTE, safePseudo(), target, text);
-        try {
-            out.writeObject(msg); out.flush();
-            appendText("↗️ (" + target + ") " + text + "\n");
-            inputField.setText("");
-        } catch (IOException e) { warn("Erreur envoi : " + e.getMessage()); }
+        inputField.setText("");
+        sendQueue.submit("message", job -> {
+            Compression.Result packed = Compression.compress(msg);
+            stamp(msg);
+            job.checkCancelled();
+            write(msg);
+            appendText("↗️ (" + to + ") " + text + (packed != null ? "  [compressé " + packed + "]" : "") + "\n");
+            remember(msg.sender, to, text, null);
+        });
     }
 
     private void sendFile() {
@@ -242,40 +324,283 @@ public class Client extends JFrame {
         if (res != JFileChooser.APPROVE_OPTION) return;
 
         File f = chooser.getSelectedFile();
-        try {
-            byte[] bytes = Files.readAllBytes(f.toPath());
-            String target = (String) targetCombo.getSelectedItem();
-            if (target == null || target.isBlank()) target = "Tous";
+        String selected = (String) targetCombo.getSelectedItem();
+        String target = selected == null || selected.isBlank() ? "Tous" : selected;
+        sendQueue.submit(f.getName(), job -> {
+            byte[] bytes = SendQueue.readFile(f.toPath(), job);
+            if (fileCache != null) {
+                // Seule l'empreinte part: le contenu n'est transmis qu'aux destinataires qui ne l'ont pas
+                String hash = AttachmentCache.hash(bytes);
+                fileCache.put(hash, bytes);
+                Message offer = new Message(Message.Type.FICHIER, safePseudo(), target, f.getName(), null);
+                offer.fileHash = hash;
+                stamp(offer);
+                job.checkCancelled();
+                write(offer);
+                appendText("↗️ Fichier proposé : " + f.getName() + " (" + bytes.length + " octets, empreinte " +
+                           hash.substring(0, 12) + "…)\n");
+                remember(offer.sender, target, null, f.getName());
+                return;
+            }
             Message msg = new Message(Message.Type.FICHIER, safePseudo(), target, f.getName(), bytes);
-            out.writeObject(msg); out.flush();
-            appendText("↗️ Fichier envoyé : " + f.getName() + " (" + bytes.length + " octets)\n");
-        } catch (IOException e) { warn("Erreur envoi fichier : " + e.getMessage()); }
+            msg.checksum = Download.checksum(bytes);
+            Compression.Result packed = Compression.compress(msg);
+            stamp(msg);
+            job.checkCancelled();
+            write(msg, (done, total) -> job.progress("Envoi", done, total));
+            appendText("↗️ Fichier envoyé : " + f.getName() + " (" + bytes.length + " octets)" +
+                       (packed != null ? " — compressé " + packed : "") + "\n");
+            remember(msg.sender, target, null, f.getName());
+        });
+    }
+
+    // Avancement d'un gros envoi (EDT)
+    private void onSendProgress(SendQueue.Job job, String phase, long done, long total) {
+        int pct = total == 0 ? 100 : (int) (done * 100 / total);
+        int waiting = sendQueue.depth() - 1;
+        sendProgress.setValue(pct);
+        sendProgress.setString(phase + " " + job.label + " — " + pct + " %" + (waiting > 0 ? " (+" + waiting + " en attente)" : ""));
+        progressRow.setVisible(true);
+    }
+
+    // Fin d'un envoi (EDT): erreur signalée, barre masquée quand la file est vide
+    private void onSendDone(SendQueue.Job job, Exception error) {
+        if (error instanceof CancellationException) appendText("✖️ Envoi annulé : " + job.label + "\n");
+        else if (error != null && connected) warn("Erreur envoi " + job.label + " : " + error.getMessage());
+        if (sendQueue.depth() == 0) progressRow.setVisible(false);
+    }
+
+    // Le thread d'envoi et le thread de lecture (réponses aux DEMANDE) écrivent sur le même flux:
+    // FrameWriter.write est synchronisé
+    private void write(Message msg) throws IOException {
+        write(msg, null);
+    }
+
+    private void write(Message msg, FrameWriter.Progress progress) throws IOException {
+        FrameWriter w = out;
+        if (w == null) throw new IOException("Non connecté");
+        w.write(msg, progress);
+    }
+
+    // ─────────── Pièces jointes adressées par contenu ───────────
+    // Proposition reçue: affichée depuis le cache, sinon contenu réclamé au serveur
+    private void onFileOffer(Message offer) throws IOException {
+        byte[] cached = fileCache != null ? fileCache.get(offer.fileHash) : null;
+        if (cached != null) { showAttachment(offer, cached, " — depuis le cache"); return; }
+        Requested waiting = pendingOffers.computeIfAbsent(offer.fileHash, h -> new Requested());
+        waiting.offers.add(offer);
+        long now = System.currentTimeMillis();
+        if (waiting.requestedAt == 0 || (!waiting.receiving && now - waiting.requestedAt >= REQUEST_TIMEOUT_MS)) {
+            waiting.requestedAt = now;
+            write(new Message(Message.Type.DEMANDE, safePseudo(), "Serveur", offer.fileHash));
+        }
+    }
+
+    // Demandes sans réponse (fichier introuvable chez l'émetteur, envoi refusé...): oubliées
+    // pour que le fichier puisse être réclamé à nouveau (EDT)
+    private void expireRequests() {
+        long now = System.currentTimeMillis();
+        pendingOffers.entrySet().removeIf(e -> {
+            Requested r = e.getValue();
+            if (r.receiving || now - r.requestedAt < 2 * REQUEST_TIMEOUT_MS) return false;
+            appendText("⚠️ Fichier '" + r.offers.get(0).filename + "' non reçu : pas de réponse du serveur\n");
+            return true;
+        });
+    }
+
+    // Propositions d'un même contenu, date de la dernière DEMANDE, contenu en cours de réception
+    private static final class Requested {
+        final List<Message> offers = new CopyOnWriteArrayList<>();
+        volatile long requestedAt;
+        volatile boolean receiving;
+    }
+
+    // Contenu livré par le serveur: vérifié, mis en cache, puis affiché pour chaque proposition en attente
+    private void onFileDelivery(Message msg) throws IOException {
+        Requested requested = pendingOffers.remove(msg.fileHash);
+        if (requested == null) return;
+        List<Message> offers = requested.offers;
+        if (!msg.fileHash.equals(AttachmentCache.hash(msg.fileBytes))) {
+            appendText("⚠️ Fichier '" + offers.get(0).filename + "' rejeté : empreinte incorrecte\n");
+            return;
+        }
+        if (fileCache != null) fileCache.put(msg.fileHash, msg.fileBytes);
+        for (Message offer : offers) showAttachment(offer, msg.fileBytes, "");
+    }
+
+    // Le serveur n'a pas (ou plus) le contenu d'un fichier que nous avons proposé
+    private void onFileRequest(Message request) throws IOException {
+        byte[] bytes = fileCache != null ? fileCache.get(request.text) : null;
+        if (bytes == null) { appendText("⚠️ Fichier '" + request.filename + "' demandé mais absent du cache local\n"); return; }
+        Message upload = new Message(Message.Type.FICHIER, safePseudo(), "Serveur", request.filename, bytes);
+        upload.fileHash = request.text;
+        upload.checksum = Download.checksum(bytes);
+        // Envoi par la file: le thread de lecture ne reste pas bloqué pendant le téléversement
+        sendQueue.submit(request.filename, job -> {
+            Compression.compress(upload);
+            write(upload, (done, total) -> job.progress("Envoi", done, total));
+        });
+    }
+
+    // Gros fichier annoncé par le serveur: son contenu, reçu en morceaux, est écrit sur disque
+    // à l'arrivée (voir download.Download) puis vérifié (taille, CRC32C, empreinte d'une livraison)
+    private void receiveStream(Message header) {
+        boolean delivery = header.fileHash != null;
+        Requested requested = delivery ? pendingOffers.get(header.fileHash) : null;
+        if (delivery && requested == null) { in.streamTo(FrameReader.DISCARD); return; }
+        if (requested != null) requested.receiving = true; // pas d'expiration pendant la réception
+        Download file;
+        try {
+            file = Download.create(header.filename, header.compressed ? header.rawLength : header.streamLength, delivery);
+        } catch (IOException e) {
+            appendText("⚠️ Fichier '" + header.filename + "' non enregistré : " + e.getMessage() + "\n");
+            if (delivery) pendingOffers.remove(header.fileHash);
+            in.streamTo(FrameReader.DISCARD);
+            return;
+        }
+        InflaterOutputStream inflater = header.compressed ? Compression.inflating(file) : null;
+        in.streamTo(new FrameReader.Sink() {
+            // Erreur disque ou contenu invalide: la suite du contenu est lue puis ignorée
+            private IOException failed;
+
+            @Override public void write(byte[] b, int off, int len) {
+                if (failed != null) return;
+                try {
+                    if (inflater != null) inflater.write(b, off, len);
+                    else file.write(b, off, len);
+                } catch (IOException e) { failed = e; }
+            }
+
+            @Override public void end() {
+                try {
+                    if (failed != null) throw failed;
+                    if (inflater != null) inflater.finish();
+                    onStreamed(header, file.finish(header.checksum, delivery ? header.fileHash : null), file.size());
+                } catch (IOException e) {
+                    file.close();
+                    if (delivery) pendingOffers.remove(header.fileHash);
+                    appendText("⚠️ Fichier '" + header.filename + "' rejeté : " + e.getMessage() + "\n");
+                } finally {
+                    if (inflater != null) try { inflater.close(); } catch (IOException ignore) {}
+                }
+            }
+        });
+    }
+
+    // Contenu reçu en morceaux, vérifié et enregistré: affiché (et mis en cache pour une livraison)
+    private void onStreamed(Message header, Path saved, long size) {
+        if (header.fileHash == null) { showFile(header.sender, header.filename, saved, size, ""); return; }
+        Requested requested = pendingOffers.remove(header.fileHash);
+        if (requested == null) return;
+        List<Message> offers = requested.offers;
+        savedFiles.put(header.fileHash, saved);
+        if (fileCache != null) {
+            try { fileCache.putFile(header.fileHash, saved); }
+            catch (IOException e) { appendText("⚠️ Cache de fichiers : " + e.getMessage() + "\n"); }
+        }
+        for (Message offer : offers) showFile(offer.sender, offer.filename, saved, size, "");
+    }
+
+    // Fichier reçu d'un bloc (petit fichier sans empreinte): enregistré, puis affiché
+    private void showFile(String sender, String filename, byte[] bytes, String note) {
+        if (bytes == null || filename == null) return;
+        Path saved = save(filename, bytes);
+        if (isImage(filename)) appendImage(new ImageIcon(bytes));
+        announceFile(sender, filename, bytes.length, saved, note);
+    }
+
+    // Pièce jointe proposée (livrée ou depuis le cache): enregistrée à sa première réception,
+    // ensuite l'affichage renvoie au fichier déjà enregistré
+    private void showAttachment(Message offer, byte[] bytes, String note) {
+        if (bytes == null || offer.filename == null) return;
+        Path saved = savedFiles.get(offer.fileHash);
+        if (saved == null || !Files.exists(saved)) {
+            saved = save(offer.filename, bytes);
+            if (saved != null) savedFiles.put(offer.fileHash, saved);
+        }
+        if (isImage(offer.filename)) appendImage(new ImageIcon(bytes));
+        announceFile(offer.sender, offer.filename, bytes.length, saved, note);
+    }
+
+    private Path save(String filename, byte[] bytes) {
+        try { return Download.save(filename, bytes); }
+        catch (IOException e) { appendText("⚠️ Fichier '" + filename + "' non enregistré : " + e.getMessage() + "\n"); return null; }
+    }
+
+    // Fichier reçu en morceaux: déjà sur disque, l'image est relue depuis le fichier
+    private void showFile(String sender, String filename, Path saved, long size, String note) {
+        if (isImage(filename)) appendImage(new ImageIcon(saved.toString()));
+        announceFile(sender, filename, size, saved, note);
+    }
+
+    private void announceFile(String sender, String filename, long size, Path saved, String note) {
+        appendText("🗂️ Fichier reçu de " + sender + " : " + filename + " (" + size + " octets)" + note +
+                   (saved != null ? " — enregistré dans " + saved : "") + "\n");
+        remember(sender, null, null, filename);
+    }
+
+    private static boolean isImage(String filename) {
+        String lower = filename == null ? "" : filename.toLowerCase();
+        return lower.endsWith(".png") || lower.endsWith(".jpg") || lower.endsWith(".jpeg") || lower.endsWith(".gif");
+    }
+
+    // ─────────── Historique local ───────────
+    // Ouvert à la connexion (un historique par pseudo), derniers messages réaffichés
+    private void openHistory() {
+        if (!ChatHistory.ENABLED || history != null) return;
+        try {
+            ChatHistory h = ChatHistory.open("tcp", safePseudo());
+            chatView.attachHistory(h, HISTORY_REPLAY);
+            history = h;
+        } catch (IOException e) { appendText("⚠️ Historique indisponible : " + e.getMessage() + "\n"); }
+    }
+
+    private void closeHistory() {
+        ChatHistory h = history;
+        history = null;
+        chatView.detachHistory();
+        if (h != null) try { h.close(); } catch (IOException ignore) {}
+    }
+
+    // Enregistrement d'un message envoyé ou reçu (historique coupé à la première erreur d'écriture)
+    private void remember(String sender, String target, String text, String filename) {
+        ChatHistory h = history;
+        if (h == null) return;
+        try { h.append(sender, target, text, filename); }
+        catch (IOException e) { history = null; appendText("⚠️ Historique désactivé : " + e.getMessage() + "\n"); }
+    }
+
+    // Horodatage d'envoi pour le traçage de bout en bout
+    private void stamp(Message msg) {
+        if (!Tracing.ENABLED) return;
+        msg.traceId = Tracing.newTraceId();
+        msg.sentAt = Tracing.nowMicros();
     }
 
     // ─────────── Helpers UI ───────────
     private void appendText(String text) {
-        SwingUtilities.invokeLater(() -> {
-            Document doc = chatPane.getDocument();
-            try {
-                doc.insertString(doc.getLength(), text, null);
-                chatPane.setCaretPosition(doc.getLength());
-            } catch (BadLocationException ignored) {}
-        });
+        chatView.append(text);
     }
 
     private void appendImage(ImageIcon icon) {
-        SwingUtilities.invokeLater(() -> {
-            chatPane.setCaretPosition(chatPane.getDocument().getLength());
-            chatPane.insertIcon(icon);
-            appendText("\n");
-        });
+        chatView.appendImage(icon);
     }
 
     private void setStatus(boolean on, String text) {
+        statusText = text;
         statusLabel.setText(text);
         statusLabel.setForeground(on ? new Color(0,128,0) : new Color(160,0,0));
     }
 
+    private void refreshLatencyStatus() {
+        if (!connected || traces.endToEnd.count() == 0) return;
+        statusLabel.setText(statusText + String.format(" — latence p99 %.1f ms", traces.liveP99Nanos() / 1e6));
+        statusLabel.setToolTipText(String.format("<html>p99 bout en bout %.1f ms<br>client→serveur %.1f ms"
+                + "<br>dans le serveur %.1f ms<br>serveur→client %.1f ms</html>",
+                traces.endToEnd.quantile(0.99) / 1e6, traces.upstream.quantile(0.99) / 1e6,
+                traces.server.quantile(0.99) / 1e6, traces.downstream.quantile(0.99) / 1e6));
+    }
+
     private void updateButtons() {
         btnConnect.setEnabled(!connected);
         btnDisconnect.setEnabled(connected);
@@ -0,0 +1,457 @@
+package tcp;
+
+import crypto.Aead;
+import crypto.Handshake;
+import crypto.Session;
+import metrics.MetricsRegistry;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * FÉDÉRATION DE SERVEURS TCP (BACKPLANE ENTRE NŒUDS)
+ *
+ * Un seul ServeurGUI était à la fois un point de défaillance unique et une
+ * limite de montée en charge. Plusieurs nœuds peuvent maintenant former une
+ * grappe: chaque nœud garde ses propres clients et les nœuds sont reliés deux
+ * à deux par une connexion TCP dédiée (maillage complet), avec les mêmes
+ * trames que les clients (FrameWriter / FrameReader).
+ *
+ * ANNUAIRE RÉPLIQUÉ (pseudo → nœud):
+ * Chaque nœud diffuse à ses pairs les arrivées et départs de ses clients.
+ * À l'ouverture d'un lien, chacun envoie d'abord l'instantané complet de ses
+ * pseudos, puis seulement des deltas: l'ordre FIFO du lien TCP garde les
+ * copies cohérentes. Le destinataire d'un message privé est donc résolu
+ * localement, sans aller-retour, et un client peut se connecter à n'importe
+ * quel nœud en voyant et en joignant tout le monde.
+ *
+ * TRAMES DU BACKPLANE (champ target d'un LISTE, sender = nœud émetteur):
+ *   NOEUD  instantané (text = pseudos séparés par des virgules)
+ *   +      arrivée d'un pseudo (text)
+ *   -      départ d'un pseudo (text)
+ * Les autres trames (TEXTE, FICHIER, DEMANDE) sont des messages relayés: le
+ * maillage étant complet, un message reçu d'un pair est livré aux clients
+ * locaux et n'est jamais retransmis (un seul saut, pas de boucle).
+ *
+ * ENVOIS:
+ * Chaque lien a sa file d'envoi par priorités (Outbox, sans morceaux: le pair
+ * lit des trames entières), vidée par son propre thread d'écriture. Le thread
+ * d'un client qui relaie un message ne fait que le déposer: un pair lent ne
+ * le bloque jamais. Les deltas de l'annuaire passent par la voie de contrôle,
+ * FIFO, après l'instantané écrit à l'ouverture du lien. Un message que la file
+ * refuse (lien fermé, trop de fichiers en attente) est signalé à l'appelant.
+ *
+ * Si deux nœuds se joignent mutuellement, le lien ouvert par le nœud de plus
+ * petit nom est conservé des deux côtés, l'autre est fermé.
+ *
+ * AUTHENTIFICATION:
+ * Un nœud du maillage reçoit l'annuaire et tous les messages relayés. Le
+ * backplane exige donc le chiffrement (-Dcrypto) et un secret partagé
+ * (-Dcrypto.psk): un pair sans le secret échoue à la poignée de main. Sans
+ * eux, il refuse de démarrer, sauf -Dtcp.cluster.insecure=true (avertissement
+ * à chaque démarrage). La poignée de main et l'instantané doivent arriver en
+ * HANDSHAKE_TIMEOUT_MS: une connexion muette ne garde pas de thread.
+ *
+ * Propriétés système:
+ *   -Dtcp.cluster.port=<port>           port du backplane (0 = serveur seul)
+ *   -Dtcp.cluster.peers=hôte:port,...   nœuds à joindre (reconnexion toutes les 2 s)
+ *   -Dtcp.cluster.node=<nom>            nom du nœud (hôte:port du backplane)
+ *   -Dtcp.cluster.handshakeTimeoutMs=<ms>  délai de la poignée de main d'un lien (5000)
+ *   -Dtcp.cluster.insecure=true         backplane sans authentification (tests seulement)
+ */
+final class Cluster {
+
+    static final int PORT = Integer.getInteger("tcp.cluster.port", 0);
+    static final String PEERS = System.getProperty("tcp.cluster.peers", "");
+
+    private static final long RETRY_MS = 2000;
+    private static final int CONNECT_TIMEOUT_MS = 1000;
+    private static final int HANDSHAKE_TIMEOUT_MS = Integer.getInteger("tcp.cluster.handshakeTimeoutMs", 5000);
+    private static final boolean INSECURE = Boolean.getBoolean("tcp.cluster.insecure");
+    private static final String SNAPSHOT = "NOEUD";
+    private static final String JOIN = "+";
+    private static final String LEAVE = "-";
+
+    /**
+     * Destination d'un message: client local ou nœud pair
+     */
+    interface Endpoint {
+        String name();
+        // false si le message est abandonné (connexion fermée, destinataire trop lent)
+        boolean send(Message msg);
+    }
+
+    /**
+     * Réactions du serveur, appelées depuis le thread de lecture du lien
+     */
+    interface Handler {
+        // Message relayé par un pair (TEXTE, FICHIER ou DEMANDE)
+        void onPeerMessage(Message msg, Peer from);
+        // Annuaire modifié (liste des clients à rediffuser)
+        void onDirectoryChanged();
+        void log(String line);
+    }
+
+    final String nodeId;
+    private final Handler handler;
+    private final Supplier<Collection<String>> localNicknames;
+
+    private final Set<Peer> links = new CopyOnWriteArraySet<>();        // liens ouverts (deltas diffusés)
+    private final Map<String, Peer> peers = new ConcurrentHashMap<>();   // nœud → lien retenu
+    private final Map<String, String> directory = new ConcurrentHashMap<>(); // pseudo → nœud
+    private final Map<String, Set<String>> byNode = new HashMap<>();     // gardé par byNode
+    private final Map<String, String> nodeAt = new ConcurrentHashMap<>(); // adresse jointe → nœud
+    private final Object announceLock = new Object();
+
+    private volatile boolean running;
+    private ServerSocket serverSocket;
+
+    private final LongAdder forwarded;
+    private final LongAdder received;
+
+    Cluster(Handler handler, Supplier<Collection<String>> localNicknames, MetricsRegistry metrics) {
+        this.handler = handler;
+        this.localNicknames = localNicknames;
+        this.nodeId = System.getProperty("tcp.cluster.node", defaultNodeId());
+        forwarded = metrics.counter("cluster_forwarded_total");
+        received = metrics.counter("cluster_received_total");
+        metrics.gauge("cluster_peers", peers::size);
+        metrics.gauge("cluster_remote_sessions", directory::size);
+    }
+
+    static boolean enabled() {
+        return PORT > 0;
+    }
+
+    void start() throws IOException {
+        boolean authenticated = Aead.enabled() && !Handshake.PSK.isEmpty();
+        if (!authenticated && !INSECURE) {
+            throw new IOException("backplane sans authentification refusé : -Dcrypto et -Dcrypto.psk requis"
+                    + " (ou -Dtcp.cluster.insecure=true)");
+        }
+        if (!authenticated) {
+            handler.log("⚠️⚠️ Backplane SANS authentification (-Dtcp.cluster.insecure) : quiconque joint le port "
+                    + PORT + " entre dans la grappe et lit tous les messages relayés");
+        }
+        serverSocket = new ServerSocket(PORT);
+        running = true;
+        Thread acceptor = new Thread(this::acceptLoop, "Cluster-Acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        List<String> targets = new ArrayList<>();
+        for (String p : PEERS.split(",")) if (!p.isBlank()) targets.add(p.trim());
+        if (!targets.isEmpty()) {
+            Thread dialer = new Thread(() -> dialLoop(targets), "Cluster-Dialer");
+            dialer.setDaemon(true);
+            dialer.start();
+        }
+        handler.log("🔗 Nœud " + nodeId + " : backplane sur le port " + PORT
+                + (targets.isEmpty() ? "" : ", pairs " + String.join(", ", targets)));
+    }
+
+    void stop() {
+        running = false;
+        try { if (serverSocket != null) serverSocket.close(); } catch (IOException ignore) {}
+        for (Peer p : links) p.close();
+        links.clear();
+        peers.clear();
+        synchronized (byNode) { byNode.clear(); }
+        directory.clear();
+    }
+
+    // ─────────── Annuaire ───────────
+
+    /**
+     * Un client local s'est présenté
+     */
+    void joined(String nickname) {
+        announce(JOIN, nickname);
+    }
+
+    /**
+     * Un client local est parti
+     */
+    void left(String nickname) {
+        announce(LEAVE, nickname);
+    }
+
+    /**
+     * Lien vers le nœud d'un pseudo distant (null si inconnu ou nœud injoignable)
+     */
+    Peer route(String nickname) {
+        String node = directory.get(nickname);
+        return node != null ? peers.get(node) : null;
+    }
+
+    /**
+     * Pseudo distant → nœud (instantané)
+     */
+    Map<String, String> directory() {
+        return new HashMap<>(directory);
+    }
+
+    int peerCount() {
+        return peers.size();
+    }
+
+    // ─────────── Relais ───────────
+
+    /**
+     * Relaie un message vers le nœud de son destinataire (hold: réservation du
+     * budget de relais, retenue jusqu'à l'écriture; peut être null)
+     *
+     * @return false si le destinataire est inconnu ou si le lien refuse le message
+     */
+    boolean forward(String target, Message msg, RelayBudget.Hold hold) {
+        Peer p = route(target);
+        return p != null && p.send(msg, hold);
+    }
+
+    /**
+     * Relaie un message "Tous" vers chaque nœud
+     */
+    void broadcast(Message msg, RelayBudget.Hold hold) {
+        for (Peer p : peers.values()) p.send(msg, hold);
+    }
+
+    private void announce(String op, String nickname) {
+        Message m = new Message(Message.Type.LISTE, nodeId, op, nickname);
+        synchronized (announceLock) {
+            for (Peer p : links) p.send(m);
+        }
+    }
+
+    private void applySnapshot(String node, String list) {
+        Set<String> names = new HashSet<>();
+        for (String n : list.split(",")) if (!n.isEmpty()) names.add(n);
+        synchronized (byNode) {
+            Set<String> old = byNode.put(node, names);
+            if (old != null) for (String n : old) if (!names.contains(n)) unmap(n, node);
+            for (String n : names) directory.put(n, node);
+        }
+        handler.onDirectoryChanged();
+    }
+
+    private void applyDelta(String node, String op, String nickname) {
+        synchronized (byNode) {
+            Set<String> names = byNode.get(node);
+            if (names == null) return;
+            if (JOIN.equals(op)) {
+                names.add(nickname);
+                directory.put(nickname, node);
+            } else {
+                names.remove(nickname);
+                unmap(nickname, node);
+            }
+        }
+        handler.onDirectoryChanged();
+    }
+
+    private void dropNode(String node) {
+        synchronized (byNode) {
+            Set<String> old = byNode.remove(node);
+            if (old != null) for (String n : old) unmap(n, node);
+        }
+        handler.onDirectoryChanged();
+    }
+
+    // Pseudo retiré pour ce nœud: s'il existe aussi ailleurs (doublon), il pointe vers l'autre nœud
+    private void unmap(String nickname, String node) {
+        if (!directory.remove(nickname, node)) return;
+        for (Map.Entry<String, Set<String>> e : byNode.entrySet()) {
+            if (e.getValue().contains(nickname)) { directory.put(nickname, e.getKey()); return; }
+        }
+    }
+
+    // ─────────── Connexions ───────────
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket s = serverSocket.accept();
+                open(new Peer(s, false, null));
+            } catch (IOException e) {
+                if (running) handler.log("⚠️ Backplane : accept échoué : " + e.getMessage());
+            }
+        }
+    }
+
+    private void dialLoop(List<String> targets) {
+        while (running) {
+            for (String address : targets) {
+                // Déjà relié à ce nœud (par nous ou par lui): rien à faire
+                String known = nodeAt.get(address);
+                if (known != null && peers.containsKey(known)) continue;
+                if (links.stream().anyMatch(p -> address.equals(p.address))) continue;
+                int colon = address.lastIndexOf(':');
+                try {
+                    Socket s = new Socket();
+                    s.connect(new InetSocketAddress(address.substring(0, colon),
+                            Integer.parseInt(address.substring(colon + 1))), CONNECT_TIMEOUT_MS);
+                    open(new Peer(s, true, address));
+                } catch (IOException | RuntimeException ignore) {
+                    // pair absent: nouvel essai au prochain tour
+                }
+            }
+            try { Thread.sleep(RETRY_MS); } catch (InterruptedException e) { return; }
+        }
+    }
+
+    private void open(Peer p) {
+        Thread t = new Thread(p, "Cluster-" + p.socket.getRemoteSocketAddress());
+        t.setDaemon(true);
+        t.start();
+    }
+
+    // Lien dont l'identité du pair vient d'être lue: retenu ou écarté (doublon, soi-même)
+    private boolean register(Peer p) {
+        if (nodeId.equals(p.node)) return false;
+        if (p.address != null) nodeAt.put(p.address, p.node);
+        synchronized (peers) {
+            Peer existing = peers.get(p.node);
+            if (existing != null) {
+                // Les deux nœuds gardent le lien ouvert par celui de plus petit nom
+                String keepDialer = nodeId.compareTo(p.node) < 0 ? nodeId : p.node;
+                if (!keepDialer.equals(p.dialer())) return false;
+                peers.put(p.node, p);
+                existing.close();
+                return true;
+            }
+            peers.put(p.node, p);
+            return true;
+        }
+    }
+
+    /**
+     * Lien vers un nœud pair
+     */
+    final class Peer implements Runnable, Endpoint, Outbox.Listener {
+        final Socket socket;
+        final boolean outbound;
+        final String address;
+        private FrameReader in;
+        private FrameWriter out;
+        // Envois vers ce nœud (null avant l'instantané)
+        private volatile Outbox outbox;
+        private volatile String node;
+
+        Peer(Socket socket, boolean outbound, String address) {
+            this.socket = socket;
+            this.outbound = outbound;
+            this.address = address;
+        }
+
+        @Override public String name() {
+            return node != null ? "nœud " + node : "nœud " + socket.getRemoteSocketAddress();
+        }
+
+        String dialer() {
+            return outbound ? nodeId : node;
+        }
+
+        @Override public void run() {
+            boolean registered = false;
+            try {
+                socket.setTcpNoDelay(true);
+                if (Outbox.SEND_BUFFER > 0) socket.setSendBufferSize(Outbox.SEND_BUFFER);
+                // Poignée de main et instantané du pair bornés dans le temps, puis lecture sans délai
+                socket.setSoTimeout(HANDSHAKE_TIMEOUT_MS);
+                // Backplane chiffré comme les clients: le nœud qui appelle ouvre la poignée de main
+                Session session = Aead.enabled() ? Handshake.exchange(socket.getInputStream(), socket.getOutputStream(), outbound) : null;
+                out = new FrameWriter(socket.getOutputStream(), session);
+                in = new FrameReader(socket.getInputStream(), session);
+
+                // Instantané puis deltas: les arrivées postérieures à l'instantané passent par links,
+                // dans la file d'envoi ouverte juste après lui
+                synchronized (announceLock) {
+                    out.write(new Message(Message.Type.LISTE, nodeId, SNAPSHOT,
+                            String.join(",", localNicknames.get())));
+                    outbox = new Outbox(out, "Cluster-" + socket.getRemoteSocketAddress() + "-Out", this, false);
+                    links.add(this);
+                }
+
+                Message first = in.read();
+                if (first.type != Message.Type.LISTE || !SNAPSHOT.equals(first.target) || first.sender == null) {
+                    throw new IOException("poignée de main invalide");
+                }
+                socket.setSoTimeout(0);
+                node = first.sender;
+                if (!register(this)) return;
+                registered = true;
+                handler.log("🔗 Nœud " + node + " relié (" + socket.getInetAddress().getHostAddress() + ")");
+                applySnapshot(node, first.text != null ? first.text : "");
+
+                while (true) {
+                    Message msg = in.read();
+                    received.increment();
+                    if (msg.type == Message.Type.LISTE) {
+                        if (SNAPSHOT.equals(msg.target)) applySnapshot(node, msg.text);
+                        else applyDelta(node, msg.target, msg.text);
+                    } else {
+                        handler.onPeerMessage(msg, this);
+                    }
+                }
+            } catch (EOFException eof) {
+                // pair arrêté ou lien doublon fermé
+            } catch (Exception ex) {
+                if (running) handler.log("⚠️ Backplane " + name() + " : " + ex.getMessage());
+            } finally {
+                close();
+                links.remove(this);
+                if (registered && peers.remove(node, this)) {
+                    handler.log("💔 Nœud " + node + " perdu");
+                    dropNode(node);
+                }
+            }
+        }
+
+        // Déposé dans la file du lien; écrit par son thread d'écriture
+        @Override public boolean send(Message msg) {
+            return send(msg, null);
+        }
+
+        boolean send(Message msg, RelayBudget.Hold hold) {
+            Outbox o = outbox;
+            if (o == null) return false;
+            if (o.offer(msg, hold)) return true;
+            // Écriture échouée (file fermée): le lien est fermé, le pair sera rejoint à nouveau
+            if (o.isClosed()) close();
+            return false;
+        }
+
+        @Override public Message writing(Message msg) { return msg; }
+
+        @Override public void written(Message msg, Outbox.Lane lane, int bytes, long queuedNanos, long writeNanos) {
+            if (msg.type != Message.Type.LISTE) forwarded.increment();
+        }
+
+        void close() {
+            Outbox o = outbox;
+            if (o != null) o.close();
+            try { if (in != null) in.close(); } catch (IOException ignore) {}
+            try { if (out != null) out.close(); } catch (IOException ignore) {}
+            try { socket.close(); } catch (IOException ignore) {}
+        }
+    }
+
+    private static String defaultNodeId() {
+        String host;
+        try { host = InetAddress.getLocalHost().getHostName(); } catch (IOException e) { host = "localhost"; }
+        return host + ":" + PORT;
+    }
+}
@@ -0,0 +1,181 @@
+package tcp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterOutputStream;
+
+/**
+ * COMPRESSION ADAPTATIVE DES CHARGES UTILES
+ *
+ * Les fichiers et les textes longs sont compressés (Deflate) par l'émetteur
+ * juste avant l'envoi. Le drapeau Message.compressed indique au récepteur
+ * qu'il doit décompresser; le serveur relaie le message tel quel.
+ *
+ * PAS DE COMPRESSION:
+ * - charge utile sous le seuil (l'en-tête Deflate n'est pas rentabilisé)
+ * - format déjà compressé (.png, .jpg, .gif, .zip...)
+ * - gain inférieur à 10 % (le message part alors en clair)
+ *
+ * Propriétés système:
+ *   -Dtcp.compress=false          désactive la compression à l'envoi
+ *   -Dtcp.compress.minBytes=512   seuil minimal (octets)
+ *   -Dtcp.compress.level=1        niveau Deflater (1 = rapide ... 9 = maximal)
+ */
+public final class Compression {
+
+    public static final boolean ENABLED = !"false".equals(System.getProperty("tcp.compress"));
+    public static final int MIN_BYTES = Integer.getInteger("tcp.compress.minBytes", 512);
+    public static final int LEVEL = Integer.getInteger("tcp.compress.level", Deflater.BEST_SPEED);
+
+    /**
+     * Taille décompressée maximale acceptée (protection contre les bombes de décompression)
+     */
+    private static final int MAX_RAW_BYTES = 64 * 1024 * 1024;
+
+    private static final Set<String> COMPRESSED_TYPES = Set.of(
+            "png", "jpg", "jpeg", "gif", "webp",
+            "zip", "gz", "bz2", "xz", "7z", "rar", "jar",
+            "docx", "xlsx", "pptx", "mp3", "mp4", "mkv");
+
+    private Compression() {}
+
+    /**
+     * Bilan d'une compression: tailles avant/après et temps CPU
+     */
+    public record Result(int rawBytes, int wireBytes, long nanos) {
+        public double ratio() {
+            return (double) rawBytes / wireBytes;
+        }
+
+        @Override public String toString() {
+            return String.format("%d → %d octets (×%.1f, %.2f ms)", rawBytes, wireBytes, ratio(), nanos / 1e6);
+        }
+    }
+
+    /**
+     * Compresse la charge utile du message s'il y a lieu
+     *
+     * @return Bilan de la compression, ou null si le message part en clair
+     */
+    public static Result compress(Message msg) {
+        if (!ENABLED || msg.compressed) return null;
+        byte[] raw = switch (msg.type) {
+            case TEXTE -> msg.text == null ? null : msg.text.getBytes(StandardCharsets.UTF_8);
+            case FICHIER -> isCompressedType(msg.filename) ? null : msg.fileBytes;
+            default -> null;
+        };
+        if (raw == null || raw.length < MIN_BYTES) return null;
+
+        long start = System.nanoTime();
+        byte[] packed = deflate(raw);
+        long nanos = System.nanoTime() - start;
+        if (packed.length > raw.length * 0.9) return null;
+
+        msg.compressed = true;
+        msg.rawLength = raw.length;
+        msg.fileBytes = packed;
+        if (msg.type == Message.Type.TEXTE) msg.text = null;
+        return new Result(raw.length, packed.length, nanos);
+    }
+
+    /**
+     * Restaure la charge utile d'un message reçu compressé (sans effet sinon)
+     *
+     * @throws IOException Si les données sont corrompues ou trop grandes
+     */
+    public static void decompress(Message msg) throws IOException {
+        // Annonce d'un fichier en morceaux: son contenu est décompressé à l'écriture (voir inflating)
+        if (!msg.compressed || msg.streamLength > 0) return;
+        if (msg.fileBytes == null || msg.rawLength < 0 || msg.rawLength > MAX_RAW_BYTES) {
+            throw new IOException("Message compressé invalide (" + msg.rawLength + " octets annoncés)");
+        }
+        byte[] raw = inflate(msg.fileBytes, msg.rawLength);
+        msg.compressed = false;
+        if (msg.type == Message.Type.TEXTE) {
+            msg.text = new String(raw, StandardCharsets.UTF_8);
+            msg.fileBytes = null;
+        } else {
+            msg.fileBytes = raw;
+        }
+    }
+
+    /**
+     * Décompression au fil de l'eau d'un contenu reçu en morceaux vers out
+     * (finish() écrit la fin du contenu sans fermer out; close() libère l'Inflater et ferme out)
+     */
+    public static InflaterOutputStream inflating(OutputStream out) {
+        return new InflaterOutputStream(out);
+    }
+
+    /**
+     * Texte à journaliser côté serveur (qui ne décompresse pas)
+     */
+    public static String preview(Message msg) {
+        if (msg.compressed && msg.type == Message.Type.TEXTE) {
+            return "[texte compressé, " + msg.rawLength + " octets]";
+        }
+        return msg.text;
+    }
+
+    /**
+     * Taille de la charge utile à journaliser: "N octets" ou "N octets, M transmis"
+     */
+    public static String size(Message msg) {
+        int wire = msg.fileBytes == null ? 0 : msg.fileBytes.length;
+        return msg.compressed ? msg.rawLength + " octets, " + wire + " transmis" : wire + " octets";
+    }
+
+    private static boolean isCompressedType(String filename) {
+        if (filename == null) return false;
+        int dot = filename.lastIndexOf('.');
+        return dot >= 0 && COMPRESSED_TYPES.contains(filename.substring(dot + 1).toLowerCase());
+    }
+
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(LEVEL);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2 + 64);
+            byte[] buf = new byte[8192];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buf);
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] packed, int rawLength) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(packed);
+            byte[] raw = new byte[rawLength];
+            int off = 0;
+            while (off < rawLength) {
+                int n = inflater.inflate(raw, off, rawLength - off);
+                if (n == 0 && (inflater.needsInput() || inflater.finished() || inflater.needsDictionary())) {
+                    throw new IOException("Données compressées tronquées");
+                }
+                off += n;
+            }
+            // Le marqueur de fin du flux peut rester à lire une fois le tableau rempli
+            if (!inflater.finished() && (inflater.inflate(new byte[1]) != 0 || !inflater.finished())) {
+                throw new IOException("Taille décompressée incohérente");
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IOException("Données compressées corrompues : " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
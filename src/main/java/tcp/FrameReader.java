@@ -0,0 +1,155 @@
+package tcp;
+
+import crypto.Aead;
+import crypto.Session;
+
+import java.io.*;
+
+/**
+ * LECTURE DE TRAMES: [longueur sur 4 octets][Message sérialisé]
+ *
+ * La longueur est connue avant le corps: une trame trop grande est rejetée
+ * sans rien allouer, et l'appelant peut réserver (ou refuser) la mémoire
+ * nécessaire avant de lire le message (voir RelayBudget).
+ *
+ * Les trames courantes sont lues dans un tampon fixe réutilisé; seules les
+ * trames plus grandes que BUFFER_SIZE obtiennent un tableau temporaire.
+ *
+ * Les morceaux du contenu d'un fichier annoncé (voir FrameWriter.writePiece)
+ * ne sont pas recollés en mémoire: read() les passe un à un au Sink indiqué
+ * par streamTo à la réception de l'annonce, et livre entre-temps les trames
+ * complètes intercalées. Le serveur lit ses clients par readLength/readBody,
+ * qui refusent les morceaux: seul le serveur en envoie.
+ *
+ * Avec une session (voir crypto.Session), chaque corps et chaque morceau est
+ * authentifié puis déchiffré en place avant désérialisation: une trame
+ * modifiée ou injectée coupe la connexion.
+ *
+ * Propriété système:
+ *   -Dtcp.frame.maxBytes=<octets>   taille maximale d'une trame (64 Mo)
+ */
+public final class FrameReader {
+
+    public static final int MAX_FRAME = Integer.getInteger("tcp.frame.maxBytes", 64 * 1024 * 1024);
+    // Taille sur le réseau: une trame chiffrée porte en plus son étiquette
+    private static final int MAX_WIRE = MAX_FRAME + Aead.TAG_BYTES;
+
+    private final DataInputStream in;
+    private final byte[] buffer = new byte[FrameWriter.BUFFER_SIZE];
+
+    // Destination du contenu en cours de réception par morceaux (null si aucun), tampon des morceaux
+    private Sink sink;
+    private byte[] piece = new byte[0];
+
+    private final Session session;
+
+    /**
+     * Destination du contenu d'un fichier reçu en morceaux (thread de lecture)
+     */
+    public interface Sink {
+        /** Morceau suivant, en clair (le tableau est réutilisé après l'appel) */
+        void write(byte[] b, int off, int len) throws IOException;
+
+        /** Dernier morceau reçu */
+        void end() throws IOException;
+    }
+
+    /**
+     * Contenu lu puis ignoré (fichier refusé ou non réclamé)
+     */
+    public static final Sink DISCARD = new Sink() {
+        @Override public void write(byte[] b, int off, int len) {}
+        @Override public void end() {}
+    };
+
+    public FrameReader(InputStream in) {
+        this(in, null);
+    }
+
+    /**
+     * @param session Clés de la connexion (null = trames en clair)
+     */
+    public FrameReader(InputStream in, Session session) {
+        this.in = new DataInputStream(new BufferedInputStream(in, FrameWriter.BUFFER_SIZE));
+        this.session = session;
+    }
+
+    /**
+     * Lit l'en-tête de la trame suivante (bloquant)
+     *
+     * @return Longueur du corps
+     * @throws EOFException Si la connexion est fermée entre deux trames
+     */
+    public int readLength() throws IOException {
+        int length = in.readInt();
+        if (length <= 0 || length > MAX_WIRE) {
+            throw new IOException("Trame invalide : " + length + " octets annoncés (max " + MAX_FRAME + ")");
+        }
+        return length;
+    }
+
+    /**
+     * Lit et désérialise le corps d'une trame dont l'en-tête vient d'être lu
+     */
+    public Message readBody(int length) throws IOException {
+        byte[] b = length <= buffer.length ? buffer : new byte[length];
+        in.readFully(b, 0, length);
+        return decode(b, session != null ? session.openFrame(b, 0, length) : length);
+    }
+
+    private static Message decode(byte[] b, int length) throws IOException {
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(b, 0, length))) {
+            if (ois.readObject() instanceof Message msg) return msg;
+            throw new IOException("Trame inattendue (pas un Message)");
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Trame illisible : " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Ignore le corps d'une trame refusée, sans l'allouer
+     */
+    public void skipBody(int length) throws IOException {
+        in.skipNBytes(length);
+    }
+
+    /**
+     * Les morceaux qui suivent une annonce (Message.streamLength) vont à sink:
+     * à appeler dès que read() a livré l'annonce, avant l'appel suivant
+     */
+    public void streamTo(Sink sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * Lit le message suivant; les morceaux reçus entre-temps vont au Sink de streamTo
+     */
+    public Message read() throws IOException {
+        while (true) {
+            int header = in.readInt();
+            if ((header & FrameWriter.PIECE_FLAG) == 0) {
+                if (header == 0 || header > MAX_WIRE) {
+                    throw new IOException("Trame invalide : " + header + " octets annoncés (max " + MAX_FRAME + ")");
+                }
+                return readBody(header);
+            }
+            int len = header & FrameWriter.PIECE_LENGTH_MASK;
+            if (sink == null) throw new IOException("Morceau reçu sans fichier annoncé");
+            if (len > FrameWriter.SLICE_SIZE + Aead.TAG_BYTES) {
+                throw new IOException("Morceau invalide : " + len + " octets annoncés");
+            }
+            if (piece.length < len) piece = new byte[len];
+            in.readFully(piece, 0, len);
+            sink.write(piece, 0, session != null ? session.openFrame(piece, 0, len) : len);
+            if ((header & FrameWriter.LAST_PIECE_FLAG) != 0) {
+                Sink done = sink;
+                sink = null;
+                done.end();
+            }
+        }
+    }
+
+    public void close() throws IOException {
+        in.close();
+    }
+}
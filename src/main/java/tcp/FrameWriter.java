@@ -0,0 +1,160 @@
+package tcp;
+
+import crypto.Aead;
+import crypto.Session;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+/**
+ * ÉCRITURE DE TRAMES: [longueur sur 4 octets][Message sérialisé]
+ *
+ * Chaque trame est sérialisée par son propre ObjectOutputStream: aucun état ne
+ * survit d'une trame à l'autre. Un ObjectOutputStream gardé ouvert toute la
+ * connexion retient au contraire chaque Message écrit dans sa table des
+ * références (fichiers compris) jusqu'à la déconnexion.
+ *
+ * Le tampon de sérialisation est réutilisé. Agrandi pour un gros message, il
+ * est ramené à BUFFER_SIZE juste après: la mémoire d'une connexion ne dépend
+ * ni de sa durée ni du volume déjà échangé.
+ *
+ * Une grosse trame (fichier) est écrite par tranches de SLICE_SIZE pour que
+ * l'appelant puisse suivre la progression de l'envoi.
+ *
+ * MORCEAUX: [0x80000000 | n sur 4 octets][n octets], 0xC0000000 pour le dernier
+ * Le contenu d'un gros fichier suit son annonce (message sans fileBytes, voir
+ * Outbox) en morceaux bruts, entre lesquels d'autres trames complètes sont
+ * écrites: le lecteur les livre aussitôt et passe les morceaux au fichier en
+ * cours de réception (FrameReader.streamTo). Un seul contenu en morceaux à la
+ * fois par connexion.
+ *
+ * CHIFFREMENT (voir crypto.Session): avec une session, chaque corps de trame
+ * et chaque morceau est chiffré en place dans le tampon d'écriture, suivi de
+ * son étiquette d'authentification; la longueur annoncée est celle du
+ * chiffré. Le contrôle de MAX_FRAME porte sur la taille en clair.
+ */
+public final class FrameWriter {
+
+    public static final int BUFFER_SIZE = 8192;
+    public static final int SLICE_SIZE = 64 * 1024;
+
+    /**
+     * Suivi de l'écriture d'une trame (octets écrits / taille de la trame)
+     */
+    public interface Progress {
+        void update(long done, long total);
+    }
+
+    private static final byte[] NO_LENGTH = new byte[4];
+
+    static final int PIECE_FLAG = 0x80000000;
+    static final int LAST_PIECE_FLAG = 0x40000000;
+    static final int PIECE_LENGTH_MASK = 0x3fffffff;
+
+    private static final byte[] NO_TAG = new byte[Aead.TAG_BYTES];
+
+    private final OutputStream out;
+    private final Session session;
+    private Buffer buffer = new Buffer(BUFFER_SIZE);
+    private byte[] piece = new byte[0];
+
+    public FrameWriter(OutputStream out) {
+        this(out, null);
+    }
+
+    /**
+     * @param session Clés de la connexion (null = trames en clair)
+     */
+    public FrameWriter(OutputStream out, Session session) {
+        this.out = out;
+        this.session = session;
+    }
+
+    /**
+     * Écrit une trame et la pousse sur le réseau
+     *
+     * @return Nombre d'octets écrits (en-tête compris)
+     */
+    public int write(Message msg) throws IOException {
+        return write(msg, null);
+    }
+
+    /**
+     * Écrit une trame en signalant la progression (progress peut être null)
+     *
+     * @return Nombre d'octets écrits (en-tête compris)
+     */
+    public synchronized int write(Message msg, Progress progress) throws IOException {
+        buffer.reset();
+        buffer.write(NO_LENGTH, 0, 4); // place de la longueur, complétée après sérialisation
+        ObjectOutputStream oos = new ObjectOutputStream(buffer);
+        oos.writeObject(msg);
+        oos.flush();
+
+        int length = buffer.size() - 4;
+        if (length > FrameReader.MAX_FRAME) {
+            buffer = new Buffer(BUFFER_SIZE);
+            throw new IOException("Message trop grand : " + length + " octets (max " + FrameReader.MAX_FRAME + ")");
+        }
+        if (session != null) {
+            buffer.write(NO_TAG, 0, NO_TAG.length); // place de l'étiquette
+            length = session.sealFrame(buffer.array(), 4, length);
+        }
+        byte[] b = buffer.array();
+        b[0] = (byte) (length >>> 24);
+        b[1] = (byte) (length >>> 16);
+        b[2] = (byte) (length >>> 8);
+        b[3] = (byte) length;
+        int total = length + 4;
+        if (progress == null || total <= SLICE_SIZE) {
+            // Une seule écriture: en-tête et corps partent dans le même segment
+            out.write(b, 0, total);
+        } else {
+            // Le rythme des tranches suit celui du réseau (write bloque quand le tampon d'envoi est plein)
+            for (int off = 0; off < total; off += SLICE_SIZE) {
+                out.write(b, off, Math.min(SLICE_SIZE, total - off));
+                progress.update(Math.min(off + SLICE_SIZE, total), total);
+            }
+        }
+        out.flush();
+
+        if (b.length > BUFFER_SIZE) buffer = new Buffer(BUFFER_SIZE);
+        return total;
+    }
+
+    /**
+     * Écrit un morceau du contenu d'un fichier annoncé (en-tête et données en une seule écriture)
+     *
+     * @param last Dernier morceau: le lecteur termine le fichier
+     * @return Nombre d'octets écrits (en-tête compris)
+     */
+    public synchronized int writePiece(byte[] data, int off, int len, boolean last) throws IOException {
+        int sealed = session != null ? len + Aead.TAG_BYTES : len;
+        int total = sealed + 4;
+        if (piece.length < total) piece = new byte[total];
+        System.arraycopy(data, off, piece, 4, len);
+        if (session != null) session.sealFrame(piece, 4, len);
+        int header = PIECE_FLAG | (last ? LAST_PIECE_FLAG : 0) | sealed;
+        piece[0] = (byte) (header >>> 24);
+        piece[1] = (byte) (header >>> 16);
+        piece[2] = (byte) (header >>> 8);
+        piece[3] = (byte) header;
+        out.write(piece, 0, total);
+        out.flush();
+        return total;
+    }
+
+    public void close() throws IOException {
+        out.close();
+    }
+
+    /**
+     * ByteArrayOutputStream dont le tableau interne est accessible sans copie
+     */
+    private static final class Buffer extends ByteArrayOutputStream {
+        Buffer(int size) { super(size); }
+        byte[] array() { return buf; }
+    }
+}
@@ -3,7 +3,8 @@ package tcp;
 import java.io.Serializable;
 
 public class Message implements Serializable {
-    public enum Type { TEXTE, FICHIER, LISTE }
+    // DEMANDE: réclame le contenu d'une empreinte (text = empreinte SHA-256, voir AttachmentCache)
+    public enum Type { TEXTE, FICHIER, LISTE, DEMANDE }
 
     public Type type;
     public String sender;
@@ -11,6 +12,25 @@ public class Message implements Serializable {
     public String text;
     public String filename;
     public byte[] fileBytes;
+    // Empreinte SHA-256 du fichier: FICHIER sans fileBytes = simple proposition
+    public String fileHash;
+
+    // Gros FICHIER envoyé par le serveur: annoncé sans fileBytes, ses streamLength octets
+    // suivent en morceaux bruts (voir Outbox, FrameReader.streamTo)
+    public int streamLength;
+
+    // CRC32C du contenu du fichier avant compression (0 = absent), vérifié à la réception
+    public long checksum;
+
+    // Compression (voir Compression): charge utile Deflate dans fileBytes, text à null pour un TEXTE
+    public boolean compressed;
+    public int rawLength;
+
+    // Traçage de bout en bout (0 = absent, microsecondes epoch — voir metrics.Tracing)
+    public long traceId;
+    public long sentAt;
+    public long serverRecvAt;
+    public long serverSentAt;
 
     // Texte / Liste
     public Message(Type type, String sender, String target, String text) {
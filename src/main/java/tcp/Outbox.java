@@ -0,0 +1,344 @@
+package tcp;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.zip.CRC32C;
+
+/**
+ * FILE D'ENVOI PAR PRIORITÉS D'UNE CONNEXION (SERVEUR)
+ *
+ * Les envois vers un client s'écrivaient directement sur son socket, sous un
+ * verrou: un fichier de plusieurs mégaoctets bloquait derrière lui chaque
+ * TEXTE et chaque LISTE destinés au même client, pendant toute l'écriture.
+ *
+ * Les messages sont maintenant déposés dans trois voies, vidées par un thread
+ * d'écriture propre à la connexion:
+ * - CONTROL     : LISTE, DEMANDE — toujours servie en premier
+ * - INTERACTIVE : TEXTE, propositions de fichier (sans contenu)
+ * - BULK        : FICHIER avec contenu. Au-delà de CHUNK_BYTES, le message part
+ *                 sans son contenu (annonce: streamLength, checksum), puis le
+ *                 contenu brut en morceaux de CHUNK_BYTES, que le client écrit
+ *                 sur disque au fil de l'arrivée (voir FrameReader.streamTo):
+ *                 ni copie sérialisée entière ici, ni fichier entier dans le
+ *                 tas du client
+ *
+ * ORDONNANCEMENT PONDÉRÉ:
+ * Entre deux morceaux d'un gros fichier, les voies prioritaires passent. La
+ * voie interactive dispose de WEIGHT fois la taille d'un morceau à chaque
+ * morceau écrit (déficit à la DRR): un message court attend au plus l'écriture
+ * d'un morceau, et un flot de textes ne peut pas affamer les fichiers. Comme
+ * en DRR, le crédit n'est consommé que lorsqu'un fichier attend ou est en
+ * cours d'écriture, et il revient à son plein (QUANTUM) dès que la voie des
+ * fichiers est vide: les textes d'une période sans fichier ne retardent pas
+ * le fichier suivant, qui ne les fait pas non plus attendre.
+ *
+ * L'attente restante est celle du tampon d'envoi du noyau, déjà rempli de
+ * morceaux: il est borné à SEND_BUFFER pour que le texte ne patiente pas
+ * derrière des mégaoctets en file dans le noyau.
+ *
+ * Au-delà de MAX_BULK_BYTES de fichiers en attente, un nouveau fichier est
+ * abandonné pour ce client (offer renvoie false): le thread qui le dépose,
+ * celui de l'émetteur, n'attend jamais un destinataire lent, et la mémoire
+ * retenue par un client lent reste bornée. Un fichier déposé avec une
+ * réservation du budget de relais (RelayBudget.Hold) la garde jusqu'à ce qu'il
+ * soit écrit ou abandonné.
+ *
+ * Les messages d'une même voie partent dans l'ordre de dépôt; un texte peut
+ * en revanche doubler un fichier déposé avant lui.
+ *
+ * Un lien entre nœuds (Cluster) lit des trames entières: sa file est créée
+ * sans morceaux (pieces = false) et un fichier y part d'un bloc, sur le
+ * thread d'écriture du lien; les voies prioritaires passent avant et après.
+ *
+ * Propriétés système:
+ *   -Dtcp.lanes.chunk=<octets>         taille d'un morceau (16 Ko)
+ *   -Dtcp.lanes.weight=<n>             part de la voie interactive, en morceaux (8)
+ *   -Dtcp.lanes.maxBulkBytes=<octets>  fichiers en attente par client (64 Mo)
+ *   -Dtcp.lanes.sendBuffer=<octets>    tampon d'envoi du socket (128 Ko, 0 = celui du système)
+ */
+final class Outbox {
+
+    static final int CHUNK_BYTES = Math.max(1024, Math.min(FrameWriter.SLICE_SIZE, Integer.getInteger("tcp.lanes.chunk", 16 * 1024)));
+    static final int WEIGHT = Math.max(1, Integer.getInteger("tcp.lanes.weight", 8));
+    static final long MAX_BULK_BYTES = Long.getLong("tcp.lanes.maxBulkBytes", 64L * 1024 * 1024);
+    static final int SEND_BUFFER = Integer.getInteger("tcp.lanes.sendBuffer", 128 * 1024);
+    // Crédit de la voie interactive rendu à chaque morceau écrit (et son plafond)
+    private static final long QUANTUM = (long) WEIGHT * CHUNK_BYTES;
+
+    enum Lane {
+        CONTROL, INTERACTIVE, BULK;
+
+        static Lane of(Message msg) {
+            return switch (msg.type) {
+                case LISTE, DEMANDE -> CONTROL;
+                case TEXTE -> INTERACTIVE;
+                case FICHIER -> msg.fileBytes == null ? INTERACTIVE : BULK;
+            };
+        }
+    }
+
+    /**
+     * Suivi des écritures, appelé par le thread d'écriture
+     */
+    interface Listener {
+        /**
+         * Juste avant la sérialisation: message à écrire à sa place (copie horodatée
+         * pour ce destinataire), jamais le message partagé modifié
+         */
+        Message writing(Message msg);
+
+        /** Message entièrement écrit: attente dans la voie et durée d'écriture */
+        void written(Message msg, Lane lane, int bytes, long queuedNanos, long writeNanos);
+    }
+
+    private static final class Entry {
+        final Message msg;
+        final Lane lane;
+        final RelayBudget.Hold hold;
+        final long queuedAt = System.nanoTime();
+
+        Entry(Message msg, Lane lane, RelayBudget.Hold hold) {
+            this.msg = msg;
+            this.lane = lane;
+            this.hold = hold;
+        }
+
+        // Écrit ou abandonné: la réservation du relais n'est plus retenue par ce client
+        void done() {
+            if (hold != null) hold.release();
+        }
+    }
+
+    private final FrameWriter out;
+    private final Listener listener;
+    private final boolean pieces;
+    private final Thread writer;
+
+    // Gardés par this
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private final ArrayDeque<Entry>[] lanes = new ArrayDeque[] { new ArrayDeque<>(), new ArrayDeque<>(), new ArrayDeque<>() };
+    private int queued;
+    private long bulkBytes;
+    private boolean closed;
+
+    // Thread d'écriture seulement: crédit de la voie interactive, fichier en cours
+    private long deficit = QUANTUM;
+    private boolean bulkActive;
+
+    Outbox(FrameWriter out, String threadName, Listener listener) {
+        this(out, threadName, listener, true);
+    }
+
+    /**
+     * @param pieces Gros fichiers annoncés puis envoyés en morceaux (false: d'un bloc)
+     */
+    Outbox(FrameWriter out, String threadName, Listener listener, boolean pieces) {
+        this.out = out;
+        this.listener = listener;
+        this.pieces = pieces;
+        writer = new Thread(this::run, threadName);
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Dépose un message, sans jamais attendre
+     *
+     * @return false si le message est abandonné (connexion fermée, ou fichier
+     *         au-delà de MAX_BULK_BYTES en attente: client trop lent)
+     */
+    boolean offer(Message msg) {
+        return offer(msg, null);
+    }
+
+    /**
+     * Dépose un message relayé sous une réservation du budget de relais (hold
+     * peut être null), retenue jusqu'à ce que le message soit écrit ou abandonné
+     */
+    boolean offer(Message msg, RelayBudget.Hold hold) {
+        Lane lane = Lane.of(msg);
+        long size = lane == Lane.BULK ? msg.fileBytes.length : 0;
+        if (size > FrameReader.MAX_FRAME) return false; // illisible par le client de toute façon
+        synchronized (this) {
+            if (closed) return false;
+            if (lane == Lane.BULK && bulkBytes > 0 && bulkBytes + size > MAX_BULK_BYTES) return false;
+            if (hold != null) hold.retain();
+            lanes[lane.ordinal()].add(new Entry(msg, lane, hold));
+            queued++;
+            bulkBytes += size;
+            notifyAll();
+        }
+        return true;
+    }
+
+    /**
+     * Messages en attente (fichier en cours d'écriture compris)
+     */
+    synchronized int depth() {
+        return queued;
+    }
+
+    /**
+     * Octets de fichiers en attente (fichier en cours d'écriture compris)
+     */
+    synchronized long bulkBytes() {
+        return bulkBytes;
+    }
+
+    synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Abandonne les messages en attente et arrête le thread d'écriture
+     */
+    void close() {
+        synchronized (this) {
+            closed = true;
+            for (ArrayDeque<Entry> lane : lanes) {
+                for (Entry e : lane) e.done();
+                lane.clear();
+            }
+            queued = 0;
+            bulkBytes = 0;
+            notifyAll();
+        }
+        writer.interrupt();
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                Entry next;
+                synchronized (this) {
+                    while (!closed && queued == 0) wait();
+                    if (closed) return;
+                    next = urgent();
+                    if (next == null) next = lanes[Lane.BULK.ordinal()].poll();
+                }
+                try {
+                    if (next.lane == Lane.BULK) writeBulk(next);
+                    else writeWhole(next);
+                } finally {
+                    next.done();
+                }
+            }
+        } catch (InterruptedException | IOException e) {
+            close();
+        }
+    }
+
+    // Contrôle d'abord, puis la voie interactive tant qu'elle a du crédit ou qu'aucun fichier n'attend
+    private Entry urgent() {
+        Entry e = lanes[Lane.CONTROL.ordinal()].poll();
+        if (e != null) return e;
+        ArrayDeque<Entry> interactive = lanes[Lane.INTERACTIVE.ordinal()];
+        if (!bulkPending()) {
+            deficit = QUANTUM; // voie des fichiers inactive: crédit plein pour le prochain fichier
+            return interactive.poll();
+        }
+        return deficit > 0 ? interactive.poll() : null;
+    }
+
+    // Gardé par this (appelé par le thread d'écriture)
+    private boolean bulkPending() {
+        return bulkActive || !lanes[Lane.BULK.ordinal()].isEmpty();
+    }
+
+    private void writeWhole(Entry e) throws IOException {
+        long start = System.nanoTime();
+        int bytes = out.write(listener.writing(e.msg));
+        if (e.lane == Lane.INTERACTIVE) charge(bytes);
+        finished(e, bytes, start);
+    }
+
+    // Crédit consommé seulement si un fichier attend ou est en cours: sinon le texte ne retarde personne
+    private synchronized void charge(int bytes) {
+        if (bulkPending()) deficit -= bytes;
+    }
+
+    // Un fichier plus petit qu'un morceau (ou tout fichier sans morceaux) part d'un bloc;
+    // sinon annoncé, puis son contenu brut en morceaux
+    private void writeBulk(Entry e) throws IOException {
+        long start = System.nanoTime();
+        Message msg = listener.writing(e.msg);
+        byte[] content = msg.fileBytes;
+        if (!pieces || content.length <= CHUNK_BYTES) {
+            int bytes = out.write(msg);
+            refill();
+            finished(e, bytes, start);
+            return;
+        }
+        int bytes = out.write(announcement(msg));
+        bulkActive = true;
+        try {
+            for (int off = 0; off < content.length; off += CHUNK_BYTES) {
+                int n = Math.min(CHUNK_BYTES, content.length - off);
+                boolean last = off + n == content.length;
+                bytes += out.writePiece(content, off, n, last);
+                refill();
+                if (!last) serveUrgent();
+            }
+        } finally {
+            bulkActive = false;
+        }
+        finished(e, bytes, start);
+    }
+
+    // Le message sans son contenu: taille et CRC32C du contenu qui suit
+    // (CRC calculé ici si l'émetteur ne l'a pas fourni et que le contenu est en clair)
+    private static Message announcement(Message msg) {
+        Message a = new Message(msg.type, msg.sender, msg.target, msg.filename, null);
+        a.text = msg.text;
+        a.fileHash = msg.fileHash;
+        a.compressed = msg.compressed;
+        a.rawLength = msg.rawLength;
+        a.traceId = msg.traceId;
+        a.sentAt = msg.sentAt;
+        a.serverRecvAt = msg.serverRecvAt;
+        a.serverSentAt = msg.serverSentAt;
+        a.streamLength = msg.fileBytes.length;
+        a.checksum = msg.checksum;
+        if (a.checksum == 0 && !msg.compressed) {
+            CRC32C crc = new CRC32C();
+            crc.update(msg.fileBytes);
+            a.checksum = crc.getValue();
+        }
+        return a;
+    }
+
+    // Un morceau écrit: la voie interactive retrouve son crédit (sans l'accumuler au-delà)
+    private void refill() {
+        deficit = Math.min(deficit + QUANTUM, QUANTUM);
+    }
+
+    // Entre deux morceaux: tout le contrôle en attente, et l'interactif dans la limite de son crédit
+    private void serveUrgent() throws IOException {
+        while (true) {
+            Entry e;
+            synchronized (this) {
+                if (closed) throw new IOException("Connexion fermée");
+                e = urgent();
+            }
+            if (e == null) return;
+            try {
+                writeWhole(e);
+            } finally {
+                e.done();
+            }
+        }
+    }
+
+    private void finished(Entry e, int bytes, long writeStart) {
+        long now = System.nanoTime();
+        synchronized (this) {
+            if (closed) return;
+            queued--;
+            if (e.lane == Lane.BULK) {
+                bulkBytes -= e.msg.fileBytes.length;
+                notifyAll();
+            }
+        }
+        listener.written(e.msg, e.lane, bytes, writeStart - e.queuedAt, now - writeStart);
+    }
+}
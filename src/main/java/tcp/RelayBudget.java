@@ -0,0 +1,105 @@
+package tcp;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * BUDGET MÉMOIRE DU RELAIS DE FICHIERS
+ *
+ * Chaque grosse trame (fichier) occupe la mémoire du serveur jusqu'à ce qu'elle
+ * ait été écrite vers tous ses destinataires. Le budget borne ces octets en
+ * transit, au total et par émetteur; la réservation se fait dès l'en-tête de la
+ * trame lu, avant d'allouer le corps (voir FrameReader). Elle est tenue par un
+ * Hold, dont chaque file d'envoi (Outbox) qui reçoit le fichier prend une
+ * référence: les octets ne sont rendus qu'une fois le fichier écrit ou
+ * abandonné par tous ses destinataires. Un émetteur qui dépasse
+ * est freiné: son thread de lecture attend, donc le serveur cesse de lire sa
+ * connexion et le contrôle de flux TCP ralentit l'envoi. Au-delà du délai
+ * d'attente, la trame est ignorée et l'émetteur prévenu.
+ *
+ * Propriétés système:
+ *   -Dtcp.relay.maxBytes=<octets>         budget global        (256 Mo)
+ *   -Dtcp.relay.perSenderBytes=<octets>   budget par émetteur  (64 Mo)
+ *   -Dtcp.relay.waitMs=<ms>               attente maximale     (2000)
+ */
+final class RelayBudget {
+
+    static final long MAX_BYTES = Long.getLong("tcp.relay.maxBytes", 256L * 1024 * 1024);
+    static final long PER_SENDER_BYTES = Long.getLong("tcp.relay.perSenderBytes", 64L * 1024 * 1024);
+    static final long WAIT_MS = Long.getLong("tcp.relay.waitMs", 2000);
+
+    private final long maxBytes;
+    private final long perSenderBytes;
+    private final Map<String, Long> bySender = new HashMap<>();
+    private long inUse;
+
+    RelayBudget(long maxBytes, long perSenderBytes) {
+        this.maxBytes = maxBytes;
+        this.perSenderBytes = perSenderBytes;
+    }
+
+    /**
+     * Réserve des octets pour un émetteur, en attendant au plus waitMs qu'il y ait de la place
+     *
+     * @return false si le fichier doit être refusé (trop gros, ou budget toujours plein)
+     */
+    synchronized boolean acquire(String sender, long bytes, long waitMs) throws InterruptedException {
+        if (bytes > perSenderBytes || bytes > maxBytes) return false;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMs);
+        while (!fits(sender, bytes)) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) return false;
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        inUse += bytes;
+        bySender.merge(sender, bytes, Long::sum);
+        return true;
+    }
+
+    synchronized void release(String sender, long bytes) {
+        inUse -= bytes;
+        bySender.computeIfPresent(sender, (s, held) -> held == bytes ? null : held - bytes);
+        notifyAll();
+    }
+
+    /**
+     * Réserve des octets comme acquire, tenus par un Hold (null si refusé)
+     */
+    Hold hold(String sender, long bytes, long waitMs) throws InterruptedException {
+        return acquire(sender, bytes, waitMs) ? new Hold(sender, bytes) : null;
+    }
+
+    synchronized long inUse() {
+        return inUse;
+    }
+
+    private boolean fits(String sender, long bytes) {
+        return inUse + bytes <= maxBytes && bySender.getOrDefault(sender, 0L) + bytes <= perSenderBytes;
+    }
+
+    /**
+     * Réservation partagée par les destinataires d'un fichier: rendue au budget
+     * quand la dernière référence est relâchée (celle du lecteur comprise)
+     */
+    final class Hold {
+        private final String sender;
+        private final long bytes;
+        private final AtomicInteger refs = new AtomicInteger(1);
+
+        private Hold(String sender, long bytes) {
+            this.sender = sender;
+            this.bytes = bytes;
+        }
+
+        /** Nouvelle référence (un destinataire de plus); seulement tant qu'une autre est tenue */
+        void retain() {
+            refs.incrementAndGet();
+        }
+
+        void release() {
+            if (refs.decrementAndGet() == 0) RelayBudget.this.release(sender, bytes);
+        }
+    }
+}
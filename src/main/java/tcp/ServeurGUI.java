@@ -1,5 +1,11 @@
 package tcp;
 
+import crypto.Aead;
+import crypto.Handshake;
+import crypto.Session;
+import metrics.LatencyHistogram;
+import metrics.MetricsRegistry;
+import metrics.Tracing;
 import tcp.Message;
 
 import javax.swing.*;
@@ -9,23 +15,118 @@ import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.io.EOFException;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.StandardSocketOptions;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
-import java.util.stream.Collectors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 public class ServeurGUI extends JFrame {
     private static final long serialVersionUID = 1L;
     private static final int DEFAULT_PORT = 9999;
+    // Budget mémoire du cache de pièces jointes du serveur (-Dtcp.cache.serverBytes)
+    private static final long FILE_CACHE_BYTES = Long.getLong("tcp.cache.serverBytes", 128L * 1024 * 1024);
+    private static final int MAX_OFFERS = 10_000;
+    // Contenu réclamé à l'émetteur: sans réponse dans ce délai, la demande suivante le réclame à nouveau
+    private static final long REQUEST_TIMEOUT_MS = Long.getLong("tcp.cache.requestTimeoutMs", 30_000);
+    // Acceptation: file d'attente du noyau, threads d'acceptation (un écouteur chacun avec
+    // -Dtcp.accept.reusePort=true, sinon un écouteur partagé), délai pour recevoir le HELLO
+    private static final int ACCEPT_BACKLOG = Integer.getInteger("tcp.accept.backlog", 1024);
+    private static final int ACCEPT_THREADS = Math.max(1, Integer.getInteger("tcp.accept.threads", 2));
+    private static final boolean REUSE_PORT = Boolean.getBoolean("tcp.accept.reusePort");
+    private static final long HELLO_TIMEOUT_MS = Long.getLong("tcp.hello.timeoutMs", 5000);
+    // Arrivées et départs regroupés: une seule LISTE par intervalle, même pendant une vague de reconnexions
+    private static final long LIST_DELAY_MS = 100;
 
     // Réseau
-    private ServerSocket serverSocket;
+    private ServerSocket[] listeners = new ServerSocket[0];
     private volatile boolean running = false;
-    private Thread acceptThread;
+    private Thread[] acceptThreads = new Thread[0];
+    private final AcceptLimiter admission = new AcceptLimiter(AcceptLimiter.RATE, AcceptLimiter.BURST);
+    private final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread t = new Thread(r, "TCP-Timer");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicBoolean listPending = new AtomicBoolean();
+    private final AtomicInteger handshakes = new AtomicInteger();
     private final Set<ClientHandler> clients = new CopyOnWriteArraySet<>();
+    // Clients présentés (HELLO), par pseudo: résolution directe des messages privés
+    private final Map<String, ClientHandler> byNickname = new ConcurrentHashMap<>();
+
+    // Pièces jointes adressées par contenu (voir AttachmentCache), toutes gardées par fileCache:
+    // contenu tel que reçu (éventuellement compressé), dernière proposition par empreinte,
+    // destinataires en attente d'un contenu réclamé à l'émetteur (au plus MAX_OFFERS empreintes)
+    private final LinkedHashMap<String, Message> fileCache = new LinkedHashMap<>(16, 0.75f, true);
+    private long fileCacheBytes;
+    private final Map<String, Message> offers = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override protected boolean removeEldestEntry(Map.Entry<String, Message> eldest) { return size() > MAX_OFFERS; }
+    };
+    private final Map<String, Requested> waiting = new LinkedHashMap<>(16, 0.75f, false) {
+        @Override protected boolean removeEldestEntry(Map.Entry<String, Requested> eldest) { return size() > MAX_OFFERS; }
+    };
+
+    // Contenu réclamé à l'émetteur: demandeurs, échéance au-delà de laquelle la demande est
+    // renouvelée, et connexion (client ou nœud) à qui elle a été faite: seule à pouvoir répondre
+    private static final class Requested {
+        final Set<Cluster.Endpoint> requesters = new HashSet<>();
+        long deadline;
+        Cluster.Endpoint origin;
+    }
+
+    // Octets de fichiers en cours de relais, bornés au total et par émetteur
+    private final RelayBudget relayBudget = new RelayBudget(RelayBudget.MAX_BYTES, RelayBudget.PER_SENDER_BYTES);
+
+    // Métriques (JMX + -Dmetrics.port=<port> pour l'export Prometheus)
+    private final MetricsRegistry metrics = new MetricsRegistry("tcp");
+    private final LongAdder[] messagesIn = metrics.countersByType("messages_in_total", Message.Type.values());
+    private final LongAdder[] bytesIn = metrics.countersByType("bytes_in_total", Message.Type.values());
+    private final LongAdder[] messagesOut = metrics.countersByType("messages_out_total", Message.Type.values());
+    private final LongAdder[] bytesOut = metrics.countersByType("bytes_out_total", Message.Type.values());
+    private final LatencyHistogram decodeTime = metrics.histogram("decode_seconds");
+    private final LatencyHistogram routeTime = metrics.histogram("route_seconds");
+    private final LatencyHistogram sendTime = metrics.histogram("send_seconds");
+    // Traçage: client émetteur → serveur, puis temps de séjour dans le serveur
+    private final LatencyHistogram traceUpstream = metrics.histogram("trace_upstream_seconds");
+    private final LatencyHistogram traceResidence = metrics.histogram("trace_residence_seconds");
+    // Charges utiles compressées relayées: taille d'origine et taille transmise
+    private final LongAdder compressedRawBytes = metrics.counter("compressed_raw_bytes_total");
+    private final LongAdder compressedWireBytes = metrics.counter("compressed_wire_bytes_total");
+    // Pièces jointes: propositions relayées, demandes servies depuis le cache ou réclamées à l'émetteur
+    private final LongAdder fileOffers = metrics.counter("attachment_offers_total");
+    private final LongAdder fileCacheHits = metrics.counter("attachment_cache_hits_total");
+    private final LongAdder fileCacheMisses = metrics.counter("attachment_cache_misses_total");
+    // Budget de relais: attente des émetteurs freinés, fichiers refusés
+    private final LatencyHistogram relayWait = metrics.histogram("relay_wait_seconds");
+    private final LongAdder relayRefused = metrics.counter("relay_refused_total");
+    // Fichiers abandonnés pour un destinataire trop lent (voie des fichiers pleine, voir Outbox)
+    private final LongAdder slowDropped = metrics.counter("slow_dropped_total");
+    // Acceptation: connexions acceptées, attente imposée par la limite d'admission, HELLO jamais reçus
+    private final LongAdder accepted = metrics.counter("accepted_total");
+    private final LatencyHistogram admissionWait = metrics.histogram("admission_wait_seconds");
+    private final LongAdder helloTimeouts = metrics.counter("hello_timeouts_total");
+    // Envois par voie de priorité (voir Outbox): attente dans la voie avant la première écriture
+    private final LatencyHistogram[] laneWait = {
+            metrics.histogram("lane_control_wait_seconds"),
+            metrics.histogram("lane_interactive_wait_seconds"),
+            metrics.histogram("lane_bulk_wait_seconds") };
+
+    // Grappe de serveurs (-Dtcp.cluster.port, voir Cluster): null pour un serveur seul
+    private final Cluster cluster = Cluster.enabled() ? new Cluster(new Backplane(), byNickname::keySet, metrics) : null;
 
     // UI
     private JTextArea logArea;
@@ -99,6 +200,14 @@ public class ServeurGUI extends JFrame {
         btnStop.addActionListener(e -> stopServer());
         addWindowListener(new WindowAdapter() { @Override public void windowClosing(WindowEvent e){ stopServer(); }});
 
+        metrics.gauge("sessions", clients::size);
+        metrics.gauge("handshakes_pending", handshakes::get);
+        metrics.gauge("outbound_queue_depth", () -> clients.stream().mapToLong(ClientHandler::queueDepth).sum());
+        metrics.gauge("outbound_bulk_bytes", () -> clients.stream().mapToLong(ClientHandler::queuedBulkBytes).sum());
+        timer.setRemoveOnCancelPolicy(true);
+        metrics.gauge("relay_in_use_bytes", relayBudget::inUse);
+        metrics.gauge("attachment_cache_bytes", () -> { synchronized (fileCache) { return fileCacheBytes; } });
+
         updateButtons();
     }
 
@@ -112,67 +221,300 @@ public class ServeurGUI extends JFrame {
             alert("Port invalide."); return;
         }
         try {
-            serverSocket = new ServerSocket(port);
+            listeners = openListeners(port);
             running = true;
-            acceptThread = new Thread(this::acceptLoop, "TCP-Acceptor");
-            acceptThread.start();
-            append("✅ Serveur démarré sur le port " + port);
-            setStatus(true, "En ligne — port " + port);
+            acceptThreads = new Thread[ACCEPT_THREADS];
+            for (int i = 0; i < acceptThreads.length; i++) {
+                ServerSocket ss = listeners[i % listeners.length];
+                acceptThreads[i] = new Thread(() -> acceptLoop(ss), "TCP-Acceptor-" + i);
+                acceptThreads[i].start();
+            }
+            append("✅ Serveur démarré sur le port " + port + " (" + ACCEPT_THREADS + " thread(s) d'acceptation, "
+                    + listeners.length + " écouteur(s), backlog " + ACCEPT_BACKLOG
+                    + (Aead.enabled() ? ", chiffrement " + Aead.SUITE.label : "") + ")");
+            if (cluster != null) cluster.start();
+            for (String m : metrics.start()) append(m);
+            setStatus(true, "En ligne — port " + port + (cluster != null ? " — nœud " + cluster.nodeId : ""));
             updateButtons();
         } catch (IOException ex) {
+            for (ServerSocket ss : listeners) try { ss.close(); } catch (IOException ignore) {}
+            if (running) stopServer();
             alert("Erreur ouverture serveur : " + ex.getMessage());
         }
     }
 
     private void stopServer() {
         running = false;
-        try { if (serverSocket != null) serverSocket.close(); } catch (IOException ignore) {}
+        for (ServerSocket ss : listeners) try { ss.close(); } catch (IOException ignore) {}
+        if (cluster != null) cluster.stop();
         for (ClientHandler c : clients) c.close();
         clients.clear();
+        byNickname.clear();
         refreshClientList();
-        if (acceptThread != null && acceptThread.isAlive()) {
-            try { acceptThread.join(200); } catch (InterruptedException ignore) {}
+        for (Thread t : acceptThreads) {
+            t.interrupt(); // thread éventuellement en attente d'admission
+            try { t.join(200); } catch (InterruptedException ignore) {}
         }
+        metrics.stop();
         append("⏹️ Serveur arrêté.");
         setStatus(false, "Hors ligne");
         updateButtons();
     }
 
-    private void acceptLoop() {
+    // Un écouteur par thread avec SO_REUSEPORT (le noyau répartit les connexions), sinon un seul partagé
+    private ServerSocket[] openListeners(int port) throws IOException {
+        int count = 1;
+        if (REUSE_PORT) {
+            try (ServerSocket probe = new ServerSocket()) {
+                if (probe.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT)) count = ACCEPT_THREADS;
+                else append("⚠️ SO_REUSEPORT non supporté ici : un seul écouteur partagé");
+            }
+        }
+        ServerSocket[] opened = new ServerSocket[count];
+        try {
+            for (int i = 0; i < count; i++) {
+                ServerSocket ss = new ServerSocket();
+                opened[i] = ss;
+                if (count > 1) ss.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+                ss.bind(new InetSocketAddress(port), ACCEPT_BACKLOG);
+            }
+        } catch (IOException e) {
+            for (ServerSocket ss : opened) if (ss != null) try { ss.close(); } catch (IOException ignore) {}
+            throw e;
+        }
+        return opened;
+    }
+
+    private void acceptLoop(ServerSocket serverSocket) {
         while (running) {
             try {
+                // Limite d'admission: au-delà, les connexions patientent dans le backlog
+                long waitStart = System.nanoTime();
+                if (admission.acquire()) admissionWait.recordSince(waitStart);
                 Socket s = serverSocket.accept();
+                accepted.increment();
                 ClientHandler h = new ClientHandler(s);
                 clients.add(h);
                 new Thread(h, "Client-" + s.getPort()).start();
+            } catch (InterruptedException e) {
+                return;
             } catch (IOException e) {
                 if (running) append("⚠️ Accept échoué : " + e.getMessage());
             }
         }
     }
 
+    // Liste des clients à rediffuser: regroupée avec les autres changements des LIST_DELAY_MS suivantes
+    private void listChanged() {
+        if (!listPending.compareAndSet(false, true)) return;
+        timer.schedule(() -> {
+            listPending.set(false);
+            refreshClientList();
+            broadcastList();
+        }, LIST_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    // Liste vue par les clients: ceux de ce nœud puis ceux des autres nœuds de la grappe
     private void broadcastList() {
-        String list = clients.stream().map(c -> c.nickname).collect(Collectors.joining(","));
-        Message listMsg = new Message(Message.Type.LISTE, "Serveur", "Tous", list);
+        // Connexions sans HELLO exclues
+        Set<String> names = new LinkedHashSet<>(byNickname.keySet());
+        if (cluster != null) names.addAll(cluster.directory().keySet());
+        Message listMsg = new Message(Message.Type.LISTE, "Serveur", "Tous", String.join(",", names));
         for (ClientHandler c : clients) c.send(listMsg);
     }
 
-    private void sendToTarget(Message msg, ClientHandler from) {
+    // hold: réservation du budget de relais du message (null si aucune), retenue par chaque destinataire
+    private void sendToTarget(Message msg, ClientHandler from, RelayBudget.Hold hold) {
         if ("Tous".equalsIgnoreCase(msg.target)) {
-            for (ClientHandler c : clients) if (c != from) c.send(msg);
-            append(msg.sender + " a envoyé '" + msg.text + "' à tous");
+            for (ClientHandler c : clients) if (c != from) c.send(msg, hold);
+            if (cluster != null) cluster.broadcast(msg, hold);
+            append(msg.sender + " a envoyé '" + Compression.preview(msg) + "' à tous");
         } else {
-            for (ClientHandler c : clients) {
-                if (c.nickname.equals(msg.target)) { c.send(msg); break; }
+            String what = msg.type == Message.Type.TEXTE ? Compression.preview(msg) : msg.filename;
+            ClientHandler c = byNickname.get(msg.target);
+            if (c != null) {
+                // Fichier abandonné pour un destinataire lent: l'émetteur est prévenu
+                if (!c.send(msg, hold) && msg.fileBytes != null) {
+                    notDelivered(msg, from, "trop de fichiers en attente pour ce destinataire");
+                    return;
+                }
+            } else if (cluster == null || cluster.route(msg.target) == null) {
+                notDelivered(msg, from, "destinataire inconnu");
+                return;
+            } else if (!cluster.forward(msg.target, msg, hold)) {
+                notDelivered(msg, from, "nœud du destinataire injoignable ou saturé");
+                return;
+            }
+            append(msg.sender + " a envoyé '" + what + "' à " + msg.target);
+        }
+    }
+
+    // Message privé non remis: l'émetteur en est prévenu par le serveur
+    private void notDelivered(Message msg, ClientHandler from, String reason) {
+        String what = msg.type == Message.Type.TEXTE ? "Message" : "Fichier '" + msg.filename + "'";
+        append("⚠️ " + what + " de " + msg.sender + " non remis à " + msg.target + " : " + reason);
+        from.send(new Message(Message.Type.TEXTE, "Serveur", from.nickname, what + " non remis à " + msg.target + " : " + reason));
+    }
+
+    // Message relayé par un autre nœud: livré aux clients locaux seulement (jamais retransmis)
+    private void deliverLocal(Message msg) {
+        if ("Tous".equalsIgnoreCase(msg.target)) {
+            for (ClientHandler c : clients) c.send(msg);
+        } else {
+            ClientHandler c = byNickname.get(msg.target);
+            if (c != null) c.send(msg);
+        }
+    }
+
+    // ───────────── Backplane (voir Cluster) ─────────────
+
+    private class Backplane implements Cluster.Handler {
+        @Override public void onPeerMessage(Message msg, Cluster.Peer from) {
+            switch (msg.type) {
+                case TEXTE -> deliverLocal(msg);
+                case FICHIER -> {
+                    if (msg.fileHash != null && msg.fileBytes == null) {
+                        // Proposition d'un client distant: retenue pour résoudre les DEMANDE de nos clients
+                        synchronized (fileCache) { offers.put(msg.fileHash, msg); }
+                        deliverLocal(msg);
+                    } else if (msg.fileHash != null) onFileUpload(msg, null, from);
+                    else deliverLocal(msg);
+                }
+                case DEMANDE -> onFileRequest(msg.text, from);
+                case LISTE -> { /* annuaire: traité par Cluster */ }
             }
-            append(msg.sender + " a envoyé '" + (msg.text != null ? msg.text : msg.filename) + "' à " + msg.target);
         }
+
+        @Override public void onDirectoryChanged() {
+            listChanged();
+        }
+
+        @Override public void log(String line) {
+            append(line);
+        }
+    }
+
+    // ───────────── Pièces jointes adressées par contenu ─────────────
+
+    // Proposition (empreinte sans contenu): relayée telle quelle, chaque destinataire réclame s'il n'a pas le fichier
+    private void onFileOffer(Message msg, ClientHandler from) {
+        synchronized (fileCache) { offers.put(msg.fileHash, msg); }
+        fileOffers.increment();
+        sendToTarget(msg, from, null);
+    }
+
+    // Demande d'un destinataire (client ou nœud pair): servie depuis le cache, sinon réclamée
+    // à l'émetteur, ou au nœud de l'émetteur s'il est connecté ailleurs. Une seule demande
+    // à la fois par empreinte; sans réponse après REQUEST_TIMEOUT_MS (fichier sorti du cache
+    // de l'émetteur, envoi refusé...), la demande suivante la renouvelle
+    private void onFileRequest(String hash, Cluster.Endpoint from) {
+        if (!AttachmentCache.isValidHash(hash)) return;
+        Message cached, offer;
+        boolean first;
+        synchronized (fileCache) {
+            cached = fileCache.get(hash);
+            offer = offers.get(hash);
+            first = false;
+            if (cached == null && offer != null) {
+                long now = System.currentTimeMillis();
+                Requested r = waiting.computeIfAbsent(hash, h -> new Requested());
+                first = r.requesters.isEmpty() || now >= r.deadline;
+                if (first) r.deadline = now + REQUEST_TIMEOUT_MS;
+                r.requesters.add(from);
+            }
+        }
+        if (cached != null) {
+            fileCacheHits.increment();
+            deliver(cached, from, null);
+            return;
+        }
+        fileCacheMisses.increment();
+        if (offer == null) { append("⚠️ " + from.name() + " réclame un fichier inconnu (" + hash.substring(0, 8) + "…)"); return; }
+        if (!first) return;
+
+        Cluster.Endpoint origin = byNickname.get(offer.sender);
+        if (origin == null && cluster != null) origin = cluster.route(offer.sender);
+        if (origin == null) {
+            synchronized (fileCache) { waiting.remove(hash); }
+            append("⚠️ Fichier '" + offer.filename + "' introuvable : " + offer.sender + " est déconnecté");
+            return;
+        }
+        synchronized (fileCache) {
+            Requested r = waiting.get(hash);
+            if (r != null) r.origin = origin;
+        }
+        Message request = new Message(Message.Type.DEMANDE, "Serveur", offer.sender, hash);
+        request.filename = offer.filename;
+        if (!origin.send(request)) {
+            // Demande non déposée: rien n'est attendu, la prochaine demande réessaiera
+            synchronized (fileCache) { waiting.remove(hash); }
+            append("⚠️ Fichier '" + offer.filename + "' non réclamé : " + origin.name() + " injoignable");
+        }
+    }
+
+    // Contenu envoyé par l'émetteur en réponse à une DEMANDE: vérifié (connexion à qui il a été
+    // réclamé, empreinte du contenu), puis mis en cache et livré aux demandeurs. Un contenu
+    // refusé n'empoisonne pas le cache: la demande reste en attente jusqu'à son échéance
+    private void onFileUpload(Message msg, RelayBudget.Hold hold, Cluster.Endpoint from) {
+        synchronized (fileCache) {
+            Requested r = waiting.get(msg.fileHash);
+            if (r == null) return; // non sollicité: ignoré
+            if (r.origin != from) {
+                append("⛔ Fichier '" + msg.filename + "' de " + from.name() + " refusé : contenu non réclamé à cette connexion");
+                return;
+            }
+        }
+        String actual;
+        try {
+            actual = AttachmentCache.hash(msg);
+        } catch (IOException e) {
+            actual = null;
+        }
+        if (!msg.fileHash.equals(actual)) {
+            append("⛔ Fichier '" + msg.filename + "' de " + from.name() + " refusé : empreinte incorrecte");
+            return;
+        }
+        Set<Cluster.Endpoint> requesters;
+        synchronized (fileCache) {
+            Requested r = waiting.get(msg.fileHash);
+            if (r == null || r.origin != from) return; // servi ou renouvelé entre-temps
+            waiting.remove(msg.fileHash);
+            requesters = r.requesters;
+            if (fileCache.put(msg.fileHash, msg) == null) fileCacheBytes += msg.fileBytes.length;
+            var it = fileCache.values().iterator();
+            while (fileCacheBytes > FILE_CACHE_BYTES && it.hasNext()) {
+                fileCacheBytes -= it.next().fileBytes.length;
+                it.remove();
+            }
+        }
+        append("📦 Fichier '" + msg.filename + "' mis en cache (" + Compression.size(msg) + "), livré à " + requesters.size() + " client(s)");
+        for (Cluster.Endpoint to : requesters) deliver(msg, to, hold);
+    }
+
+    // Un client reçoit le fichier à son nom; un nœud pair reçoit le contenu tel quel (il le met en cache)
+    private void deliver(Message upload, Cluster.Endpoint to, RelayBudget.Hold hold) {
+        if (to instanceof ClientHandler c) c.send(delivery(upload, c.nickname), hold);
+        else to.send(upload);
+    }
+
+    private Message delivery(Message cached, String to) {
+        Message d = new Message(Message.Type.FICHIER, "Serveur", to, cached.filename, cached.fileBytes);
+        d.fileHash = cached.fileHash;
+        d.compressed = cached.compressed;
+        d.rawLength = cached.rawLength;
+        d.checksum = cached.checksum;
+        return d;
     }
 
     private void refreshClientList() {
         SwingUtilities.invokeLater(() -> {
             clientListModel.clear();
-            for (ClientHandler c : clients) clientListModel.addElement(c.nickname);
+            for (String nickname : byNickname.keySet()) clientListModel.addElement(nickname);
+            if (cluster != null) {
+                List<Map.Entry<String, String>> remote = new ArrayList<>(cluster.directory().entrySet());
+                remote.sort(Map.Entry.comparingByKey());
+                for (Map.Entry<String, String> e : remote) clientListModel.addElement(e.getKey() + " @" + e.getValue());
+            }
         });
     }
 
@@ -196,59 +538,219 @@ public class ServeurGUI extends JFrame {
 
     private void alert(String m) { JOptionPane.showMessageDialog(this, m, "Info", JOptionPane.INFORMATION_MESSAGE); }
 
+    // Horodate la réémission d'un message tracé sur une copie propre au destinataire (le message
+    // d'un broadcast est sérialisé en même temps par les autres écrivains); traces lentes
+    // journalisées au plus une fois par seconde
+    private Message traceSend(Message msg, String to) {
+        Message stamped = copyOf(msg);
+        stamped.serverSentAt = Tracing.nowMicros();
+        long residence = stamped.serverSentAt - msg.serverRecvAt;
+        traceResidence.record(residence * 1000);
+        if (Tracing.shouldLogSlow(stamped.serverSentAt - msg.sentAt)) {
+            append(String.format("🐢 Trace %s %s → %s : réseau %.1f ms, serveur %.1f ms",
+                    Tracing.id(msg.traceId), msg.sender, to,
+                    (msg.serverRecvAt - msg.sentAt) / 1000.0, residence / 1000.0));
+        }
+        return stamped;
+    }
+
+    // Copie superficielle: le contenu (fileBytes) reste partagé, jamais modifié
+    private static Message copyOf(Message m) {
+        Message c = new Message(m.type, m.sender, m.target, m.text);
+        c.filename = m.filename;
+        c.fileBytes = m.fileBytes;
+        c.fileHash = m.fileHash;
+        c.streamLength = m.streamLength;
+        c.checksum = m.checksum;
+        c.compressed = m.compressed;
+        c.rawLength = m.rawLength;
+        c.traceId = m.traceId;
+        c.sentAt = m.sentAt;
+        c.serverRecvAt = m.serverRecvAt;
+        c.serverSentAt = m.serverSentAt;
+        return c;
+    }
+
     // ───────────── Client handler ─────────────
-    private class ClientHandler implements Runnable {
+    private class ClientHandler implements Runnable, Cluster.Endpoint, Outbox.Listener {
         private final Socket socket;
-        private ObjectInputStream in;
-        private ObjectOutputStream out;
+        private FrameReader in;
+        private FrameWriter out;
+        // Envois vers ce client, par voie de priorité (null avant l'ouverture des flux)
+        private volatile Outbox outbox;
         private String nickname = "?";
+        private volatile boolean helloExpired;
 
         ClientHandler(Socket socket) { this.socket = socket; }
 
         @Override public void run() {
             try {
-                out = new ObjectOutputStream(socket.getOutputStream()); out.flush();
-                in  = new ObjectInputStream(socket.getInputStream());
-
-                // HELLO avec pseudo
-                Object hello = in.readObject();
-                if (hello instanceof Message hm && hm.type == Message.Type.TEXTE && "HELLO".equals(hm.target)) {
-                    nickname = (hm.sender != null && !hm.sender.isBlank()) ? hm.sender : ("User@" + socket.getPort());
+                // Tampon d'envoi borné: un texte n'attend pas derrière des mégaoctets déjà dans le noyau
+                socket.setTcpNoDelay(true);
+                if (Outbox.SEND_BUFFER > 0) socket.setSendBufferSize(Outbox.SEND_BUFFER);
+
+                // Poignée de main (-Dcrypto) puis HELLO avec pseudo, attendus au plus
+                // HELLO_TIMEOUT_MS en tout (sinon la connexion est fermée)
+                handshakes.incrementAndGet();
+                ScheduledFuture<?> deadline = timer.schedule(this::helloExpired, HELLO_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                Message hello;
+                try {
+                    Session session = Aead.enabled() ? Handshake.exchange(socket.getInputStream(), socket.getOutputStream(), false) : null;
+                    out = new FrameWriter(socket.getOutputStream(), session);
+                    in  = new FrameReader(socket.getInputStream(), session);
+                    outbox = new Outbox(out, "Client-" + socket.getPort() + "-Out", this);
+                    hello = in.read();
+                } finally {
+                    deadline.cancel(false);
+                    handshakes.decrementAndGet();
+                }
+                if (hello.type == Message.Type.TEXTE && "HELLO".equals(hello.target)) {
+                    nickname = (hello.sender != null && !hello.sender.isBlank()) ? hello.sender : ("User@" + socket.getPort());
                     append("➕ " + nickname + " connecté (" + socket.getInetAddress().getHostAddress() + ")");
-                    refreshClientList();
-                    broadcastList(); // informe tout le monde (y compris le nouveau)
+                    byNickname.put(nickname, this);
+                    if (cluster != null) cluster.joined(nickname);
+                    listChanged(); // informe tout le monde (y compris le nouveau)
                 }
 
                 while (true) {
-                    Object o = in.readObject();
-                    if (!(o instanceof Message msg)) continue;
-
-                    switch (msg.type) {
-                        case TEXTE -> sendToTarget(msg, this);
-                        case FICHIER -> {
-                            append(msg.sender + " a envoyé le fichier '" + msg.filename + "' à " +
-                                    ("Tous".equalsIgnoreCase(msg.target) ? "tous" : msg.target) +
-                                    " (" + (msg.fileBytes == null ? 0 : msg.fileBytes.length) + " octets)");
-                            sendToTarget(msg, this);
-                        }
-                        case LISTE -> { /* pas utilisé côté client */ }
+                    int length = in.readLength();
+                    // Trame plus grande que le tampon fixe (fichier): mémoire réservée avant de lire le corps,
+                    // rendue quand tous les destinataires l'ont écrite ou abandonnée
+                    RelayBudget.Hold hold = null;
+                    if (length > FrameWriter.BUFFER_SIZE && (hold = admit(length)) == null) { in.skipBody(length); continue; }
+                    try {
+                        long decodeStart = System.nanoTime();
+                        Message msg = in.readBody(length);
+                        decodeTime.recordSince(decodeStart);
+                        handle(msg, length + 4, hold);
+                    } finally {
+                        if (hold != null) hold.release();
                     }
                 }
-            } catch (EOFException eof) {
-                append("➖ Déconnexion de " + nickname);
             } catch (Exception ex) {
-                append("⚠️ Client " + nickname + " : " + ex.getMessage());
+                if (helloExpired) {
+                    helloTimeouts.increment();
+                    append("⏱️ " + socket.getInetAddress().getHostAddress() + " : pas de HELLO en " + HELLO_TIMEOUT_MS + " ms, connexion fermée");
+                } else if (ex instanceof EOFException) {
+                    append("➖ Déconnexion de " + nickname);
+                } else {
+                    append("⚠️ Client " + nickname + " : " + ex.getMessage());
+                }
             } finally {
                 close();
                 clients.remove(this);
-                refreshClientList();
-                broadcastList();
+                forget();
+                listChanged();
             }
         }
 
-        void send(Message msg) { try { out.writeObject(msg); out.flush(); } catch (IOException ignore) {} }
+        // Appelé par le minuteur: la connexion n'a pas présenté de HELLO à temps
+        private void helloExpired() {
+            helloExpired = true;
+            close();
+        }
+
+        private void handle(Message msg, int bytes, RelayBudget.Hold hold) {
+            messagesIn[msg.type.ordinal()].increment();
+            bytesIn[msg.type.ordinal()].add(bytes);
+            if (msg.compressed) {
+                compressedRawBytes.add(msg.rawLength);
+                compressedWireBytes.add(msg.fileBytes.length);
+            }
+            if (msg.sentAt != 0) {
+                msg.serverRecvAt = Tracing.nowMicros();
+                traceUpstream.record((msg.serverRecvAt - msg.sentAt) * 1000);
+            }
+
+            long routeStart = System.nanoTime();
+            switch (msg.type) {
+                case TEXTE -> sendToTarget(msg, this, hold);
+                case FICHIER -> {
+                    if (msg.fileHash != null && msg.fileBytes == null) onFileOffer(msg, this);
+                    else if (msg.fileHash != null) onFileUpload(msg, hold, this);
+                    else {
+                        append(msg.sender + " a envoyé le fichier '" + msg.filename + "' à " +
+                                ("Tous".equalsIgnoreCase(msg.target) ? "tous" : msg.target) +
+                                " (" + Compression.size(msg) + ")");
+                        sendToTarget(msg, this, hold);
+                    }
+                }
+                case DEMANDE -> onFileRequest(msg.text, this);
+                case LISTE -> { /* pas utilisé côté client */ }
+            }
+            routeTime.recordSince(routeStart);
+        }
+
+        // Réserve la mémoire d'une grosse trame: l'émetteur est freiné, puis la trame refusée (null) si la place manque
+        private RelayBudget.Hold admit(int length) throws InterruptedException {
+            long start = System.nanoTime();
+            RelayBudget.Hold hold = relayBudget.hold(nickname, length, RelayBudget.WAIT_MS);
+            if (hold != null) {
+                relayWait.recordSince(start);
+                return hold;
+            }
+            relayRefused.increment();
+            append("⛔ Message de " + nickname + " refusé (" + length + " octets, mémoire de relais saturée)");
+            send(new Message(Message.Type.TEXTE, "Serveur", nickname,
+                    "Message de " + length + " octets refusé : serveur saturé, réessayez plus tard"));
+            return null;
+        }
+
+        // Retire le pseudo de l'annuaire, sauf si un autre client local le porte encore
+        private void forget() {
+            if (!byNickname.remove(nickname, this)) return;
+            ClientHandler other = clients.stream().filter(c -> c.nickname.equals(nickname)).findFirst().orElse(null);
+            if (other != null) byNickname.put(nickname, other);
+            else if (cluster != null) cluster.left(nickname);
+        }
+
+        @Override public String name() { return nickname; }
+
+        // Déposé dans la voie du message; écrit par le thread d'écriture de la connexion
+        @Override public boolean send(Message msg) {
+            return send(msg, null);
+        }
+
+        /**
+         * Dépose un message sans attendre (hold: réservation de relais retenue jusqu'à l'écriture)
+         *
+         * @return false si le message est abandonné: client trop lent pour un fichier de plus
+         */
+        boolean send(Message msg, RelayBudget.Hold hold) {
+            Outbox o = outbox;
+            if (o == null) return false;
+            if (o.offer(msg, hold)) return true;
+            if (msg.fileBytes != null && !o.isClosed()) {
+                slowDropped.increment();
+                append("🐢 " + nickname + " trop lent : fichier '" + msg.filename + "' de " + msg.sender + " abandonné");
+            }
+            return false;
+        }
+
+        @Override public Message writing(Message msg) {
+            return msg.serverRecvAt != 0 ? traceSend(msg, nickname) : msg;
+        }
+
+        @Override public void written(Message msg, Outbox.Lane lane, int bytes, long queuedNanos, long writeNanos) {
+            laneWait[lane.ordinal()].record(queuedNanos);
+            sendTime.record(writeNanos);
+            messagesOut[msg.type.ordinal()].increment();
+            bytesOut[msg.type.ordinal()].add(bytes);
+        }
+
+        long queueDepth() {
+            Outbox o = outbox;
+            return o != null ? o.depth() : 0;
+        }
+
+        long queuedBulkBytes() {
+            Outbox o = outbox;
+            return o != null ? o.bulkBytes() : 0;
+        }
 
         void close() {
+            Outbox o = outbox;
+            if (o != null) o.close();
             try { if (in != null) in.close(); } catch (IOException ignore) {}
             try { if (out != null) out.close(); } catch (IOException ignore) {}
             try { if (socket != null) socket.close(); } catch (IOException ignore) {}
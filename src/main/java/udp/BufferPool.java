@@ -0,0 +1,105 @@
+package udp;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * RÉSERVOIR DE TAMPONS HORS TAS (DIRECT BUFFERS)
+ *
+ * Chaque envoi du serveur sérialisait le message dans un ByteArrayOutputStream
+ * neuf, puis le copiait dans un byte[] de la taille exacte. Pour un fichier de
+ * 60 Ko envoyé à 50 clients, cela faisait 6 Mo de déchets par relais.
+ *
+ * Ici le message est sérialisé directement dans un tampon direct emprunté au
+ * réservoir, remis au noyau sans copie intermédiaire (DatagramChannel.send),
+ * puis rendu. Le tas ne voit plus passer les octets envoyés.
+ *
+ * Le réservoir garde au plus maxPooled tampons libres. Au-delà, les tampons
+ * rendus sont abandonnés au GC (ce qui n'arrive qu'en cas de pic de concurrence).
+ */
+public final class BufferPool {
+
+    private final int bufferSize;
+    private final int maxPooled;
+    private final ConcurrentLinkedQueue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger freeCount = new AtomicInteger();
+    private final AtomicLong allocated = new AtomicLong();
+    private final AtomicLong inUse = new AtomicLong();
+
+    public BufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+    }
+
+    /**
+     * Emprunte un tampon vide (position 0, limite = capacité)
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer b = free.poll();
+        if (b != null) {
+            freeCount.decrementAndGet();
+        } else {
+            b = ByteBuffer.allocateDirect(bufferSize);
+            allocated.addAndGet(bufferSize);
+        }
+        inUse.addAndGet(bufferSize);
+        return b;
+    }
+
+    /**
+     * Rend un tampon emprunté
+     */
+    public void release(ByteBuffer b) {
+        inUse.addAndGet(-bufferSize);
+        b.clear();
+        if (freeCount.incrementAndGet() <= maxPooled) {
+            free.offer(b);
+        } else {
+            freeCount.decrementAndGet();
+            allocated.addAndGet(-bufferSize);
+        }
+    }
+
+    /**
+     * Octets de tampons directs créés par le réservoir (libres + empruntés)
+     */
+    public long allocatedBytes() {
+        return allocated.get();
+    }
+
+    /**
+     * Octets de tampons actuellement empruntés
+     */
+    public long inUseBytes() {
+        return inUse.get();
+    }
+
+    /**
+     * Flux d'écriture dans un tampon (IOException si le message ne tient pas)
+     */
+    public static OutputStream outputStream(ByteBuffer b) {
+        return new OutputStream() {
+            @Override public void write(int v) throws IOException {
+                if (!b.hasRemaining()) throw tooLarge(b);
+                b.put((byte) v);
+            }
+
+            @Override public void write(byte[] src, int off, int len) throws IOException {
+                try {
+                    b.put(src, off, len);
+                } catch (BufferOverflowException e) {
+                    throw tooLarge(b);
+                }
+            }
+        };
+    }
+
+    private static IOException tooLarge(ByteBuffer b) {
+        return new IOException("Message trop grand pour un datagramme (" + b.capacity() + " octets max)");
+    }
+}
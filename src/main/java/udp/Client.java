@@ -1,15 +1,34 @@
 package udp;
 
+import crypto.Aead;
+import crypto.Handshake;
+import crypto.Session;
+import datagram.Compression;
+import datagram.EncodeBuffer;
+import datagram.LossStats;
+import datagram.MessageBatcher;
+import datagram.SocketTuning;
+import download.Download;
+import history.ChatHistory;
+import history.HistoryDialog;
+import metrics.TraceRecorder;
+import metrics.Tracing;
+import ui.ChatView;
+import ui.SendQueue;
+
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
-import javax.swing.text.BadLocationException;
-import javax.swing.text.Document;
 import java.awt.*;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.io.*;
 import java.net.*;
-import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * CLIENT UDP
@@ -35,6 +54,17 @@ public class Client extends JFrame {
     // Configuration par défaut
     private static final int BUFFER_SIZE = 65535; // Taille maximale d'un paquet UDP
 
+    // Nombre de messages de l'historique réaffichés à la connexion
+    private static final int HISTORY_REPLAY = 20;
+
+    // Regroupement des petits messages (opt-in): -Dudp.batch=true
+    private static final boolean BATCH_ENABLED = Boolean.getBoolean("udp.batch");
+    private static final long BATCH_DELAY_MS = Long.getLong("udp.batch.delayMs", 5);
+    private static final int BATCH_MAX_BYTES = Integer.getInteger("udp.batch.maxBytes", MessageBatcher.DEFAULT_MAX_BYTES);
+
+    // Clé des statistiques de perte pour le lien serveur → client
+    private static final String SERVER_PEER = "Serveur";
+
     // ========== RÉSEAU ==========
 
     /**
@@ -52,6 +82,77 @@ public class Client extends JFrame {
      */
     private int serverPort;
 
+    /**
+     * Regroupement des messages sortants (null si désactivé)
+     */
+    private MessageBatcher<Message> batcher;
+
+    /**
+     * Paquet d'envoi réutilisé (pointé sur le tampon d'encodage à chaque envoi)
+     */
+    private final DatagramPacket sendPacket = new DatagramPacket(new byte[0], 0);
+
+    /**
+     * Clés de la session chiffrée avec le serveur (null en clair, voir crypto.Handshake)
+     */
+    private volatile Session session;
+
+    /**
+     * Tampon des datagrammes chiffrés, réutilisé sous le verrou de sendPacket
+     */
+    private byte[] sealed;
+
+    /**
+     * Dernier envoi vers le serveur (System.nanoTime): maintien de la session chiffrée
+     */
+    private volatile long lastSent;
+
+    /**
+     * Numéro de séquence du dernier message envoyé au serveur
+     */
+    private final AtomicLong nextSeq = new AtomicLong();
+
+    /**
+     * Crédits accordés au serveur au fil des messages traités (voir CreditWindow)
+     */
+    private final CreditWindow credits = new CreditWindow();
+
+    /**
+     * Pseudo de la connexion en cours (lu par le thread de réception pour les crédits)
+     */
+    private volatile String connectedPseudo;
+
+    /**
+     * Transferts fiables (voir ReliableSender): reçus du serveur (thread de réception),
+     * et envoyés (thread d'envoi, acquittements remis par le thread de réception)
+     */
+    private ReliableReceiver.Table incoming;
+    private final Map<Long, ReliableSender> outgoing = new ConcurrentHashMap<>();
+
+    /**
+     * Pertes estimées sur les messages reçus du serveur
+     */
+    private final LossStats lossStats = new LossStats();
+
+    /**
+     * Compression des envois, annoncée dans le HELLO (le serveur décompresse
+     * pour les destinataires qui ne l'ont pas annoncée)
+     */
+    private final Compression compression = new Compression("udp");
+
+    /**
+     * Latences mesurées sur les messages reçus (traçage de bout en bout)
+     */
+    private final TraceRecorder traces = new TraceRecorder();
+
+    /**
+     * Rafraîchissement périodique des pertes et de la latence dans la barre d'état
+     */
+    private final Timer statusTimer = new Timer(2000, e -> {
+        refreshNetworkStatus();
+        keepAlive();
+    });
+
     /**
      * Thread de réception des messages
      */
@@ -62,12 +163,33 @@ public class Client extends JFrame {
      */
     private volatile boolean connected = false;
 
+    /**
+     * Files d'envoi: lecture, compression et envoi hors de l'EDT (voir SendQueue).
+     * Deux voies: les textes ont leur propre thread et n'attendent jamais la fin
+     * d'un transfert de fichier en cours sur l'autre.
+     */
+    private final SendQueue.Listener sendListener = new SendQueue.Listener() {
+        @Override public void progress(SendQueue.Job job, String phase, long done, long total) {
+            onSendProgress(job, phase, done, total);
+        }
+        @Override public void done(SendQueue.Job job, Exception error) {
+            onSendDone(job, error);
+        }
+    };
+    private final SendQueue sendQueue = new SendQueue("UDP-Send", sendListener);
+    private final SendQueue textQueue = new SendQueue("UDP-Send-Texte", sendListener);
+
+    /**
+     * Historique local des messages envoyés et reçus (null si désactivé ou hors ligne)
+     */
+    private volatile ChatHistory history;
+
     // ========== INTERFACE GRAPHIQUE ==========
 
     /**
-     * Zone d'affichage des messages (avec support des images)
+     * Zone d'affichage des messages, virtualisée (voir ui.ChatView)
      */
-    private JTextPane chatPane;
+    private ChatView chatView;
 
     /**
      * Champ de saisie des messages
@@ -79,11 +201,23 @@ public class Client extends JFrame {
      */
     private JButton btnSend, btnFile, btnConnect, btnDisconnect;
 
+    /**
+     * Progression de l'envoi en cours et bouton d'annulation
+     */
+    private JProgressBar sendProgress;
+    private JButton btnCancel;
+    private JPanel progressRow;
+
     /**
      * Champs de configuration
      */
     private JTextField txtHost, txtPort, txtPseudo;
 
+    /**
+     * Recherche dans l'historique
+     */
+    private JTextField searchField;
+
     /**
      * Liste déroulante des destinataires
      */
@@ -94,6 +228,7 @@ public class Client extends JFrame {
      * Label d'état de la connexion
      */
     private JLabel statusLabel;
+    private String statusText = "Hors ligne";
 
     /**
      * CONSTRUCTEUR
@@ -162,13 +297,22 @@ public class Client extends JFrame {
         targetCombo = new JComboBox<>(targetModel);
         left.add(targetCombo, lc);
 
+        // Recherche dans l'historique local ("mots @pseudo")
+        lc.gridy = 1;
+        searchField = new JTextField();
+        searchField.setToolTipText("Mots recherchés, @pseudo pour un émetteur");
+        left.add(searchField, lc);
+        lc.gridy = 2;
+        JButton btnSearch = new JButton("🔎 Historique");
+        left.add(btnSearch, lc);
+        btnSearch.addActionListener(e -> HistoryDialog.show(this, history, searchField.getText()));
+        searchField.addActionListener(e -> HistoryDialog.show(this, history, searchField.getText()));
+
         // Panel droit: Discussion
         JPanel right = new JPanel(new BorderLayout());
         right.setBorder(BorderFactory.createTitledBorder("Discussion"));
-        chatPane = new JTextPane();
-        chatPane.setEditable(false);
-        chatPane.setContentType("text/plain");
-        right.add(new JScrollPane(chatPane), BorderLayout.CENTER);
+        chatView = new ChatView();
+        right.add(chatView, BorderLayout.CENTER);
 
         split.setLeftComponent(left);
         split.setRightComponent(right);
@@ -194,6 +338,16 @@ public class Client extends JFrame {
         statusLabel = new JLabel("Hors ligne");
         statusLabel.setForeground(new Color(160,0,0));
 
+        // Progression de l'envoi en cours (visible seulement pendant un gros envoi)
+        progressRow = new JPanel(new BorderLayout(8,8));
+        sendProgress = new JProgressBar(0, 100);
+        sendProgress.setStringPainted(true);
+        btnCancel = new JButton("Annuler");
+        progressRow.add(sendProgress, BorderLayout.CENTER);
+        progressRow.add(btnCancel, BorderLayout.EAST);
+        progressRow.setVisible(false);
+
+        south.add(progressRow, BorderLayout.NORTH);
         south.add(bottom, BorderLayout.CENTER);
         south.add(statusLabel, BorderLayout.SOUTH);
         root.add(south, BorderLayout.SOUTH);
@@ -204,6 +358,7 @@ public class Client extends JFrame {
         btnSend.addActionListener(e -> sendText());
         btnFile.addActionListener(e -> sendFile());
         inputField.addActionListener(e -> sendText());
+        btnCancel.addActionListener(e -> cancelSend());
 
         updateButtons();
 
@@ -255,23 +410,48 @@ public class Client extends JFrame {
         try {
             // Création du socket UDP
             socket = new DatagramSocket();
+            for (String w : new SocketTuning("udp").apply(socket)) appendText("⚠️ " + w + "\n");
 
             // Résolution de l'adresse du serveur
             serverAddress = InetAddress.getByName(host);
             serverPort = port;
 
+            // Clés de session avant le premier message (-Dcrypto)
+            if (Aead.enabled()) session = Handshake.exchange(socket, serverAddress, serverPort);
+
+            if (BATCH_ENABLED) {
+                batcher = new MessageBatcher<>("UDP-Batcher", Message[]::new, BATCH_MAX_BYTES, BATCH_DELAY_MS,
+                        this::sendBytes, e -> warn("Erreur envoi : " + e.getMessage()));
+            }
+
             // Envoi d'un message HELLO pour s'identifier au serveur
-            Message hello = new Message(Message.Type.TEXTE, safePseudo(), "HELLO", "hello");
+            // HELLO, avec les capacités du client: recevoir des fragments (transfert
+            // fiable des gros fichiers), décompresser
+            String capabilities = (ReliableSender.ENABLED ? " " + ReliableSender.CAPABILITY : "") +
+                                  (compression.enabled() ? " " + Compression.CAPABILITY : "");
+            Message hello = new Message(Message.Type.TEXTE, safePseudo(), "HELLO", "hello" + capabilities);
             sendMessage(hello);
 
+            // Première fenêtre de crédits; sans trafic, la réception se réveille pour la réaccorder
+            connectedPseudo = safePseudo();
+            incoming = new ReliableReceiver.Table(connectedPseudo);
+            credits.reset();
+            if (CreditWindow.ENABLED) {
+                sendMessage(credits.grant(connectedPseudo));
+                socket.setSoTimeout(CreditWindow.REGRANT_MS);
+            }
+
             // Activation de la connexion
             connected = true;
+            lossStats.clear();
+            statusTimer.start();
 
             // Démarrage du thread de réception
             readerThread = new Thread(this::readLoop, "UDP-Reader");
             readerThread.start();
 
             // Mise à jour de l'interface
+            openHistory();
             setStatus(true, "Connecté — " + host + ":" + port);
             info("Connecté au serveur.");
             updateButtons();
@@ -289,12 +469,22 @@ public class Client extends JFrame {
      */
     private void disconnect() {
         connected = false;
+        statusTimer.stop();
+        sendQueue.cancelAll();
+        textQueue.cancelAll();
+
+        // Envoi des messages encore en attente dans le lot
+        if (batcher != null) {
+            batcher.close();
+            batcher = null;
+        }
 
         // Fermeture du socket UDP
         if (socket != null && !socket.isClosed()) {
             socket.close();
         }
         socket = null;
+        session = null;
 
         // Attente de la fin du thread de réception
         if (readerThread != null && readerThread.isAlive()) {
@@ -305,6 +495,8 @@ public class Client extends JFrame {
             }
         }
 
+        closeHistory();
+
         // Mise à jour de l'interface
         setStatus(false, "Hors ligne");
         updateButtons();
@@ -333,46 +525,34 @@ public class Client extends JFrame {
                 // Réception d'un paquet (bloquant)
                 socket.receive(packet);
 
+                // Déchiffrement: datagramme forgé, rejoué ou en clair ignoré
+                int offset = 0, length = packet.getLength();
+                Session s = session;
+                if (s != null) {
+                    length = s.openDatagram(buffer, length);
+                    if (length < 0) continue;
+                    offset = Session.DATAGRAM_HEADER;
+                }
+
                 // Désérialisation du message
-                ByteArrayInputStream bis = new ByteArrayInputStream(
-                    packet.getData(), 0, packet.getLength()
-                );
+                ByteArrayInputStream bis = new ByteArrayInputStream(buffer, offset, length);
                 ObjectInputStream ois = new ObjectInputStream(bis);
                 Object o = ois.readObject();
 
+                // Lot de messages regroupés par l'émetteur
+                if (o instanceof Message[] lot) {
+                    for (Message m : lot) handleMessage(m);
+                    continue;
+                }
+
                 // Vérification du type d'objet reçu
                 if (!(o instanceof Message msg)) continue;
 
-                // Traitement selon le type de message
-                switch (msg.type) {
-                    case TEXTE -> appendText("💬 " + msg.sender + " → " + msg.target + " : " + msg.text + "\n");
-
-                    case FICHIER -> {
-                        if (msg.fileBytes != null && msg.filename != null) {
-                            String lower = msg.filename.toLowerCase();
-                            // Affichage des images inline
-                            if (lower.endsWith(".png") || lower.endsWith(".jpg") ||
-                                lower.endsWith(".jpeg") || lower.endsWith(".gif")) {
-                                appendImage(new ImageIcon(msg.fileBytes));
-                            }
-                            appendText("🗂️ Fichier reçu de " + msg.sender + " : " + msg.filename +
-                                       " (" + msg.fileBytes.length + " octets)\n");
-                        }
-                    }
-
-                    case LISTE -> SwingUtilities.invokeLater(() -> {
-                        // Mise à jour de la liste des destinataires
-                        targetModel.removeAllElements();
-                        targetModel.addElement("Tous");
-                        String[] users = (msg.text == null ? "" : msg.text).split(",");
-                        for (String u : users) {
-                            if (u != null && !u.isBlank()) {
-                                targetModel.addElement(u.trim());
-                            }
-                        }
-                    });
-                }
+                handleMessage(msg);
 
+            } catch (SocketTimeoutException idle) {
+                // Rien reçu depuis REGRANT_MS: crédit réaccordé (le précédent a pu se perdre)
+                grantCredits();
             } catch (EOFException eof) {
                 info("Serveur fermé.");
                 break;
@@ -386,6 +566,89 @@ public class Client extends JFrame {
         disconnect();
     }
 
+    /**
+     * TRAITEMENT D'UN MESSAGE REÇU
+     *
+     * Affiche le message selon son type (TEXTE, FICHIER, LISTE).
+     *
+     * @param msg Message reçu
+     */
+    private void handleMessage(Message msg) {
+        // Transfert fiable: ni numéro de séquence ni crédit, la fenêtre du transfert s'en charge
+        if (msg.type == Message.Type.FRAGMENT) {
+            onFragment(msg);
+            return;
+        }
+        if (msg.type == Message.Type.ACQUIT) {
+            ReliableSender s = outgoing.get(msg.transferId);
+            if (s != null) {
+                synchronized (s) {
+                    s.onAck(msg, System.nanoTime());
+                    s.notifyAll();
+                }
+            }
+            return;
+        }
+
+        // Décompression éventuelle de la charge utile
+        try {
+            Compression.decompress(msg);
+        } catch (IOException e) {
+            appendText("⚠️ Message de " + msg.sender + " illisible : " + e.getMessage() + "\n");
+            return;
+        }
+
+        // Estimation des pertes à partir des numéros de séquence du serveur
+        lossStats.record(SERVER_PEER, msg.seq);
+        traces.record(msg.sentAt, msg.serverRecvAt, msg.serverSentAt);
+
+        // Message retiré du tampon de réception: nouveaux crédits tous les quarts de fenêtre
+        if (CreditWindow.ENABLED && credits.processed(msg.seq)) grantCredits();
+
+        // Traitement selon le type de message
+        switch (msg.type) {
+            case TEXTE -> {
+                appendText("💬 " + msg.sender + " → " + msg.target + " : " + msg.text + "\n");
+                remember(msg.sender, msg.target, msg.text, null);
+            }
+
+            case FICHIER -> {
+                if (msg.fileBytes != null && msg.filename != null) {
+                    // Enregistrement dans le dossier des téléchargements (voir download.Download)
+                    Path saved = null;
+                    try {
+                        saved = Download.save(msg.filename, msg.fileBytes);
+                    } catch (IOException e) {
+                        appendText("⚠️ Fichier '" + msg.filename + "' non enregistré : " + e.getMessage() + "\n");
+                    }
+
+                    String lower = msg.filename.toLowerCase();
+                    // Affichage des images inline
+                    if (lower.endsWith(".png") || lower.endsWith(".jpg") ||
+                        lower.endsWith(".jpeg") || lower.endsWith(".gif")) {
+                        appendImage(new ImageIcon(msg.fileBytes));
+                    }
+                    appendText("🗂️ Fichier reçu de " + msg.sender + " : " + msg.filename +
+                               " (" + msg.fileBytes.length + " octets)" +
+                               (saved != null ? " — enregistré dans " + saved : "") + "\n");
+                    remember(msg.sender, msg.target, null, msg.filename);
+                }
+            }
+
+            case LISTE -> SwingUtilities.invokeLater(() -> {
+                // Mise à jour de la liste des destinataires
+                targetModel.removeAllElements();
+                targetModel.addElement("Tous");
+                String[] users = (msg.text == null ? "" : msg.text).split(",");
+                for (String u : users) {
+                    if (u != null && !u.isBlank()) {
+                        targetModel.addElement(u.trim());
+                    }
+                }
+            });
+        }
+    }
+
     // ========== MÉTHODES D'ENVOI ==========
 
     /**
@@ -405,15 +668,18 @@ public class Client extends JFrame {
         String target = (String) targetCombo.getSelectedItem();
         if (target == null || target.isBlank()) target = "Tous";
 
+        String to = target;
         Message msg = new Message(Message.Type.TEXTE, safePseudo(), target, text);
+        inputField.setText("");
 
-        try {
+        // Compression et envoi sur le thread d'envoi des textes
+        textQueue.submit("message", job -> {
+            Compression.Result packed = compression.compress(msg);
+            job.checkCancelled();
             sendMessage(msg);
-            appendText("↗️ (" + target + ") " + text + "\n");
-            inputField.setText("");
-        } catch (IOException e) {
-            warn("Erreur envoi : " + e.getMessage());
-        }
+            appendText("↗️ (" + to + ") " + text + (packed != null ? "  [compressé " + packed + "]" : "") + "\n");
+            remember(msg.sender, to, text, null);
+        });
     }
 
     /**
@@ -432,20 +698,61 @@ public class Client extends JFrame {
         if (res != JFileChooser.APPROVE_OPTION) return;
 
         File f = chooser.getSelectedFile();
-        try {
-            // Lecture du fichier en bytes
-            byte[] bytes = Files.readAllBytes(f.toPath());
+        String selected = (String) targetCombo.getSelectedItem();
+        String target = selected == null || selected.isBlank() ? "Tous" : selected;
 
-            String target = (String) targetCombo.getSelectedItem();
-            if (target == null || target.isBlank()) target = "Tous";
+        // Lecture, compression et envoi sur le thread d'envoi (l'interface reste fluide)
+        sendQueue.submit(f.getName(), job -> {
+            byte[] bytes = SendQueue.readFile(f.toPath(), job);
 
             Message msg = new Message(Message.Type.FICHIER, safePseudo(), target, f.getName(), bytes);
-            sendMessage(msg);
+            // Compression si le format s'y prête (bilan affiché avec l'envoi)
+            Compression.Result packed = compression.compress(msg);
+            job.checkCancelled();
+            String transfer = null;
+            if (ReliableSender.ENABLED && msg.fileBytes.length > ReliableSender.CHUNK_BYTES) {
+                transfer = sendReliable(msg, job);
+            } else {
+                sendMessage(msg);
+            }
 
-            appendText("↗️ Fichier envoyé : " + f.getName() + " (" + bytes.length + " octets)\n");
-        } catch (IOException e) {
-            warn("Erreur envoi fichier : " + e.getMessage());
+            appendText("↗️ Fichier envoyé : " + f.getName() + " (" + bytes.length + " octets)" +
+                       (packed != null ? " — compressé " + packed : "") +
+                       (transfer != null ? " — " + transfer : "") + "\n");
+            remember(msg.sender, target, null, f.getName());
+        });
+    }
+
+    /**
+     * Avancement d'un gros envoi (appelé sur l'EDT)
+     */
+    private void onSendProgress(SendQueue.Job job, String phase, long done, long total) {
+        int pct = total == 0 ? 100 : (int) (done * 100 / total);
+        int waiting = sendQueue.depth() - 1;
+        sendProgress.setValue(pct);
+        sendProgress.setString(phase + " " + job.label + " — " + pct + " %" +
+                               (waiting > 0 ? " (+" + waiting + " en attente)" : ""));
+        progressRow.setVisible(true);
+    }
+
+    /**
+     * Fin d'un envoi (appelé sur l'EDT): erreur signalée, barre masquée quand la file est vide
+     */
+    private void onSendDone(SendQueue.Job job, Exception error) {
+        if (error instanceof CancellationException) {
+            appendText("✖️ Envoi annulé : " + job.label + "\n");
+        } else if (error != null && connected) {
+            warn("Erreur envoi " + job.label + " : " + error.getMessage());
         }
+        if (sendQueue.depth() == 0) progressRow.setVisible(false);
+    }
+
+    /**
+     * Annulation de l'envoi en cours (bouton "Annuler")
+     */
+    private void cancelSend() {
+        SendQueue.Job job = sendQueue.current();
+        if (job != null) job.cancel();
     }
 
     /**
@@ -457,16 +764,185 @@ public class Client extends JFrame {
      * @throws IOException Si erreur d'envoi
      */
     private void sendMessage(Message msg) throws IOException {
-        // Sérialisation du message en bytes
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        ObjectOutputStream oos = new ObjectOutputStream(bos);
-        oos.writeObject(msg);
-        oos.flush();
-        byte[] data = bos.toByteArray();
-
-        // Création et envoi du paquet UDP
-        DatagramPacket packet = new DatagramPacket(data, data.length, serverAddress, serverPort);
-        socket.send(packet);
+        msg.seq = nextSeq.incrementAndGet();
+        if (Tracing.ENABLED && msg.sentAt == 0) {
+            msg.traceId = Tracing.newTraceId();
+            msg.sentAt = Tracing.nowMicros();
+        }
+
+        // Mode regroupé: le lot part quand il est plein ou après BATCH_DELAY_MS
+        if (batcher != null) {
+            batcher.add(msg);
+            return;
+        }
+
+        // Sérialisation dans le tampon réutilisé du thread, envoyé sans copie
+        EncodeBuffer buf = EncodeBuffer.forThread();
+        int length = buf.encode(msg);
+
+        sendBytes(buf.array(), length);
+    }
+
+    /**
+     * TRANSFERT FIABLE D'UN GROS MESSAGE (THREAD D'ENVOI)
+     *
+     * Le message est sérialisé puis envoyé en fragments, au rythme des fenêtres
+     * de congestion et de réception; le thread de réception remet les
+     * acquittements et réveille l'envoi. Sans numéro de séquence: un transfert
+     * fiable ne compte ni comme perte ni comme crédit.
+     *
+     * @return Bilan du transfert (fragments, renvois, RTT)
+     */
+    private String sendReliable(Message msg, SendQueue.Job job) throws IOException {
+        if (Tracing.ENABLED && msg.sentAt == 0) {
+            msg.traceId = Tracing.newTraceId();
+            msg.sentAt = Tracing.nowMicros();
+        }
+        EncodeBuffer buf = EncodeBuffer.forThread();
+        int length = buf.encode(msg);
+        if (length > ReliableSender.MAX_BYTES) throw new IOException("Fichier trop grand : " + length + " octets");
+        ReliableSender s = new ReliableSender(connectedPseudo, "Serveur", Arrays.copyOf(buf.array(), length), this::sendControl);
+
+        outgoing.put(s.id, s);
+        try {
+            synchronized (s) {
+                while (true) {
+                    job.checkCancelled();
+                    long now = System.nanoTime();
+                    long deadline = s.pump(now);
+                    job.progress("Envoi", s.ackedBytes(), s.totalBytes());
+                    if (s.done()) return s.describe();
+                    if (s.failed()) throw new IOException("Transfert abandonné : pas d'acquittement du serveur");
+                    // Réveil par un acquittement, au plus tard à l'échéance (et pour voir une annulation)
+                    s.wait(Math.max(1, Math.min(50, (deadline - now) / 1_000_000)));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException();
+        } finally {
+            outgoing.remove(s.id);
+        }
+    }
+
+    /**
+     * Fragment d'un gros message du serveur (thread de réception): acquitté, puis
+     * le message reconstitué est traité comme s'il était arrivé d'un bloc
+     */
+    private void onFragment(Message fragment) {
+        byte[][] assembled = new byte[1][];
+        Message ack = incoming.accept(fragment, System.nanoTime(), b -> assembled[0] = b);
+        if (ack != null) sendControl(ack);
+        if (assembled[0] == null) return;
+        try {
+            Object o = new ObjectInputStream(new ByteArrayInputStream(assembled[0])).readObject();
+            if (o instanceof Message msg) handleMessage(msg);
+        } catch (IOException | ClassNotFoundException e) {
+            appendText("⚠️ Transfert illisible : " + e.getMessage() + "\n");
+        }
+    }
+
+    /**
+     * Envoi direct d'un fragment ou d'un acquittement (sans numéro de séquence ni regroupement)
+     */
+    private void sendControl(Message msg) {
+        try {
+            EncodeBuffer buf = EncodeBuffer.forThread();
+            int length = buf.encode(msg);
+            sendBytes(buf.array(), length);
+        } catch (IOException | NullPointerException e) {
+            // fragment ou acquittement perdu: le transfert le renverra
+        }
+    }
+
+    /**
+     * Accorde au serveur de nouveaux crédits (thread de réception)
+     */
+    private void grantCredits() {
+        try {
+            sendMessage(credits.grant(connectedPseudo));
+        } catch (IOException e) {
+            // crédit perdu: le suivant le remplace
+        }
+    }
+
+    /**
+     * Envoi d'un datagramme déjà sérialisé vers le serveur
+     */
+    private void sendBytes(byte[] data, int length) throws IOException {
+        synchronized (sendPacket) {
+            Session s = session;
+            if (s != null) {
+                if (sealed == null || sealed.length < length + Session.DATAGRAM_OVERHEAD) {
+                    sealed = new byte[length + Session.DATAGRAM_OVERHEAD];
+                }
+                length = s.sealDatagram(data, 0, length, sealed);
+                data = sealed;
+            }
+            sendPacket.setData(data, 0, length);
+            sendPacket.setAddress(serverAddress);
+            sendPacket.setPort(serverPort);
+            socket.send(sendPacket);
+            lastSent = System.nanoTime();
+        }
+    }
+
+    /**
+     * Session chiffrée sans envoi depuis KEEPALIVE_MS: datagramme vide, pour que
+     * le serveur ne l'oublie pas (voir SecureSessions)
+     */
+    private void keepAlive() {
+        if (!connected || session == null) return;
+        if (System.nanoTime() - lastSent < SecureSessions.KEEPALIVE_MS * 1_000_000) return;
+        try {
+            sendBytes(new byte[0], 0);
+        } catch (IOException e) {
+            // perdu: nouvel essai au prochain passage du minuteur
+        }
+    }
+
+    // ========== HISTORIQUE LOCAL ==========
+
+    /**
+     * Ouverture de l'historique du pseudo et réaffichage des derniers messages
+     */
+    private void openHistory() {
+        if (!ChatHistory.ENABLED || history != null) return;
+        try {
+            ChatHistory h = ChatHistory.open("udp", safePseudo());
+            chatView.attachHistory(h, HISTORY_REPLAY);
+            history = h;
+        } catch (IOException e) {
+            appendText("⚠️ Historique indisponible : " + e.getMessage() + "\n");
+        }
+    }
+
+    /**
+     * Fermeture de l'historique (l'index en mémoire est écrit sur disque)
+     */
+    private void closeHistory() {
+        ChatHistory h = history;
+        history = null;
+        chatView.detachHistory();
+        if (h != null) {
+            try {
+                h.close();
+            } catch (IOException ignore) {}
+        }
+    }
+
+    /**
+     * Enregistrement d'un message envoyé ou reçu (historique coupé à la première erreur d'écriture)
+     */
+    private void remember(String sender, String target, String text, String filename) {
+        ChatHistory h = history;
+        if (h == null) return;
+        try {
+            h.append(sender, target, text, filename);
+        } catch (IOException e) {
+            history = null;
+            appendText("⚠️ Historique désactivé : " + e.getMessage() + "\n");
+        }
     }
 
     // ========== MÉTHODES D'AIDE À L'INTERFACE ==========
@@ -475,34 +951,45 @@ public class Client extends JFrame {
      * Ajoute du texte à la zone de discussion
      */
     private void appendText(String text) {
-        SwingUtilities.invokeLater(() -> {
-            Document doc = chatPane.getDocument();
-            try {
-                doc.insertString(doc.getLength(), text, null);
-                chatPane.setCaretPosition(doc.getLength());
-            } catch (BadLocationException ignored) {}
-        });
+        chatView.append(text);
     }
 
     /**
      * Ajoute une image à la zone de discussion
      */
     private void appendImage(ImageIcon icon) {
-        SwingUtilities.invokeLater(() -> {
-            chatPane.setCaretPosition(chatPane.getDocument().getLength());
-            chatPane.insertIcon(icon);
-            appendText("\n");
-        });
+        chatView.appendImage(icon);
     }
 
     /**
      * Met à jour le label de statut
      */
     private void setStatus(boolean on, String text) {
+        statusText = text;
         statusLabel.setText(text);
         statusLabel.setForeground(on ? new Color(0,128,0) : new Color(160,0,0));
     }
 
+    /**
+     * Ajoute les compteurs de pertes et le p99 de latence au label de statut
+     * (détail de la latence par tronçon dans l'info-bulle)
+     */
+    private void refreshNetworkStatus() {
+        if (!connected) return;
+        long received = lossStats.received(SERVER_PEER);
+        long lost = lossStats.lost(SERVER_PEER);
+        String text = statusText + String.format(" — reçus %d, perdus %d (%.1f %%)",
+                received, lost, lossStats.lossRate(SERVER_PEER) * 100);
+        if (traces.endToEnd.count() > 0) {
+            text += String.format(" — latence p99 %.1f ms", traces.liveP99Nanos() / 1e6);
+            statusLabel.setToolTipText(String.format("<html>p99 bout en bout %.1f ms<br>client→serveur %.1f ms"
+                    + "<br>dans le serveur %.1f ms<br>serveur→client %.1f ms</html>",
+                    traces.endToEnd.quantile(0.99) / 1e6, traces.upstream.quantile(0.99) / 1e6,
+                    traces.server.quantile(0.99) / 1e6, traces.downstream.quantile(0.99) / 1e6));
+        }
+        statusLabel.setText(text);
+    }
+
     /**
      * Active/désactive les boutons selon l'état de connexion
      */
@@ -0,0 +1,86 @@
+package udp;
+
+/**
+ * CONTRÔLE DE FLUX PAR CRÉDITS (CÔTÉ RÉCEPTEUR)
+ *
+ * Le serveur envoyait ses datagrammes sans savoir si le client suivait: une
+ * rafale vers un client lent débordait son tampon de réception et le noyau en
+ * jetait une partie, au hasard.
+ *
+ * Le client accorde maintenant des crédits au fil de ce qu'il traite: un
+ * message TEXTE adressé à "CREDIT" dont le texte est la limite, c'est-à-dire
+ * le plus grand numéro de séquence serveur (voir Message.seq) qu'il accepte
+ * de recevoir. Le serveur n'envoie un message que si son numéro ne dépasse
+ * pas la limite; au-delà il le met en attente, puis l'abandonne si l'attente
+ * est pleine (voir ServeurGUI.ClientHandler).
+ *
+ * La limite est cumulative (plus grand numéro traité + WINDOW): un crédit
+ * perdu est rattrapé par le suivant, et une perte ne réduit pas la fenêtre.
+ * Sans trafic, le client réaccorde sa limite toutes les REGRANT_MS au cas où
+ * le dernier crédit se serait perdu pendant que le serveur attendait.
+ *
+ * Un client qui n'envoie jamais de crédit (ancienne version) n'est pas limité.
+ *
+ * Propriétés système:
+ *   -Dudp.flow=false              désactive l'envoi de crédits par le client
+ *   -Dudp.flow.window=<messages>  fenêtre accordée (64)
+ */
+public final class CreditWindow {
+
+    public static final boolean ENABLED = !"false".equals(System.getProperty("udp.flow"));
+    public static final int WINDOW = Math.max(4, Integer.getInteger("udp.flow.window", 64));
+    public static final int REGRANT_MS = 1000;
+
+    /**
+     * Destinataire réservé des messages de crédit
+     */
+    public static final String TARGET = "CREDIT";
+
+    private long highest;
+    private long granted = -1;
+
+    /**
+     * Enregistre un message serveur traité
+     *
+     * @param seq Numéro de séquence serveur du message
+     * @return true s'il est temps d'accorder de nouveaux crédits (un quart de fenêtre consommé)
+     */
+    public synchronized boolean processed(long seq) {
+        if (seq > highest) highest = seq;
+        return highest - granted >= WINDOW / 4;
+    }
+
+    /**
+     * Message de crédit à envoyer au serveur (limite = plus grand numéro traité + WINDOW)
+     */
+    public synchronized Message grant(String pseudo) {
+        granted = highest;
+        return new Message(Message.Type.TEXTE, pseudo, TARGET, Long.toString(highest + WINDOW));
+    }
+
+    /**
+     * Remise à zéro (nouvelle connexion: le serveur renumérote depuis 1)
+     */
+    public synchronized void reset() {
+        highest = 0;
+        granted = -1;
+    }
+
+    /**
+     * Le message est-il un crédit (à traiter par le serveur, jamais relayé) ?
+     */
+    public static boolean isGrant(Message msg) {
+        return msg.type == Message.Type.TEXTE && TARGET.equals(msg.target);
+    }
+
+    /**
+     * Limite portée par un message de crédit (-1 si illisible)
+     */
+    public static long limit(Message msg) {
+        try {
+            return Long.parseLong(msg.text);
+        } catch (NumberFormatException | NullPointerException e) {
+            return -1;
+        }
+    }
+}
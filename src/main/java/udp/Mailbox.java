@@ -0,0 +1,95 @@
+package udp;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * BOÎTE AUX LETTRES D'UN SHARD (PLUSIEURS PRODUCTEURS, UN SEUL CONSOMMATEUR)
+ *
+ * Seul moyen pour un thread d'agir sur l'état d'un shard: il y dépose une
+ * tâche, que le thread du shard exécutera à son tour. Le dépôt ne prend aucun
+ * verrou (file chaînée non bloquante); le consommateur ne s'endort que si la
+ * file est vide, et n'est réveillé que s'il dort.
+ *
+ * @param <T> Type des éléments déposés
+ */
+final class Mailbox<T> {
+
+    private final ConcurrentLinkedQueue<T> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private volatile Thread consumer;
+    private volatile boolean parked;
+
+    /**
+     * Désigne le thread consommateur (avant le premier dépôt)
+     */
+    void bind(Thread consumer) {
+        this.consumer = consumer;
+    }
+
+    /**
+     * Dépose un élément (depuis n'importe quel thread)
+     */
+    void post(T item) {
+        queue.add(item);
+        size.incrementAndGet();
+        if (parked) LockSupport.unpark(consumer);
+    }
+
+    /**
+     * Retire l'élément suivant, en attendant s'il n'y en a pas (consommateur seulement)
+     *
+     * @throws InterruptedException si le consommateur est interrompu pendant l'attente
+     */
+    T take() throws InterruptedException {
+        while (true) {
+            T item = queue.poll();
+            if (item != null) {
+                size.decrementAndGet();
+                return item;
+            }
+            // parked est publié avant de revérifier la file: un dépôt concurrent voit
+            // parked à vrai (et réveille) ou son élément est vu ici
+            parked = true;
+            try {
+                if (queue.isEmpty()) LockSupport.park(this);
+            } finally {
+                parked = false;
+            }
+            if (Thread.interrupted()) throw new InterruptedException();
+        }
+    }
+
+    /**
+     * Comme take, mais rend null si rien n'arrive dans le délai (consommateur seulement)
+     *
+     * @param timeoutNanos Attente maximale (nanosecondes)
+     */
+    T poll(long timeoutNanos) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutNanos;
+        while (true) {
+            T item = queue.poll();
+            if (item != null) {
+                size.decrementAndGet();
+                return item;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) return null;
+            parked = true;
+            try {
+                if (queue.isEmpty()) LockSupport.parkNanos(this, remaining);
+            } finally {
+                parked = false;
+            }
+            if (Thread.interrupted()) throw new InterruptedException();
+        }
+    }
+
+    /**
+     * Éléments en attente
+     */
+    int size() {
+        return size.get();
+    }
+}
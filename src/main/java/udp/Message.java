@@ -1,6 +1,9 @@
 package udp;
 
+import datagram.Compression;
+
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 
 /**
  * CLASSE MESSAGE UDP
@@ -12,22 +15,24 @@ import java.io.Serializable;
  * - TEXTE   : Message textuel simple
  * - FICHIER : Transfert de fichier avec nom et contenu
  * - LISTE   : Liste des clients connectés
+ * - FRAGMENT: Morceau d'un gros message en transfert fiable (voir ReliableSender)
+ * - ACQUIT  : Acquittement des fragments reçus (voir ReliableReceiver)
  *
  * UTILISATION UDP:
  * Cette classe est identique à la version TCP mais utilisée avec DatagramSocket.
  * Les objets sont sérialisés puis envoyés dans des DatagramPacket.
  */
-public class Message implements Serializable {
+public class Message implements Serializable, Compression.Payload {
 
     /**
      * Enumération des types de messages possibles
      */
-    public enum Type { TEXTE, FICHIER, LISTE }
+    public enum Type { TEXTE, FICHIER, LISTE, FRAGMENT, ACQUIT }
 
     // ========== ATTRIBUTS PUBLICS ==========
 
     /**
-     * Type du message (TEXTE, FICHIER ou LISTE)
+     * Type du message (TEXTE, FICHIER, LISTE, FRAGMENT ou ACQUIT)
      */
     public Type type;
 
@@ -56,6 +61,74 @@ public class Message implements Serializable {
      */
     public byte[] fileBytes;
 
+    /**
+     * Numéro de séquence sur le lien émetteur → récepteur (1, 2, 3...)
+     * Le client numérote ses envois, le serveur numérote ses envois vers chaque client
+     */
+    public long seq;
+
+    // ========== COMPRESSION (voir datagram.Compression) ==========
+
+    /**
+     * Vrai si la charge utile est compressée (Deflate) dans fileBytes
+     * (pour un TEXTE compressé, text vaut null)
+     */
+    public boolean compressed;
+
+    /**
+     * Taille de la charge utile avant compression (octets)
+     */
+    public int rawLength;
+
+    // ========== TRANSFERT FIABLE (voir ReliableSender) ==========
+
+    /**
+     * Identifiant du transfert (FRAGMENT et ACQUIT, 0 sinon)
+     */
+    public long transferId;
+
+    /**
+     * FRAGMENT: numéro du fragment; ACQUIT: fragments reçus sans trou (cumulatif)
+     */
+    public int chunkIndex;
+
+    /**
+     * FRAGMENT: nombre total de fragments; ACQUIT: fenêtre de réception (fragments)
+     */
+    public int chunkCount;
+
+    /**
+     * FRAGMENT: taille des fragments choisie par l'émetteur (le dernier peut être plus court)
+     */
+    public int chunkBytes;
+
+    /**
+     * ACQUIT: plages reçues au-delà du cumulatif, par paires [début, fin)
+     */
+    public int[] sack;
+
+    // ========== TRAÇAGE DE BOUT EN BOUT (voir metrics.Tracing) ==========
+
+    /**
+     * Identifiant de trace attribué par l'émetteur (0 = message non tracé)
+     */
+    public long traceId;
+
+    /**
+     * Instant d'envoi par le client (microsecondes epoch)
+     */
+    public long sentAt;
+
+    /**
+     * Instant de réception par le serveur (microsecondes epoch)
+     */
+    public long serverRecvAt;
+
+    /**
+     * Instant de réémission par le serveur vers ce destinataire (microsecondes epoch)
+     */
+    public long serverSentAt;
+
     // ========== CONSTRUCTEURS ==========
 
     /**
@@ -94,5 +167,43 @@ public class Message implements Serializable {
      * Constructeur par défaut (requis pour la sérialisation)
      */
     public Message() {}
-}
 
+    // ========== CHARGE UTILE (voir datagram.Compression) ==========
+
+    @Override public boolean isText() { return type == Type.TEXTE; }
+
+    @Override public byte[] plainBytes() {
+        return switch (type) {
+            case TEXTE -> text == null ? null : text.getBytes(StandardCharsets.UTF_8);
+            case FICHIER -> fileBytes;
+            default -> null;
+        };
+    }
+
+    @Override public String filename() { return filename; }
+
+    @Override public String text() { return text; }
+
+    @Override public byte[] fileBytes() { return fileBytes; }
+
+    @Override public boolean compressed() { return compressed; }
+
+    @Override public int rawLength() { return rawLength; }
+
+    @Override public void packed(byte[] wire, int rawLength) {
+        this.compressed = true;
+        this.rawLength = rawLength;
+        this.fileBytes = wire;
+        if (type == Type.TEXTE) text = null;
+    }
+
+    @Override public void unpacked(byte[] raw) {
+        compressed = false;
+        if (type == Type.TEXTE) {
+            text = new String(raw, StandardCharsets.UTF_8);
+            fileBytes = null;
+        } else {
+            fileBytes = raw;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package udp;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * TRANSFERT FIABLE SUR UDP (CÔTÉ DESTINATAIRE)
+ *
+ * Range les fragments d'un transfert (voir ReliableSender) à leur place, dans
+ * n'importe quel ordre et en ignorant les doublons, et répond à chaque
+ * fragment par un acquittement: nombre de fragments reçus sans trou, plages
+ * reçues au-delà (au plus SACK_BLOCKS) et fenêtre de réception. Le message
+ * d'origine est reconstitué quand tout est arrivé.
+ *
+ * La taille des fragments est celle de l'émetteur, portée par chaque fragment
+ * (-Dudp.reliable.chunk peut différer d'un côté à l'autre). Un fragment plus
+ * grand que cette taille, ou plus court sans être le dernier, est refusé: un
+ * transfert ne dépasse jamais chunkCount × chunkBytes, borné par MAX_BYTES.
+ *
+ * Non synchronisé: un seul thread par table (réception du client, shard du serveur).
+ */
+final class ReliableReceiver {
+
+    /**
+     * Fragments acceptés au-delà du premier manquant (borne la mémoire des trous)
+     */
+    static final int WINDOW = 1024;
+
+    private final long id;
+    private final int count;
+    private final int chunkBytes;
+    private final byte[][] chunks;
+    private final BitSet received = new BitSet();
+    private int cumulative;
+    private long bytes;
+    private long lastActivity;
+
+    private ReliableReceiver(long id, int count, int chunkBytes) {
+        this.id = id;
+        this.count = count;
+        this.chunkBytes = chunkBytes;
+        this.chunks = new byte[count][];
+    }
+
+    /**
+     * Range un fragment et prépare son acquittement (null si le fragment est invalide)
+     */
+    private Message accept(Message f, String me, long now) {
+        if (!fits(f)) return null;
+        lastActivity = now;
+        int i = f.chunkIndex;
+        if (i >= cumulative && i < count && i < cumulative + WINDOW && !received.get(i)) {
+            received.set(i);
+            chunks[i] = f.fileBytes;
+            bytes += f.fileBytes.length;
+            while (cumulative < count && received.get(cumulative)) cumulative++;
+        }
+        return ack(f.sender, me);
+    }
+
+    // Fragment de ce transfert, à la taille annoncée (le dernier seul peut être plus court)
+    private boolean fits(Message f) {
+        if (f.fileBytes == null || f.chunkCount != count || f.chunkBytes != chunkBytes) return false;
+        int len = f.fileBytes.length;
+        return f.chunkIndex == count - 1 ? len > 0 && len <= chunkBytes : len == chunkBytes;
+    }
+
+    private boolean complete() {
+        return cumulative >= count;
+    }
+
+    private byte[] assemble() {
+        byte[] blob = new byte[(int) bytes];
+        int off = 0;
+        for (byte[] c : chunks) {
+            System.arraycopy(c, 0, blob, off, c.length);
+            off += c.length;
+        }
+        return blob;
+    }
+
+    private Message ack(String to, String me) {
+        Message a = new Message(Message.Type.ACQUIT, me, to, null);
+        a.transferId = id;
+        a.chunkIndex = cumulative;
+        a.chunkCount = WINDOW;
+        // Plages reçues au-delà du premier trou: [début, fin) par paires
+        int[] ranges = new int[2 * ReliableSender.SACK_BLOCKS];
+        int n = 0;
+        int from = received.nextSetBit(cumulative);
+        while (from >= 0 && n < ranges.length) {
+            int end = received.nextClearBit(from);
+            ranges[n++] = from;
+            ranges[n++] = end;
+            from = received.nextSetBit(end);
+        }
+        if (n > 0) a.sack = Arrays.copyOf(ranges, n);
+        return a;
+    }
+
+    /**
+     * TRANSFERTS EN COURS D'UN DESTINATAIRE
+     *
+     * Un transfert terminé garde son dernier acquittement un moment: si cet
+     * acquittement se perd, l'émetteur renvoie des fragments déjà reçus et doit
+     * quand même obtenir une réponse. Les transferts inactifs depuis 30 s
+     * sont abandonnés.
+     */
+    static final class Table {
+        private static final long IDLE_NANOS = 30_000_000_000L;
+        private static final int MAX_ACTIVE = 4;
+        private static final int MAX_FINISHED = 64;
+
+        private final String me;
+        private final Map<Long, ReliableReceiver> active = new HashMap<>();
+        private final Map<Long, Message> finished = new LinkedHashMap<>(16, 0.75f, false) {
+            @Override protected boolean removeEldestEntry(Map.Entry<Long, Message> eldest) {
+                return size() > MAX_FINISHED;
+            }
+        };
+
+        /**
+         * @param me Pseudo du destinataire (émetteur des acquittements)
+         */
+        Table(String me) {
+            this.me = me;
+        }
+
+        /**
+         * Traite un fragment
+         *
+         * @param onComplete Reçoit le message sérialisé reconstitué (une seule fois par transfert)
+         * @return Acquittement à renvoyer à l'émetteur (null si le fragment est refusé)
+         */
+        Message accept(Message f, long now, Consumer<byte[]> onComplete) {
+            Message done = finished.get(f.transferId);
+            if (done != null) return done;
+
+            ReliableReceiver r = active.get(f.transferId);
+            boolean created = r == null;
+            if (created) {
+                expire(now);
+                // Taille des fragments de l'émetteur, dans les bornes admises par les deux côtés
+                long size = (long) f.chunkCount * f.chunkBytes;
+                if (f.chunkCount <= 0 || f.chunkBytes < ReliableSender.MIN_CHUNK_BYTES || f.chunkBytes > ReliableSender.MAX_CHUNK_BYTES
+                        || size > (long) ReliableSender.MAX_BYTES + f.chunkBytes || active.size() >= MAX_ACTIVE) {
+                    return null;
+                }
+                r = new ReliableReceiver(f.transferId, f.chunkCount, f.chunkBytes);
+                active.put(f.transferId, r);
+            }
+            Message ack = r.accept(f, me, now);
+            if (ack == null) {
+                if (created) active.remove(f.transferId); // premier fragment invalide: rien n'est retenu
+                return null;
+            }
+            if (r.complete()) {
+                active.remove(f.transferId);
+                finished.put(f.transferId, ack);
+                onComplete.accept(r.assemble());
+            }
+            return ack;
+        }
+
+        /**
+         * Abandonne les transferts inactifs
+         */
+        void expire(long now) {
+            for (Iterator<ReliableReceiver> it = active.values().iterator(); it.hasNext(); ) {
+                if (now - it.next().lastActivity > IDLE_NANOS) it.remove();
+            }
+        }
+
+        int activeCount() {
+            return active.size();
+        }
+
+        void clear() {
+            active.clear();
+            finished.clear();
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package udp;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * TRANSFERT FIABLE SUR UDP (CÔTÉ ÉMETTEUR)
+ *
+ * Un fichier plus grand qu'un datagramme ne pouvait pas passer, et un seul
+ * datagramme perdu perdait tout le fichier. Un message trop gros est maintenant
+ * sérialisé, découpé en fragments de CHUNK_BYTES (type FRAGMENT), et le
+ * destinataire acquitte ce qu'il a reçu (type ACQUIT, voir ReliableReceiver).
+ *
+ * FENÊTRE GLISSANTE ET ACQUITTEMENTS SÉLECTIFS:
+ * Un acquittement porte le nombre de fragments reçus sans trou (cumulatif),
+ * jusqu'à SACK_BLOCKS plages reçues au-delà, et la fenêtre de réception. Seuls
+ * les fragments manquants sont renvoyés. Un fragment est déclaré perdu dès que
+ * le destinataire a reçu DUP_THRESH fragments plus loin, envoyés après lui
+ * (retransmission rapide, sans attendre le délai), ou quand le délai de
+ * retransmission expire. Un fragment renvoyé n'est donc redéclaré perdu que
+ * lorsque des fragments partis après son renvoi sont acquittés: un
+ * acquittement de données plus anciennes ne le renvoie pas une fois de plus.
+ *
+ * RTT ET DÉLAI DE RETRANSMISSION (RFC 6298):
+ * SRTT et RTTVAR sont lissés sur les acquittements des fragments envoyés une
+ * seule fois (algorithme de Karn); RTO = SRTT + 4·RTTVAR, borné entre
+ * MIN_RTO_MS et MAX_RTO_MS, doublé à chaque expiration.
+ *
+ * CONTRÔLE DE CONGESTION (AIMD):
+ * La fenêtre de congestion (en fragments) démarre à INITIAL_CWND, double à
+ * chaque RTT en démarrage lent jusqu'au seuil, puis gagne un fragment par RTT.
+ * Une perte détectée la divise par deux (une fois par fenêtre), une expiration
+ * la ramène à un fragment. Un transfert partage donc le lien avec les autres
+ * flux comme le fait TCP, tout en remplissant un lien long et peu fiable.
+ *
+ * Non synchronisé: l'appelant le confine à un thread (shard du serveur) ou
+ * le protège lui-même (client).
+ *
+ * Propriétés système:
+ *   -Dudp.reliable=false              désactive le transfert fiable (gros messages impossibles)
+ *   -Dudp.reliable.chunk=<octets>     taille d'un fragment (8192)
+ *   -Dudp.reliable.maxBytes=<octets>  taille maximale d'un message transféré (64 Mo)
+ */
+final class ReliableSender {
+
+    static final boolean ENABLED = !"false".equals(System.getProperty("udp.reliable"));
+    // Bornes de la taille d'un fragment, vérifiées aussi à la réception (la taille voyage avec chaque fragment)
+    static final int MIN_CHUNK_BYTES = 512;
+    static final int MAX_CHUNK_BYTES = 60_000;
+    static final int CHUNK_BYTES = Math.max(MIN_CHUNK_BYTES, Math.min(MAX_CHUNK_BYTES, Integer.getInteger("udp.reliable.chunk", 8192)));
+    static final int MAX_BYTES = Integer.getInteger("udp.reliable.maxBytes", 64 * 1024 * 1024);
+
+    /**
+     * Capacité annoncée dans le HELLO par un client qui sait recevoir des fragments
+     */
+    static final String CAPABILITY = "fiable";
+
+    static final int SACK_BLOCKS = 4;
+    private static final int DUP_THRESH = 3;
+    private static final double INITIAL_CWND = 4;
+    private static final double MAX_CWND = 4096;
+    private static final long MIN_RTO_MS = 200;
+    private static final long MAX_RTO_MS = 10_000;
+    private static final long INITIAL_RTO_MS = 1000;
+    private static final int MAX_TIMEOUTS = 8;
+
+    /**
+     * Envoi d'un fragment ou d'un acquittement (datagramme sans numéro de séquence)
+     */
+    interface Output {
+        void send(Message msg) throws IOException;
+    }
+
+    final long id;
+    private final String sender;
+    private final String target;
+    private final byte[] blob;
+    private final int count;
+    private final Output out;
+
+    // État des fragments: envoyé à (nanos, 0 = jamais), rang du dernier envoi, acquitté,
+    // perdu (à renvoyer), renvoyé (Karn)
+    private final long[] sentAt;
+    private final long[] sentOrder;
+    private final BitSet acked = new BitSet();
+    private final BitSet lost = new BitSet();
+    private final BitSet resent = new BitSet();
+    private int base;          // premier fragment non acquitté
+    private int next;          // premier fragment jamais envoyé
+    private int highestAcked = -1;
+    private long sends;                 // envois effectués (rang du prochain)
+    private long highestAckedOrder = -1; // rang d'envoi le plus récent parmi les fragments acquittés
+    private int inFlight;
+    private int receiveWindow;
+
+    // Congestion et délais
+    private double cwnd = INITIAL_CWND;
+    private double ssthresh = MAX_CWND;
+    private int recoveryPoint = -1;
+    private long srttNanos;
+    private long rttvarNanos;
+    private long rtoNanos = INITIAL_RTO_MS * 1_000_000;
+    private int timeouts;
+    private boolean failed;
+
+    private long fragmentsSent;
+    private long retransmits;
+
+    /**
+     * @param sender Pseudo de l'émetteur (porté par chaque fragment)
+     * @param target Destinataire des fragments
+     * @param blob   Message sérialisé à transférer
+     */
+    ReliableSender(String sender, String target, byte[] blob, Output out) {
+        long r;
+        do { r = ThreadLocalRandom.current().nextLong(); } while (r == 0);
+        this.id = r;
+        this.sender = sender;
+        this.target = target;
+        this.blob = blob;
+        this.count = Math.max(1, (blob.length + CHUNK_BYTES - 1) / CHUNK_BYTES);
+        this.out = out;
+        this.sentAt = new long[count];
+        this.sentOrder = new long[count];
+        this.receiveWindow = count;
+    }
+
+    /**
+     * Le message sérialisé doit-il passer par un transfert fiable ?
+     */
+    static boolean needed(int serializedLength) {
+        return ENABLED && serializedLength > CHUNK_BYTES;
+    }
+
+    /**
+     * Envoie ce que les fenêtres permettent et traite l'expiration du délai
+     *
+     * @return Échéance du prochain appel (System.nanoTime), Long.MAX_VALUE si terminé
+     */
+    long pump(long now) throws IOException {
+        return pump(now, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Comme pump(now), en envoyant au plus budget fragments (part d'un passage de l'ordonnanceur)
+     *
+     * @return Échéance du prochain appel: now si le budget a coupé l'envoi
+     */
+    long pump(long now, int budget) throws IOException {
+        if (done() || failed) return Long.MAX_VALUE;
+
+        // Délai expiré sur le plus ancien fragment en vol: tout ce qui est en vol est renvoyé
+        long oldest = oldestInFlight();
+        if (oldest != 0 && now - oldest >= rtoNanos) {
+            if (++timeouts > MAX_TIMEOUTS) {
+                failed = true;
+                return Long.MAX_VALUE;
+            }
+            ssthresh = Math.max(cwnd / 2, 2);
+            cwnd = 1;
+            rtoNanos = Math.min(rtoNanos * 2, MAX_RTO_MS * 1_000_000);
+            for (int i = base; i < next; i++) {
+                if (!acked.get(i) && sentAt[i] != 0 && !lost.get(i)) {
+                    lost.set(i);
+                    inFlight--;
+                }
+            }
+            recoveryPoint = next;
+        }
+
+        // Envoi: d'abord les fragments perdus, puis les nouveaux (dans la fenêtre de réception)
+        int sent = 0;
+        while (inFlight < (int) cwnd) {
+            int i = lost.nextSetBit(base);
+            if (i < 0 || i >= next) {
+                if (next >= count || next >= base + receiveWindow) break;
+                if (sent == budget) return now;
+                i = next++;
+            } else {
+                if (sent == budget) return now;
+                lost.clear(i);
+                resent.set(i);
+                retransmits++;
+            }
+            sendFragment(i, now);
+            sent++;
+        }
+
+        oldest = oldestInFlight();
+        return oldest != 0 ? oldest + rtoNanos : now + rtoNanos;
+    }
+
+    /**
+     * Traite un acquittement du destinataire
+     */
+    void onAck(Message ack, long now) {
+        if (ack.transferId != id || done()) return;
+        receiveWindow = Math.max(1, ack.chunkCount);
+        int newlyAcked = 0;
+        int sample = -1;
+
+        // Cumulatif, puis plages sélectives
+        int cumulative = Math.min(ack.chunkIndex, count);
+        for (int i = base; i < cumulative; i++) {
+            if (markAcked(i)) { newlyAcked++; if (!resent.get(i)) sample = Math.max(sample, i); }
+        }
+        if (ack.sack != null) {
+            for (int k = 0; k + 1 < ack.sack.length; k += 2) {
+                int from = Math.max(ack.sack[k], base), to = Math.min(ack.sack[k + 1], count);
+                for (int i = from; i < to; i++) {
+                    if (markAcked(i)) { newlyAcked++; if (!resent.get(i)) sample = Math.max(sample, i); }
+                }
+            }
+        }
+        while (base < count && acked.get(base)) base++;
+        if (newlyAcked == 0) return;
+        timeouts = 0;
+
+        if (sample >= 0) updateRtt(now - sentAt[sample]);
+
+        // Croissance additive (démarrage lent sous le seuil)
+        for (int n = 0; n < newlyAcked; n++) {
+            cwnd = Math.min(MAX_CWND, cwnd < ssthresh ? cwnd + 1 : cwnd + 1 / cwnd);
+        }
+
+        // Détection des pertes: DUP_THRESH fragments reçus plus loin et envoyés après celui-ci
+        boolean loss = false;
+        for (int i = base; i <= highestAcked - DUP_THRESH; i++) {
+            if (!acked.get(i) && sentAt[i] != 0 && !lost.get(i) && sentOrder[i] + DUP_THRESH <= highestAckedOrder) {
+                lost.set(i);
+                inFlight--;
+                loss = true;
+            }
+        }
+        // Décroissance multiplicative, une seule fois par fenêtre de données
+        if (loss && base >= recoveryPoint) {
+            ssthresh = Math.max(cwnd / 2, 2);
+            cwnd = ssthresh;
+            recoveryPoint = next;
+        }
+    }
+
+    boolean done() {
+        return base >= count;
+    }
+
+    boolean failed() {
+        return failed;
+    }
+
+    long ackedBytes() {
+        return Math.min(blob.length, (long) acked.cardinality() * CHUNK_BYTES);
+    }
+
+    long totalBytes() {
+        return blob.length;
+    }
+
+    long fragmentsSent() {
+        return fragmentsSent;
+    }
+
+    long retransmits() {
+        return retransmits;
+    }
+
+    /**
+     * Résumé affichable (fin de transfert)
+     */
+    String describe() {
+        return String.format("%d fragments, %d renvoyés, RTT %.1f ms, fenêtre %.0f",
+                count, retransmits, srttNanos / 1e6, cwnd);
+    }
+
+    private boolean markAcked(int i) {
+        if (acked.get(i)) return false;
+        acked.set(i);
+        if (i > highestAcked) highestAcked = i;
+        if (sentAt[i] != 0 && sentOrder[i] > highestAckedOrder) highestAckedOrder = sentOrder[i];
+        if (lost.get(i)) lost.clear(i);
+        else if (sentAt[i] != 0) inFlight--;
+        return true;
+    }
+
+    private long oldestInFlight() {
+        long oldest = 0;
+        for (int i = base; i < next; i++) {
+            if (!acked.get(i) && !lost.get(i) && sentAt[i] != 0 && (oldest == 0 || sentAt[i] < oldest)) oldest = sentAt[i];
+        }
+        return oldest;
+    }
+
+    private void updateRtt(long rtt) {
+        if (srttNanos == 0) {
+            srttNanos = rtt;
+            rttvarNanos = rtt / 2;
+        } else {
+            rttvarNanos = (3 * rttvarNanos + Math.abs(srttNanos - rtt)) / 4;
+            srttNanos = (7 * srttNanos + rtt) / 8;
+        }
+        rtoNanos = Math.max(MIN_RTO_MS * 1_000_000, Math.min(MAX_RTO_MS * 1_000_000, srttNanos + 4 * rttvarNanos));
+    }
+
+    private void sendFragment(int i, long now) throws IOException {
+        int from = i * CHUNK_BYTES;
+        Message f = new Message(Message.Type.FRAGMENT, sender, target, null,
+                Arrays.copyOfRange(blob, from, Math.min(blob.length, from + CHUNK_BYTES)));
+        f.transferId = id;
+        f.chunkIndex = i;
+        f.chunkCount = count;
+        f.chunkBytes = CHUNK_BYTES;
+        sentAt[i] = now;
+        sentOrder[i] = sends++;
+        inFlight++;
+        fragmentsSent++;
+        out.send(f);
+    }
+}
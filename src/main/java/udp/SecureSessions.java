@@ -0,0 +1,201 @@
+package udp;
+
+import crypto.Handshake;
+import crypto.Session;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SESSIONS CHIFFRÉES DU SERVEUR UDP (PAR ADRESSE DE CLIENT)
+ *
+ * Chaque HELLO d'une clé inconnue coûte une paire de clés X25519 et un accord
+ * de clés, et retenait une entrée pour toujours: des HELLO à adresse source
+ * usurpée suffisaient à faire grossir la mémoire du serveur sans limite.
+ *
+ * DURÉE DE VIE:
+ * - Une session reste "en attente" tant qu'aucun datagramme chiffré valide
+ *   n'est arrivé de son adresse; elle est oubliée après PENDING_MS (HELLO
+ *   usurpé ou client parti), et il n'en existe jamais plus de MAX_PENDING.
+ * - Une session établie est oubliée après IDLE_MS sans datagramme valide
+ *   (le client envoie un datagramme vide toutes les KEEPALIVE_MS quand il n'a
+ *   rien d'autre à dire), ou quand son client change d'adresse.
+ * Le nettoyage se fait au passage, au plus une fois par seconde.
+ *
+ * LIMITE PAR ADRESSE:
+ * Une adresse IP a droit à HANDSHAKE_RATE nouvelles poignées de main par
+ * seconde (rafale HANDSHAKE_BURST). La réponse déjà calculée pour la même clé
+ * (HELLO répété après une perte) est renvoyée sans compter.
+ *
+ * Appelé par les threads des shards: une adresse n'est lue (HELLO, réception)
+ * que par son shard d'entrée; les envois passent par session(), de n'importe
+ * quel shard.
+ *
+ * Propriétés système:
+ *   -Dcrypto.udp.pendingMs=<ms>           poignée de main sans suite (10000)
+ *   -Dcrypto.udp.idleMs=<ms>              session sans datagramme reçu (600000)
+ *   -Dcrypto.udp.keepaliveMs=<ms>         silence maximal d'un client (60000)
+ *   -Dcrypto.udp.maxPending=<n>           sessions en attente au plus (4096)
+ *   -Dcrypto.udp.handshakeRate=<n/s>      poignées de main par adresse IP (1)
+ *   -Dcrypto.udp.handshakeBurst=<n>       rafale par adresse IP (4)
+ */
+final class SecureSessions {
+
+    static final long PENDING_MS = Long.getLong("crypto.udp.pendingMs", 10_000);
+    static final long IDLE_MS = Long.getLong("crypto.udp.idleMs", 600_000);
+    static final long KEEPALIVE_MS = Long.getLong("crypto.udp.keepaliveMs", 60_000);
+    static final int MAX_PENDING = Integer.getInteger("crypto.udp.maxPending", 4096);
+    static final double HANDSHAKE_RATE = Double.parseDouble(System.getProperty("crypto.udp.handshakeRate", "1"));
+    static final double HANDSHAKE_BURST = Math.max(1, Double.parseDouble(System.getProperty("crypto.udp.handshakeBurst", "4")));
+
+    private static final long SWEEP_NANOS = 1_000_000_000L;
+
+    private static final int PENDING = 0, ESTABLISHED = 1, GONE = 2;
+
+    /**
+     * Poignée de main d'une adresse: clé du client, notre réponse, clés de session
+     */
+    private static final class Secure {
+        final byte[] clientKey;
+        final byte[] reply;
+        final Session session;
+        final AtomicInteger state = new AtomicInteger(PENDING);
+        volatile long lastSeen;
+
+        Secure(byte[] clientKey, byte[] reply, Session session, long now) {
+            this.clientKey = clientKey;
+            this.reply = reply;
+            this.session = session;
+            this.lastSeen = now;
+        }
+    }
+
+    /**
+     * Seau à jetons d'une adresse IP
+     */
+    private static final class Bucket {
+        double tokens = HANDSHAKE_BURST;
+        long last;
+
+        Bucket(long now) {
+            last = now;
+        }
+
+        synchronized boolean take(long now) {
+            tokens = Math.min(HANDSHAKE_BURST, tokens + (now - last) * HANDSHAKE_RATE / 1e9);
+            last = now;
+            if (tokens < 1) return false;
+            tokens -= 1;
+            return true;
+        }
+
+        synchronized boolean full(long now) {
+            return tokens + (now - last) * HANDSHAKE_RATE / 1e9 >= HANDSHAKE_BURST;
+        }
+    }
+
+    private final Map<InetSocketAddress, Secure> byAddress = new ConcurrentHashMap<>();
+    private final Map<InetAddress, Bucket> buckets = new ConcurrentHashMap<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicLong nextSweep = new AtomicLong(System.nanoTime());
+
+    /**
+     * HELLO reçu d'une adresse
+     *
+     * @return Réponse à renvoyer (notre clé publique), null si la poignée de
+     *         main est refusée (limite de l'adresse, trop de sessions en attente)
+     */
+    byte[] handshake(byte[] clientKey, InetSocketAddress from) throws GeneralSecurityException {
+        long now = System.nanoTime();
+        sweep(now);
+        Secure sec = byAddress.get(from);
+        if (sec != null && Arrays.equals(sec.clientKey, clientKey)) return sec.reply; // HELLO répété
+
+        if (pending.get() >= MAX_PENDING) return null;
+        Bucket bucket = buckets.computeIfAbsent(from.getAddress(), a -> new Bucket(now));
+        if (HANDSHAKE_RATE > 0 && !bucket.take(now)) return null;
+
+        Handshake hs = new Handshake();
+        Secure fresh = new Secure(clientKey, hs.datagram(), hs.complete(clientKey, false), now);
+        pending.incrementAndGet();
+        Secure old = byAddress.put(from, fresh);
+        if (old != null) forget(old);
+        return fresh.reply;
+    }
+
+    /**
+     * Déchiffre en place un datagramme reçu de from (voir Session.openDatagram)
+     *
+     * @return Taille en clair (0 = datagramme de maintien), -1 si rejeté
+     */
+    int open(byte[] data, int length, InetSocketAddress from) {
+        long now = System.nanoTime();
+        sweep(now);
+        Secure sec = byAddress.get(from);
+        if (sec == null) return -1;
+        int plain = sec.session.openDatagram(data, length);
+        if (plain < 0) return -1;
+        sec.lastSeen = now;
+        if (sec.state.compareAndSet(PENDING, ESTABLISHED)) pending.decrementAndGet();
+        return plain;
+    }
+
+    /**
+     * Clés pour écrire à une adresse (null si aucune session)
+     */
+    Session session(InetSocketAddress to) {
+        Secure sec = byAddress.get(to);
+        return sec != null ? sec.session : null;
+    }
+
+    /**
+     * Datagramme valide (maintien compris) reçu de l'adresse depuis moins de nanos
+     */
+    boolean heardWithin(InetSocketAddress address, long nanos, long now) {
+        Secure sec = byAddress.get(address);
+        return sec != null && sec.state.get() == ESTABLISHED && now - sec.lastSeen < nanos;
+    }
+
+    /**
+     * Le client a changé d'adresse: la session de l'ancienne est oubliée
+     */
+    void remove(InetSocketAddress address) {
+        Secure sec = byAddress.remove(address);
+        if (sec != null) forget(sec);
+    }
+
+    int size() {
+        return byAddress.size();
+    }
+
+    void clear() {
+        byAddress.clear();
+        buckets.clear();
+        pending.set(0);
+    }
+
+    // Sessions en attente ou inactives trop longtemps, seaux pleins (adresse calme): oubliés
+    private void sweep(long now) {
+        long due = nextSweep.get();
+        if (now - due < 0 || !nextSweep.compareAndSet(due, now + SWEEP_NANOS)) return;
+        long pendingNanos = PENDING_MS * 1_000_000, idleNanos = IDLE_MS * 1_000_000;
+        byAddress.entrySet().removeIf(e -> {
+            Secure sec = e.getValue();
+            long limit = sec.state.get() == PENDING ? pendingNanos : idleNanos;
+            if (now - sec.lastSeen <= limit) return false;
+            forget(sec);
+            return true;
+        });
+        buckets.values().removeIf(b -> b.full(now));
+    }
+
+    private void forget(Secure sec) {
+        if (sec.state.getAndSet(GONE) == PENDING) pending.decrementAndGet();
+    }
+}
@@ -1,5 +1,15 @@
 package udp;
 
+import crypto.Aead;
+import crypto.Handshake;
+import crypto.Session;
+import datagram.Compression;
+import datagram.LossStats;
+import datagram.SocketTuning;
+import metrics.LatencyHistogram;
+import metrics.MetricsRegistry;
+import metrics.Tracing;
+
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import java.awt.*;
@@ -7,9 +17,18 @@ import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.security.GeneralSecurityException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.CopyOnWriteArraySet;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * SERVEUR UDP
@@ -28,19 +47,77 @@ import java.util.stream.Collectors;
  * - UDP: Un seul socket pour tous les clients, identification par adresse IP + port
  * - TCP: Un socket par client (accept crée un nouveau Socket pour chaque client)
  * - UDP nécessite la gestion manuelle des adresses clients
+ *
+ * SESSIONS RÉPARTIES EN SHARDS:
+ * Les sessions sont partagées par hachage du pseudo entre N shards, un thread
+ * chacun. Un shard est le seul à lire et écrire ses sessions (adresse, numéros
+ * de séquence, tampon d'envoi): aucun verrou, aucune donnée partagée entre
+ * threads. Un thread qui doit agir sur une session d'un autre shard dépose une
+ * tâche dans la boîte aux lettres de ce shard (voir Mailbox).
+ *
+ * Parcours d'un datagramme:
+ * 1. Le thread d'écoute reçoit et copie les octets, sans les décoder
+ * 2. Shard d'entrée (hachage de l'adresse source): désérialisation
+ * 3. Shard de l'émetteur: création ou mise à jour de sa session, routage
+ * 4. Shard(s) du ou des destinataires: sérialisation et envoi
+ * Les étapes sur un même shard s'enchaînent sans passer par la boîte aux lettres.
+ *
+ * CONTRÔLE DE FLUX:
+ * Un client qui accorde des crédits (voir CreditWindow) ne reçoit pas plus de
+ * messages qu'il n'en a accepté; le reste attend dans sa session, puis est
+ * abandonné (et compté) si l'attente déborde.
+ *
+ * CHIFFREMENT (-Dcrypto, voir crypto.Aead):
+ * Un datagramme commençant par HELLO est une poignée de main: le shard
+ * d'entrée répond avec sa clé publique et retient les clés de session de
+ * l'adresse (la même réponse est renvoyée si la clé du client n'a pas changé:
+ * réponse perdue). Les autres datagrammes sont déchiffrés avec ces clés
+ * avant la désérialisation; un datagramme en clair, forgé ou rejoué est
+ * écarté et compté. Les envois sont chiffrés en place dans le tampon direct
+ * du shard.
+ *
+ * PSEUDO LIÉ À SON ADRESSE:
+ * Un pseudo appartient à l'adresse (donc à la session chiffrée) de son premier
+ * message. Un datagramme qui s'en réclame depuis une autre adresse est écarté
+ * et compté; seul un HELLO peut reprendre le pseudo, une fois l'ancienne
+ * adresse silencieuse depuis REBIND_IDLE_MS (client relancé sur un autre port).
+ *
+ * Propriétés système:
+ *   -Dudp.shards=<n>                   nombre de shards (nombre de cœurs)
+ *   -Dudp.flow.maxDeferred=<messages>  attente maximale par session (256)
+ *   -Dudp.rebindIdleMs=<ms>            silence avant reprise d'un pseudo (2 × crypto.udp.keepaliveMs)
  */
 public class ServeurGUI extends JFrame {
     private static final long serialVersionUID = 1L;
     private static final int DEFAULT_PORT = 9999;
     private static final int BUFFER_SIZE = 65535; // Taille maximale d'un paquet UDP
+    private static final int SHARDS = Math.max(1, Integer.getInteger("udp.shards", Runtime.getRuntime().availableProcessors()));
+    // Messages mis en attente par session faute de crédits (voir CreditWindow), au-delà abandonnés
+    private static final int MAX_DEFERRED = Integer.getInteger("udp.flow.maxDeferred", 256);
+    // Ordonnancement d'un shard: jusqu'à LANE_WEIGHT messages (texte, liste, crédits) entre deux
+    // passages des transferts fiables, LANE_QUANTUM fragments par session et par passage
+    private static final int LANE_WEIGHT = Math.max(1, Integer.getInteger("udp.lanes.weight", 8));
+    private static final int LANE_QUANTUM = Math.max(1, Integer.getInteger("udp.lanes.quantum", 4));
+    // Silence de l'adresse d'un pseudo avant qu'un HELLO d'une autre adresse puisse le reprendre
+    private static final long REBIND_IDLE_MS = Long.getLong("udp.rebindIdleMs", 2 * SecureSessions.KEEPALIVE_MS);
 
     // ========== RÉSEAU ==========
 
     /**
-     * Socket UDP du serveur
+     * Socket UDP du serveur (vue DatagramSocket du canal, utilisée en réception)
      */
     private DatagramSocket serverSocket;
 
+    /**
+     * Canal du même socket, utilisé en émission depuis les tampons directs
+     */
+    private DatagramChannel channel;
+
+    /**
+     * Tampons directs de sérialisation des envois (un par shard)
+     */
+    private final BufferPool sendBuffers = new BufferPool(BUFFER_SIZE, 16);
+
     /**
      * Indicateur d'état du serveur
      */
@@ -52,9 +129,86 @@ public class ServeurGUI extends JFrame {
     private Thread acceptThread;
 
     /**
-     * Ensemble thread-safe des clients connectés
+     * Shards propriétaires des sessions (recréés à chaque démarrage)
+     */
+    private volatile Shard[] shards = new Shard[0];
+
+    /**
+     * Pseudos connectés, tous shards confondus: écrit à la création d'une session
+     * seulement (liste des clients, interface), jamais lu sur le chemin des messages
+     */
+    private final Set<String> roster = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Sessions chiffrées par adresse de client (vide en clair): réception par le
+     * shard d'entrée de l'adresse, émission par le shard propriétaire du pseudo
+     */
+    private final SecureSessions secure = new SecureSessions();
+
+    /**
+     * Pertes estimées sur les messages reçus de chaque client
+     */
+    private final LossStats lossStats = new LossStats();
+
+    /**
+     * Nombre de pertes déjà signalées dans les logs, par client
+     */
+    private final Map<String, Long> reportedLoss = new ConcurrentHashMap<>();
+
+    /**
+     * Journalisation périodique des nouvelles pertes
+     */
+    private final Timer lossTimer = new Timer(5000, e -> logLosses());
+
+    // ========== MÉTRIQUES ==========
+
+    /**
+     * Registre publié en JMX (et en HTTP avec -Dmetrics.port=<port>)
+     */
+    private final MetricsRegistry metrics = new MetricsRegistry("udp");
+    private final LongAdder[] messagesIn = metrics.countersByType("messages_in_total", Message.Type.values());
+    private final LongAdder[] bytesIn = metrics.countersByType("bytes_in_total", Message.Type.values());
+    private final LongAdder[] messagesOut = metrics.countersByType("messages_out_total", Message.Type.values());
+    private final LongAdder[] bytesOut = metrics.countersByType("bytes_out_total", Message.Type.values());
+    private final LatencyHistogram decodeTime = metrics.histogram("decode_seconds");
+    private final LongAdder cryptoRejected = metrics.counter("crypto_rejected_total");
+    // Datagrammes écartés: pseudo lié à une autre adresse
+    private final LongAdder senderRejected = metrics.counter("sender_rejected_total");
+    private final LatencyHistogram routeTime = metrics.histogram("route_seconds");
+    private final LatencyHistogram sendTime = metrics.histogram("send_seconds");
+
+    /**
+     * Charges utiles compressées relayées: taille d'origine et taille transmise
+     */
+    private final LongAdder compressedRawBytes = metrics.counter("compressed_raw_bytes_total");
+    private final LongAdder compressedWireBytes = metrics.counter("compressed_wire_bytes_total");
+
+    /**
+     * Traçage: client émetteur → serveur, puis temps de séjour dans le serveur
+     */
+    private final LatencyHistogram traceUpstream = metrics.histogram("trace_upstream_seconds");
+    private final LatencyHistogram traceResidence = metrics.histogram("trace_residence_seconds");
+
+    /**
+     * Contrôle de flux: messages mis en attente faute de crédits, abandonnés (attente pleine),
+     * et actuellement en attente (toutes sessions)
+     */
+    private final LongAdder flowDeferred = metrics.counter("flow_deferred_total");
+    private final LongAdder flowDropped = metrics.counter("flow_dropped_total");
+    private final LongAdder flowWaiting = new LongAdder();
+
+    /**
+     * Transferts fiables (voir ReliableSender): fragments envoyés, renvoyés, transferts finis ou abandonnés
+     */
+    private final LongAdder reliableFragments = metrics.counter("reliable_fragments_sent_total");
+    private final LongAdder reliableRetransmits = metrics.counter("reliable_retransmits_total");
+    private final LongAdder reliableCompleted = metrics.counter("reliable_transfers_completed_total");
+    private final LongAdder reliableFailed = metrics.counter("reliable_transfers_failed_total");
+
+    /**
+     * Fichiers non remis: trop gros pour un datagramme, vers un client sans transfert fiable
      */
-    private final Set<ClientHandler> clients = new CopyOnWriteArraySet<>();
+    private final LongAdder undeliverable = metrics.counter("undeliverable_total");
 
     // ========== INTERFACE GRAPHIQUE ==========
 
@@ -160,6 +314,17 @@ public class ServeurGUI extends JFrame {
             }
         });
 
+        metrics.gauge("sessions", roster::size);
+        metrics.gauge("crypto_sessions", secure::size);
+        metrics.gauge("flow_deferred_messages", flowWaiting::sum);
+        metrics.gauge("shard_mailbox_depth", () -> {
+            long depth = 0;
+            for (Shard sh : shards) depth += sh.mailbox.size();
+            return depth;
+        });
+        metrics.gauge("buffer_pool_allocated_bytes", sendBuffers::allocatedBytes);
+        metrics.gauge("buffer_pool_in_use_bytes", sendBuffers::inUseBytes);
+
         updateButtons();
     }
 
@@ -188,15 +353,27 @@ public class ServeurGUI extends JFrame {
         }
 
         try {
-            // Création du socket UDP
-            serverSocket = new DatagramSocket(port);
+            // Création du socket UDP (par un canal, pour émettre depuis des tampons directs)
+            channel = DatagramChannel.open();
+            channel.bind(new InetSocketAddress(port));
+            serverSocket = channel.socket();
+            for (String w : new SocketTuning("udp").apply(serverSocket)) append("⚠️ " + w);
             running = true;
-
-            // Démarrage du thread d'écoute
+            lossStats.clear();
+            reportedLoss.clear();
+            lossTimer.start();
+
+            // Démarrage des shards, puis du thread d'écoute
+            Shard[] started = new Shard[SHARDS];
+            for (int i = 0; i < started.length; i++) started[i] = new Shard(i);
+            shards = started;
+            for (Shard sh : started) sh.thread.start();
             acceptThread = new Thread(this::acceptLoop, "UDP-Listener");
             acceptThread.start();
 
-            append("✅ Serveur démarré sur le port " + port);
+            append("✅ Serveur démarré sur le port " + port + " (" + SHARDS + " shards"
+                    + (Aead.enabled() ? ", chiffrement " + Aead.SUITE.label : "") + ")");
+            for (String m : metrics.start()) append(m);
             setStatus(true, "En ligne — port " + port);
             updateButtons();
         } catch (IOException ex) {
@@ -211,14 +388,18 @@ public class ServeurGUI extends JFrame {
      */
     private void stopServer() {
         running = false;
+        lossTimer.stop();
 
         // Fermeture du socket UDP
         try {
             if (serverSocket != null) serverSocket.close();
         } catch (Exception ignore) {}
 
-        // Nettoyage de la liste des clients
-        clients.clear();
+        // Arrêt des shards: leurs sessions disparaissent avec eux
+        for (Shard sh : shards) sh.thread.interrupt();
+        shards = new Shard[0];
+        roster.clear();
+        secure.clear();
         refreshClientList();
 
         // Attente de la fin du thread d'écoute
@@ -230,6 +411,7 @@ public class ServeurGUI extends JFrame {
             }
         }
 
+        metrics.stop();
         append("⏹️ Serveur arrêté.");
         setStatus(false, "Hors ligne");
         updateButtons();
@@ -246,114 +428,86 @@ public class ServeurGUI extends JFrame {
      */
     private void acceptLoop() {
         byte[] buffer = new byte[BUFFER_SIZE];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
 
         while (running) {
             try {
-                // Préparation du paquet de réception
-                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
-
                 // Réception d'un paquet (bloquant)
+                packet.setLength(buffer.length);
                 serverSocket.receive(packet);
 
-                // Désérialisation du message
-                ByteArrayInputStream bis = new ByteArrayInputStream(
-                    packet.getData(), 0, packet.getLength()
-                );
-                ObjectInputStream ois = new ObjectInputStream(bis);
-                Object o = ois.readObject();
-
-                if (!(o instanceof Message msg)) continue;
-
-                // Récupération de l'adresse du client
-                InetAddress clientAddress = packet.getAddress();
-                int clientPort = packet.getPort();
-
-                // Recherche ou création du client handler
-                ClientHandler handler = findOrCreateClient(msg.sender, clientAddress, clientPort);
-
-                // Traitement du message par le handler
-                if (handler != null) {
-                    handler.handleMessage(msg);
-                }
+                // Copie des octets (le tampon est réutilisé) et décodage confié au shard d'entrée
+                byte[] data = Arrays.copyOf(packet.getData(), packet.getLength());
+                InetSocketAddress from = (InetSocketAddress) packet.getSocketAddress();
+                Shard[] all = shards;
+                if (all.length == 0) continue;
+                Shard ingress = all[Math.floorMod(from.hashCode(), all.length)];
+                ingress.post(() -> ingress.decode(data, from));
 
             } catch (IOException e) {
                 if (running) append("⚠️ Erreur réception : " + e.getMessage());
-            } catch (ClassNotFoundException e) {
-                append("⚠️ Erreur désérialisation : " + e.getMessage());
             }
         }
     }
 
     /**
-     * RECHERCHE OU CRÉATION D'UN CLIENT HANDLER
-     *
-     * Si le client existe déjà (même pseudo), met à jour son adresse.
-     * Sinon, crée un nouveau handler.
-     *
-     * @param nickname Pseudo du client
-     * @param address  Adresse IP du client
-     * @param port     Port UDP du client
-     * @return ClientHandler trouvé ou créé
+     * Shard propriétaire des sessions d'un pseudo
      */
-    private ClientHandler findOrCreateClient(String nickname, InetAddress address, int port) {
-        // Recherche d'un client existant avec le même pseudo
-        for (ClientHandler h : clients) {
-            if (h.nickname.equals(nickname)) {
-                // Mise à jour de l'adresse (le client peut avoir changé de port)
-                h.updateAddress(address, port);
-                return h;
-            }
-        }
-
-        // Création d'un nouveau client
-        ClientHandler newHandler = new ClientHandler(nickname, address, port);
-        clients.add(newHandler);
-        append("➕ " + nickname + " connecté (" + address.getHostAddress() + ")");
-        refreshClientList();
-        broadcastList();
+    private Shard shardOf(String nickname) {
+        Shard[] all = shards;
+        int h = nickname.hashCode();
+        return all[Math.floorMod(h ^ (h >>> 16), all.length)];
+    }
 
-        return newHandler;
+    /**
+     * Horodate la réémission d'un message tracé et journalise
+     * (au plus une fois par seconde) les traces lentes
+     */
+    private void traceSend(Message msg, String to) {
+        msg.serverSentAt = Tracing.nowMicros();
+        long residence = msg.serverSentAt - msg.serverRecvAt;
+        traceResidence.record(residence * 1000);
+        if (Tracing.shouldLogSlow(msg.serverSentAt - msg.sentAt)) {
+            append(String.format("🐢 Trace %s %s → %s : réseau %.1f ms, serveur %.1f ms",
+                    Tracing.id(msg.traceId), msg.sender, to,
+                    (msg.serverRecvAt - msg.sentAt) / 1000.0, residence / 1000.0));
+        }
     }
 
     /**
      * DIFFUSION DE LA LISTE DES CLIENTS
      *
-     * Envoie la liste à jour de tous les clients connectés.
+     * Chaque shard envoie la liste à jour à ses propres sessions.
      */
     private void broadcastList() {
-        String list = clients.stream()
-            .map(c -> c.nickname)
-            .collect(Collectors.joining(","));
-        Message listMsg = new Message(Message.Type.LISTE, "Serveur", "Tous", list);
-        for (ClientHandler c : clients) c.send(listMsg);
+        String list = String.join(",", roster);
+        for (Shard sh : shards) {
+            sh.post(() -> sh.sendToAll(new Message(Message.Type.LISTE, "Serveur", "Tous", list), null));
+        }
     }
 
     /**
-     * ENVOI D'UN MESSAGE VERS LE(S) DESTINATAIRE(S)
-     *
-     * Gère le routage broadcast ou unicast.
-     *
-     * @param msg  Message à envoyer
-     * @param from Handler de l'émetteur (pour éviter de lui renvoyer en broadcast)
-     */
-    private void sendToTarget(Message msg, ClientHandler from) {
-        if ("Tous".equalsIgnoreCase(msg.target)) {
-            // Broadcast à tous sauf l'émetteur
-            for (ClientHandler c : clients) {
-                if (c != from) c.send(msg);
-            }
-            append(msg.sender + " a envoyé '" + msg.text + "' à tous");
-        } else {
-            // Unicast vers un client spécifique
-            for (ClientHandler c : clients) {
-                if (c.nickname.equals(msg.target)) {
-                    c.send(msg);
-                    break;
-                }
-            }
-            append(msg.sender + " a envoyé '" +
-                   (msg.text != null ? msg.text : msg.filename) + "' à " + msg.target);
-        }
+     * Message HELLO d'un client (connexion ou reconnexion)
+     */
+    private static boolean isHello(Message msg) {
+        return msg.type == Message.Type.TEXTE && "HELLO".equals(msg.target);
+    }
+
+    /**
+     * Copie d'un message pour un autre shard: chaque envoi renumérote et horodate
+     * le message (seq, serverSentAt), deux shards ne doivent pas écrire le même objet
+     * (le contenu, lui, n'est jamais modifié et reste partagé)
+     */
+    private static Message copyOf(Message m) {
+        Message c = new Message(m.type, m.sender, m.target, m.text);
+        c.filename = m.filename;
+        c.fileBytes = m.fileBytes;
+        c.compressed = m.compressed;
+        c.rawLength = m.rawLength;
+        c.traceId = m.traceId;
+        c.sentAt = m.sentAt;
+        c.serverRecvAt = m.serverRecvAt;
+        return c;
     }
 
     /**
@@ -362,12 +516,29 @@ public class ServeurGUI extends JFrame {
     private void refreshClientList() {
         SwingUtilities.invokeLater(() -> {
             clientListModel.clear();
-            for (ClientHandler c : clients) {
-                clientListModel.addElement(c.nickname);
+            for (String nickname : roster) {
+                clientListModel.addElement(nickname);
             }
         });
     }
 
+    /**
+     * JOURNALISATION DES PERTES
+     *
+     * Signale les clients dont le nombre de messages perdus a augmenté
+     * depuis le dernier passage.
+     */
+    private void logLosses() {
+        for (String nick : lossStats.senders()) {
+            long lost = lossStats.lost(nick);
+            Long previous = reportedLoss.put(nick, lost);
+            if (lost > (previous == null ? 0 : previous)) {
+                append(String.format("📉 Pertes depuis %s : %d perdus / %d reçus (%.1f %%)",
+                        nick, lost, lossStats.received(nick), lossStats.lossRate(nick) * 100));
+            }
+        }
+    }
+
     /**
      * Ajoute un message aux logs
      */
@@ -402,6 +573,280 @@ public class ServeurGUI extends JFrame {
         JOptionPane.showMessageDialog(this, m, "Info", JOptionPane.INFORMATION_MESSAGE);
     }
 
+    // ───────────── CLASSE INTERNE: SHARD ─────────────
+
+    /**
+     * SHARD DE SESSIONS
+     *
+     * Un thread, une boîte aux lettres, et les sessions dont il est propriétaire.
+     * Tout ce qui suit n'est exécuté que par ce thread.
+     */
+    private class Shard implements Runnable {
+        final int index;
+        final Thread thread;
+        final Mailbox<Runnable> mailbox = new Mailbox<>();
+
+        /**
+         * Sessions du shard, par pseudo (propriété exclusive du thread du shard)
+         */
+        private final Map<String, ClientHandler> sessions = new HashMap<>();
+
+        /**
+         * Tampon direct de sérialisation des envois du shard
+         */
+        private ByteBuffer sendBuffer;
+
+        /**
+         * Sessions ayant des transferts fiables sortants, et échéance du prochain passage
+         * (retransmissions: le shard se réveille sans attendre de message)
+         */
+        private final Set<ClientHandler> transferring = new HashSet<>();
+        private long nextDeadline = Long.MAX_VALUE;
+
+        /**
+         * Dernier gros message sérialisé pour un transfert fiable: une diffusion le
+         * sérialise une fois pour toutes les sessions du shard
+         */
+        private Message blobSource;
+        private byte[] blob;
+
+        Shard(int index) {
+            this.index = index;
+            thread = new Thread(this, "UDP-Shard-" + index);
+            thread.setDaemon(true);
+            mailbox.bind(thread);
+        }
+
+        /**
+         * Exécute une tâche sur ce shard (directement si on y est déjà)
+         */
+        void post(Runnable task) {
+            if (Thread.currentThread() == thread) task.run();
+            else mailbox.post(task);
+        }
+
+        @Override
+        public void run() {
+            sendBuffer = sendBuffers.acquire();
+            try {
+                int sinceTick = 0;
+                while (true) {
+                    // Fragments dus: un passage des transferts, sauf si des messages attendent
+                    // et n'ont pas encore eu leur part (un texte ne patiente pas derrière un fichier)
+                    long now = System.nanoTime();
+                    if (now >= nextDeadline && (sinceTick >= LANE_WEIGHT || mailbox.size() == 0)) {
+                        tick(now);
+                        sinceTick = 0;
+                        continue;
+                    }
+                    Runnable task = nextDeadline == Long.MAX_VALUE ? mailbox.take() : mailbox.poll(Math.max(0, nextDeadline - now));
+                    if (task == null) continue;
+                    sinceTick++;
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        append("⚠️ Shard " + index + " : " + e);
+                    }
+                }
+            } catch (InterruptedException stop) {
+                // arrêt du serveur
+            } finally {
+                sendBuffers.release(sendBuffer);
+            }
+        }
+
+        /**
+         * Échéance d'un transfert fiable: le shard se réveillera au plus tard à ce moment
+         */
+        void schedule(long deadline) {
+            if (deadline < nextDeadline) nextDeadline = deadline;
+        }
+
+        /**
+         * Passage des transferts fiables (nouveaux fragments, retransmissions sur délai expiré)
+         */
+        private void tick(long now) {
+            nextDeadline = Long.MAX_VALUE;
+            for (Iterator<ClientHandler> it = transferring.iterator(); it.hasNext(); ) {
+                long deadline = it.next().pumpTransfers(now);
+                if (deadline == Long.MAX_VALUE) it.remove();
+                else schedule(deadline);
+            }
+        }
+
+        /**
+         * Message sérialisé pour un transfert fiable (réutilisé tant que c'est le même message)
+         */
+        byte[] blobOf(Message msg) throws IOException {
+            if (msg != blobSource) {
+                msg.seq = 0; // hors numérotation et crédits: le transfert fiable a sa propre fenêtre
+                if (msg.serverRecvAt != 0) traceSend(msg, msg.target);
+                ByteArrayOutputStream bos = new ByteArrayOutputStream(msg.fileBytes.length + 1024);
+                try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+                    oos.writeObject(msg);
+                }
+                blob = bos.toByteArray();
+                blobSource = msg;
+            }
+            return blob;
+        }
+
+        /**
+         * Étape 2 (shard d'entrée): désérialisation d'un datagramme
+         */
+        void decode(byte[] data, InetSocketAddress from) {
+            int offset = 0, length = data.length;
+            if (Aead.enabled()) {
+                if (length > 0 && data[0] == Handshake.HELLO) {
+                    handshake(data, from);
+                    return;
+                }
+                length = secure.open(data, length, from);
+                if (length < 0) {
+                    cryptoRejected.increment();
+                    return;
+                }
+                if (length == 0) return; // maintien de la session (voir SecureSessions)
+                offset = Session.DATAGRAM_HEADER;
+            }
+
+            Object o;
+            long decodeStart = System.nanoTime();
+            try {
+                o = new ObjectInputStream(new ByteArrayInputStream(data, offset, length)).readObject();
+            } catch (IOException | ClassNotFoundException e) {
+                append("⚠️ Erreur désérialisation : " + e.getMessage());
+                return;
+            }
+            decodeTime.recordSince(decodeStart);
+
+            // Lot de messages regroupés par le client
+            // (les octets du datagramme sont répartis entre ses messages)
+            if (o instanceof Message[] lot) {
+                for (Message m : lot) dispatch(m, from, data.length / lot.length);
+            } else if (o instanceof Message msg) {
+                dispatch(msg, from, data.length);
+            }
+        }
+
+        /**
+         * Poignée de main chiffrée d'une adresse: clés de session, puis notre clé publique
+         */
+        private void handshake(byte[] data, InetSocketAddress from) {
+            byte[] clientKey = Handshake.peerKey(data, data.length);
+            if (clientKey == null) {
+                cryptoRejected.increment();
+                return;
+            }
+            byte[] reply;
+            try {
+                reply = secure.handshake(clientKey, from);
+            } catch (GeneralSecurityException e) {
+                append("⚠️ Poignée de main refusée (" + from + ") : " + e.getMessage());
+                return;
+            }
+            if (reply == null) {
+                // Limite de l'adresse ou trop de poignées de main sans suite
+                cryptoRejected.increment();
+                return;
+            }
+            try {
+                channel.send(ByteBuffer.wrap(reply), from);
+            } catch (IOException e) {
+                append("⚠️ Erreur envoi vers " + from + " : " + e.getMessage());
+            }
+        }
+
+        /**
+         * Comptage et horodatage, puis passage au shard de l'émetteur
+         * (les messages d'un même client passent tous par ce shard d'entrée: ordre conservé)
+         */
+        private void dispatch(Message msg, InetSocketAddress from, int bytes) {
+            if (msg.sender == null) return;
+            messagesIn[msg.type.ordinal()].increment();
+            bytesIn[msg.type.ordinal()].add(bytes);
+            if (msg.compressed) {
+                compressedRawBytes.add(msg.rawLength);
+                compressedWireBytes.add(msg.fileBytes.length);
+            }
+
+            // Horodatage de réception (traçage de bout en bout)
+            if (msg.sentAt != 0) {
+                msg.serverRecvAt = Tracing.nowMicros();
+                traceUpstream.record((msg.serverRecvAt - msg.sentAt) * 1000);
+            }
+
+            Shard owner = shardOf(msg.sender);
+            owner.post(() -> owner.receive(msg, from));
+        }
+
+        /**
+         * Étape 3 (shard de l'émetteur): session trouvée ou créée, puis routage
+         * (un pseudo déjà lié à une autre adresse est refusé, voir bindAddress)
+         */
+        void receive(Message msg, InetSocketAddress from) {
+            long routeStart = System.nanoTime();
+            ClientHandler handler = sessions.get(msg.sender);
+            if (handler != null && !handler.bindAddress(msg, from, routeStart)) {
+                senderRejected.increment();
+                return;
+            }
+
+            // Estimation des pertes à partir des numéros de séquence du client
+            lossStats.record(msg.sender, msg.seq);
+
+            if (handler == null) {
+                handler = new ClientHandler(this, msg.sender, from);
+                sessions.put(msg.sender, handler);
+                roster.add(msg.sender);
+                append("➕ " + msg.sender + " connecté (" + from.getAddress().getHostAddress() + ")");
+                refreshClientList();
+                broadcastList();
+            }
+            handler.lastHeard = routeStart;
+            handler.handleMessage(msg);
+            routeTime.recordSince(routeStart);
+        }
+
+        /**
+         * ENVOI D'UN MESSAGE VERS LE(S) DESTINATAIRE(S)
+         *
+         * Broadcast: une copie du message par autre shard, chacun l'envoie à ses sessions.
+         * Unicast: le message passe au shard du destinataire.
+         *
+         * @param msg  Message à envoyer
+         * @param from Pseudo de l'émetteur (pour éviter de lui renvoyer en broadcast)
+         */
+        void sendToTarget(Message msg, String from) {
+            if ("Tous".equalsIgnoreCase(msg.target)) {
+                for (Shard sh : shards) {
+                    if (sh == this) continue;
+                    Message copy = copyOf(msg);
+                    sh.post(() -> sh.sendToAll(copy, from));
+                }
+                sendToAll(msg, from);
+                append(msg.sender + " a envoyé '" + Compression.preview(msg) + "' à tous");
+            } else {
+                append(msg.sender + " a envoyé '" +
+                       (msg.type == Message.Type.TEXTE ? Compression.preview(msg) : msg.filename) + "' à " + msg.target);
+                Shard owner = shardOf(msg.target);
+                owner.post(() -> {
+                    ClientHandler c = owner.sessions.get(msg.target);
+                    if (c != null) c.send(msg);
+                });
+            }
+        }
+
+        /**
+         * Étape 4: envoi à toutes les sessions du shard, sauf l'émetteur
+         */
+        void sendToAll(Message msg, String except) {
+            for (ClientHandler c : sessions.values()) {
+                if (!c.nickname.equals(except)) c.send(msg);
+            }
+        }
+    }
+
     // ───────────── CLASSE INTERNE: CLIENT HANDLER ─────────────
 
     /**
@@ -413,43 +858,107 @@ public class ServeurGUI extends JFrame {
      * - UDP: Stocke l'adresse IP et le port du client
      * - TCP: Possède un Socket dédié avec des flux ObjectInputStream/ObjectOutputStream
      * - UDP: Pas de thread par client, l'envoi est synchrone
+     *
+     * Une session appartient à son shard: ses champs ne sont lus et écrits que
+     * par le thread de ce shard.
      */
     private class ClientHandler {
+        /**
+         * Shard propriétaire
+         */
+        private final Shard shard;
+
         /**
          * Pseudo du client
          */
         private final String nickname;
 
         /**
-         * Adresse IP du client (peut changer si le client se reconnecte)
+         * Adresse de destination des envois, à laquelle le pseudo est lié
+         * (ne change que par un HELLO, voir bindAddress)
+         */
+        private InetSocketAddress target;
+
+        /**
+         * Réception du dernier message accepté de cette adresse (System.nanoTime)
+         */
+        private long lastHeard;
+
+        /**
+         * Numéro de séquence du dernier message envoyé à ce client
+         */
+        private long sendSeq = 0;
+
+        /**
+         * Plus grand numéro de séquence accordé par le client (-1: client sans crédits, non limité)
+         */
+        private long creditLimit = -1;
+
+        /**
+         * Messages en attente de crédits, dans l'ordre d'envoi
+         */
+        private final ArrayDeque<Message> deferred = new ArrayDeque<>();
+
+        /**
+         * Messages abandonnés depuis le dernier avertissement envoyé au client
+         */
+        private long droppedSinceNotice = 0;
+
+        /**
+         * Le client sait recevoir des fragments (capacité annoncée dans son HELLO)
          */
-        private InetAddress address;
+        private boolean reliable;
 
         /**
-         * Port UDP du client (peut changer si le client se reconnecte)
+         * Le client sait décompresser (capacité annoncée dans son HELLO): sinon les
+         * messages compressés lui sont remis décompressés
          */
-        private int port;
+        private boolean inflates;
+
+        /**
+         * Transferts fiables reçus de ce client, et envoyés vers lui (un à la fois, dans l'ordre)
+         */
+        private final ReliableReceiver.Table incoming = new ReliableReceiver.Table("Serveur");
+        private final ArrayDeque<ReliableSender> outgoing = new ArrayDeque<>();
 
         /**
          * Constructeur
          *
+         * @param shard    Shard propriétaire
          * @param nickname Pseudo du client
-         * @param address  Adresse IP du client
-         * @param port     Port UDP du client
+         * @param target   Adresse IP et port UDP du client
          */
-        ClientHandler(String nickname, InetAddress address, int port) {
+        ClientHandler(Shard shard, String nickname, InetSocketAddress target) {
+            this.shard = shard;
             this.nickname = nickname;
-            this.address = address;
-            this.port = port;
+            this.target = target;
         }
 
         /**
-         * Met à jour l'adresse du client
-         * (utile si le client change de port entre les messages)
+         * Vérifie que le message vient de l'adresse liée au pseudo
+         *
+         * Une autre adresse ne reprend le pseudo que par un HELLO, quand
+         * l'ancienne n'a rien envoyé depuis REBIND_IDLE_MS, datagrammes de
+         * maintien chiffrés compris (client relancé sur un autre port); sinon
+         * c'est un autre client qui usurpe le pseudo, et ni l'adresse ni les
+         * clés de l'ancienne ne doivent changer.
+         *
+         * @return false si le message doit être écarté
          */
-        void updateAddress(InetAddress address, int port) {
-            this.address = address;
-            this.port = port;
+        boolean bindAddress(Message msg, InetSocketAddress from, long now) {
+            if (from.equals(target)) return true;
+            long idle = REBIND_IDLE_MS * 1_000_000;
+            boolean live = now - lastHeard < idle || (Aead.enabled() && secure.heardWithin(target, idle, now));
+            if (!isHello(msg) || live) {
+                if (isHello(msg)) {
+                    append("⛔ " + nickname + " déjà utilisé depuis " + target + " : HELLO de " + from + " refusé");
+                }
+                return false;
+            }
+            append("🔁 " + nickname + " reprend depuis " + from + " (ancienne adresse " + target + " silencieuse)");
+            secure.remove(target); // clés de l'ancienne adresse, plus utilisées
+            target = from;
+            return true;
         }
 
         /**
@@ -461,50 +970,271 @@ public class ServeurGUI extends JFrame {
          */
         void handleMessage(Message msg) {
             // Message HELLO (connexion initiale)
-            if (msg.type == Message.Type.TEXTE && "HELLO".equals(msg.target)) {
-                // Le client s'est déjà présenté, on a créé son handler
+            if (isHello(msg)) {
+                // Le handler existe déjà; si le client se reconnecte, il renumérote depuis 1
+                resetFlow();
+                reliable = ReliableSender.ENABLED && msg.text != null && msg.text.contains(ReliableSender.CAPABILITY);
+                inflates = Compression.advertised(msg.text);
+                return;
+            }
+
+            // Crédits accordés par le client: jamais relayés
+            if (CreditWindow.isGrant(msg)) {
+                grant(CreditWindow.limit(msg));
                 return;
             }
 
             // Traitement selon le type
             switch (msg.type) {
-                case TEXTE -> sendToTarget(msg, this);
+                case TEXTE -> shard.sendToTarget(msg, nickname);
 
                 case FICHIER -> {
                     append(msg.sender + " a envoyé le fichier '" + msg.filename + "' à " +
                             ("Tous".equalsIgnoreCase(msg.target) ? "tous" : msg.target) +
-                            " (" + (msg.fileBytes == null ? 0 : msg.fileBytes.length) + " octets)");
-                    sendToTarget(msg, this);
+                            " (" + Compression.size(msg) + ")");
+                    shard.sendToTarget(msg, nickname);
                 }
 
                 case LISTE -> {
                     // Pas utilisé côté client pour l'instant
                 }
+
+                case FRAGMENT -> onFragment(msg);
+
+                case ACQUIT -> {
+                    ReliableSender s = outgoing.peek();
+                    if (s != null && s.id == msg.transferId) {
+                        long now = System.nanoTime();
+                        s.onAck(msg, now);
+                        // Fragments suivants au prochain passage de l'ordonnanceur du shard
+                        shard.transferring.add(this);
+                        shard.schedule(now);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Fragment d'un gros message envoyé par ce client: acquitté, puis le message
+         * reconstitué est traité comme s'il était arrivé d'un bloc
+         */
+        private void onFragment(Message fragment) {
+            byte[][] assembled = new byte[1][];
+            Message ack = incoming.accept(fragment, System.nanoTime(), b -> assembled[0] = b);
+            if (ack != null) transmitControl(ack);
+            if (assembled[0] == null) return;
+
+            Message msg;
+            try {
+                msg = (Message) new ObjectInputStream(new ByteArrayInputStream(assembled[0])).readObject();
+            } catch (IOException | ClassNotFoundException | ClassCastException e) {
+                append("⚠️ Transfert de " + nickname + " illisible : " + e.getMessage());
+                return;
+            }
+            if (msg.sentAt != 0) msg.serverRecvAt = Tracing.nowMicros();
+            reliableCompleted.increment();
+            handleMessage(msg);
+        }
+
+        /**
+         * Avance le transfert sortant en cours (puis le suivant quand il se termine)
+         *
+         * @return Échéance du prochain passage, Long.MAX_VALUE s'il n'y a plus rien à envoyer
+         */
+        long pumpTransfers(long now) {
+            while (true) {
+                ReliableSender s = outgoing.peek();
+                if (s == null) return Long.MAX_VALUE;
+                long before = s.fragmentsSent(), resent = s.retransmits();
+                long deadline;
+                try {
+                    deadline = s.pump(now, LANE_QUANTUM);
+                } catch (IOException e) {
+                    deadline = Long.MAX_VALUE; // transmitControl ne lève pas: par sécurité seulement
+                }
+                reliableFragments.add(s.fragmentsSent() - before);
+                reliableRetransmits.add(s.retransmits() - resent);
+                if (!s.done() && !s.failed()) return deadline;
+                outgoing.poll();
+                if (s.done()) {
+                    reliableCompleted.increment();
+                } else {
+                    reliableFailed.increment();
+                    append("⚠️ Transfert fiable vers " + nickname + " abandonné (pas d'acquittement)");
+                }
+            }
+        }
+
+        /**
+         * Gros fichier vers un client qui sait recevoir des fragments: transfert fiable,
+         * hors crédits (sa fenêtre de congestion règle déjà le débit)
+         */
+        private void startTransfer(Message msg) {
+            byte[] data;
+            try {
+                data = shard.blobOf(msg);
+            } catch (IOException e) {
+                append("⚠️ Erreur envoi vers " + nickname + " : " + e.getMessage());
+                return;
             }
+            outgoing.add(new ReliableSender("Serveur", nickname, data, this::transmitControl));
+            if (outgoing.size() > 1) return; // démarrera à la fin du précédent
+            shard.transferring.add(this);
+            shard.schedule(System.nanoTime());
         }
 
         /**
-         * ENVOI D'UN MESSAGE AU CLIENT
+         * ENVOI D'UN MESSAGE AU CLIENT (SOUS CONTRÔLE DE FLUX)
          *
-         * Sérialise le message et l'envoie via UDP.
+         * Envoyé tout de suite s'il reste des crédits, sinon mis en attente. Attente
+         * pleine: le message est abandonné, sauf une LISTE qui remplace la précédente
+         * (seule la dernière compte). Le client est prévenu des abandons dès qu'il
+         * accorde de nouveau des crédits.
          *
          * @param msg Message à envoyer
          */
         void send(Message msg) {
+            if (msg.compressed && !inflates) {
+                msg = inflated(msg);
+                if (msg == null) return;
+            }
+            if (reliable && msg.type == Message.Type.FICHIER && msg.fileBytes != null
+                    && msg.fileBytes.length > ReliableSender.CHUNK_BYTES) {
+                startTransfer(msg);
+                return;
+            }
+            // Client sans fragments: un fichier plus grand qu'un datagramme ne peut pas lui parvenir
+            if (msg.type == Message.Type.FICHIER && msg.fileBytes != null && msg.fileBytes.length >= BUFFER_SIZE) {
+                undeliverable(msg);
+                return;
+            }
+            if (creditLimit < 0 || (deferred.isEmpty() && sendSeq < creditLimit)) {
+                transmit(msg);
+                return;
+            }
+            if (msg.type == Message.Type.LISTE && deferred.removeIf(m -> m.type == Message.Type.LISTE)) {
+                flowWaiting.decrement();
+            }
+            if (deferred.size() >= MAX_DEFERRED) {
+                flowDropped.increment();
+                droppedSinceNotice++;
+                return;
+            }
+            deferred.add(msg);
+            flowDeferred.increment();
+            flowWaiting.increment();
+        }
+
+        /**
+         * Nouvelle limite accordée: envoi des messages en attente qu'elle couvre
+         */
+        void grant(long limit) {
+            if (limit <= creditLimit) return; // crédit en retard ou dupliqué
+            creditLimit = limit;
+            while (!deferred.isEmpty() && sendSeq < creditLimit) {
+                flowWaiting.decrement();
+                transmit(deferred.poll());
+            }
+            if (droppedSinceNotice > 0 && sendSeq < creditLimit) {
+                transmit(new Message(Message.Type.TEXTE, "Serveur", nickname,
+                        "⚠️ " + droppedSinceNotice + " message(s) non délivré(s) : réception trop lente"));
+                droppedSinceNotice = 0;
+            }
+        }
+
+        /**
+         * Reconnexion: numérotation, crédits et attente repartent de zéro
+         */
+        void resetFlow() {
+            flowWaiting.add(-deferred.size());
+            deferred.clear();
+            outgoing.clear();
+            incoming.clear();
+            sendSeq = 0;
+            creditLimit = -1;
+            droppedSinceNotice = 0;
+        }
+
+        /**
+         * Numérote le message et l'envoie via UDP
+         */
+        private void transmit(Message msg) {
+            // Numérotation propre au lien serveur → client (le même objet Message
+            // peut partir vers plusieurs clients: il est sérialisé juste après)
+            msg.seq = ++sendSeq;
+            if (msg.serverRecvAt != 0) traceSend(msg, nickname);
+            if (!transmitControl(msg) && msg.type == Message.Type.FICHIER && msg.fileBytes != null) undeliverable(msg);
+        }
+
+        /**
+         * Copie décompressée d'un message, pour un client qui n'a pas annoncé la
+         * compression (le message d'origine part tel quel vers les autres)
+         *
+         * @return null si la charge utile est corrompue (message abandonné)
+         */
+        private Message inflated(Message msg) {
+            Message plain = copyOf(msg);
             try {
-                // Sérialisation du message
-                ByteArrayOutputStream bos = new ByteArrayOutputStream();
-                ObjectOutputStream oos = new ObjectOutputStream(bos);
+                Compression.decompress(plain);
+            } catch (IOException e) {
+                append("⚠️ Message de " + msg.sender + " non remis à " + nickname + " : " + e.getMessage());
+                return null;
+            }
+            return plain;
+        }
+
+        /**
+         * Fichier impossible à envoyer à ce client (trop gros une fois sérialisé):
+         * l'émetteur en est prévenu par un message du serveur
+         */
+        private void undeliverable(Message msg) {
+            undeliverable.increment();
+            append("⚠️ Fichier '" + msg.filename + "' de " + msg.sender + " non remis à " + nickname
+                    + " : trop gros pour un datagramme (client sans transfert fiable)");
+            String sender = msg.sender;
+            if (sender == null || sender.equals("Serveur")) return;
+            Message notice = new Message(Message.Type.TEXTE, "Serveur", sender,
+                    "⚠️ Fichier '" + msg.filename + "' non remis à " + nickname + " : trop gros pour son client");
+            Shard owner = shardOf(sender);
+            owner.post(() -> {
+                ClientHandler c = owner.sessions.get(sender);
+                if (c != null) c.send(notice);
+            });
+        }
+
+        /**
+         * Sérialise le message et l'envoie via UDP, sans numéro de séquence ni crédit
+         * (fragments et acquittements des transferts fiables)
+         *
+         * @return false si le message n'a pas pu être envoyé (trop grand, erreur réseau)
+         */
+        private boolean transmitControl(Message msg) {
+            try {
+                // Sérialisation directement dans le tampon hors tas du shard
+                // (chiffré: après l'en-tête, en gardant la place de l'étiquette)
+                ByteBuffer buf = shard.sendBuffer;
+                buf.clear();
+                Session sec = Aead.enabled() ? secure.session(target) : null;
+                if (Aead.enabled() && sec == null) return false; // session expirée: jamais en clair
+                if (sec != null) buf.position(Session.DATAGRAM_HEADER).limit(buf.capacity() - Aead.TAG_BYTES);
+                ObjectOutputStream oos = new ObjectOutputStream(BufferPool.outputStream(buf));
                 oos.writeObject(msg);
                 oos.flush();
-                byte[] data = bos.toByteArray();
-
-                // Création et envoi du paquet UDP
-                DatagramPacket packet = new DatagramPacket(data, data.length, address, port);
-                serverSocket.send(packet);
+                buf.flip();
+                if (sec != null) sec.sealDatagram(buf);
+                int length = buf.remaining();
+
+                // Envoi du datagramme sans copie vers le tas
+                long sendStart = System.nanoTime();
+                channel.send(buf, target);
+                sendTime.recordSince(sendStart);
+                messagesOut[msg.type.ordinal()].increment();
+                bytesOut[msg.type.ordinal()].add(length);
+                return true;
 
             } catch (IOException e) {
                 append("⚠️ Erreur envoi vers " + nickname + " : " + e.getMessage());
+                return false;
             }
         }
     }
@@ -0,0 +1,227 @@
+package ui;
+
+import history.ChatHistory;
+import history.HistoryRecord;
+
+import javax.swing.*;
+import java.awt.*;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * ZONE DE DISCUSSION VIRTUALISÉE (COMMUNE AUX TROIS CLIENTS)
+ *
+ * L'ancien JTextPane gardait chaque ligne et chaque image de la session dans
+ * un seul document: après une longue session, chaque ajout coûtait une mise en
+ * page de tout le document et la mémoire ne faisait que croître.
+ *
+ * Ici la discussion est une JList: une ligne de texte ou une vignette par
+ * cellule, dessinée par un seul composant de rendu, et seules les cellules
+ * visibles sont peintes. Le modèle est une fenêtre glissante d'au plus
+ * MAX_ROWS lignes: en bas de la discussion, les plus anciennes sont retirées.
+ * En remontant tout en haut, les messages précédents sont relus par pages
+ * depuis l'historique (ChatHistory), y compris ceux retirés de la fenêtre.
+ * Le coût d'un ajout dépend donc de la taille de la fenêtre, pas de la durée
+ * de la session.
+ *
+ * Les ajouts peuvent venir de n'importe quel thread: ils sont regroupés et
+ * appliqués en une fois sur l'EDT.
+ *
+ * Propriété système:
+ *   -Dchat.view.maxRows=<lignes>   taille de la fenêtre (1000)
+ */
+public final class ChatView extends JPanel {
+    private static final long serialVersionUID = 1L;
+
+    public static final int MAX_ROWS = Integer.getInteger("chat.view.maxRows", 1000);
+
+    private static final int PAGE = 100;
+    private static final int THUMB_WIDTH = 320;
+    private static final int THUMB_HEIGHT = 180;
+
+    /**
+     * Une ligne de la discussion
+     *
+     * @param text    Texte (null pour une image)
+     * @param image   Vignette (null pour du texte)
+     * @param logMark Fin du journal d'historique au moment de l'affichage: les messages
+     *                plus anciens que cette ligne sont avant cette position
+     */
+    private record Row(String text, Icon image, long logMark) {
+        @Override public String toString() {
+            return text != null ? text : "[image]";
+        }
+    }
+
+    private final DefaultListModel<Row> model = new DefaultListModel<>();
+    private final JList<Row> list = new JList<>(model);
+    private final JScrollPane scroll = new JScrollPane(list);
+
+    private final ConcurrentLinkedQueue<Row> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    private volatile ChatHistory history;
+    private boolean loadingPage;
+
+    public ChatView() {
+        super(new BorderLayout());
+        list.setCellRenderer(new RowRenderer());
+        list.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+        list.setFocusable(true); // Ctrl+C copie les lignes sélectionnées
+        add(scroll, BorderLayout.CENTER);
+
+        // Arrivé tout en haut: page précédente relue depuis l'historique
+        scroll.getVerticalScrollBar().addAdjustmentListener(e -> {
+            if (!e.getValueIsAdjusting() && e.getValue() == 0 && model.size() > 0
+                    && scroll.getVerticalScrollBar().getMaximum() > scroll.getViewport().getHeight()) {
+                loadOlder();
+            }
+        });
+    }
+
+    /**
+     * Ajoute du texte (une ligne par saut de ligne)
+     */
+    public void append(String text) {
+        long mark = logMark();
+        for (String line : text.split("\n")) {
+            if (!line.isEmpty()) pending.add(new Row(line, null, mark));
+        }
+        scheduleFlush();
+    }
+
+    /**
+     * Ajoute une image, réduite à une vignette (l'original n'est pas conservé)
+     */
+    public void appendImage(ImageIcon icon) {
+        pending.add(new Row(null, thumbnail(icon), logMark()));
+        scheduleFlush();
+    }
+
+    /**
+     * Branche l'historique (pagination vers le passé) et réaffiche ses derniers messages
+     *
+     * @param replay Nombre de messages réaffichés tout de suite
+     */
+    public void attachHistory(ChatHistory h, int replay) throws IOException {
+        List<HistoryRecord> last = h.recent(replay);
+        List<Row> rows = rows(last);
+        history = h;
+        SwingUtilities.invokeLater(() -> {
+            model.addAll(rows);
+            scrollToEnd();
+        });
+    }
+
+    /**
+     * Débranche l'historique (déconnexion): la fenêtre affichée est conservée
+     */
+    public void detachHistory() {
+        history = null;
+    }
+
+    // ─────────── Mise à jour du modèle (EDT) ───────────
+
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) SwingUtilities.invokeLater(this::flush);
+    }
+
+    private void flush() {
+        flushScheduled.set(false);
+        List<Row> batch = new ArrayList<>();
+        Row r;
+        while ((r = pending.poll()) != null) batch.add(r);
+        if (batch.isEmpty()) return;
+
+        boolean atBottom = isAtBottom();
+        model.addAll(batch);
+        // Fenêtre bornée: les anciennes lignes partent quand l'utilisateur suit le bas
+        // (s'il lit plus haut, on le laisse faire jusqu'à deux fois la fenêtre)
+        if (model.size() > (atBottom ? MAX_ROWS : 2 * MAX_ROWS)) model.removeRange(0, model.size() - MAX_ROWS - 1);
+        if (atBottom) scrollToEnd();
+    }
+
+    private void loadOlder() {
+        ChatHistory h = history;
+        if (h == null || loadingPage) return;
+        // Lignes affichées avant le branchement de l'historique: pas de repère, on prend le premier connu
+        long before = 0;
+        for (int i = 0; i < model.size() && before == 0; i++) before = model.get(i).logMark();
+        if (before <= 0) return;
+        List<Row> rows;
+        try {
+            rows = rows(h.before(before, PAGE));
+        } catch (IOException e) {
+            return;
+        }
+        if (rows.isEmpty()) return;
+
+        // Insertion en tête sans déplacer ce que l'utilisateur regarde
+        loadingPage = true;
+        JScrollBar bar = scroll.getVerticalScrollBar();
+        int oldMax = bar.getMaximum();
+        model.addAll(0, rows);
+        SwingUtilities.invokeLater(() -> {
+            bar.setValue(bar.getValue() + bar.getMaximum() - oldMax);
+            loadingPage = false;
+        });
+    }
+
+    private boolean isAtBottom() {
+        JScrollBar bar = scroll.getVerticalScrollBar();
+        return bar.getValue() + bar.getVisibleAmount() >= bar.getMaximum() - 4;
+    }
+
+    private void scrollToEnd() {
+        int last = model.size() - 1;
+        if (last >= 0) list.ensureIndexIsVisible(last);
+    }
+
+    // ─────────── Conversion ───────────
+
+    /**
+     * Messages de l'historique (du plus récent au plus ancien) → lignes dans l'ordre chronologique
+     */
+    private static List<Row> rows(List<HistoryRecord> newestFirst) {
+        List<Row> rows = new ArrayList<>(newestFirst.size());
+        for (int i = newestFirst.size() - 1; i >= 0; i--) {
+            HistoryRecord rec = newestFirst.get(i);
+            for (String line : ("🕘 " + rec.format()).split("\n")) rows.add(new Row(line, null, rec.id()));
+        }
+        return rows;
+    }
+
+    private long logMark() {
+        ChatHistory h = history;
+        return h != null ? h.logBytes() : 0;
+    }
+
+    private static Icon thumbnail(ImageIcon icon) {
+        int w = icon.getIconWidth(), h = icon.getIconHeight();
+        if (w <= 0 || h <= 0) return icon;
+        double scale = Math.min(1.0, Math.min((double) THUMB_WIDTH / w, (double) THUMB_HEIGHT / h));
+        if (scale >= 1.0) return icon;
+        return new ImageIcon(icon.getImage().getScaledInstance(
+                Math.max(1, (int) (w * scale)), Math.max(1, (int) (h * scale)), Image.SCALE_SMOOTH));
+    }
+
+    /**
+     * Rendu d'une ligne: un seul JLabel réutilisé pour toutes les cellules
+     */
+    private static final class RowRenderer extends DefaultListCellRenderer {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                      boolean selected, boolean focused) {
+            super.getListCellRendererComponent(list, "", index, selected, focused);
+            Row row = (Row) value;
+            setText(row.text());
+            setIcon(row.image());
+            return this;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package ui;
+
+import javax.swing.SwingUtilities;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.LinkedBlockingDeque;
+
+/**
+ * FILE D'ENVOI ASYNCHRONE (COMMUNE AUX TROIS CLIENTS)
+ *
+ * Les envois (lecture du fichier, compression, sérialisation, écriture sur le
+ * socket) se faisaient dans l'ActionListener, donc sur le thread Swing (EDT):
+ * un gros fichier ou un réseau lent figeait toute la fenêtre.
+ *
+ * L'EDT ne fait plus que déposer un travail dans la file. Un thread d'envoi
+ * dédié les exécute un par un, dans l'ordre de dépôt, et l'écouteur est
+ * prévenu sur l'EDT:
+ * - progress : avancement d'un gros envoi (au plus ~60 fois par seconde)
+ * - done     : fin de l'envoi (erreur null = succès, CancellationException = annulé)
+ *
+ * ANNULATION:
+ * Un travail en attente est retiré de la file. Un travail en cours s'arrête
+ * au prochain point de contrôle (lecture du fichier, avant l'écriture); une
+ * écriture commencée va jusqu'au bout pour ne pas laisser de trame tronquée.
+ */
+public final class SendQueue {
+
+    private static final long PROGRESS_INTERVAL_NANOS = 16_000_000;
+    private static final int READ_CHUNK = 64 * 1024;
+
+    /**
+     * Travail exécuté par le thread d'envoi
+     */
+    public interface Task {
+        void run(Job job) throws Exception;
+    }
+
+    /**
+     * Suivi des envois, toujours appelé sur l'EDT
+     */
+    public interface Listener {
+        void progress(Job job, String phase, long done, long total);
+        void done(Job job, Exception error);
+    }
+
+    /**
+     * Un envoi déposé dans la file
+     */
+    public final class Job {
+        public final String label;
+        private final Task task;
+        private volatile boolean cancelled;
+        private long lastProgress;
+
+        private Job(String label, Task task) {
+            this.label = label;
+            this.task = task;
+        }
+
+        /**
+         * Demande l'annulation (immédiate si l'envoi n'a pas commencé)
+         */
+        public void cancel() {
+            cancelled = true;
+            if (pending.remove(this)) finish(this, new CancellationException());
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * Point de contrôle: interrompt le travail s'il a été annulé
+         */
+        public void checkCancelled() {
+            if (cancelled) throw new CancellationException();
+        }
+
+        /**
+         * Signale l'avancement (limité à un rafraîchissement par image, sauf la fin)
+         */
+        public void progress(String phase, long done, long total) {
+            long now = System.nanoTime();
+            if (done < total && now - lastProgress < PROGRESS_INTERVAL_NANOS) return;
+            lastProgress = now;
+            SwingUtilities.invokeLater(() -> listener.progress(this, phase, done, total));
+        }
+    }
+
+    private final LinkedBlockingDeque<Job> pending = new LinkedBlockingDeque<>();
+    private final Listener listener;
+    private final Thread worker;
+    private volatile Job current;
+
+    public SendQueue(String threadName, Listener listener) {
+        this.listener = listener;
+        worker = new Thread(this::run, threadName);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Dépose un envoi en fin de file
+     */
+    public Job submit(String label, Task task) {
+        Job job = new Job(label, task);
+        pending.add(job);
+        return job;
+    }
+
+    /**
+     * Envoi en cours d'exécution (null si aucun)
+     */
+    public Job current() {
+        return current;
+    }
+
+    /**
+     * Envois en attente, plus celui en cours
+     */
+    public int depth() {
+        return pending.size() + (current != null ? 1 : 0);
+    }
+
+    /**
+     * Annule l'envoi en cours et tous ceux en attente (déconnexion)
+     */
+    public void cancelAll() {
+        Job running = current;
+        if (running != null) running.cancel();
+        Job job;
+        while ((job = pending.poll()) != null) {
+            job.cancelled = true;
+            finish(job, new CancellationException());
+        }
+    }
+
+    /**
+     * Lecture d'un fichier par blocs, avec progression et annulation
+     */
+    public static byte[] readFile(Path path, Job job) throws IOException {
+        long size = Files.size(path);
+        if (size > Integer.MAX_VALUE - 8) throw new IOException("Fichier trop grand : " + size + " octets");
+        byte[] data = new byte[(int) size];
+        try (InputStream in = Files.newInputStream(path)) {
+            int off = 0;
+            while (off < data.length) {
+                job.checkCancelled();
+                int n = in.read(data, off, Math.min(READ_CHUNK, data.length - off));
+                if (n < 0) throw new IOException("Fichier modifié pendant la lecture : " + path.getFileName());
+                off += n;
+                job.progress("Lecture", off, data.length);
+            }
+        }
+        return data;
+    }
+
+    private void run() {
+        while (true) {
+            Job job;
+            try {
+                job = pending.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            current = job;
+            Exception error = null;
+            try {
+                job.checkCancelled();
+                job.task.run(job);
+            } catch (Exception e) {
+                error = e;
+            } finally {
+                current = null;
+            }
+            finish(job, error);
+        }
+    }
+
+    private void finish(Job job, Exception error) {
+        SwingUtilities.invokeLater(() -> listener.done(job, error));
+    }
+}